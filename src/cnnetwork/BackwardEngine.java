@@ -0,0 +1,639 @@
+package cnnetwork;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class calculates the partial derivative of the total error with
+ * respect to every weight and bias of a network in a single backward pass.
+ *
+ * Instead of pulling each derivative out of the rest of the network one
+ * weight at a time (see FSONNetwork::computePartialDerivative()), the error of
+ * "out" is pushed back through the layers one layer at a time, starting with
+ * the last. Each layer has its own backward kernel (see backwardConv(),
+ * backwardLocal(), backwardFully() and backwardMaxpool()), which:
+ *
+ * 1. calculates the gradients of all of the layer's weights at once, from the
+ * layer's cells and the errors of the cells the layer calculates (a
+ * correlation for convolutional layers, an outer product for fully connected
+ * layers, and a product per window for locally connected layers),
+ *
+ * 2. adds up the errors of the cells each filter calculates to get the
+ * gradient of the filter's bias, and
+ *
+ * 3. passes those errors back to the layer's cells, each multiplied by the
+ * weight the cell was multiplied by.
+ *
+ * Once a layer is done, the errors of its cells are multiplied by the
+ * derivative of the activation function, which gives dE/dnet for every cell
+ * of the layer: the error the layer before it needs. This is exactly what the
+ * recursive functions calculate (including for maxpool layers, whose cells use
+ * the derivative of the activation function as well), so the gradients match
+ * them up to the order the sums are added in.
+ *
+ * All the gradients are calculated from the current weights before any of
+ * them are changed (see update()), so there is no need to keep a copy of the
+ * previous weights.
+ *
+ * The gradients of several inputs can be added up before the weights are
+ * changed (a "mini-batch"): call accumulate() once per input, then update()
+ * once, which moves every weight by the average of the gradients, and then
+ * clear(). backward() is the same as clear() followed by a single
+ * accumulate().
+ *
+ * A whole batch of inputs that has been fed forward at once (see Workspace
+ * and FSONNetwork::feedForward(LinkedList, Workspace)) can also be pushed
+ * back at once, with accumulate(LinkedList, Workspace, double[][], int). The
+ * kernels then work through every sample of the batch, so the gradients of
+ * convolutional layers come from a single matrix multiplication over the
+ * whole batch.
+ *
+ * The gradients of each filter only depend on the layer's cells and the
+ * errors of the cells the filter calculates, which are all finished before
+ * the layer's kernel starts. So if "pool" is set, the gradients of the
+ * filters of each layer are calculated in parallel (see FilterFanOut), and
+ * update() moves the weights of each filter in parallel as well. Passing the
+ * errors back to the layer's cells is done once the filters are done, by the
+ * calling thread, since every filter adds to the same cells. Every gradient is
+ * added up in the same order either way, so the results are the same with or
+ * without a pool.
+ *
+ * The errors and gradients are kept in flat arrays owned by the engine, so an
+ * engine must only be used by one thread at a time.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class BackwardEngine {
+
+	public final int batch;// The number of inputs that can be pushed back at once
+	public final int outputs;// The number of cells in the output of the network
+	public final double[][] deltas;// [layer][sample * cells per sample + cell] dE/dnet for every cell of every layer but the first (which are never needed)
+	public final double[] outputDeltas;// [sample * outputs + cell] dE/dnet for every cell of "out"
+	public final double[][] weightGradients;// [layer][filter * weights per filter + weight] dE/dw summed over every accumulated input, with the weights of each filter in [depth][row][column] order
+	public final double[][] biasGradients;// [layer][bias] dE/dbias summed over every accumulated input
+	public int samples;// The number of inputs whose gradients have been accumulated since the last clear()
+	public ForkJoinPool pool;// The pool the filters of each layer are split between, or null to work on them one after another
+
+	/**
+	 * Creates an engine with room for the errors and gradients of the given
+	 * network.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param out
+	 *            The array of cells that store the output of the network.
+	 */
+	public BackwardEngine(LinkedList<Layer> layers, Cell[] out) {
+		this(layers, out.length, 1);
+	}
+
+	/**
+	 * Creates an engine with room for the errors of a whole batch of inputs
+	 * (see Workspace), and the gradients of the given network.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param outputs
+	 *            The number of cells in the output of the network.
+	 * @param batch
+	 *            The number of inputs that can be pushed back at once.
+	 */
+	public BackwardEngine(LinkedList<Layer> layers, int outputs, int batch) {
+		int n = layers.size();
+		this.batch = batch;
+		this.outputs = outputs;
+		this.deltas = new double[n][];
+		this.weightGradients = new double[n][];
+		this.biasGradients = new double[n][];
+		this.outputDeltas = new double[batch * outputs];
+
+		for (int i = 0; i < n; i++) {
+			Layer layer = layers.get(i);
+			if (i > 0) {
+				deltas[i] = new double[batch * layer.cells.size()];
+			}
+			int K = layer.filters.size();
+			weightGradients[i] = new double[K * weightsPerFilter(layer)];
+			biasGradients[i] = new double[layer.biases.size()];
+		}
+	}
+
+	/**
+	 * This function calculates every weight and bias gradient of the network
+	 * for a single input, replacing whatever was accumulated before. See
+	 * accumulate().
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param out
+	 *            The array of cells that store the output of the network.
+	 * @param expected
+	 *            An array representing the expected values of the cells given
+	 *            in "out".
+	 * @throws Exception
+	 *             Thrown if the last layer of the network is not fully
+	 *             connected.
+	 */
+	public void backward(LinkedList<Layer> layers, Cell[] out, double[] expected) throws Exception {
+		clear();
+		accumulate(layers, out, expected);
+	}
+
+	/**
+	 * This function sets every accumulated gradient back to 0, to start a new
+	 * mini-batch.
+	 */
+	public void clear() {
+		for (int i = 0; i < weightGradients.length; i++) {
+			Arrays.fill(weightGradients[i], 0.0);
+			Arrays.fill(biasGradients[i], 0.0);
+		}
+		samples = 0;
+	}
+
+	/**
+	 * This function adds the gradients accumulated by another engine (for the
+	 * same network) to the gradients accumulated by this one, as if this
+	 * engine had accumulated the other's inputs itself.
+	 *
+	 * @param other
+	 *            The engine whose gradients to add.
+	 */
+	public void add(BackwardEngine other) {
+		for (int i = 0; i < weightGradients.length; i++) {
+			double[] gradients = weightGradients[i];
+			double[] otherGradients = other.weightGradients[i];
+			for (int g = 0; g < gradients.length; g++) {
+				gradients[g] += otherGradients[g];
+			}
+			double[] biases = biasGradients[i];
+			double[] otherBiases = other.biasGradients[i];
+			for (int b = 0; b < biases.length; b++) {
+				biases[b] += otherBiases[b];
+			}
+		}
+		samples += other.samples;
+	}
+
+	/**
+	 * This function calculates every weight and bias gradient of the network
+	 * for a single input, and adds them to the gradients accumulated so far.
+	 * The input must already have been fed forward through the network, and
+	 * the activation function (sigmoid or softmax) applied to "out".
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param out
+	 *            The array of cells that store the output of the network.
+	 * @param expected
+	 *            An array representing the expected values of the cells given
+	 *            in "out".
+	 * @throws Exception
+	 *             Thrown if the last layer of the network is not fully
+	 *             connected.
+	 */
+	public void accumulate(LinkedList<Layer> layers, Cell[] out, double[] expected) throws Exception {
+		// The error of each cell of "out" (see FSONNetwork::computeSoftmaxError())
+		for (int k = 0; k < out.length; k++) {
+			outputDeltas[k] = FSONNetwork.computeSoftmaxError(out, k, expected);
+		}
+
+		Tensor[] cells = new Tensor[layers.size()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = layers.get(i).cells;
+		}
+		propagate(layers, cells, 1);
+		samples++;
+	}
+
+	/**
+	 * This function calculates every weight and bias gradient of the network
+	 * for the first "count" inputs of a batch, and adds them to the gradients
+	 * accumulated so far. The batch must already have been fed forward through
+	 * the network (see FSONNetwork::feedForward(LinkedList, Workspace)), and
+	 * the activation function (sigmoid or softmax) applied to the output of
+	 * every input.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param workspace
+	 *            The cells and output of every input of the batch. Its batch
+	 *            must not be larger than the engine's.
+	 * @param expected
+	 *            The expected output for each input of the batch.
+	 * @param count
+	 *            The number of inputs of the batch to use. Any inputs past
+	 *            "count" add nothing to the gradients.
+	 * @throws Exception
+	 *             Thrown if the last layer of the network is not fully
+	 *             connected.
+	 */
+	public void accumulate(LinkedList<Layer> layers, Workspace workspace, double[][] expected, int count)
+			throws Exception {
+		double[] values = workspace.out.values;
+		int stride = workspace.out.sampleStride;
+		for (int n = 0; n < workspace.batch; n++) {
+			for (int k = 0; k < outputs; k++) {
+				// The same error as FSONNetwork::computeSoftmaxError(), or none for unused inputs
+				outputDeltas[(n * outputs) + k] = (n < count) ? (values[(n * stride) + k] - expected[n][k]) : 0.0;
+			}
+		}
+
+		propagate(layers, workspace.cells, workspace.batch);
+		samples += count;
+	}
+
+	/**
+	 * This function pushes "outputDeltas" back through the layers, one layer
+	 * at a time, adding to the gradients.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param cells
+	 *            The cells of each layer, for every input.
+	 * @param count
+	 *            The number of inputs held by "cells".
+	 * @throws Exception
+	 *             Thrown if the last layer of the network is not fully
+	 *             connected.
+	 */
+	private void propagate(LinkedList<Layer> layers, Tensor[] cells, int count) throws Exception {
+		int last = layers.size() - 1;
+
+		if (layers.get(last).type != LayerType.FULLY) {
+			throw new Exception("The last layer of a network must be fully connected.");
+		}
+
+		// Push the error back through the layers, one layer at a time
+		for (int i = last; i >= 0; i--) {
+			Layer layer = layers.get(i);
+			double[] nextDeltas = (i == last) ? outputDeltas : deltas[i + 1];
+			Tensor nextCells = (i == last) ? null : cells[i + 1];
+			int nextStride = (i == last) ? outputs : nextCells.sampleStride;
+			double[] cellDeltas = deltas[i];// null for the first layer
+			int used = count * cells[i].sampleStride;
+
+			// The kernels add to everything, so the errors of the cells must
+			// start at 0 (the gradients are only cleared by clear())
+			if (cellDeltas != null) {
+				Arrays.fill(cellDeltas, 0, used, 0.0);
+			}
+
+			switch (layer.type) {
+			case CONV:
+				backwardConv(layer, cells[i], nextCells, nextDeltas, cellDeltas, weightGradients[i],
+						biasGradients[i], pool);
+				break;
+			case LOCAL:
+				backwardLocal(layer, cells[i], nextCells, nextDeltas, cellDeltas, weightGradients[i],
+						biasGradients[i], pool);
+				break;
+			case FULLY:
+				backwardFully(layer, cells[i], nextStride, nextDeltas, cellDeltas, weightGradients[i],
+						biasGradients[i], pool);
+				break;
+			case MAXPOOL:
+				backwardMaxpool(layer, cells[i], nextCells, nextDeltas, cellDeltas);
+				break;
+			default:
+				break;
+			}
+
+			// Turn dE/dout into dE/dnet for the cells of this layer
+			if (cellDeltas != null) {
+				double[] values = cells[i].values;
+				for (int c = 0; c < used; c++) {
+					cellDeltas[c] *= values[c] * (1.0 - values[c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function moves every weight and bias of the network against the
+	 * average of the gradients accumulated since the last clear(). Nothing is
+	 * moved if no gradients have been accumulated.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param learningRate
+	 *            How "far" each weight and bias moves.
+	 */
+	public void update(LinkedList<Layer> layers, double learningRate) {
+		if (samples == 0) {
+			return;
+		}
+		final double step = learningRate / samples;
+		for (int i = 0; i < layers.size(); i++) {
+			final Layer layer = layers.get(i);
+			final double[] gradients = weightGradients[i];
+			final int weights = weightsPerFilter(layer);
+			FilterFanOut.run(pool, layer.filters.size(), new FilterFanOut.Kernel() {
+				@Override
+				public void filters(int start, int end) {
+					for (int f = start; f < end; f++) {
+						int g = f * weights;
+						for (double[][] plane : layer.filters.get(f).weights) {
+							for (double[] row : plane) {
+								for (int k = 0; k < row.length; k++) {
+									row[k] -= step * gradients[g++];
+								}
+							}
+						}
+					}
+				}
+			});
+			for (int b = 0; b < layer.biases.size(); b++) {
+				layer.biases.get(b).value -= step * biasGradients[i][b];
+			}
+		}
+	}
+
+	/**
+	 * @return The gradient accumulated since the last clear() for
+	 *         weight [depth][row][column] of filter "filterIndex" of layer
+	 *         "layerIndex".
+	 */
+	public double weightGradient(LinkedList<Layer> layers, int layerIndex, int filterIndex, int depth, int row,
+			int column) {
+		Layer layer = layers.get(layerIndex);
+		int weight = (((depth * layer.Frows) + row) * layer.Fcollumns) + column;
+		return weightGradients[layerIndex][(filterIndex * weightsPerFilter(layer)) + weight];
+	}
+
+	/**
+	 * @return dE/dnet calculated by the last call to backward() for the cell at
+	 *         flat position "cellIndex" (see Tensor::index()) of layer
+	 *         "layerIndex", or Double.NaN for the first layer (which is never
+	 *         calculated).
+	 */
+	public double cellDerivative(int layerIndex, int cellIndex) {
+		if (deltas[layerIndex] == null) {
+			return Double.NaN;
+		}
+		return deltas[layerIndex][cellIndex];
+	}
+
+	/**
+	 * The backward kernel for a convolutional layer: every filter is applied
+	 * at every window, and filter "f" at window [0][wr][wc] calculates cell
+	 * [f][wr][wc] of the next layer.
+	 *
+	 * The weight gradients are the correlation of the layer's cells with the
+	 * errors of the next layer, which is calculated by the im2col engine as a
+	 * single matrix multiplication (see ConvolutionEngine::correlate()) for
+	 * the whole batch.
+	 */
+	private static void backwardConv(Layer layer, Tensor cells, Tensor nextCells, double[] nextDeltas,
+			double[] cellDeltas, double[] weightGradients, double[] biasGradients, ForkJoinPool pool) {
+		Connectivity connectivity = layer.connectivity;
+		int K = layer.filters.size();
+
+		ConvolutionEngine.forCurrentThread().correlate(cells, layer.Fdepth, layer.Frows, layer.Fcollumns,
+				connectivity.step, nextCells, nextDeltas, K, weightGradients, biasGradients, pool);
+
+		if (cellDeltas == null) {
+			return;
+		}
+		for (int n = 0; n < cells.batch; n++) {
+			for (int f = 0; f < K; f++) {
+				Filter filter = layer.filters.get(f);
+				for (int wr = 0; wr < connectivity.windowRows; wr++) {
+					for (int wc = 0; wc < connectivity.windowColumns; wc++) {
+						double delta = nextDeltas[nextCells.index(n, f, wr, wc)];
+						propagateWindow(filter, cells, n, 0, wr * connectivity.step, wc * connectivity.step, delta,
+								cellDeltas);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The backward kernel for a locally connected layer: each window has its
+	 * own filter (and bias), and the window at [wd][wr][wc] calculates cell
+	 * [wd][wr][wc] of the next layer.
+	 *
+	 * Each window is only used once, so the gradient of its filter is just the
+	 * window's cells multiplied by the error of the cell it calculates.
+	 */
+	private static void backwardLocal(Layer layer, final Tensor cells, final Tensor nextCells,
+			final double[] nextDeltas, double[] cellDeltas, final double[] weightGradients,
+			final double[] biasGradients, ForkJoinPool pool) {
+		final Connectivity connectivity = layer.connectivity;
+		final int weights = weightsPerFilter(layer);
+		final int Fdepth = layer.Fdepth;
+		final int Frows = layer.Frows;
+		final int Fcolumns = layer.Fcollumns;
+
+		// Any filters past the last window are never used
+		int used = Math.min(layer.filters.size(),
+				connectivity.windowDepths * connectivity.windowRows * connectivity.windowColumns);
+
+		// Filter "f" is only used at the window at position "f"
+		FilterFanOut.run(pool, used, new FilterFanOut.Kernel() {
+			@Override
+			public void filters(int start, int end) {
+				for (int f = start; f < end; f++) {
+					int wd = connectivity.positionDepth(f);
+					int wr = connectivity.positionRow(f);
+					int wc = connectivity.positionColumn(f);
+					for (int n = 0; n < cells.batch; n++) {
+						double delta = nextDeltas[nextCells.index(n, wd, wr, wc)];
+						biasGradients[f] += delta;
+						windowProduct(cells, n, wd, wr * connectivity.step, wc * connectivity.step, Fdepth, Frows,
+								Fcolumns, delta, weightGradients, f * weights);
+					}
+				}
+			}
+		});
+
+		if (cellDeltas == null) {
+			return;
+		}
+		for (int wd = 0; wd < connectivity.windowDepths; wd++) {
+			for (int wr = 0; wr < connectivity.windowRows; wr++) {
+				for (int wc = 0; wc < connectivity.windowColumns; wc++) {
+					int f = connectivity.position(wd, wr, wc);
+					if (f >= used) {
+						continue;
+					}
+					for (int n = 0; n < cells.batch; n++) {
+						double delta = nextDeltas[nextCells.index(n, wd, wr, wc)];
+						propagateWindow(layer.filters.get(f), cells, n, wd, wr * connectivity.step,
+								wc * connectivity.step, delta, cellDeltas);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The backward kernel for a fully connected layer: every filter is applied
+	 * at the top left corner of the layer, and filter "f" calculates the "f"th
+	 * cell of the next layer (or of "out").
+	 *
+	 * The weight gradients are the outer product of the errors of the next
+	 * layer with the layer's cells (summed over the batch).
+	 *
+	 * "nextStride" is the distance between the errors of two samples in
+	 * "nextDeltas".
+	 */
+	private static void backwardFully(Layer layer, final Tensor cells, final int nextStride,
+			final double[] nextDeltas, double[] cellDeltas, final double[] weightGradients,
+			final double[] biasGradients, ForkJoinPool pool) {
+		final int weights = weightsPerFilter(layer);
+		final int Fdepth = layer.Fdepth;
+		final int Frows = layer.Frows;
+		final int Fcolumns = layer.Fcollumns;
+		int K = layer.filters.size();
+
+		FilterFanOut.run(pool, K, new FilterFanOut.Kernel() {
+			@Override
+			public void filters(int start, int end) {
+				for (int f = start; f < end; f++) {
+					for (int n = 0; n < cells.batch; n++) {
+						double delta = nextDeltas[(n * nextStride) + f];
+						biasGradients[f] += delta;
+						windowProduct(cells, n, 0, 0, 0, Fdepth, Frows, Fcolumns, delta, weightGradients,
+								f * weights);
+					}
+				}
+			}
+		});
+
+		if (cellDeltas == null) {
+			return;
+		}
+		for (int n = 0; n < cells.batch; n++) {
+			for (int f = 0; f < K; f++) {
+				propagateWindow(layer.filters.get(f), cells, n, 0, 0, 0, nextDeltas[(n * nextStride) + f],
+						cellDeltas);
+			}
+		}
+	}
+
+	/**
+	 * The backward kernel for a maxpool layer: there are no weights, and the
+	 * error of each pooled cell is passed on to the cell(s) of its window that
+	 * were equal to the maximum (the derivative of the max with respect to any
+	 * other cell is 0).
+	 */
+	private static void backwardMaxpool(Layer layer, Tensor cells, Tensor nextCells, double[] nextDeltas,
+			double[] cellDeltas) {
+		if (cellDeltas == null) {
+			return;
+		}
+		Connectivity connectivity = layer.connectivity;
+		double[] values = cells.values;
+
+		for (int n = 0; n < cells.batch; n++) {
+			for (int wd = 0; wd < connectivity.windowDepths; wd++) {
+				for (int wr = 0; wr < connectivity.windowRows; wr++) {
+					for (int wc = 0; wc < connectivity.windowColumns; wc++) {
+						int pooled = nextCells.index(n, wd, wr, wc);
+						double max = nextCells.values[pooled];
+						double delta = nextDeltas[pooled];
+						for (int j = 0; j < connectivity.Frows; j++) {
+							int start = cells.index(n, wd, (wr * connectivity.step) + j, wc * connectivity.step);
+							for (int k = 0; k < connectivity.Fcolumns; k++) {
+								if (values[start + k] == max) {
+									cellDeltas[start + k] += delta;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function adds the gradient of a filter used at a single window to
+	 * the filter's gradients: the cells of the window multiplied by the error
+	 * of the cell the window calculates. Each row of the window is contiguous
+	 * in both the cells and the gradients, so the inner loop is a plain scaled
+	 * add.
+	 *
+	 * @param cells
+	 *            The cells of the layer.
+	 * @param sample
+	 *            Which sample of "cells" the window is in.
+	 * @param depth
+	 *            [x][][] location of the top left cell of the window
+	 * @param row
+	 *            [][x][] location of the top left cell of the window
+	 * @param column
+	 *            [][][x] location of the top left cell of the window
+	 * @param Fdepth
+	 *            The depth of the filter
+	 * @param Frows
+	 *            The height of the filter
+	 * @param Fcolumns
+	 *            The width of the filter
+	 * @param delta
+	 *            dE/dnet of the cell the window calculates.
+	 * @param weightGradients
+	 *            The weight gradients of the layer.
+	 * @param offset
+	 *            Where in "weightGradients" the filter's weights start.
+	 */
+	private static void windowProduct(Tensor cells, int sample, int depth, int row, int column, int Fdepth, int Frows,
+			int Fcolumns, double delta, double[] weightGradients, int offset) {
+		double[] values = cells.values;
+		int g = offset;
+		for (int i = 0; i < Fdepth; i++) {
+			for (int j = 0; j < Frows; j++) {
+				int start = cells.index(sample, depth + i, row + j, column);
+				for (int k = 0; k < Fcolumns; k++) {
+					weightGradients[g + k] += values[start + k] * delta;
+				}
+				g += Fcolumns;
+			}
+		}
+	}
+
+	/**
+	 * This function passes the error of the cell calculated by a single filter
+	 * at a single window back to the cells of the window, each multiplied by
+	 * the weight it was multiplied by.
+	 *
+	 * @param filter
+	 *            The filter applied at the window.
+	 * @param cells
+	 *            The cells of the layer.
+	 * @param sample
+	 *            Which sample of "cells" the window is in.
+	 * @param depth
+	 *            [x][][] location of the top left cell of the window
+	 * @param row
+	 *            [][x][] location of the top left cell of the window
+	 * @param column
+	 *            [][][x] location of the top left cell of the window
+	 * @param delta
+	 *            dE/dnet of the cell the window calculates.
+	 * @param cellDeltas
+	 *            The errors of the layer's cells to add to.
+	 */
+	private static void propagateWindow(Filter filter, Tensor cells, int sample, int depth, int row, int column, double delta,
+			double[] cellDeltas) {
+		for (int i = 0; i < filter.weights.length; i++) {
+			for (int j = 0; j < filter.weights[0].length; j++) {
+				double[] weightRow = filter.weights[i][j];
+				int start = cells.index(sample, depth + i, row + j, column);
+				for (int k = 0; k < weightRow.length; k++) {
+					cellDeltas[start + k] += weightRow[k] * delta;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of weights in each filter of a layer.
+	 */
+	private static int weightsPerFilter(Layer layer) {
+		return layer.Fdepth * layer.Frows * layer.Fcollumns;
+	}
+}
@@ -0,0 +1,90 @@
+package cnnetwork;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class holds the biases of a layer, in the same order as the layer's
+ * filters (see FilterBank). The bias at index "i" is used with the filter at
+ * index "i".
+ * 
+ * Like FilterBank, the biases are kept in an array so that looking a bias up
+ * by its index does not get slower as the layer gets bigger, and the biases
+ * can be walked in order with a for-each loop.
+ * 
+ * @author Paula Rudy
+ *
+ */
+public class BiasBank implements Iterable<Cell> {
+
+	private Cell[] biases;// The biases, in order. Only the first "size" entries are used.
+	private int size;// The number of biases in this bank
+
+	public BiasBank() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            The number of biases to make room for up front. The bank
+	 *            still grows past this if needed.
+	 */
+	public BiasBank(int capacity) {
+		this.biases = new Cell[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	/**
+	 * This function adds a bias to the end of this bank.
+	 * 
+	 * @param bias
+	 *            The bias to add. Its index will be the old size of the bank.
+	 */
+	public void add(Cell bias) {
+		if (size == biases.length) {
+			biases = Arrays.copyOf(biases, biases.length * 2);
+		}
+		biases[size] = bias;
+		size++;
+	}
+
+	/**
+	 * @param index
+	 *            The index of the bias to find.
+	 * @return The bias at "index".
+	 */
+	public Cell get(int index) {
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return biases[index];
+	}
+
+	/**
+	 * @return The number of biases in this bank.
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<Cell> iterator() {
+		return new Iterator<Cell>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public Cell next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return biases[next++];
+			}
+		};
+	}
+}
@@ -0,0 +1,88 @@
+package cnnetwork;
+
+/**
+ * This class is an index from each bias of a layer to the cells of the next
+ * layer that the bias is added into.
+ *
+ * The index is stored in compressed rows: the cells for bias "b" are entries
+ * biasStart[b] up to (but not including) biasStart[b + 1] of "outputCells".
+ * Each entry is the flat position of the cell within the next layer's tensor
+ * (see Tensor::index()), or, for the last layer of a network, the index of the
+ * cell within "out".
+ *
+ * Bias "b" is used with filter "b", so its cells are the cells calculated at
+ * every window that filter is applied at (see Connectivity), in the order of
+ * the windows.
+ *
+ * The index only depends on the shape of the layer and of the cells it
+ * calculates, so it is built once (see Layer::biasIndex()).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class BiasIndex {
+
+	public final int[] biasStart;// The first entry for each bias. The last entry is the total number of entries.
+	public final int[] outputCells;// The cell each entry adds the bias into
+	private final int outputDepthStride;// The depth stride of the tensor this was built for (-1 for "out")
+	private final int outputRowStride;// The row stride of the tensor this was built for (-1 for "out")
+
+	/**
+	 * @param connectivity
+	 *            The connectivity of the layer the biases belong to.
+	 * @param biases
+	 *            The number of biases in the layer.
+	 * @param output
+	 *            The tensor holding the cells of the next layer, or null if
+	 *            the layer calculates "out".
+	 */
+	public BiasIndex(Connectivity connectivity, int biases, Tensor output) {
+		this.biasStart = new int[biases + 1];
+		for (int b = 0; b < biases; b++) {
+			biasStart[b + 1] = biasStart[b] + connectivity.windows(b);
+		}
+
+		this.outputCells = new int[biasStart[biases]];
+		int e = 0;
+		for (int b = 0; b < biases; b++) {
+			for (int w = 0; w < connectivity.windows(b); w++) {
+				int position = connectivity.position(b, w);
+				if (output == null) {
+					// The last layer is fully connected, and filter "b" calculates out[b]
+					outputCells[e] = b;
+				} else {
+					outputCells[e] = output.index(connectivity.outputDepth(b, position),
+							connectivity.outputRow(position), connectivity.outputColumn(b, position));
+				}
+				e++;
+			}
+		}
+
+		if (output == null) {
+			this.outputDepthStride = -1;
+			this.outputRowStride = -1;
+		} else {
+			this.outputDepthStride = output.depthStride;
+			this.outputRowStride = output.rowStride;
+		}
+	}
+
+	/**
+	 * @param biases
+	 *            The number of biases in the layer.
+	 * @param output
+	 *            The tensor holding the cells of the next layer, or null if
+	 *            the layer calculates "out".
+	 * @return True if this index was built for the given number of biases and
+	 *         the given shape of output.
+	 */
+	public boolean matches(int biases, Tensor output) {
+		if ((biasStart.length - 1) != biases) {
+			return false;
+		}
+		if (output == null) {
+			return outputDepthStride == -1;
+		}
+		return (outputDepthStride == output.depthStride) && (outputRowStride == output.rowStride);
+	}
+}
@@ -0,0 +1,81 @@
+package cnnetwork;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This codec packs every value into a single signed byte, an eighth of the
+ * size of a double. The values are cut into blocks, and each block has its
+ * own scale (its largest magnitude divided by 127), so a few large gradients
+ * in one part of the network do not wipe out the small gradients elsewhere.
+ * Each value is rounded to the nearest multiple of its block's scale, so it
+ * is off by at most half of the scale.
+ *
+ * Layout: the number of values (int), the block size (int), then for every
+ * block its scale (float) followed by one byte per value of the block.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ByteQuantizationCodec implements GradientCodec {
+
+	public static final int DEFAULT_BLOCK = 256;// The default number of values that share a scale
+
+	public final int block;// The number of values that share a scale
+
+	/**
+	 * Creates a codec with the default block size.
+	 */
+	public ByteQuantizationCodec() {
+		this(DEFAULT_BLOCK);
+	}
+
+	/**
+	 * Creates a codec.
+	 *
+	 * @param block
+	 *            The number of values that share a scale.
+	 */
+	public ByteQuantizationCodec(int block) {
+		if (block < 1) {
+			throw new IllegalArgumentException("Invalid block size: " + block);
+		}
+		this.block = block;
+	}
+
+	@Override
+	public byte[] encode(double[] values) {
+		int blocks = (values.length + block - 1) / block;
+		ByteBuffer buffer = ByteBuffer.allocate(8 + (4 * blocks) + values.length);
+		buffer.putInt(values.length);
+		buffer.putInt(block);
+
+		for (int start = 0; start < values.length; start += block) {
+			int end = Math.min(start + block, values.length);
+			double max = 0.0;
+			for (int i = start; i < end; i++) {
+				max = Math.max(max, Math.abs(values[i]));
+			}
+			float scale = (float) (max / 127.0);
+			buffer.putFloat(scale);
+			for (int i = start; i < end; i++) {
+				buffer.put((scale == 0.0f) ? 0 : (byte) Math.round(values[i] / scale));
+			}
+		}
+		return buffer.array();
+	}
+
+	@Override
+	public void decode(byte[] encoded, double[] values) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		GradientCompression.checkLength(buffer.getInt(), values);
+		int encodedBlock = buffer.getInt();
+
+		for (int start = 0; start < values.length; start += encodedBlock) {
+			int end = Math.min(start + encodedBlock, values.length);
+			float scale = buffer.getFloat();
+			for (int i = start; i < end; i++) {
+				values[i] = buffer.get() * (double) scale;
+			}
+		}
+	}
+}
@@ -6,9 +6,9 @@ package cnnetwork;
  * 
  */
 public class Cell {
-	public double derivative;//Used to store the value of the derivative at this location. A value of Double.NaN here indicates a derivative has not been found yet.
+	public double derivative;//Used to store the value of the derivative at this location. For biases, see "generation" for when it is valid.
+	public int generation;// For biases: the generation (see Layer::generation) in which "derivative" was found. The derivative is only valid if this matches the generation of the bias's layer.
 	public double value;// the actual value of the cell.
-	public double previousValue;// Used during backpropagation to avoid using newly incremented values during learning.
 	
 	public Cell(double derivative, double value) {
 		this.derivative = derivative;
@@ -16,12 +16,10 @@ public class Cell {
 	}
 	
 	public Cell() {
-		this.derivative = Double.NaN;// A value of Double.NaN indicates no derivative has been found yet
 		this.value = 0.0;
 	}
 	
 	public Cell(double value) {
-		this.derivative = Double.NaN;// A value of Double.NaN indicates no derivative has been found yet
 		this.value = value;
 	}
 	
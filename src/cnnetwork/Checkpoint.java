@@ -0,0 +1,368 @@
+package cnnetwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class reads and writes checkpoints: compact binary files holding the
+ * shape of a network and every one of its weights and biases, so a network
+ * can be recovered if learning is interrupted (see Checkpointer).
+ *
+ * Unlike the text file written by FSONNetwork::learn(), a checkpoint holds
+ * nothing that can be calculated again (cells, gradients, or connections).
+ * It is laid out as:
+ *
+ * - the magic number "FSONCKPT" and the version of the format,
+ *
+ * - the number of inputs learned when the checkpoint was taken,
+ *
+ * - whether the checkpoint holds where learning had got to, and if so the
+ * iteration, position, seed, learning rate, error, average error, entries
+ * since the last evaluation, and subsets drawn of that state (see
+ * TrainingState),
+ *
+ * - the number of layers, and the shape of each layer (see writeLayers()),
+ *
+ * - the number of weights and biases, and their values in the order of
+ * ParameterVector,
+ *
+ * - a CRC32 checksum of everything before it.
+ *
+ * Numbers are big endian (see DataOutputStream). A checkpoint is written to a
+ * temporary file next to the real one, which is then renamed over it, so the
+ * file is always either the old checkpoint or the new one, never half of
+ * each.
+ *
+ * Checkpoints of version 1 hold no training state, those of version 2 no
+ * average error or entries since the last evaluation, and those of version 3
+ * no subsets drawn; they can still be read. The average of a version 2
+ * checkpoint starts again from its error.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class Checkpoint {
+
+	public static final long MAGIC = 0x46534f4e434b5054L;// "FSONCKPT"
+	public static final int VERSION = 4;// The version of the format written
+
+	private static final int CHUNK = 8192;// The number of values converted to bytes at once
+
+	public final long samples;// The number of inputs learned when the checkpoint was taken
+	public final LinkedList<Layer> layers;// The network, with the checkpoint's weights and biases
+	public final TrainingState state;// Where learning had got to, or null if the checkpoint does not say
+
+	private Checkpoint(long samples, LinkedList<Layer> layers, TrainingState state) {
+		this.samples = samples;
+		this.layers = layers;
+		this.state = state;
+	}
+
+	/**
+	 * This function writes a checkpoint, replacing any file already there.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @param layers
+	 *            The layers that make up the network (only their shapes are
+	 *            written).
+	 * @param parameters
+	 *            The weights and biases of the network (see
+	 *            ParameterVector::read()).
+	 * @param samples
+	 *            The number of inputs learned so far.
+	 * @throws IOException
+	 *             Thrown if the file cannot be written.
+	 */
+	public static void write(File file, LinkedList<Layer> layers, double[] parameters, long samples)
+			throws IOException {
+		TrainingState state = new TrainingState();
+		state.samples = samples;
+		write(file, layers, parameters, state, false);
+	}
+
+	/**
+	 * This function writes a checkpoint that learning can be resumed from
+	 * (see LearningOptions::resumeFrom), replacing any file already there.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @param layers
+	 *            The layers that make up the network (only their shapes are
+	 *            written).
+	 * @param parameters
+	 *            The weights and biases of the network (see
+	 *            ParameterVector::read()).
+	 * @param state
+	 *            Where learning had got to when "parameters" was taken.
+	 * @throws IOException
+	 *             Thrown if the file cannot be written.
+	 */
+	public static void write(File file, LinkedList<Layer> layers, double[] parameters, TrainingState state)
+			throws IOException {
+		write(file, layers, parameters, state, true);
+	}
+
+	private static void write(File file, LinkedList<Layer> layers, double[] parameters, TrainingState state,
+			boolean resumable) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16),
+					new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(state.samples);
+			out.writeBoolean(resumable);
+			if (resumable) {
+				out.writeInt(state.iteration);
+				out.writeInt(state.position);
+				out.writeLong(state.seed);
+				out.writeDouble(state.learningRate);
+				out.writeDouble(state.error);
+				out.writeDouble(state.average);
+				out.writeInt(state.sinceEvaluation);
+				out.writeLong(state.subsets);
+			}
+			writeLayers(out, layers);
+			out.writeInt(parameters.length);
+			writeDoubles(out, parameters, parameters.length);
+			out.writeLong(checked.getChecksum().getValue());
+			out.flush();
+
+			// Make sure the new checkpoint is on disk before it replaces the old one
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * This function reads a checkpoint, creating a new network of the shape it
+	 * holds.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @return The checkpoint.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, or is not a checkpoint, or
+	 *             has been damaged.
+	 */
+	public static Checkpoint read(File file) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		try {
+			if (in.readLong() != MAGIC) {
+				throw new IOException("Not a checkpoint: " + file);
+			}
+			int version = in.readInt();
+			if ((version < 1) || (version > VERSION)) {
+				throw new IOException("Unknown checkpoint version " + version + ": " + file);
+			}
+			long samples = in.readLong();
+			TrainingState state = null;
+			if ((version >= 2) && in.readBoolean()) {
+				state = new TrainingState();
+				state.samples = samples;
+				state.iteration = in.readInt();
+				state.position = in.readInt();
+				state.seed = in.readLong();
+				state.learningRate = in.readDouble();
+				state.error = in.readDouble();
+				if (version >= 3) {
+					state.average = in.readDouble();
+					state.sinceEvaluation = in.readInt();
+					if (version >= 4) {
+						state.subsets = in.readLong();
+					}
+				} else if (!Double.isInfinite(state.error) && !Double.isNaN(state.error)) {
+					// As LossTracker::reset() would
+					state.average = state.error;
+				}
+			}
+			LinkedList<Layer> layers = readLayers(in);
+			double[] parameters = new double[in.readInt()];
+			if (parameters.length != ParameterVector.size(layers)) {
+				throw new IOException("The checkpoint does not match its own layers: " + file);
+			}
+			readDoubles(in, parameters, parameters.length);
+			long expected = checked.getChecksum().getValue();
+			if (in.readLong() != expected) {
+				throw new IOException("The checkpoint is damaged: " + file);
+			}
+			ParameterVector.write(parameters, layers);
+			return new Checkpoint(samples, layers, state);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * This function copies the weights and biases of a checkpoint into an
+	 * existing network of the same shape.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @return The number of inputs learned when the checkpoint was taken.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, or is not a checkpoint of
+	 *             a network of this shape.
+	 */
+	public static long load(File file, LinkedList<Layer> layers) throws IOException {
+		return restore(file, layers).samples;
+	}
+
+	/**
+	 * This function copies the weights and biases of a checkpoint into an
+	 * existing network of the same shape.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @return The checkpoint (whose own layers hold the same weights and
+	 *         biases).
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, or is not a checkpoint of
+	 *             a network of this shape.
+	 */
+	public static Checkpoint restore(File file, LinkedList<Layer> layers) throws IOException {
+		Checkpoint checkpoint = read(file);
+		if (checkpoint.layers.size() != layers.size()) {
+			throw new IOException("The checkpoint has " + checkpoint.layers.size() + " layers, not "
+					+ layers.size() + ": " + file);
+		}
+		for (int i = 0; i < layers.size(); i++) {
+			if (!sameShape(checkpoint.layers.get(i), layers.get(i))) {
+				throw new IOException("Layer " + i + " of the checkpoint is a different shape: " + file);
+			}
+		}
+		double[] parameters = new double[ParameterVector.size(layers)];
+		ParameterVector.read(checkpoint.layers, parameters);
+		ParameterVector.write(parameters, layers);
+		return checkpoint;
+	}
+
+	/**
+	 * @return True if a file starts with the magic number of a checkpoint.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read.
+	 */
+	public static boolean isCheckpoint(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return (file.length() >= 8) && (in.readLong() == MAGIC);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * This function writes the number of layers of a network, and the ten
+	 * numbers that make up the shape of each (the arguments of the Layer
+	 * constructor, with the type as LayerType::getValue()).
+	 */
+	static void writeLayers(DataOutput out, LinkedList<Layer> layers) throws IOException {
+		out.writeInt(layers.size());
+		for (Layer layer : layers) {
+			out.writeInt(layer.collumns);
+			out.writeInt(layer.rows);
+			out.writeInt(layer.depth);
+			out.writeInt(layer.Fcollumns);
+			out.writeInt(layer.Frows);
+			out.writeInt(layer.Fdepth);
+			out.writeInt(layer.K);
+			out.writeInt(layer.step);
+			out.writeInt(layer.pad);
+			out.writeInt(layer.type.getValue());
+		}
+	}
+
+	/**
+	 * This function reads the shape of a network written by writeLayers(),
+	 * and creates a network of that shape.
+	 */
+	static LinkedList<Layer> readLayers(DataInput in) throws IOException {
+		int count = in.readInt();
+		LinkedList<Layer> layers = new LinkedList<Layer>();
+		for (int i = 0; i < count; i++) {
+			int collumns = in.readInt();
+			int rows = in.readInt();
+			int depth = in.readInt();
+			int fcollumns = in.readInt();
+			int frows = in.readInt();
+			int fdepth = in.readInt();
+			int k = in.readInt();
+			int step = in.readInt();
+			int pad = in.readInt();
+			LayerType type = LayerType.fromString(String.valueOf(in.readInt()));
+			Layer layer = new Layer(collumns, rows, depth, fcollumns, frows, fdepth, k, step, pad, type);
+			layer.initLayer();
+			layers.add(layer);
+		}
+		return layers;
+	}
+
+	/**
+	 * @return True if two layers were created with the same arguments.
+	 */
+	static boolean sameShape(Layer a, Layer b) {
+		return (a.collumns == b.collumns) && (a.rows == b.rows) && (a.depth == b.depth)
+				&& (a.Fcollumns == b.Fcollumns) && (a.Frows == b.Frows) && (a.Fdepth == b.Fdepth) && (a.K == b.K)
+				&& (a.step == b.step) && (a.pad == b.pad) && (a.type == b.type);
+	}
+
+	/**
+	 * This function writes the first "count" values of an array, a chunk at a
+	 * time.
+	 */
+	static void writeDoubles(DataOutputStream out, double[] values, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK * 8);
+		for (int start = 0; start < count; start += CHUNK) {
+			int length = Math.min(CHUNK, count - start);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(values, start, length);
+			out.write(buffer.array(), 0, length * 8);
+		}
+	}
+
+	/**
+	 * This function reads "count" values into an array, a chunk at a time.
+	 */
+	static void readDoubles(DataInputStream in, double[] values, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK * 8);
+		for (int start = 0; start < count; start += CHUNK) {
+			int length = Math.min(CHUNK, count - start);
+			in.readFully(buffer.array(), 0, length * 8);
+			buffer.clear();
+			buffer.asDoubleBuffer().get(values, start, length);
+		}
+	}
+}
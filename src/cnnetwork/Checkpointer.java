@@ -0,0 +1,284 @@
+package cnnetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * This class writes checkpoints of a network (see Checkpoint) while it
+ * learns, without holding up learning.
+ *
+ * When a checkpoint is taken, the weights and biases are copied into a
+ * snapshot (see ParameterVector::read()) by the thread that is learning, so
+ * learning can carry on changing them straight away. The snapshot is then
+ * written by a background thread. If a new snapshot is taken before the last
+ * one has been written, the older one is dropped and only the newer one is
+ * written, so a slow disk never holds up learning or falls further and further
+ * behind.
+ *
+ * Checkpoints are taken every "every" inputs learned, or every "millis"
+ * milliseconds, whichever comes first (see due()). With neither set, one is
+ * taken every time checkpoint() is called.
+ *
+ * Checkpoints taken with a TrainingState can be resumed from (see
+ * LearningOptions::resumeFrom).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class Checkpointer {
+
+	public final File file;// The file checkpoints are written to
+	public final long every;// The number of inputs learned between checkpoints, or 0
+	public final long millis;// The number of milliseconds between checkpoints, or 0
+	private final LinkedList<Layer> layers;// The layers that make up the network
+	private final int size;// The number of weights and biases in the network
+	private final Thread writer;// The thread the checkpoints are written by
+	private double[] pending;// The snapshot waiting to be written, or null
+	private TrainingState pendingState;// Where learning had got to when "pending" was taken
+	private boolean pendingResumable;// True if "pendingState" says where learning had got to, not just the number of inputs learned
+	private double[] spare;// A snapshot that has been written, and can be filled again
+	private boolean writing;// True while the writer is writing a snapshot
+	private boolean closed;// True once close() has been called
+	private IOException failure;// The first exception thrown while writing
+	private long lastSamples;// The number of inputs learned when the last checkpoint was taken
+	private long lastTime;// When the last checkpoint was taken (see System::currentTimeMillis())
+	private long written;// The number of checkpoints written
+	private long dropped;// The number of snapshots replaced by a newer one before they were written
+
+	/**
+	 * Creates a checkpointer and starts its background thread.
+	 *
+	 * @param file
+	 *            The file to write checkpoints to.
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param every
+	 *            The number of inputs learned between checkpoints, or 0.
+	 * @param millis
+	 *            The number of milliseconds between checkpoints, or 0.
+	 */
+	public Checkpointer(File file, LinkedList<Layer> layers, long every, long millis) {
+		this.file = file;
+		this.layers = layers;
+		this.every = every;
+		this.millis = millis;
+		this.size = ParameterVector.size(layers);
+		this.lastTime = System.currentTimeMillis();
+
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "fson-checkpoint");
+		// A daemon thread, so an unclosed checkpointer does not keep the program running
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @param samples
+	 *            The number of inputs learned so far.
+	 * @return True if it is time for a checkpoint.
+	 */
+	public synchronized boolean due(long samples) {
+		if ((every <= 0) && (millis <= 0)) {
+			return true;
+		}
+		return ((every > 0) && ((samples - lastSamples) >= every))
+				|| ((millis > 0) && ((System.currentTimeMillis() - lastTime) >= millis));
+	}
+
+	/**
+	 * This function takes a checkpoint if one is due (see due()).
+	 *
+	 * @param samples
+	 *            The number of inputs learned so far.
+	 * @throws IOException
+	 *             Thrown if an earlier checkpoint could not be written.
+	 */
+	public void maybeCheckpoint(long samples) throws IOException {
+		if (due(samples)) {
+			checkpoint(samples);
+		}
+	}
+
+	/**
+	 * This function takes a checkpoint that learning can be resumed from, if
+	 * one is due (see due()).
+	 *
+	 * @param state
+	 *            Where learning has got to.
+	 * @throws IOException
+	 *             Thrown if an earlier checkpoint could not be written.
+	 */
+	public void maybeCheckpoint(TrainingState state) throws IOException {
+		if (due(state.samples)) {
+			checkpoint(state);
+		}
+	}
+
+	/**
+	 * This function copies the weights and biases of the network, and hands
+	 * the copy to the background thread to be written. The weights must not
+	 * be changing while this runs.
+	 *
+	 * @param samples
+	 *            The number of inputs learned so far.
+	 * @throws IOException
+	 *             Thrown if an earlier checkpoint could not be written.
+	 */
+	public void checkpoint(long samples) throws IOException {
+		TrainingState state = new TrainingState();
+		state.samples = samples;
+		take(state, false);
+	}
+
+	/**
+	 * This function copies the weights and biases of the network, along with
+	 * where learning has got to, and hands the copy to the background thread
+	 * to be written. The weights must not be changing while this runs.
+	 *
+	 * @param state
+	 *            Where learning has got to. It is copied, so it can carry on
+	 *            changing afterwards.
+	 * @throws IOException
+	 *             Thrown if an earlier checkpoint could not be written.
+	 */
+	public void checkpoint(TrainingState state) throws IOException {
+		take(new TrainingState(state), true);
+	}
+
+	/**
+	 * This function takes a snapshot of the weights and biases, and hands it
+	 * to the background thread.
+	 */
+	private void take(TrainingState state, boolean resumable) throws IOException {
+		double[] snapshot;
+		synchronized (this) {
+			checkFailure();
+			snapshot = spare;
+			spare = null;
+		}
+		if (snapshot == null) {
+			snapshot = new double[size];
+		}
+		ParameterVector.read(layers, snapshot);
+
+		synchronized (this) {
+			if (pending != null) {
+				dropped++;
+			}
+			pending = snapshot;
+			pendingState = state;
+			pendingResumable = resumable;
+			lastSamples = state.samples;
+			lastTime = System.currentTimeMillis();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * This function waits for the last snapshot to be written, then stops the
+	 * background thread. The checkpointer cannot be used afterwards.
+	 *
+	 * @throws IOException
+	 *             Thrown if a checkpoint could not be written.
+	 * @throws InterruptedException
+	 *             Thrown if this thread is interrupted while waiting.
+	 */
+	public void close() throws IOException, InterruptedException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		writer.join();
+		synchronized (this) {
+			checkFailure();
+		}
+	}
+
+	/**
+	 * @return The number of checkpoints written so far.
+	 */
+	public synchronized long written() {
+		return written;
+	}
+
+	/**
+	 * @return The number of snapshots replaced by a newer one before they
+	 *         could be written.
+	 */
+	public synchronized long dropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return True if no snapshot is waiting to be written or being written.
+	 */
+	public synchronized boolean idle() {
+		return (pending == null) && !writing;
+	}
+
+	/**
+	 * The background thread: writes each snapshot as it arrives, until
+	 * close() is called and there is nothing left to write.
+	 */
+	private void write() {
+		while (true) {
+			double[] snapshot;
+			TrainingState state;
+			boolean resumable;
+			synchronized (this) {
+				while ((pending == null) && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending == null) {
+					return;
+				}
+				snapshot = pending;
+				state = pendingState;
+				resumable = pendingResumable;
+				pending = null;
+				writing = true;
+			}
+
+			IOException error = null;
+			try {
+				if (resumable) {
+					Checkpoint.write(file, layers, snapshot, state);
+				} else {
+					Checkpoint.write(file, layers, snapshot, state.samples);
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+
+			synchronized (this) {
+				writing = false;
+				spare = snapshot;
+				if (error == null) {
+					written++;
+				} else if (failure == null) {
+					failure = error;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * This function throws the first exception thrown while writing, if
+	 * there was one.
+	 */
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
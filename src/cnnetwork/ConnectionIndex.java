@@ -0,0 +1,89 @@
+package cnnetwork;
+
+/**
+ * This class is an index from each cell of a layer to the windows (see
+ * Connectivity) that read that cell, along with the entry of the filter that
+ * the cell is multiplied by in each of those windows.
+ *
+ * The index is stored in compressed rows: the entries for the cell at flat
+ * position "i" of the layer's tensor (see Tensor::index()) are entries
+ * cellStart[i] up to (but not including) cellStart[i + 1] of the other
+ * arrays. Within a cell, the entries are in the order of the windows'
+ * positions.
+ *
+ * For convolutional and fully connected layers every filter is applied at
+ * every window, so an entry stands for that window with each of the filters.
+ * For locally connected layers the window's position is also the index of its
+ * filter. For maxpool layers there are no filters, and the weight entries are
+ * just the cell's place within the window.
+ *
+ * The index only depends on the shape of the layer, so it is built once per
+ * layer (see Layer::connectionIndex()).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ConnectionIndex {
+
+	public final int[] cellStart;// The first entry for each cell. The last entry is the total number of entries.
+	public final int[] positions;// The position of the window for each entry
+	public final int[] weightDepth;// [x][][] location within the filter of the weight the cell is multiplied by
+	public final int[] weightRow;// [][x][] location within the filter of the weight the cell is multiplied by
+	public final int[] weightColumn;// [][][x] location within the filter of the weight the cell is multiplied by
+
+	public ConnectionIndex(Connectivity connectivity) {
+		int cells = connectivity.depth * connectivity.rows * connectivity.columns;
+		this.cellStart = new int[cells + 1];
+
+		// First count the windows containing each cell, so the arrays can be
+		// allocated at exactly the right size
+		int i = 0;
+		for (int d = 0; d < connectivity.depth; d++) {
+			int depths = span(connectivity.firstWindowDepth(d), connectivity.endWindowDepth(d));
+			for (int r = 0; r < connectivity.rows; r++) {
+				int rows = span(connectivity.firstWindowRow(r), connectivity.endWindowRow(r));
+				for (int c = 0; c < connectivity.columns; c++) {
+					int columns = span(connectivity.firstWindowColumn(c), connectivity.endWindowColumn(c));
+					cellStart[i + 1] = cellStart[i] + (depths * rows * columns);
+					i++;
+				}
+			}
+		}
+
+		int entries = cellStart[cells];
+		this.positions = new int[entries];
+		this.weightDepth = new int[entries];
+		this.weightRow = new int[entries];
+		this.weightColumn = new int[entries];
+
+		// Then fill in the entries
+		int e = 0;
+		for (int d = 0; d < connectivity.depth; d++) {
+			for (int r = 0; r < connectivity.rows; r++) {
+				for (int c = 0; c < connectivity.columns; c++) {
+					for (int wd = connectivity.firstWindowDepth(d); wd < connectivity.endWindowDepth(d); wd++) {
+						for (int wr = connectivity.firstWindowRow(r); wr < connectivity.endWindowRow(r); wr++) {
+							for (int wc = connectivity.firstWindowColumn(c); wc < connectivity
+									.endWindowColumn(c); wc++) {
+								int position = connectivity.position(wd, wr, wc);
+								positions[e] = position;
+								weightDepth[e] = d - connectivity.inputDepth(position);
+								weightRow[e] = r - connectivity.inputRow(position);
+								weightColumn[e] = c - connectivity.inputColumn(position);
+								e++;
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of entries in a range of windows, or 0 if the range
+	 *         is empty.
+	 */
+	private static int span(int start, int end) {
+		return Math.max(end - start, 0);
+	}
+}
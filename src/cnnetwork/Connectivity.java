@@ -0,0 +1,311 @@
+package cnnetwork;
+
+/**
+ * This class describes which cells of a layer are used to calculate which
+ * cells of the next layer. Everything is calculated from the layer's type,
+ * size, filter size and step, so nothing needs to be recorded while feeding
+ * forward.
+ *
+ * The filters of a layer are applied at a grid of "windows". Window
+ * [wd][wr][wc] covers the section of the layer's cells whose top left corner
+ * is at depth wd, row (wr * step), and column (wc * step), and is the size of
+ * a filter. The windows are numbered in [depth][row][column] order; this
+ * number is called the "position" of the window.
+ *
+ * How the filters are applied to the windows depends on the type of the layer:
+ *
+ * CONV: every filter is applied at every window (there is only one window
+ * depth). Filter "f" at window [0][wr][wc] calculates cell [f][wr][wc] of the
+ * next layer.
+ *
+ * LOCAL: each window has its own filter; filter "f" is applied only at
+ * position "f" and calculates cell [wd][wr][wc] of the next layer.
+ *
+ * MAXPOOL: there are no filters, but the windows are numbered the same way as
+ * LOCAL. Window [wd][wr][wc] is one cell deep and "Fcollumns" wide and high
+ * (see Layer::pool()), and is pooled into cell [wd][wr][wc] of the next layer.
+ *
+ * FULLY: there is a single window, and every filter is applied to it. Filter
+ * "f" calculates the "f"th cell of the next layer (or of "out").
+ *
+ * The inverse mapping (which windows contain a given cell) is also
+ * calculated, one dimension at a time; see firstWindowRow() and
+ * endWindowRow() (and the matching functions for depth and column).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class Connectivity {
+
+	public final LayerType type;// The type of the layer this describes
+	public final int step;// The number of rows and columns between windows
+	public final int depth;// The depth of the layer's cells
+	public final int rows;// The height of the layer's cells
+	public final int columns;// The width of the layer's cells
+	public final int Fdepth;// The depth of a window
+	public final int Frows;// The height of a window
+	public final int Fcolumns;// The width of a window
+	public final int windowDepths;// The number of windows along the depth of the layer
+	public final int windowRows;// The number of windows along the rows of the layer
+	public final int windowColumns;// The number of windows along the columns of the layer
+
+	public Connectivity(Layer layer) {
+		this.type = layer.type;
+		// Fully connected layers are sometimes given a step of 0, since they
+		// only have one window. Treat that as 1 to keep the arithmetic below simple.
+		this.step = Math.max(layer.step, 1);
+		this.depth = layer.depth;
+		this.rows = layer.rows;
+		this.columns = layer.collumns;
+
+		if (type == LayerType.MAXPOOL) {
+			// Maxpool windows are a single depth slice, and are "Fcollumns" wide and high
+			this.Fdepth = 1;
+			this.Frows = layer.Fcollumns;
+			this.Fcolumns = layer.Fcollumns;
+		} else {
+			this.Fdepth = layer.Fdepth;
+			this.Frows = layer.Frows;
+			this.Fcolumns = layer.Fcollumns;
+		}
+
+		switch (type) {
+		case FULLY:
+			// Fully connected filters are only applied at the top left corner
+			this.windowDepths = 1;
+			this.windowRows = 1;
+			this.windowColumns = 1;
+			break;
+		case CONV:
+			// Convolutional filters span the full depth of the layer
+			this.windowDepths = 1;
+			this.windowRows = windowCount(rows, Frows, step);
+			this.windowColumns = windowCount(columns, Fcolumns, step);
+			break;
+		default:
+			// Locally connected and maxpool windows move along the depth one slice at a time
+			this.windowDepths = windowCount(depth, Fdepth, 1);
+			this.windowRows = windowCount(rows, Frows, step);
+			this.windowColumns = windowCount(columns, Fcolumns, step);
+			break;
+		}
+	}
+
+	/**
+	 * @return True if every filter of the layer is applied at every window
+	 *         (convolutional and fully connected layers). False if each
+	 *         window has its own filter (locally connected layers) or no
+	 *         filter at all (maxpool layers).
+	 */
+	public boolean sharesFilters() {
+		return (type == LayerType.CONV) || (type == LayerType.FULLY);
+	}
+
+	/**
+	 * @param filter
+	 *            The index of a filter of the layer
+	 * @return The number of windows the filter is applied at.
+	 */
+	public int windows(int filter) {
+		if (sharesFilters()) {
+			return windowDepths * windowRows * windowColumns;
+		}
+		return 1;
+	}
+
+	/**
+	 * @param filter
+	 *            The index of a filter of the layer
+	 * @param window
+	 *            Which of the filter's windows to find, from 0 to
+	 *            windows(filter) - 1
+	 * @return The position of that window.
+	 */
+	public int position(int filter, int window) {
+		if (sharesFilters()) {
+			return window;
+		}
+		return filter;
+	}
+
+	/**
+	 * @return The position of window [windowDepth][windowRow][windowColumn].
+	 *         For locally connected layers, this is also the index of the
+	 *         window's filter and bias.
+	 */
+	public int position(int windowDepth, int windowRow, int windowColumn) {
+		return (((windowDepth * windowRows) + windowRow) * windowColumns) + windowColumn;
+	}
+
+	public int positionDepth(int position) {
+		return position / (windowRows * windowColumns);
+	}
+
+	public int positionRow(int position) {
+		return (position / windowColumns) % windowRows;
+	}
+
+	public int positionColumn(int position) {
+		return position % windowColumns;
+	}
+
+	/**
+	 * @return [x][][] location in this layer of the top left cell of the
+	 *         window at "position".
+	 */
+	public int inputDepth(int position) {
+		return positionDepth(position);
+	}
+
+	/**
+	 * @return [][x][] location in this layer of the top left cell of the
+	 *         window at "position".
+	 */
+	public int inputRow(int position) {
+		return positionRow(position) * step;
+	}
+
+	/**
+	 * @return [][][x] location in this layer of the top left cell of the
+	 *         window at "position".
+	 */
+	public int inputColumn(int position) {
+		return positionColumn(position) * step;
+	}
+
+	/**
+	 * @return [x][][] location in the next layer of the cell calculated by
+	 *         applying "filter" at "position".
+	 */
+	public int outputDepth(int filter, int position) {
+		switch (type) {
+		case CONV:
+			return filter;
+		case FULLY:
+			return 0;
+		default:
+			return positionDepth(position);
+		}
+	}
+
+	/**
+	 * @return [][x][] location in the next layer of the cell calculated at
+	 *         "position".
+	 */
+	public int outputRow(int position) {
+		if (type == LayerType.FULLY) {
+			return 0;
+		}
+		return positionRow(position);
+	}
+
+	/**
+	 * @return [][][x] location in the next layer of the cell calculated by
+	 *         applying "filter" at "position".
+	 */
+	public int outputColumn(int filter, int position) {
+		if (type == LayerType.FULLY) {
+			return filter;
+		}
+		return positionColumn(position);
+	}
+
+	/**
+	 * @return The first window depth whose window contains cells at depth
+	 *         "depth" of this layer.
+	 */
+	public int firstWindowDepth(int depth) {
+		return firstWindow(depth, 1, Fdepth);
+	}
+
+	/**
+	 * @return One past the last window depth whose window contains cells at
+	 *         depth "depth" of this layer.
+	 */
+	public int endWindowDepth(int depth) {
+		return endWindow(depth, windowDepths, 1);
+	}
+
+	/**
+	 * @return The first window row whose window contains cells at row "row"
+	 *         of this layer.
+	 */
+	public int firstWindowRow(int row) {
+		return firstWindow(row, step, Frows);
+	}
+
+	/**
+	 * @return One past the last window row whose window contains cells at
+	 *         row "row" of this layer.
+	 */
+	public int endWindowRow(int row) {
+		return endWindow(row, windowRows, step);
+	}
+
+	/**
+	 * @return The first window column whose window contains cells at column
+	 *         "column" of this layer.
+	 */
+	public int firstWindowColumn(int column) {
+		return firstWindow(column, step, Fcolumns);
+	}
+
+	/**
+	 * @return One past the last window column whose window contains cells at
+	 *         column "column" of this layer.
+	 */
+	public int endWindowColumn(int column) {
+		return endWindow(column, windowColumns, step);
+	}
+
+	/**
+	 * This function finds the first window (in one dimension) that contains a
+	 * given position. Window "w" starts at (w * step) and covers "F"
+	 * positions.
+	 *
+	 * @param position
+	 *            the row, column, or depth of the cell
+	 * @param step
+	 *            the distance between windows
+	 * @param F
+	 *            the size of a window
+	 * @return The index of the first window that contains "position".
+	 */
+	public static int firstWindow(int position, int step, int F) {
+		// This is the first window with (w * step) + F > position
+		if (position < F) {
+			return 0;
+		}
+		return ((position - F) / step) + 1;
+	}
+
+	/**
+	 * This function finds the window after the last window (in one dimension)
+	 * that contains a given position.
+	 *
+	 * @param position
+	 *            the row, column, or depth of the cell
+	 * @param windows
+	 *            the number of windows in this dimension
+	 * @param step
+	 *            the distance between windows
+	 * @return One past the index of the last window that contains "position".
+	 *         If this is not greater than firstWindow(), no window contains
+	 *         "position".
+	 */
+	public static int endWindow(int position, int windows, int step) {
+		// The last window is the last one that starts at or before "position"
+		return Math.min((position / step) + 1, windows);
+	}
+
+	/**
+	 * @return The number of windows of size "F", "step" apart, that fit
+	 *         entirely inside "size" positions.
+	 */
+	public static int windowCount(int size, int F, int step) {
+		if (size < F) {
+			return 0;
+		}
+		return ((size - F) / step) + 1;
+	}
+}
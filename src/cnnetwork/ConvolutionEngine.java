@@ -0,0 +1,430 @@
+package cnnetwork;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class calculates the output of a convolutional layer with a single
+ * matrix multiplication instead of one call to Layer::compute() per output
+ * cell.
+ *
+ * The input is first "lowered" into a patch matrix (im2col): every column of
+ * the patch matrix holds the section of input that one output position sees,
+ * laid out in the same [depth][row][column] order that Layer::compute() walks
+ * a filter in. The filters are packed into a second matrix with one row per
+ * filter. Multiplying the two gives the net value of every output cell for
+ * every filter at once.
+ *
+ * The multiplication is blocked so the pieces of both matrices being worked on
+ * stay in cache. The blocks along the shared (patch) dimension are visited in
+ * order, and every output value is accumulated starting from 0.0 in exactly
+ * the order Layer::compute() uses, so the results are bit for bit identical to
+ * the cell by cell path with the default DotKernel.SCALAR kernel.
+ *
+ * The same patch matrix is used to calculate the weight gradients of a
+ * convolutional layer during learning (see correlate()).
+ *
+ * If the input holds a batch of samples (see Tensor), the output positions of
+ * every sample are placed side by side in the patch matrix, so the whole batch
+ * is still a single matrix multiplication. A fully connected layer is the same
+ * thing with a single output position per sample (see fullyConnected()).
+ *
+ * Each thread gets its own engine (see forCurrentThread()), since the patch,
+ * filter and result matrices are scratch space reused between calls. A
+ * matrix larger than "retainedScratch" is let go at the end of the call that
+ * needed it, so a long-lived thread that once worked on a large layer does
+ * not hold on to that layer's matrices for the rest of its life.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ConvolutionEngine {
+
+	// The number of filters (rows of the result) worked on at once
+	private static final int FILTER_BLOCK = 16;
+
+	// The number of output positions (columns of the result) worked on at once
+	private static final int POSITION_BLOCK = 256;
+
+	// The number of patch entries (the shared dimension) worked on at once
+	private static final int PATCH_BLOCK = 128;
+
+	private static final ThreadLocal<ConvolutionEngine> ENGINES = new ThreadLocal<ConvolutionEngine>() {
+		@Override
+		protected ConvolutionEngine initialValue() {
+			return new ConvolutionEngine();
+		}
+	};
+
+	public static int retainedScratch = 1 << 22;// The most values each scratch matrix keeps between calls (32 MB). 0 lets every matrix go after every call.
+
+	private double[] patches = new double[0];// The im2col patch matrix, [patch entry][output position]
+	private double[] packedFilters = new double[0];// The filter matrix, [filter][patch entry]
+	private double[] results = new double[0];// The net values, [filter][output position]
+	private double[] packedDeltas = new double[0];// The errors of the output cells, [filter][output position]
+
+	/**
+	 * @return The engine (and its scratch space) belonging to the calling
+	 *         thread.
+	 */
+	public static ConvolutionEngine forCurrentThread() {
+		return ENGINES.get();
+	}
+
+	/**
+	 * @return The number of values of scratch space this engine is holding on
+	 *         to between calls.
+	 */
+	public long scratchSize() {
+		return (long) patches.length + packedFilters.length + results.length + packedDeltas.length;
+	}
+
+	/**
+	 * This function computes the convolution of a layer, for every sample in
+	 * the batch. It is a drop in replacement for the value calculations of
+	 * Layer::convolution() and gives the same results (with the default
+	 * DotKernel.SCALAR kernel).
+	 *
+	 * @param input
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
+	 * @param filters
+	 *            the list of three dimensional filters to apply to the input
+	 *            layer
+	 * @param output
+	 *            the tensor to hold the calculated values of the convolution
+	 * @param step
+	 *            the "step" of the input layer- the number of columns and rows
+	 *            between the filters
+	 * @param biases
+	 *            the list of biases to be applied to the input layer, in the
+	 *            same order as the list of filters.
+	 * @param applyActivation
+	 *            A boolean indicating if the sigmoid activation function is to
+	 *            be applied to the resulting values. A "true" value here
+	 *            indicates that the activation function will be used.
+	 */
+	public void convolve(Tensor input, FilterBank filters, Tensor output, int step, BiasBank biases,
+			boolean applyActivation) {
+
+		int filterDepth = filters.get(0).weights.length;
+		int filterRows = filters.get(0).weights[0].length;
+		int filterColumns = filters.get(0).weights[0][0].length;
+
+		// The same bounds the cell by cell convolution uses
+		int outRows = ((input.rows - filterRows) / step) + 1;
+		int outColumns = ((input.columns - filterColumns) / step) + 1;
+		if ((outRows <= 0) || (outColumns <= 0)) {
+			return;
+		}
+
+		int patchSize = filterDepth * filterRows * filterColumns;
+		int samples = Math.min(input.batch, output.batch);
+		int positions = outRows * outColumns;// per sample
+		int columns = samples * positions;// of the patch and result matrices
+		int K = filters.size();
+
+		lowerInput(input, samples, filterDepth, filterRows, filterColumns, step, outRows, outColumns);
+		packFilters(filters, patchSize);
+		multiply(K, patchSize, columns);
+
+		// Add the biases, apply the activation function, and store the results
+		for (int f = 0; f < K; f++) {
+			double biasValue = biases.get(f).value;
+
+			for (int n = 0; n < samples; n++) {
+				int resultRow = (f * columns) + (n * positions);
+				for (int r = 0; r < outRows; r++) {
+					int outStart = output.index(n, f, r, 0);
+					for (int c = 0; c < outColumns; c++) {
+						double result = results[resultRow + (r * outColumns) + c] + biasValue;
+						if (applyActivation) {
+							result = Layer.activationFunction(result);
+						}
+						output.values[outStart + c] = result;
+					}
+				}
+			}
+		}
+		releaseScratch();
+	}
+
+	/**
+	 * This function computes the output of a fully connected layer for a
+	 * batch of samples. Each filter is applied once, at the top left corner of
+	 * each sample, so the patch matrix has one column per sample and the
+	 * calculation is a single (filters x weights) by (weights x samples)
+	 * matrix multiplication. It gives the same results as Layer::full() (with
+	 * the default DotKernel.SCALAR kernel).
+	 *
+	 * @param input
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
+	 * @param filters
+	 *            the list of three dimensional filters to apply to the input
+	 *            layer
+	 * @param output
+	 *            the tensor to hold the calculated values. The value
+	 *            calculated with filter "f" is stored in the "f"th cell of each
+	 *            sample.
+	 * @param samples
+	 *            the number of samples to calculate
+	 * @param biases
+	 *            the list of biases to be applied to the input layer, in the
+	 *            same order as the list of filters.
+	 * @param applyActivation
+	 *            A boolean indicating if the sigmoid activation function is to
+	 *            be applied to the resulting values.
+	 */
+	public void fullyConnected(Tensor input, FilterBank filters, Tensor output, int samples, BiasBank biases,
+			boolean applyActivation) {
+
+		int filterDepth = filters.get(0).weights.length;
+		int filterRows = filters.get(0).weights[0].length;
+		int filterColumns = filters.get(0).weights[0][0].length;
+		int patchSize = filterDepth * filterRows * filterColumns;
+		int K = filters.size();
+
+		lowerInput(input, samples, filterDepth, filterRows, filterColumns, 1, 1, 1);
+		packFilters(filters, patchSize);
+		multiply(K, patchSize, samples);
+
+		for (int f = 0; f < K; f++) {
+			double biasValue = biases.get(f).value;
+			for (int n = 0; n < samples; n++) {
+				double result = results[(f * samples) + n] + biasValue;
+				if (applyActivation) {
+					result = Layer.activationFunction(result);
+				}
+				output.values[(n * output.sampleStride) + f] = result;
+			}
+		}
+		releaseScratch();
+	}
+
+	/**
+	 * This function calculates the gradients of the weights and biases of a
+	 * convolutional layer for every sample in the batch, and adds them to the
+	 * gradients already in "weightGradients" and "biasGradients" (see
+	 * BackwardEngine). The gradient of weight "p" of filter "f" is the sum,
+	 * over every output position (of every sample), of the input cell
+	 * multiplied by weight "p" at that position times the error of the output
+	 * cell. That is row "f" of the error matrix multiplied by row "p" of the
+	 * same patch matrix used by convolve(), so the gradients of every filter
+	 * come from a single (blocked) matrix multiplication.
+	 *
+	 * @param input
+	 *            the tensor that contains the cells of the layer
+	 * @param filterDepth
+	 *            the depth of the layer's filters
+	 * @param filterRows
+	 *            the height of the layer's filters
+	 * @param filterColumns
+	 *            the width of the layer's filters
+	 * @param step
+	 *            the "step" of the layer- the number of columns and rows
+	 *            between the filters
+	 * @param output
+	 *            the tensor holding the cells the layer calculates
+	 * @param outputDeltas
+	 *            the errors (dE/dnet) of the cells of "output", in the same
+	 *            order as its values
+	 * @param K
+	 *            the number of filters in the layer
+	 * @param weightGradients
+	 *            the array to add the weight gradients to, filter by filter,
+	 *            with the weights of each filter in [depth][row][column] order
+	 * @param biasGradients
+	 *            the array to add the bias gradients to
+	 */
+	public void correlate(Tensor input, int filterDepth, int filterRows, int filterColumns, int step, Tensor output,
+			double[] outputDeltas, int K, double[] weightGradients, double[] biasGradients) {
+		correlate(input, filterDepth, filterRows, filterColumns, step, output, outputDeltas, K, weightGradients,
+				biasGradients, null);
+	}
+
+	/**
+	 * The same as correlate() above, except that once the patch matrix is
+	 * built, the rows of the result (one per filter) are split between the
+	 * threads of "pool" (see FilterFanOut). Each thread only reads the patch
+	 * matrix and writes the gradients of its own filters, and each gradient is
+	 * added up in the same order either way, so the results are the same.
+	 *
+	 * @param pool
+	 *            the pool to split the filters between, or null to work on
+	 *            every filter in the calling thread
+	 */
+	public void correlate(Tensor input, int filterDepth, int filterRows, int filterColumns, int step,
+			final Tensor output, final double[] outputDeltas, int K, final double[] weightGradients,
+			final double[] biasGradients, ForkJoinPool pool) {
+
+		final int patchSize = filterDepth * filterRows * filterColumns;
+
+		// The same bounds the convolution uses
+		final int outRows = ((input.rows - filterRows) / step) + 1;
+		final int outColumns = ((input.columns - filterColumns) / step) + 1;
+		if ((outRows <= 0) || (outColumns <= 0)) {
+			return;
+		}
+		final int samples = Math.min(input.batch, output.batch);
+		final int perSample = outRows * outColumns;
+		final int positions = samples * perSample;
+
+		lowerInput(input, samples, filterDepth, filterRows, filterColumns, step, outRows, outColumns);
+		packedDeltas = ensureCapacity(packedDeltas, K * positions);
+
+		FilterFanOut.run(pool, K, new FilterFanOut.Kernel() {
+			@Override
+			public void filters(int start, int end) {
+				// Gather the errors into one row per filter, and add each row up for the bias gradients
+				for (int f = start; f < end; f++) {
+					for (int n = 0; n < samples; n++) {
+						for (int r = 0; r < outRows; r++) {
+							System.arraycopy(outputDeltas, output.index(n, f, r, 0), packedDeltas,
+									(f * positions) + (n * perSample) + (r * outColumns), outColumns);
+						}
+					}
+					double sum = 0.0;
+					for (int n = f * positions; n < ((f + 1) * positions); n++) {
+						sum += packedDeltas[n];
+					}
+					biasGradients[f] += sum;
+				}
+
+				// Multiply the error matrix (K x positions) by the transposed patch
+				// matrix (positions x patchSize). Both rows being multiplied are
+				// contiguous, so each entry is a dot product (see DotKernel).
+				for (int n0 = 0; n0 < positions; n0 += POSITION_BLOCK) {
+					int length = Math.min(POSITION_BLOCK, positions - n0);
+					for (int p0 = 0; p0 < patchSize; p0 += PATCH_BLOCK) {
+						int p1 = Math.min(p0 + PATCH_BLOCK, patchSize);
+						for (int f = start; f < end; f++) {
+							int deltaStart = (f * positions) + n0;
+							int gradientRow = f * patchSize;
+							for (int p = p0; p < p1; p++) {
+								weightGradients[gradientRow + p] = DotKernel.selected.accumulate(
+										weightGradients[gradientRow + p], packedDeltas, deltaStart, patches,
+										(p * positions) + n0, length);
+							}
+						}
+					}
+				}
+			}
+		});
+		releaseScratch();
+	}
+
+	/**
+	 * This function builds the im2col patch matrix. Row "p" of the matrix
+	 * holds, for every output position of every sample, the input cell that
+	 * is multiplied by entry "p" of a filter (entries are numbered in
+	 * [depth][row][column] order). The positions of sample "n" are columns
+	 * (n * outRows * outColumns) onward.
+	 */
+	private void lowerInput(Tensor input, int samples, int filterDepth, int filterRows, int filterColumns, int step,
+			int outRows, int outColumns) {
+		int perSample = outRows * outColumns;
+		int positions = samples * perSample;
+		patches = ensureCapacity(patches, filterDepth * filterRows * filterColumns * positions);
+
+		double[] values = input.values;
+		int p = 0;
+		for (int i = 0; i < filterDepth; i++) {
+			for (int j = 0; j < filterRows; j++) {
+				for (int k = 0; k < filterColumns; k++) {
+					for (int n = 0; n < samples; n++) {
+						int patchRow = (p * positions) + (n * perSample);
+						for (int r = 0; r < outRows; r++) {
+							int inStart = input.index(n, i, (r * step) + j, k);
+							int patchStart = patchRow + (r * outColumns);
+							if (step == 1) {
+								System.arraycopy(values, inStart, patches, patchStart, outColumns);
+							} else {
+								for (int c = 0; c < outColumns; c++) {
+									patches[patchStart + c] = values[inStart + (c * step)];
+								}
+							}
+						}
+					}
+					p++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function copies the weights of every filter into a single row of
+	 * the filter matrix.
+	 */
+	private void packFilters(FilterBank filters, int patchSize) {
+		packedFilters = ensureCapacity(packedFilters, filters.size() * patchSize);
+
+		int p = 0;
+		for (Filter filter : filters) {
+			for (int i = 0; i < filter.weights.length; i++) {
+				for (int j = 0; j < filter.weights[0].length; j++) {
+					System.arraycopy(filter.weights[i][j], 0, packedFilters, p, filter.weights[i][j].length);
+					p += filter.weights[i][j].length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function multiplies the filter matrix (K x patchSize) by the patch
+	 * matrix (patchSize x positions) into the result matrix (K x positions),
+	 * one cache sized block at a time.
+	 */
+	private void multiply(int K, int patchSize, int positions) {
+		results = ensureCapacity(results, K * positions);
+		Arrays.fill(results, 0, K * positions, 0.0);
+
+		// The patch blocks must be the outermost loop, walked in order, so that
+		// each result is summed in the same order as Layer::compute().
+		for (int p0 = 0; p0 < patchSize; p0 += PATCH_BLOCK) {
+			int p1 = Math.min(p0 + PATCH_BLOCK, patchSize);
+			for (int f0 = 0; f0 < K; f0 += FILTER_BLOCK) {
+				int f1 = Math.min(f0 + FILTER_BLOCK, K);
+				for (int n0 = 0; n0 < positions; n0 += POSITION_BLOCK) {
+					int n1 = Math.min(n0 + POSITION_BLOCK, positions);
+					for (int f = f0; f < f1; f++) {
+						int resultRow = f * positions;
+						int filterRow = f * patchSize;
+						for (int p = p0; p < p1; p++) {
+							double weight = packedFilters[filterRow + p];
+							int patchRow = p * positions;
+							for (int n = n0; n < n1; n++) {
+								results[resultRow + n] += weight * patches[patchRow + n];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function lets go of every scratch matrix larger than
+	 * "retainedScratch".
+	 */
+	private void releaseScratch() {
+		patches = retainable(patches);
+		packedFilters = retainable(packedFilters);
+		results = retainable(results);
+		packedDeltas = retainable(packedDeltas);
+	}
+
+	private static double[] retainable(double[] array) {
+		if (array.length > retainedScratch) {
+			return new double[0];
+		}
+		return array;
+	}
+
+	private static double[] ensureCapacity(double[] array, int size) {
+		if (array.length < size) {
+			return new double[size];
+		}
+		return array;
+	}
+}
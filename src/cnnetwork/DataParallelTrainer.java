@@ -0,0 +1,230 @@
+package cnnetwork;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class trains a network on mini-batches, with the inputs of each batch
+ * split between several threads (synchronous data parallel training).
+ *
+ * The batch is cut into equal "shards" of consecutive inputs, one per worker.
+ * Every worker has its own Workspace (the cells of every layer for its
+ * inputs) and its own BackwardEngine (the errors and gradients for its
+ * inputs), so the only thing the workers share is the network's filters and
+ * biases, which are only read while the batch is worked on. Once every worker
+ * is done, their gradients are added up in worker order (see
+ * BackwardEngine::add()), and only then are the weights and biases moved.
+ *
+ * Because each input always goes to the same worker and the gradients are
+ * always added up in the same order, training gives exactly the same weights
+ * every time for the same number of threads, no matter how the threads are
+ * scheduled. (A different number of threads adds the same gradients up in a
+ * different order, so the weights can differ in the last few bits.)
+ *
+ * With a single thread the batch is worked on by the calling thread, and no
+ * worker threads are started.
+ *
+ * To use it, copy each input of a batch in with setInput(), then call train().
+ * Call close() once training is done to stop the worker threads.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class DataParallelTrainer {
+
+	public final int batch;// The number of inputs in a full batch
+	public final int threads;// The number of workers the batch is split between
+	public final int shard;// The number of inputs given to each worker
+	public final BackwardEngine engine;// The gradients of the last batch, added up over every worker
+	public final double[] errors;// [input] The cross entropy error of each input of the last batch (see FSONNetwork::crossEntropyError())
+	private final LinkedList<Layer> layers;// The layers that make up the network
+	private final Workspace[] workspaces;// [worker] The cells of each worker's inputs
+	private final BackwardEngine[] engines;// [worker] The errors and gradients of each worker's inputs
+	private final Cell[][] outputs;// [worker] Scratch cells each worker applies the output activation function in
+	private final double[][][] expected;// [worker][input] The expected output of each worker's inputs
+	private final ExecutorService pool;// The worker threads, or null with a single thread
+
+	/**
+	 * Creates a trainer for a network.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param outputs
+	 *            The number of cells in the output of the network ("out").
+	 * @param batch
+	 *            The number of inputs in a full batch.
+	 * @param threads
+	 *            The number of threads to split each batch between. No more
+	 *            threads than there are inputs in a batch are used.
+	 */
+	public DataParallelTrainer(LinkedList<Layer> layers, int outputs, int batch, int threads) {
+		this.layers = layers;
+		this.batch = batch;
+		this.shard = (batch + threads - 1) / threads;
+		this.threads = (batch + shard - 1) / shard;
+		this.engine = new BackwardEngine(layers, outputs, 1);
+		this.workspaces = new Workspace[this.threads];
+		this.engines = new BackwardEngine[this.threads];
+		this.outputs = new Cell[this.threads][outputs];
+		this.expected = new double[this.threads][shard][];
+		this.errors = new double[batch];
+
+		for (int w = 0; w < this.threads; w++) {
+			workspaces[w] = new Workspace(layers, outputs, shard);
+			engines[w] = new BackwardEngine(layers, outputs, shard);
+			for (int k = 0; k < outputs; k++) {
+				this.outputs[w][k] = new Cell();
+			}
+		}
+
+		if (this.threads > 1) {
+			pool = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					// Daemon threads, so an unclosed trainer does not keep the program running
+					Thread thread = new Thread(runnable, "fson-trainer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			pool = null;
+		}
+	}
+
+	/**
+	 * This function copies a single input of the next batch in, along with
+	 * its expected output.
+	 *
+	 * @param sample
+	 *            Which input of the batch this is (from 0 up to "batch").
+	 * @param input
+	 *            The input, the same shape as the first layer.
+	 * @param expectedOutput
+	 *            The expected output of the network for this input.
+	 */
+	public void setInput(int sample, Tensor input, double[] expectedOutput) {
+		int worker = sample / shard;
+		workspaces[worker].setInput(sample % shard, input);
+		expected[worker][sample % shard] = expectedOutput;
+	}
+
+	/**
+	 * This function feeds the first "count" inputs of the batch forward and
+	 * backward, adds up their gradients in "engine", and moves every weight
+	 * and bias against the average of the gradients.
+	 *
+	 * @param count
+	 *            The number of inputs that have been set (see setInput()).
+	 * @param independent
+	 *            If true, the sigmoid activation function is applied to the
+	 *            output of the network, otherwise the softmax activation
+	 *            function is (see FSONNetwork::learn()).
+	 * @param learningRate
+	 *            How "far" each weight and bias moves.
+	 * @throws Exception
+	 *             Thrown if a worker fails to calculate its gradients (see
+	 *             BackwardEngine::accumulate()).
+	 */
+	public void train(int count, boolean independent, double learningRate) throws Exception {
+		engine.clear();
+
+		// Only the workers that were given inputs have anything to do
+		int used = (count + shard - 1) / shard;
+
+		if (pool == null) {
+			work(0, count, independent);
+		} else {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int w = 0; w < used; w++) {
+				final int worker = w;
+				final int inputs = Math.min(shard, count - (w * shard));
+				final boolean sigmoid = independent;
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						work(worker, inputs, sigmoid);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		}
+
+		// Add the workers' gradients up, always in the same order
+		for (int w = 0; w < used; w++) {
+			engine.add(engines[w]);
+		}
+		engine.update(layers, learningRate);
+	}
+
+	/**
+	 * This function splits the filters of each layer between the threads of a
+	 * work-stealing pool while every worker calculates its gradients, and
+	 * while the weights are moved (see BackwardEngine::pool).
+	 *
+	 * @param filterPool
+	 *            The pool to use, or null to work on the filters one after
+	 *            another.
+	 */
+	public void setFilterPool(ForkJoinPool filterPool) {
+		engine.pool = filterPool;
+		for (BackwardEngine workerEngine : engines) {
+			workerEngine.pool = filterPool;
+		}
+	}
+
+	/**
+	 * This function stops the worker threads. The trainer cannot be used
+	 * afterwards.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * This function feeds a single worker's inputs forward and backward.
+	 *
+	 * @param worker
+	 *            Which worker to run.
+	 * @param inputs
+	 *            The number of inputs the worker was given.
+	 * @param independent
+	 *            See train().
+	 * @throws Exception
+	 *             See train().
+	 */
+	private void work(int worker, int inputs, boolean independent) throws Exception {
+		Workspace workspace = workspaces[worker];
+
+		FSONNetwork.feedForward(layers, workspace);
+
+		workspace.activate(inputs, outputs[worker], independent);
+		for (int n = 0; n < inputs; n++) {
+			workspace.getOutput(n, outputs[worker]);
+			errors[(worker * shard) + n] = FSONNetwork.crossEntropyError(outputs[worker], expected[worker][n]);
+		}
+
+		engines[worker].clear();
+		engines[worker].accumulate(layers, workspace, expected[worker], inputs);
+	}
+}
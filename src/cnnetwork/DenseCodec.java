@@ -0,0 +1,30 @@
+package cnnetwork;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This codec packs every value as a full double (8 bytes), so nothing is
+ * lost. This is what GradientCompression.NONE uses.
+ *
+ * Layout: the number of values (int), then each value (double).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class DenseCodec implements GradientCodec {
+
+	@Override
+	public byte[] encode(double[] values) {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + (8 * values.length));
+		buffer.putInt(values.length);
+		buffer.asDoubleBuffer().put(values);
+		return buffer.array();
+	}
+
+	@Override
+	public void decode(byte[] encoded, double[] values) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		GradientCompression.checkLength(buffer.getInt(), values);
+		buffer.asDoubleBuffer().get(values);
+	}
+}
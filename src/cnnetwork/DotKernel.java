@@ -0,0 +1,128 @@
+package cnnetwork;
+
+/**
+ * This class is the family of kernels used to multiply a contiguous row of
+ * input values by a contiguous row of weights and add the products to a
+ * running sum. This is the innermost loop of every convolutional, locally
+ * connected, and fully connected layer (see Layer::compute()).
+ *
+ * Three kernels are available:
+ *
+ * SCALAR adds the products one at a time, in order. This gives exactly the
+ * same results as the original cell by cell code, and as every other path
+ * that sums in that order (see ConvolutionEngine and MappedModel), and is
+ * the default.
+ *
+ * LANES4 and LANES8 split the row into 4 or 8 interleaved "lanes", each with
+ * its own partial sum, and only combine the lanes at the end of the row. The
+ * lanes do not depend on one another, so the processor can work on them at
+ * the same time (and the JIT compiler can pack them into SIMD instructions).
+ * Because the products are added in a different order, results can differ
+ * from SCALAR in the last bits. Only Layer::compute() and the weight gradients
+ * of ConvolutionEngine use the selected kernel, so with LANES4 or LANES8 a
+ * sample fed forward on its own can differ in the last bits from the same
+ * sample fed forward in a batch. They have to be asked for.
+ *
+ * The kernel in use is chosen at runtime: by the system property
+ * "fson.dotKernel" (one of "scalar", "lanes4", "lanes8", or "auto") when the
+ * program starts, or by assigning "DotKernel.selected" directly.
+ *
+ * @author Paula Rudy
+ *
+ */
+public abstract class DotKernel {
+
+	public static final DotKernel SCALAR = new Scalar();
+	public static final DotKernel LANES4 = new Lanes4();
+	public static final DotKernel LANES8 = new Lanes8();
+
+	public static DotKernel selected = fromString(System.getProperty("fson.dotKernel", "auto"));// The kernel used by Layer::compute()
+
+	/**
+	 * This function multiplies "length" entries of "input" (starting at
+	 * "inputStart") by the same number of entries of "weights" (starting at
+	 * "weightStart"), and adds the products to "sum".
+	 *
+	 * @return "sum" plus the sum of the products.
+	 */
+	public abstract double accumulate(double sum, double[] input, int inputStart, double[] weights, int weightStart,
+			int length);
+
+	/**
+	 * This function finds the kernel with the given name.
+	 *
+	 * @param name
+	 *            One of "scalar", "lanes4", "lanes8" or "auto". "auto" picks
+	 *            SCALAR, so results match the original code bit for bit
+	 *            unless a faster kernel is asked for by name.
+	 * @return The kernel with the given name.
+	 */
+	public static DotKernel fromString(String name) {
+		switch (name) {
+		case "scalar":
+		case "auto":
+			return SCALAR;
+		case "lanes4":
+			return LANES4;
+		case "lanes8":
+			return LANES8;
+		default:
+			throw new IllegalArgumentException("Invalid DotKernel: " + name);
+		}
+	}
+
+	private static class Scalar extends DotKernel {
+		@Override
+		public double accumulate(double sum, double[] input, int inputStart, double[] weights, int weightStart,
+				int length) {
+			for (int k = 0; k < length; k++) {
+				sum += input[inputStart + k] * weights[weightStart + k];
+			}
+			return sum;
+		}
+	}
+
+	private static class Lanes4 extends DotKernel {
+		@Override
+		public double accumulate(double sum, double[] input, int inputStart, double[] weights, int weightStart,
+				int length) {
+			double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+			int k = 0;
+			for (; k <= (length - 4); k += 4) {
+				s0 += input[inputStart + k] * weights[weightStart + k];
+				s1 += input[inputStart + k + 1] * weights[weightStart + k + 1];
+				s2 += input[inputStart + k + 2] * weights[weightStart + k + 2];
+				s3 += input[inputStart + k + 3] * weights[weightStart + k + 3];
+			}
+			// Pick up whatever is left over at the end of the row
+			for (; k < length; k++) {
+				s0 += input[inputStart + k] * weights[weightStart + k];
+			}
+			return sum + ((s0 + s1) + (s2 + s3));
+		}
+	}
+
+	private static class Lanes8 extends DotKernel {
+		@Override
+		public double accumulate(double sum, double[] input, int inputStart, double[] weights, int weightStart,
+				int length) {
+			double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0, s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+			int k = 0;
+			for (; k <= (length - 8); k += 8) {
+				s0 += input[inputStart + k] * weights[weightStart + k];
+				s1 += input[inputStart + k + 1] * weights[weightStart + k + 1];
+				s2 += input[inputStart + k + 2] * weights[weightStart + k + 2];
+				s3 += input[inputStart + k + 3] * weights[weightStart + k + 3];
+				s4 += input[inputStart + k + 4] * weights[weightStart + k + 4];
+				s5 += input[inputStart + k + 5] * weights[weightStart + k + 5];
+				s6 += input[inputStart + k + 6] * weights[weightStart + k + 6];
+				s7 += input[inputStart + k + 7] * weights[weightStart + k + 7];
+			}
+			// Pick up whatever is left over at the end of the row
+			for (; k < length; k++) {
+				s0 += input[inputStart + k] * weights[weightStart + k];
+			}
+			return sum + (((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7)));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package cnnetwork;
+
+/**
+ * This class keeps what a lossy GradientCodec drops, and adds it back in the
+ * next time, so no part of any gradient is lost for good ("error feedback").
+ *
+ * Each call to encode() packs the new gradients plus everything left over
+ * from before (the "residual"), then unpacks the result the same way the
+ * receiver will, and keeps the difference as the new residual. Over any
+ * number of calls, everything that was sent plus the residual is exactly
+ * everything that was given to encode(), so small gradients that a codec
+ * drops (or rounds away) build up until they are sent.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ErrorFeedback {
+
+	public final GradientCodec codec;// The codec the gradients are packed with
+	public final double[] residual;// Everything given to encode() that has not been sent yet
+	private final double[] sent;// Scratch space for what the receiver will unpack
+
+	/**
+	 * Creates an empty residual for gradients of a given length.
+	 *
+	 * @param codec
+	 *            The codec to pack the gradients with.
+	 * @param length
+	 *            The number of gradients in each array.
+	 */
+	public ErrorFeedback(GradientCodec codec, int length) {
+		this.codec = codec;
+		this.residual = new double[length];
+		this.sent = new double[length];
+	}
+
+	/**
+	 * This function packs an array of gradients, along with whatever was left
+	 * over from earlier calls.
+	 *
+	 * @param gradients
+	 *            The gradients to pack. They are not changed.
+	 * @return The packed gradients, to be unpacked with codec.decode().
+	 */
+	public byte[] encode(double[] gradients) {
+		for (int i = 0; i < residual.length; i++) {
+			residual[i] += gradients[i];
+		}
+		byte[] encoded = codec.encode(residual);
+		codec.decode(encoded, sent);
+		for (int i = 0; i < residual.length; i++) {
+			residual[i] -= sent[i];
+		}
+		return encoded;
+	}
+
+	/**
+	 * This function takes back the last call to encode(), for when the
+	 * packed gradients were never used (for example, a push refused by a
+	 * parameter server): the residual goes back to what it was before.
+	 *
+	 * @param encoded
+	 *            What the last call to encode() returned.
+	 * @param gradients
+	 *            The gradients given to the last call to encode().
+	 */
+	public void undo(byte[] encoded, double[] gradients) {
+		codec.decode(encoded, sent);
+		for (int i = 0; i < residual.length; i++) {
+			residual[i] += sent[i] - gradients[i];
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package cnnetwork;
+
+/**
+ * This class holds what a ParallelEvaluator found out about a network from a
+ * single pass over a set of inputs: the same total cross entropy error as
+ * FSONNetwork::crossEntropyTotalError(), a confusion matrix, and how often the
+ * expected class was among the network's top 1 and top "k" outputs.
+ *
+ * The expected class of an input is the cell of its expected output (its
+ * entry in the dictionary) with the largest value, and the predicted class is
+ * the cell of the network's output with the largest value (the first one, if
+ * there is a tie).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class EvaluationResult {
+
+	public final double error;// The total cross entropy error (see FSONNetwork::crossEntropyTotalError())
+	public final int count;// The number of inputs evaluated
+	public final int k;// How many of the largest outputs count towards "topK"
+	public final long[][] confusion;// [expected class][predicted class] The number of inputs
+	public final long top1;// The number of inputs whose predicted class was their expected class
+	public final long topK;// The number of inputs whose expected class was among the "k" largest outputs
+
+	/**
+	 * Creates a result. See ParallelEvaluator::evaluate().
+	 */
+	public EvaluationResult(double error, int count, int k, long[][] confusion, long top1, long topK) {
+		this.error = error;
+		this.count = count;
+		this.k = k;
+		this.confusion = confusion;
+		this.top1 = top1;
+		this.topK = topK;
+	}
+
+	/**
+	 * @return The fraction of inputs whose predicted class was their expected
+	 *         class.
+	 */
+	public double accuracy() {
+		return (count == 0) ? 0.0 : ((double) top1 / count);
+	}
+
+	/**
+	 * @return The fraction of inputs whose expected class was among the "k"
+	 *         largest outputs.
+	 */
+	public double topKAccuracy() {
+		return (count == 0) ? 0.0 : ((double) topK / count);
+	}
+
+	/**
+	 * @return The class of an output (or expected output): the index of its
+	 *         largest value, or the first such index if there is a tie.
+	 */
+	public static int classOf(double[] values) {
+		int best = 0;
+		for (int c = 1; c < values.length; c++) {
+			if (values[c] > values[best]) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("error=").append(error).append(" inputs=").append(count).append(" top1=").append(accuracy())
+				.append(" top").append(k).append('=').append(topKAccuracy()).append('\n');
+		for (long[] row : confusion) {
+			for (int c = 0; c < row.length; c++) {
+				if (c > 0) {
+					builder.append(',');
+				}
+				builder.append(row[c]);
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -1,11 +1,14 @@
 package cnnetwork;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
@@ -27,6 +30,8 @@ public class FSONNetwork {
 	public LinkedList<Layer> layers; // The layers that make up this network
 	public Cell[] out; // This is the last "layer" of this network, the "output".
 	public String saveFile; // This is the filename of the text file used to store this network's information for recovery purposes if learning is interupted.
+
+	public static volatile InputCache inputCache = null;// If set, input files are only read and decoded the first time they are opened, and copied out of this cache afterwards (see InputCache)
 	
 	public FSONNetwork(LinkedList<Layer> layers, Cell[] out, String saveFile) {
 		this.layers = layers;
@@ -122,10 +127,10 @@ public class FSONNetwork {
 	/**
 	 * This function computes the partial derivative of the total error with
 	 * respect to a given *weight* within a network. This is a recursive
-	 * function that operates with the help of the other function with this name
-	 * and the call signature:
+	 * function that operates with the help of the function with the call
+	 * signature:
 	 * 
-	 * computePartialDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex, CellCoord outcell, double[] expected)
+	 * computeCellDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex, int cellIndex, double[] expected)
 	 * 
 	 * and
 	 * 
@@ -179,10 +184,12 @@ public class FSONNetwork {
 	 */
 	public static double computePartialDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex, int filterIndex,
 			int depth, int row, int column, double[] expected) throws Exception {
-		// If there is already a value stored for this partial derivative...
-		if (!Double.isNaN(layers.get(layerIndex).filters.get(filterIndex).gradientValues[depth][row][column])) {
+		// If there is already a value stored for this partial derivative
+		// (during the current generation of the layer, see Layer::resetGradients())...
+		Filter storedFilter = layers.get(layerIndex).filters.get(filterIndex);
+		if (storedFilter.gradientGenerations[depth][row][column] == layers.get(layerIndex).generation) {
 			// ...then just use that
-			return layers.get(layerIndex).filters.get(filterIndex).gradientValues[depth][row][column];
+			return storedFilter.gradientValues[depth][row][column];
 		} else {
 			// This will hold the sum of all the calculated partial derivatives
 			// of all the connections that use this filter
@@ -191,41 +198,41 @@ public class FSONNetwork {
 			// where i = the net value of each connection's outcell
 			double sum = 0;
 
-			// For each connection for this filter (and thus uses this weight in it's calculations)...
-			for (int i = 0; i < layers.get(layerIndex).filters.get(filterIndex).connections.size(); i++) {
-				// Calculate dnet/dw:
-
-				// First, grab the FilterConnection associated with this filter that we are dealing with right now.
-				FilterConnection thisConnection = layers.get(layerIndex).filters.get(filterIndex).connections.get(i);
+			Layer currentLayer = layers.get(layerIndex);
+			Connectivity connectivity = currentLayer.connectivity;
+
+			// This is to compensate for odd shaped filters and/or layers;
+			// if the filter and/or layer lacks a dimension, they will be given as -1,
+			// so we will count those as 0 to avoid altering where we are going to look for the cell.
+			int rowTrue;
+			if (row != -1) {
+				rowTrue = row;
+			} else {
+				rowTrue = 0;
+			}
 
-				// Find the value of the cell associated with this weight:
-				// This is the CellCoordinate of the first cell in this layer used in this calculation
-				CellCoord startCell = thisConnection.inStart;
+			int columnTrue;
+			if (column != -1) {
+				columnTrue = column;
+			} else {
+				columnTrue = 0;
+			}
 
-				// This is to compensate for odd shaped filters and/or layers;
-				// if the filter and/or layer lacks a dimension, they will be given as -1,
-				// so we will count those as 0 to avoid altering where we are going to look for the cell.
-				int rowTrue;
-				if (row != -1) {
-					rowTrue = row;
-				} else {
-					rowTrue = 0;
-				}
+			// For each window this filter is applied at (and thus uses this weight in it's calculations)...
+			for (int w = 0; w < connectivity.windows(filterIndex); w++) {
+				// Calculate dnet/dw:
 
-				int columnTrue;
-				if (column != -1) {
-					columnTrue = column;
-				} else {
-					columnTrue = 0;
-				}
+				// First, find the window we are dealing with right now (see Connectivity).
+				int position = connectivity.position(filterIndex, w);
 
 				// Find the net of the cell associated with this weight
-				// (the cell's value multiplied by this weight when calculating the net value for this connection).
+				// (the cell's value multiplied by this weight when calculating the net value for this window).
 				// Since this is the only thing multiplied by the weight when calculating, 
 				// that means that this value is *also* the derivative of the net of this output cell with respect
 				// to this weight(IE dnet/dw).
-				Double dnetdw = layers.get(layerIndex).cells[startCell.depth + depth][startCell.row
-						+ rowTrue][startCell.column + columnTrue].value;
+				// The top left cell of the window is used as the starting point.
+				double dnetdw = currentLayer.cells.getValue(connectivity.inputDepth(position) + depth,
+						connectivity.inputRow(position) + rowTrue, connectivity.inputColumn(position) + columnTrue);
 
 				// If this is the last layer (IE the layer before "out"):
 				if ((layerIndex + 1) == layers.size()) {
@@ -235,20 +242,22 @@ public class FSONNetwork {
 					// Since the only time we are looking for a parial derivative with respect to
 					// a *weight* is when we are looking to increment that paticular weight,
 					// the layer in which that weight resides *cannot* be a maxpool layer.
-					if (layers.get(layerIndex).type == LayerType.MAXPOOL){
+					if (currentLayer.type == LayerType.MAXPOOL){
 						throw new Exception("Trying to find a partial derivative with respect to a weight in a maxpool layer. This should never happen!");
 					}	
 
-					if (!Double.isNaN(layers.get(layerIndex
-							+ 1).cells[thisConnection.out.depth][thisConnection.out.row][thisConnection.out.column].derivative)) {
-						// If there is a derivative value already stored in the "out" cell for this connection,
+					// The cell in the next layer calculated by this window
+					Tensor nextCells = layers.get(layerIndex + 1).cells;
+					int outCell = nextCells.index(connectivity.outputDepth(filterIndex, position),
+							connectivity.outputRow(position), connectivity.outputColumn(filterIndex, position));
+
+					if (nextCells.hasDerivative(outCell)) {
+						// If there is a derivative value already stored in the "out" cell for this window,
 						// use that.
-						sum += (dnetdw * layers.get(layerIndex
-								+ 1).cells[thisConnection.out.depth][thisConnection.out.row][thisConnection.out.column].derivative);
+						sum += (dnetdw * nextCells.derivatives[outCell]);
 					} else {
 						// Continue to recursively calculate the derivative
-						sum += (dnetdw * computePartialDerivative(layers, out, (layerIndex + 1),
-								thisConnection.out, expected));
+						sum += (dnetdw * computeCellDerivative(layers, out, (layerIndex + 1), outCell, expected));
 					}
 
 				}
@@ -256,7 +265,8 @@ public class FSONNetwork {
 			}
 
 			//Store the newly calculated partial derivative with respect to this weight.
-			layers.get(layerIndex).filters.get(filterIndex).gradientValues[depth][row][column] = sum;
+			storedFilter.gradientValues[depth][row][column] = sum;
+			storedFilter.gradientGenerations[depth][row][column] = currentLayer.generation;
 			return sum;
 		}
 
@@ -265,10 +275,9 @@ public class FSONNetwork {
 	/**
 	 * This function computes the partial derivative of the total error with
 	 * respect to a given *bias* within a network. This is a recursive function
-	 * that operates with the help of the other function with this name and the
-	 * call signature:
+	 * that operates with the help of the function with the call signature:
 	 * 
-	 * computePartialDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex, CellCoord outcell, double[] expected)
+	 * computeCellDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex, int cellIndex, double[] expected)
 	 * 
 	 * and
 	 * 
@@ -306,10 +315,12 @@ public class FSONNetwork {
 	 */
 	public static double computePartialDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex, int biasIndex,
 			double[] expected) throws Exception {
-		// If there is already a value stored for this partial derivative...
-		if (!Double.isNaN(layers.get(layerIndex).biases.get(biasIndex).derivative)) {
+		// If there is already a value stored for this partial derivative
+		// (during the current generation of the layer, see Layer::resetGradients())...
+		Cell storedBias = layers.get(layerIndex).biases.get(biasIndex);
+		if (storedBias.generation == layers.get(layerIndex).generation) {
 			// ...then just use that
-			return layers.get(layerIndex).biases.get(biasIndex).derivative;
+			return storedBias.derivative;
 		} else {
 
 			// This will hold the sum of all the calculated partial derivatives
@@ -319,63 +330,47 @@ public class FSONNetwork {
 			// where i = the net value of each connection's outcell
 			double sum = 0;
 
-			// For each filter in this layer
-			for (int i = 0; i < layers.get(layerIndex).filters.size(); i++) {
-				Filter currentFilter = layers.get(layerIndex).filters.get(i);
-
-				// For each connection for this filter
-				for (int j = 0; j < currentFilter.connections.size(); j++) {
-					FilterConnection currentConnection = currentFilter.connections.get(j);
-
-					// If this connection uses the bias we are looking at...
-					if (currentConnection.biasIndex == biasIndex) {
-
-						// If this is the last layer (IE the layer before "out"):
-						if ((layerIndex + 1) == layers.size()) {
+			Layer currentLayer = layers.get(layerIndex);
 
-							// Note that since 1 is the only thing multiplied by the bias when calculating,
-							// that means that 1 is the derivative of the net of this output cell 
-							// with respect to this bias(IE dnet/dbias).
-							// So we can ignore dnet/dbias in our calculations.
-							sum += computeSoftmaxError(out, i, expected);
-
-						} else {
-							
-							// Since biases are not used in maxpool layers, the layer 
-							// in which the bias resides cannot be a maxpool layer.
-							if (layers.get(layerIndex).type == LayerType.MAXPOOL){
-								throw new Exception("Trying to find a partial derivative with respect to a bias in a maxpool layer. This should never happen!");
-							}
-							
-							// If this is NOT the last layer,
-							// but there is a derivative value already stored in the "out" cell for this connection...
-							if (!Double.isNaN(layers.get(layerIndex+ 1).cells[currentConnection.out.depth][currentConnection.out.row][currentConnection.out.column].derivative)) {
-
-								// ... use that stored derivative value.
-
-								// Since 1 is the only thing multiplied by the bias when calculating,
-								// that means that 1 is the derivative of the net of this output cell 
-								// with respect to this bias(IE dnet/dbias).
-								// So we can ignore dnet/dbias in our calculations.
-								sum += layers.get(layerIndex + 1).cells[currentConnection.out.depth][currentConnection.out.row][currentConnection.out.column].derivative;
-							} else {
-
-								// Continue to recursively calculate the derivative
-								
-								// Note that since 1 is the only thing multiplied by the bias when calculating,
-								// that means that 1 is the derivative of the net of this output cell 
-								// with respect to this bias(IE dnet/dbias).
-								// So we can ignore dnet/dbias in our calculations.
-								sum += computePartialDerivative(layers, out, (layerIndex + 1), currentConnection.out, expected);
-							}
+			// Since biases are not used in maxpool layers, the layer 
+			// in which the bias resides cannot be a maxpool layer.
+			if (currentLayer.type == LayerType.MAXPOOL){
+				throw new Exception("Trying to find a partial derivative with respect to a bias in a maxpool layer. This should never happen!");
+			}
 
-						}
+			// Note that since 1 is the only thing multiplied by the bias when calculating,
+			// that means that 1 is the derivative of the net of each output cell 
+			// with respect to this bias(IE dnet/dbias).
+			// So we can ignore dnet/dbias in our calculations.
+
+			// If this is the last layer (IE the layer before "out"):
+			if ((layerIndex + 1) == layers.size()) {
+				// Look up the cells of "out" this bias is added into (see BiasIndex)
+				BiasIndex biasCells = currentLayer.biasIndex(null);
+				for (int e = biasCells.biasStart[biasIndex]; e < biasCells.biasStart[biasIndex + 1]; e++) {
+					sum += computeSoftmaxError(out, biasCells.outputCells[e], expected);
+				}
+			} else {
+				// Look up the cells of the next layer this bias is added into (see BiasIndex)
+				Tensor nextCells = layers.get(layerIndex + 1).cells;
+				BiasIndex biasCells = currentLayer.biasIndex(nextCells);
+				for (int e = biasCells.biasStart[biasIndex]; e < biasCells.biasStart[biasIndex + 1]; e++) {
+					int outCell = biasCells.outputCells[e];
+
+					// If there is a derivative value already stored in the "out" cell for this window...
+					if (nextCells.hasDerivative(outCell)) {
+						// ... use that stored derivative value.
+						sum += nextCells.derivatives[outCell];
+					} else {
+						// Continue to recursively calculate the derivative
+						sum += computeCellDerivative(layers, out, (layerIndex + 1), outCell, expected);
 					}
 				}
 			}
 			
 			//Store the newly calculated partial derivative with respect to this bias.
-			layers.get(layerIndex).biases.get(biasIndex).derivative = sum;
+			storedBias.derivative = sum;
+			storedBias.generation = currentLayer.generation;
 			return sum;
 		}
 	}
@@ -399,7 +394,8 @@ public class FSONNetwork {
 	 * (IE the layer before "out[]". It calculates the partial derivative of the
 	 * total error with respect to the net activation of a cell (that is not in
 	 * the last layer). IE, it calculates de/dnet for a given cell, denoted by
-	 * the CellCoord "outcell" within the layer given by the index "layerIndex".
+	 * the flat index "cellIndex" (see Tensor::index()) within the layer given
+	 * by the index "layerIndex".
 	 * 
 	 * @param layers
 	 *            The layers that make up this network.
@@ -408,9 +404,9 @@ public class FSONNetwork {
 	 * @param layerIndex
 	 *            The index within "layers" of the layer in which the cell of
 	 *            interest resides.
-	 * @param outcell
-	 *            The coordinates of the cell of interest within the layer
-	 *            denoted by "layerIndex".
+	 * @param cellIndex
+	 *            The position of the cell of interest within the value and
+	 *            derivative planes of the layer denoted by "layerIndex".
 	 * @param expected
 	 *            The array of cells that represent the expected values of
 	 *            "out".
@@ -427,20 +423,23 @@ public class FSONNetwork {
 	 * 
 	 *             ...for more details.
 	 */
-	private static Double computePartialDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex,
-			CellCoord outcell, double[] expected) throws Exception {
+	private static double computeCellDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex,
+			int cellIndex, double[] expected) throws Exception {
+
+		Layer currentLayer = layers.get(layerIndex);
+		Tensor cells = currentLayer.cells;
 
 		// If there is already a value stored for this partial derivative...
-		if (!Double.isNaN(layers.get(layerIndex).cells[outcell.depth][outcell.row][outcell.column].derivative)) {
+		if (cells.hasDerivative(cellIndex)) {
 			
 			// ...then just use that
-			return layers.get(layerIndex).cells[outcell.depth][outcell.row][outcell.column].derivative;
+			return cells.derivatives[cellIndex];
 			
 		} else {
 			
 			// This is the calculated derivative of the out value with respect to net for this cell.
 			// IE dout/dnet
-			double doutdnet = layers.get(layerIndex).cells[outcell.depth][outcell.row][outcell.column].value * (1.0 - layers.get(layerIndex).cells[outcell.depth][outcell.row][outcell.column].value);
+			double doutdnet = cells.values[cellIndex] * (1.0 - cells.values[cellIndex]);
 			
 			// This will hold the sum of all relevant partial derivatives;
 			// IE sum(dtotalerror/dout_i)
@@ -449,105 +448,129 @@ public class FSONNetwork {
 			// with respect to the given expected values in double[] expected.
 			double dEdout = 0;
 
-			// Find all FilterConnections that use this cell for input:
-
-			// For all filters in this layer...
-			for (int i = 0; i < layers.get(layerIndex).K; i++) {
-				
-				// Grab all the connections for this filter
-				LinkedList<FilterConnection> currentFilterConnections = layers.get(layerIndex).filters
-						.get(i).connections;
-				
-				for (int j = 0; j < currentFilterConnections.size(); j++) {
-
-					// If this filter is applied to the cell we are looking at...
-					if ((currentFilterConnections.get(j).inStart.depth <= outcell.depth)
-							&& (currentFilterConnections.get(j).inStart.row <= outcell.row)
-							&& (currentFilterConnections.get(j).inStart.column <= outcell.column)
-							&& ((currentFilterConnections.get(j).inStart.depth
-									+ layers.get(layerIndex).Fdepth) > outcell.depth)
-							&& ((currentFilterConnections.get(j).inStart.row
-									+ layers.get(layerIndex).Frows) > outcell.row)
-							&& ((currentFilterConnections.get(j).inStart.column
-									+ layers.get(layerIndex).Fcollumns) > outcell.column)) {
-
-						// Find the derivative of the total error with respect
-						// to the output cell for this connection
-						
-						// Get the value of the weight multiplied by this
-						// cell when this connection is calculated.
-						// This gives us the partial derivative of the net
-						// of the next connection with respect to the 
-						// current cell
-						// (IE our input paramater "outcell")
-						double DnetNextDoutThis;
-
-						// Grab the depth, row, and column in the filter of
-						// the weight multiplied by this cell
-						// when this connection is calculated
-						int depth = (outcell.depth - currentFilterConnections.get(j).inStart.depth);
-						int row = (outcell.row - currentFilterConnections.get(j).inStart.row);
-						int column = (outcell.column - currentFilterConnections.get(j).inStart.column);
-
-						if (layers.get(layerIndex).type != LayerType.MAXPOOL){
-							if(!Double.isNaN(layers.get(layerIndex).filters.get(i).gradientValues[depth][row][column])){
-						
-								//If this weight has been updated during the current iteration, we need to use the original value
-								DnetNextDoutThis = layers.get(layerIndex).filters.get(i).previousWeights[depth][row][column];
-								
-							} else {
-								
-								//This is still the original value of this weight for this iteration, so we don't need to use the previous value
-								DnetNextDoutThis = layers.get(layerIndex).filters.get(i).weights[depth][row][column];
-								
-							}
-							
-						} else {
-							// You're never going to have a maxpool layer as the
-							// last layer, so we don't have to worry about that
-							// here.
-							// Likewise, since an activation function is never
-							// applied to a maxpool output, you don't need to
-							// worry about that either!
-							if (layers.get(layerIndex).cells[outcell.depth][outcell.row][outcell.column].value == layers
-									.get(layerIndex + 1).cells[currentFilterConnections
-											.get(j).out.depth][currentFilterConnections.get(
-													j).out.row][currentFilterConnections.get(j).out.column].value) {
-								DnetNextDoutThis = 1;
-							} else {
-								DnetNextDoutThis = 0;
-							}
-							
-						}
-						
-						// If this is the last layer before out...
-						if (layerIndex == (layers.size() - 1)) {
-							// Add the partial derivative of the total error with respect to the output cell
-							// for this connection to the sum variable
-							dEdout += DnetNextDoutThis * computeSoftmaxError(out, i, expected);
-
-						} else {
-							// Recursively calculate the partial derivative of the total
-							// error with respect to the output cell for this
-							// connection and add it to our sum variable
-							dEdout += DnetNextDoutThis *computePartialDerivative(layers, out, layerIndex + 1,
-									currentFilterConnections.get(j).out, expected);
-						
-						}
-
+			// Look up the windows of this layer that read this cell (see ConnectionIndex)
+			ConnectionIndex connectionIndex = currentLayer.connectionIndex();
+			int first = connectionIndex.cellStart[cellIndex];
+			int end = connectionIndex.cellStart[cellIndex + 1];
+
+			if (currentLayer.type == LayerType.MAXPOOL) {
+				// Maxpool layers have no filters; each window is pooled into
+				// the cell at the same place in the next layer.
+				// You're never going to have a maxpool layer as the
+				// last layer, so we don't have to worry about that
+				// here.
+				// Likewise, since an activation function is never
+				// applied to a maxpool output, you don't need to
+				// worry about that either!
+				Connectivity connectivity = currentLayer.connectivity;
+				Tensor pooledCells = layers.get(layerIndex + 1).cells;
+				for (int e = first; e < end; e++) {
+					int position = connectionIndex.positions[e];
+					int pooledIndex = pooledCells.index(connectivity.outputDepth(0, position),
+							connectivity.outputRow(position), connectivity.outputColumn(0, position));
+
+					// Only the cell that was the maximum of the window passes the derivative on
+					// (the derivative of the max with respect to any other cell is 0).
+					if (cells.values[cellIndex] == pooledCells.values[pooledIndex]) {
+						dEdout += computeCellDerivative(layers, out, layerIndex + 1, pooledIndex, expected);
 					}
 				}
+			} else if (currentLayer.connectivity.sharesFilters()) {
+				// Every filter in this layer is applied at every window,
+				// so for all filters in this layer...
+				for (int i = 0; i < currentLayer.K; i++) {
+					// ...and every window reading this cell...
+					for (int e = first; e < end; e++) {
+						dEdout += computeWindowDerivative(layers, out, layerIndex, i, connectionIndex, e, expected);
+					}
+				}
+			} else {
+				// Each window has its own filter, with the same index as the window's position.
+				// For every window reading this cell...
+				for (int e = first; e < end; e++) {
+					dEdout += computeWindowDerivative(layers, out, layerIndex, connectionIndex.positions[e],
+							connectionIndex, e, expected);
+				}
 			}
 
 			double dEdnet = doutdnet* dEdout;
 			// Record the newly calculated partial derivative
-			layers.get(layerIndex).cells[outcell.depth][outcell.row][outcell.column].derivative = dEdnet;
+			cells.storeDerivative(cellIndex, dEdnet);
 			return dEdnet;
 			
 		}
 		
 	}
 
+	/**
+	 * This is a helper function to the function with the call signature:
+	 * 
+	 * computeCellDerivative(LinkedList<Layer> layers, Cell[] out, int
+	 * layerIndex, int cellIndex, double[] expected)
+	 * 
+	 * (defined in this class file- IE FSONNetwork.java).
+	 * 
+	 * It calculates the part of dtotalerror/dout for a cell that comes from a
+	 * single filter applied at a single window reading that cell: the weight
+	 * multiplied by the cell, times the partial derivative of the total error
+	 * with respect to the net of the cell the window calculates.
+	 * 
+	 * @param layers
+	 *            The layers that make up this network.
+	 * @param out
+	 *            The array of cells that store the output of this network.
+	 * @param layerIndex
+	 *            The index within "layers" of the layer in which the cell
+	 *            resides.
+	 * @param filterIndex
+	 *            The index of the filter applied at the window.
+	 * @param connectionIndex
+	 *            The connection index of the layer (see
+	 *            Layer::connectionIndex()).
+	 * @param entry
+	 *            The entry of "connectionIndex" for the cell and window.
+	 * @param expected
+	 *            The array of cells that represent the expected values of
+	 *            "out".
+	 * @return dnetNext/doutThis * dtotalerror/dnetNext for this window.
+	 * @throws Exception
+	 *             See computePartialDerivative().
+	 */
+	private static double computeWindowDerivative(LinkedList<Layer> layers, Cell[] out, int layerIndex,
+			int filterIndex, ConnectionIndex connectionIndex, int entry, double[] expected) throws Exception {
+		Layer currentLayer = layers.get(layerIndex);
+		Connectivity connectivity = currentLayer.connectivity;
+		Filter filter = currentLayer.filters.get(filterIndex);
+		int position = connectionIndex.positions[entry];
+
+		// Grab the depth, row, and column in the filter of
+		// the weight multiplied by this cell
+		// when this window is calculated
+		int depth = connectionIndex.weightDepth[entry];
+		int row = connectionIndex.weightRow[entry];
+		int column = connectionIndex.weightColumn[entry];
+
+		// Get the value of the weight multiplied by this
+		// cell when this window is calculated.
+		// This gives us the partial derivative of the net
+		// of the next cell with respect to the 
+		// current cell
+		double DnetNextDoutThis = filter.weights[depth][row][column];
+
+		// If this is the last layer before out...
+		if (layerIndex == (layers.size() - 1)) {
+			// The partial derivative of the total error with respect to the output cell
+			// for this window
+			return DnetNextDoutThis * computeSoftmaxError(out, filterIndex, expected);
+		}
+
+		// Recursively calculate the partial derivative of the total
+		// error with respect to the cell this window calculates
+		int nextCell = layers.get(layerIndex + 1).cells.index(connectivity.outputDepth(filterIndex, position),
+				connectivity.outputRow(position), connectivity.outputColumn(filterIndex, position));
+		return DnetNextDoutThis * computeCellDerivative(layers, out, layerIndex + 1, nextCell, expected);
+	}
+
 	/**
 	 * This is a helper function for:
 	 * 
@@ -663,6 +686,22 @@ public class FSONNetwork {
 		return (bias - (learningRate * dEdbias));
 	}
 
+	/**
+	 * This function marks every gradient and derivative stored by the
+	 * "computePartialDerivative" functions as "not found yet". It must be
+	 * called before using those functions (or "stepGradient") with a new input.
+	 * Each layer is just moved on to a new generation (see
+	 * Layer::resetGradients()), so nothing is written to the stored values.
+	 * 
+	 * @param layers
+	 *            The layers that make up this network
+	 */
+	public static void resetGradients(LinkedList<Layer> layers) {
+		for (Layer layer : layers) {
+			layer.resetGradients();
+		}
+	}
+
 	/**
 	 * This function is the main function from which learning occurs. It is a
 	 * stochastic gradient descent model.
@@ -723,6 +762,80 @@ public class FSONNetwork {
 	 */
 	public static void learn(double learningFactor, LinkedList<Layer> layers, Cell[] out, String[] input,
 			int iterations, double[][] dictionary, boolean independent, String saveFile) throws Exception {
+		learn(learningFactor, layers, out, input, iterations, dictionary, independent, saveFile,
+				new LearningOptions());
+	}
+
+	/**
+	 * This function is the same as the learning function above, with extra
+	 * settings (see LearningOptions) to control how the learning is done.
+	 * 
+	 * @param learningFactor
+	 *            See above.
+	 * @param layers
+	 *            The layers that make up this network
+	 * @param out
+	 *            The array of cells that store the output of this network.
+	 * @param input
+	 *            See above.
+	 * @param iterations
+	 *            See above.
+	 * @param dictionary
+	 *            See above.
+	 * @param independent
+	 *            See above.
+	 * @param saveFile
+	 *            See above.
+	 * @param options
+	 *            The settings to learn with. With "batchSize" set to more than
+	 *            1, that many inputs are fed forward and backward together
+	 *            (see Workspace), and their gradients are added up before
+	 *            every weight and bias is moved (by the average of the
+	 *            gradients). With "threads" set to more than 1, each batch is
+	 *            split between that many threads (see DataParallelTrainer).
+	 *            With "filterThreads" set to more than 1, the gradients of
+	 *            the filters of each layer are calculated and applied by
+	 *            that many threads (see BackwardEngine::pool). With
+	 *            "evaluationInterval" set to more than 1 (or 0), the error
+	 *            the learning rate is based on is only calculated over the
+	 *            inputs (or "evaluationSubset" of them) that often, and
+	 *            follows the errors of the inputs being learned in between
+	 *            (see LossTracker). With "evaluationThreads" set to more
+	 *            than 1, each calculation of the error is split between that
+	 *            many threads (see ParallelEvaluator). With
+	 *            "checkpointFile" set, compact binary checkpoints of the
+	 *            weights and biases are written to it in the background, on
+	 *            the cadence set by "checkpointEvery" and
+	 *            "checkpointSeconds", instead of writing "saveFile" (see
+	 *            Checkpointer); learning can be carried on from one of them
+	 *            exactly where it stopped by setting "resumeFrom" to it (see
+	 *            TrainingState), or from the weights and biases of a text file
+	 *            written by an earlier run (see SaveFileReader). With
+	 *            "modelFile" set, the trained network is written to it at
+	 *            the end, ready to be mapped for inference (see
+	 *            MappedModel). With "publisher" set, snapshots of the
+	 *            weights are published while learning, so other threads
+	 *            can classify with the network at the same time (see
+	 *            WeightPublisher). With "inputCacheBytes" set, each input
+	 *            file is only read and decoded once while learning (see
+	 *            InputCache).
+	 *            With "mode" set to TrainingMode.HOGWILD, that many threads
+	 *            each learn their own batches and move the weights without
+	 *            waiting for each other (see HogwildTrainer), and
+	 *            "statistics" counts how stale their updates were. With "mode"
+	 *            set to TrainingMode.PARAMETER_SERVER, "workers" processes
+	 *            learn the inputs and send their gradients to this one (see
+	 *            ParameterServer).
+	 * @throws Exception
+	 *             See above.
+	 * @throws IOException
+	 *             See above.
+	 */
+	public static void learn(double learningFactor, LinkedList<Layer> layers, Cell[] out, String[] input,
+			int iterations, double[][] dictionary, boolean independent, String saveFile, LearningOptions options)
+			throws Exception {
+
+		options.validate();
 
 		// Grab the location of this class file in the filesystem
 		URL location = FSONNetwork.class.getProtectionDomain().getCodeSource().getLocation();
@@ -736,231 +849,513 @@ public class FSONNetwork {
 		// Add the filename to the end of the path.
 		// Now we have the absolute path of a file located in the root directory of this project.
 		String absPath = substr.concat(saveFile);
-		
-		// Find the starting error.
-		System.out.println("Calculating error before learning.");
-		double totalError = crossEntropyTotalError(layers, out, input, dictionary, independent);
-		System.out.println("Starting learning. Error is: " + totalError);
-		System.out.println("0," + totalError);
-		
-		// Calculate the starting learning rate using the starting error and the learningFactor parameter
-		double learningRate;
-		
-		if (totalError == Double.NEGATIVE_INFINITY){
-			learningRate = learningFactor;
-		} else{
-			learningRate = Layer.activationFunction(totalError) * learningFactor;
-		}
 
-		// For the requested number of iterations...
-		for (int i = 0; i < iterations; i++) {
+		InputCache installedCache = null;// The input cache set up by this call, if any
+		Checkpointer checkpointer = null;// Writes checkpoints in the background, if there is a checkpoint file
+		LossTracker tracker = null;// Keeps track of the error between full calculations of it
+		ForkJoinPool filterPool = null;// The threads the filters of each layer are split between, if any
+		DataParallelTrainer trainer = null;// The threads each batch is split between, if any
+		HogwildTrainer hogwild = null;// The threads learning asynchronously, in HOGWILD mode
+
+		// Whatever happens while learning, every thread started here is stopped, and
+		// the input cache set up here is taken down again
+		try {
+			// With an input cache budget, each input file is only read and decoded once,
+			// rather than every time it is learned or the error is calculated (see InputCache)
+			if ((options.inputCacheBytes > 0) && (inputCache == null)) {
+				installedCache = new InputCache(options.inputCacheBytes);
+				inputCache = installedCache;
+			}
 
-			// 1. Pick an example, feed it forward through the network:
-			// 1.a) Generate a random order in which to access the input:
-			ArrayList<Integer> randomList = UniqueRandomNumbers.getRandomSet(input.length);
+			// Where learning has got to (see TrainingState). If learning is resumed from a
+			// checkpoint that says where an earlier run stopped, it carries on from there.
+			TrainingState state = new TrainingState();
+			state.seed = options.seed;
+			boolean resumed = false;
+			if (options.resumeFrom != null) {
+				File resumeFile = new File(options.resumeFrom);
+				if (Checkpoint.isCheckpoint(resumeFile)) {
+					// The workers of a parameter server pick their own order of the inputs,
+					// so learning can only be carried on from the end of an iteration
+					if (options.mode == TrainingMode.PARAMETER_SERVER) {
+						TrainingState stopped = Checkpoint.read(resumeFile).state;
+						if ((stopped != null) && (stopped.position > 0)) {
+							throw new IllegalArgumentException("The checkpoint was taken in the middle of an iteration, "
+									+ "which cannot be resumed in PARAMETER_SERVER mode: " + options.resumeFrom);
+						}
+					}
+					Checkpoint checkpoint = Checkpoint.restore(resumeFile, layers);
+					if (checkpoint.state != null) {
+						state = checkpoint.state;
+						resumed = true;
+					}
+				} else {
+					// The text file only holds the weights and biases (see SaveFileReader)
+					int loaded = SaveFileReader.load(resumeFile, layers);
+					if (loaded < layers.size()) {
+						System.out.println("The save file only holds layers 0 to " + (loaded - 1) + ", so layers "
+								+ loaded + " to " + (layers.size() - 1) + " keep their starting weights.");
+					}
+				}
+			}
 
-			// 1.b) Use "randomList" to access each input entry in a random order
-			for (int r = 0; r < input.length; r++) {
-				int s = randomList.get(r);
+			double totalError;
+			double learningRate;
+			if (resumed) {
+				totalError = state.error;
+				learningRate = state.learningRate;
+				System.out.println("Resuming learning at iteration " + state.iteration + ", entry " + state.position
+						+ ". Error is: " + totalError);
+			} else {
+				// Find the starting error.
+				System.out.println("Calculating error before learning.");
+				totalError = crossEntropyTotalError(layers, out, input, dictionary, independent);
+				System.out.println("Starting learning. Error is: " + totalError);
+				System.out.println("0," + totalError);
+
+				// Calculate the starting learning rate using the starting error and the learningFactor parameter
+				learningRate = learningRate(learningFactor, totalError);
+			}
 
-				// If there is an input to be learned at this index...
-				if ((input[s] != null) && (!input[s].equals(""))){
-					
-					// There might be multiple inputs at this index
-					// So split the input...
-					String[] inputs = input[s].split(",");
-					int numInputs = inputs.length;
-					
-					//...and access each input in turn
-					for (int n = 0; n<numInputs; n++){
-						
-						// Open the next input file denoted by the string stored
-						// in the input array, in a random order, and feed that input
-						// into the first layer.
-
-						// If the first layer only has a depth of 1, that means the
-						// input is supposed to be black and white, so use the
-						// appropriate function to open it
-						if (layers.getFirst().cells.length == 1) {
-							openFileInputBW(layers, inputs[n]);
-						} else { // If the first layer has more than a single depth,
-							// that means it is expecting an image with multiple
-							// channels, so use the appropriate function to open
-							// it.
-							// TODO: Add option to change this to RGB
-							openHSVFileInput(layers, inputs[n]);
+			// With a checkpoint file, compact binary snapshots of the weights and biases are
+			// written in the background instead of the text file (see Checkpointer)
+			if (options.checkpointFile != null) {
+				checkpointer = new Checkpointer(new File(options.checkpointFile), layers, options.checkpointEvery,
+						options.checkpointSeconds * 1000);
+			}
+			long learned = state.samples;// The number of inputs learned so far
+
+			// This keeps track of the error between full calculations of it (see LossTracker)
+			tracker = new LossTracker(options.lossSmoothing, options.evaluationInterval,
+					options.evaluationSubset, state.seed);
+			if (resumed) {
+				// The average carries on from where it was, as if learning had never stopped
+				tracker.restore(state);
+			} else {
+				tracker.reset(totalError);
+			}
+			if (options.evaluationThreads > 1) {
+				tracker.evaluator = new ParallelEvaluator(layers, out.length, options.evaluationThreads,
+						options.batchSize, 1);
+			}
+
+			// With a parameter server, this process only owns the weights: the learning
+			// is done by the worker processes (see ParameterServer)
+			if (options.mode == TrainingMode.PARAMETER_SERVER) {
+				// Only the iterations that were not finished before learning was resumed are learned
+				int remaining = Math.max(iterations - state.iteration, 0);
+				ParameterServer server = new ParameterServer(layers, out.length, input, dictionary, independent,
+						remaining, learningRate, options);
+				server.tracker = tracker;
+				server.learningFactor = learningFactor;
+				server.start();
+				List<Process> processes = new ArrayList<Process>();
+				if (options.launchWorkers) {
+					processes = server.launchLocalWorkers();
+				}
+				server.awaitWorkers(processes);
+				if (checkpointer != null) {
+					// Between them, the workers learn every input once per iteration
+					long perIteration = 0;
+					for (int s = 0; s < input.length; s++) {
+						if ((input[s] != null) && (!input[s].equals(""))) {
+							perIteration += input[s].split(",").length;
 						}
+					}
+					state.samples = learned + (perIteration * remaining);
+					state.iteration = Math.max(iterations, state.iteration);
+					state.position = 0;
+					state.learningRate = server.learningRate();
+					state.error = tracker.value();
+					tracker.save(state);
+					checkpointer.checkpoint(state);
+				} else {
+					recordProgress(absPath, layers, server.engine);
+				}
+				if (options.publisher != null) {
+					options.publisher.publish();
+				}
+				if (options.modelFile != null) {
+					MappedModel.write(new File(options.modelFile), layers);
+				}
+				return;
+			}
 
-						// 1.b.ii) Feed the input through the rest of the network
-						feedForward(layers, out, false);
+			// This holds the errors and gradients calculated during each backward pass
+			BackwardEngine engine = new BackwardEngine(layers, out);
 
-						// If the output cells are independent of one another, use the sigmoid activation function
-						if (independent) {
-							for (int w = 0; w < out.length; w++) {
-								out[w].value = Layer.activationFunction(out[w].value);
-							}
-						} else {// The output cells are dependent, and so we must use the softmax activation function
-							Layer.softmax(out);
-						}
+			// With more than one filter thread, the gradients of the filters of each layer
+			// are calculated and applied in parallel (see BackwardEngine)
+			if ((options.mode == TrainingMode.SYNCHRONOUS) && (options.filterThreads > 1)) {
+				filterPool = new ForkJoinPool(options.filterThreads);
+				engine.pool = filterPool;
+			}
 
-						// 2. Increment all weights:
-
-						// 2.a) Increment all weights for all the layers, working backward.
-						for (int j = (layers.size() - 1); j >= 0; j--) {
-//							System.out.println("----------------------------------------------");
-//							System.out.println("Processing layer: " + j);
-//							System.out.println("----------------------------------------------");
-							Layer currentLayer = layers.get(j);
-							
-							if (currentLayer.type!=LayerType.MAXPOOL){
-								// 2.a.i) Increment all weights for all the filters for this layer ("currentLayer")
-								for (int f = 0; f < currentLayer.filters.size(); f++) {
-//									System.out.println("Incrementing filter: " + f);
-									Filter currentFilter = currentLayer.filters.get(f);
-
-									// 2.a.i.1) Increment each weight within this filter ("currentFilter")
-									for (int x = 0; x < currentLayer.Fdepth; x++) {
-										for (int y = 0; y < currentLayer.Frows; y++) {
-											for (int z = 0; z < currentLayer.Fcollumns; z++) {
-												// Note that "dictionary[s]" is used because
-												// the sth entry in the dictionary is the expected output for this input
-												// (the "n"th entry in the input at input[s]).
-												currentFilter.previousWeights[x][y][z] = currentFilter.weights[x][y][z];
-												currentFilter.weights[x][y][z] = stepGradient(learningRate, layers, out, j, f, x, y, z, dictionary[s]);
-											}
-										}
-									}
-								}
+			// With more than one input per batch (or more than one thread), the inputs of a batch
+			// are collected and fed forward and backward together, split between the threads
+			// (see DataParallelTrainer)
+			int pending = 0;
+			if ((options.mode == TrainingMode.SYNCHRONOUS) && ((options.batchSize > 1) || (options.threads > 1))) {
+				trainer = new DataParallelTrainer(layers, out.length, options.batchSize, options.threads);
+				trainer.setFilterPool(filterPool);
+			}
 
-								// 2.b) Increment all the biases for this layer:
-								for (int b = 0; b < currentLayer.biases.size(); b++) {
-									// Note that "dictionary[s]" is used because the sth
-									// entry in the dictionary is the expected output for
-									// this input (the "n"th entry in the input at input[s])
-//									System.out.println("Incrementing bias: "+ b);
-									currentLayer.biases.get(b).previousValue = currentLayer.biases.get(b).value;
-									currentLayer.biases.get(b).value = stepGradient(learningRate, layers, out, j, b, dictionary[s]);
-								}
-							}
+			// In asynchronous mode the inputs are handed to workers that move the weights
+			// whenever they are ready, instead (see HogwildTrainer)
+			if (options.mode == TrainingMode.HOGWILD) {
+				hogwild = new HogwildTrainer(layers, out.length, options.batchSize, options.threads, independent,
+						learningRate, options.statistics);
+				hogwild.tracker = tracker;
+			}
 
-						}
+			// The order of every iteration is drawn from "seed", so the order of an
+			// iteration that was interrupted can be drawn again
+			Random shuffler = new Random(state.seed);
+			int startIteration = state.iteration;
+			int startPosition = state.position;
 
+			// For the requested number of iterations...
+			for (int i = 0; i < iterations; i++) {
+
+				// 1. Pick an example, feed it forward through the network:
+				// 1.a) Generate a random order in which to access the input:
+				ArrayList<Integer> randomList = UniqueRandomNumbers.getRandomSet(input.length, shuffler);
+
+				// Skip whatever was learned before learning was resumed
+				if (i < startIteration) {
+					continue;
+				}
+
+				// 1.b) Use "randomList" to access each input entry in a random order
+				for (int r = ((i == startIteration) ? startPosition : 0); r < input.length; r++) {
+					int s = randomList.get(r);
+
+					// If there is an input to be learned at this index...
+					if ((input[s] != null) && (!input[s].equals(""))){
+					
+						// There might be multiple inputs at this index
+						// So split the input...
+						String[] inputs = input[s].split(",");
+						int numInputs = inputs.length;
+					
+						//...and access each input in turn
+						for (int n = 0; n<numInputs; n++){
 						
-//						System.out.println("----------------------------------------------");
-//						System.out.println("Recording and resetting layers");
-//						System.out.println("----------------------------------------------");
-						
-						// Open a file, using the path created above, to store our progress while learning.
-						// This file can then be used to recover a network if we are interrupted while learning.
-						PrintWriter fw = new PrintWriter(absPath);
-						
-						// 3. Reset stored gradients and write the new weights to the file
-						// 3.a) Reset all stored gradients for all layers
-						for (int j = 0; j < layers.size(); j++) {
-//							System.out.println("----------------------------------------------");
-//							System.out.println("Recording layer: "+ j);
-//							System.out.println("----------------------------------------------");
-							// Record this layer
-							fw.write("<layer>\n");
-							
-							Layer currentLayer = layers.get(j);
-
-							// Record the paramaters for this layer
-							fw.write(currentLayer.collumns + "," + currentLayer.rows+ "," + currentLayer.depth + "," + currentLayer.Fcollumns + "," + currentLayer.Frows + "," + currentLayer.Fdepth + "," + currentLayer.K + ","+ currentLayer.step+ ","+ currentLayer.pad+ "," + currentLayer.type+"\n");
-							fw.flush();
-
-							// Record the cells of this layer
-							fw.write("<cells>\n");
-							
-//							System.out.println("Recording cells");
-							
-							// 3.c) Reset all stored gradients for all the cells in this layer, recording their value and derivative first
-							for (int x = 0; x < currentLayer.depth; x++) {
-								for (int y = 0; y < currentLayer.rows; y++) {
-									for (int z = 0; z < currentLayer.collumns; z++) {
-										
-										fw.write(currentLayer.cells[x][y][z].value + "," + currentLayer.cells[x][y][z].derivative+"\n");
-										currentLayer.cells[x][y][z].derivative = Double.NaN;
-									}
-								}
+							// Open the next input file denoted by the string stored
+							// in the input array, in a random order, and feed that input
+							// into the first layer.
+
+							// If the first layer only has a depth of 1, that means the
+							// input is supposed to be black and white, so use the
+							// appropriate function to open it
+							if (layers.getFirst().cells.depth == 1) {
+								openFileInputBW(layers, inputs[n]);
+							} else { // If the first layer has more than a single depth,
+								// that means it is expecting an image with multiple
+								// channels, so use the appropriate function to open
+								// it.
+								// TODO: Add option to change this to RGB
+								openHSVFileInput(layers, inputs[n]);
 							}
-							fw.flush();
-
-							if(currentLayer.type != LayerType.MAXPOOL){
-
-								// 3.a) Reset all stored gradients for all the filters for this layer ("currentLayer")
-								for (int f = 0; f < currentLayer.filters.size(); f++) {
-									Filter currentFilter = currentLayer.filters.get(f);
-//									System.out.println("Recording filter: "+f );
-									// Record this filter
-									fw.write("<filter>\n");
-
-									// 3.a.i) Reset all stored gradients for each weight within this filter ("currentFilter"), recording the filter weights and gradients first
-									for (int x = 0; x < currentLayer.Fdepth; x++) {
-										for (int y = 0; y < currentLayer.Frows; y++) {
-											for (int z = 0; z < currentLayer.Fcollumns; z++) {
-												fw.write(currentFilter.weights[x][y][z] + ","+ currentFilter.gradientValues[x][y][z]+"\n");
-												currentFilter.gradientValues[x][y][z] = Double.NaN;
-											}
-										}
-									}
+							learned++;
 
-									// Record the connections of this filter
-									for (int x = 0; x < currentFilter.connections.size(); x++){
-										FilterConnection currentConnection = currentFilter.connections.get(x);
-										fw.write("<connection>\n");
-										fw.write(currentConnection.biasIndex+","+ currentConnection.inStart.depth +","+ currentConnection.inStart.row +","+ currentConnection.inStart.column +"," + currentConnection.out.depth +","+ currentConnection.out.row +","+currentConnection.out.column+"\n");
-										fw.flush();
-									}
+							if (hogwild != null) {
+								hogwild.submit(layers.getFirst().cells, dictionary[s]);
+								continue;
+							}
 
-									// Indicate the end of this filter's data
-									fw.write("</filter>\n");
-									fw.flush();
+							// A batch of inputs is only fed through the network once it is full
+							if (trainer != null) {
+								trainer.setInput(pending, layers.getFirst().cells, dictionary[s]);
+								pending++;
+								if (pending == options.batchSize) {
+									trainer.train(pending, independent, learningRate);
+									for (int p = 0; p < pending; p++) {
+										tracker.record(trainer.errors[p]);
+									}
+									saveProgress(absPath, layers, trainer.engine, checkpointer, options.publisher);
+									pending = 0;
 								}
+								continue;
+							}
 
-								// 3.b) Reset all stored gradients for all the biases for this layer, recording their values and derivatives first
-								for (int b = 0; b < currentLayer.biases.size(); b++) {
-//									System.out.println("Recording bias: "+b );
-									fw.write("<bias>\n");
-									fw.write(currentLayer.biases.get(b).derivative + "," + currentLayer.biases.get(b).value+"\n");
-									currentLayer.biases.get(b).derivative = Double.NaN;
-								}
+							// 1.b.ii) Feed the input through the rest of the network
+							feedForward(layers, out);
 
-								// If we have recorded a bias, indicate the end of the list of biases
-								if (currentLayer.biases.size() >0){
-									fw.write("</biases>\n");
+							// If the output cells are independent of one another, use the sigmoid activation function
+							if (independent) {
+								for (int w = 0; w < out.length; w++) {
+									out[w].value = Layer.activationFunction(out[w].value);
 								}
+							} else {// The output cells are dependent, and so we must use the softmax activation function
+								Layer.softmax(out);
 							}
 
-							// Indicate the end of this layer's data
-							fw.write("</layer>\n");
-							fw.flush();
-							fw.close();
+							// The error of this input comes for free, since it has just been fed forward
+							tracker.record(crossEntropyError(out, dictionary[s]));
+
+							// 2. Add the gradients of every weight and bias for all the layers, calculated in
+							// a single backward pass (see BackwardEngine), to those of the rest of the batch.
+							// Note that "dictionary[s]" is used because the sth entry in the dictionary
+							// is the expected output for this input (the "n"th entry in the input at input[s]).
+							engine.accumulate(layers, out, dictionary[s]);
+
+							// Once the batch is full...
+							if (engine.samples == options.batchSize) {
+								// 2.b) ...move every weight and bias against the average of the batch's gradients.
+								// Every gradient was calculated before any weight changed,
+								// so there is no need to keep the previous weights around.
+								engine.update(layers, learningRate);
+
+								// 3. Write the new weights to the file, and start a new batch.
+								saveProgress(absPath, layers, engine, checkpointer, options.publisher);
+								engine.clear();
+							}
 						}
-					}
 					
-					// Recalculate the total error
-					totalError = crossEntropyTotalError(layers, out, input, dictionary, independent);
-					// Recalculate the learning rate
-					if (totalError == Double.NEGATIVE_INFINITY){
-						learningRate = learningFactor;
-					} else{
-						learningRate = Layer.activationFunction(totalError) * learningFactor;
-					}
+						// Recalculate the total error every "evaluationInterval" entries, and
+						// use the moving average of the errors of the inputs learned in between
+						if (tracker.step()) {
+							totalError = tracker.evaluate(layers, out, input, dictionary, independent);
+						} else {
+							totalError = tracker.value();
+						}
+						// Recalculate the learning rate
+						learningRate = learningRate(learningFactor, totalError);
+						if (hogwild != null) {
+							hogwild.learningRate = learningRate;
+						}
+
+						// Checkpoints are taken between entries, once every input learned so far has
+						// moved the weights, so learning can be resumed from exactly this point. In
+						// asynchronous mode the weights never stop moving, so only the final
+						// weights are saved.
+						if ((checkpointer != null) && (hogwild == null) && (pending == 0) && (engine.samples == 0)) {
+							state.samples = learned;
+							state.iteration = i;
+							state.position = r + 1;
+							state.learningRate = learningRate;
+							state.error = totalError;
+							tracker.save(state);
+							checkpointer.maybeCheckpoint(state);
+						}
 					
+					}
+				
 				}
+			
+	//			System.out.println("----------------------------------------------");
+	//			System.out.println("Recalculating error");
+	//			System.out.println("----------------------------------------------");
+		
+	//			if(i%5 == 0){
+	//				System.out.println((i+1) + "," + totalError);
+	//			}
 				
 			}
-			
+
+			// If the last batch was not full, use what there is of it
+			if (pending > 0) {
+				trainer.train(pending, independent, learningRate);
+				saveProgress(absPath, layers, trainer.engine, checkpointer, options.publisher);
+			}
+
+			// The weights keep moving while the workers run, so in asynchronous mode
+			// progress is only recorded once every input has been learned
+			if (hogwild != null) {
+				hogwild.finish();
+				saveProgress(absPath, layers, hogwild.engine(0), checkpointer, options.publisher);
+			}
+			if (engine.samples > 0) {
+				engine.update(layers, learningRate);
+				saveProgress(absPath, layers, engine, checkpointer, options.publisher);
+				engine.clear();
+			}
+
+			// Whatever the cadence, the final weights are always saved
+			if (checkpointer != null) {
+				state.samples = learned;
+				state.iteration = Math.max(iterations, startIteration);
+				state.position = 0;
+				state.learningRate = learningRate;
+				state.error = totalError;
+				tracker.save(state);
+				checkpointer.checkpoint(state);
+			}
+			if (options.modelFile != null) {
+				MappedModel.write(new File(options.modelFile), layers);
+			}
+			// Readers always end up with the final weights, whatever the cadence
+			if (options.publisher != null) {
+				options.publisher.publish();
+			}
+		} finally {
+			if (trainer != null) {
+				trainer.close();
+			}
+			if (hogwild != null) {
+				hogwild.close();
+			}
+			if (filterPool != null) {
+				filterPool.shutdown();
+			}
+			if ((tracker != null) && (tracker.evaluator != null)) {
+				tracker.evaluator.close();
+			}
+			if (installedCache != null) {
+				inputCache = null;
+			}
+			// Last, since it waits for the last checkpoint to be written, and may throw
+			if (checkpointer != null) {
+				checkpointer.close();
+			}
+		}
+	}
+
+	/**
+	 * This function calculates the learning rate for a given error of the
+	 * network (see learn()): the larger the error, the further each weight
+	 * and bias moves.
+	 * 
+	 * @param learningFactor
+	 *            See learn().
+	 * @param totalError
+	 *            The error of the network (see crossEntropyTotalError()).
+	 * @return The learning rate.
+	 */
+	static double learningRate(double learningFactor, double totalError) {
+		if (totalError == Double.NEGATIVE_INFINITY){
+			return learningFactor;
+		}
+		return Layer.activationFunction(totalError) * learningFactor;
+	}
+
+	/**
+	 * This function records the progress of learning after an update, as a
+	 * text file (see recordProgress()), and counts the update for the
+	 * publisher of weight snapshots (see WeightPublisher). With a
+	 * checkpointer no text file is written here: checkpoints are taken
+	 * between entries of "input" instead (see learn()).
+	 * 
+	 * @param absPath
+	 *            The absolute path of the text file.
+	 * @param layers
+	 *            The layers that make up this network
+	 * @param engine
+	 *            The backward engine holding the gradients.
+	 * @param checkpointer
+	 *            The checkpointer, or null to write the text file.
+	 * @param publisher
+	 *            The publisher of weight snapshots, or null.
+	 * @throws IOException
+	 *             Thrown if there is a problem writing the file.
+	 */
+	private static void saveProgress(String absPath, LinkedList<Layer> layers, BackwardEngine engine,
+			Checkpointer checkpointer, WeightPublisher publisher) throws IOException {
+		if (checkpointer == null) {
+			recordProgress(absPath, layers, engine);
+		}
+		if (publisher != null) {
+			publisher.updated();
+		}
+	}
+
+	/**
+	 * This function writes the layers of a network, along with the gradients
+	 * most recently used to move their weights and biases, to a text file.
+	 * This file can then be used to recover a network if it interrupted while
+	 * learning (see learn()).
+	 * 
+	 * @param absPath
+	 *            The absolute path of the file to write.
+	 * @param layers
+	 *            The layers that make up this network
+	 * @param engine
+	 *            The backward engine holding the gradients.
+	 * @throws IOException
+	 *             Thrown if there is a problem opening the file.
+	 */
+	private static void recordProgress(String absPath, LinkedList<Layer> layers, BackwardEngine engine)
+			throws IOException {
+		// Open the file to store our progress in.
+		PrintWriter fw = new PrintWriter(absPath);
+		
+		// Record every layer, in order
+		for (int j = 0; j < layers.size(); j++) {
 //			System.out.println("----------------------------------------------");
-//			System.out.println("Recalculating error");
+//			System.out.println("Recording layer: "+ j);
 //			System.out.println("----------------------------------------------");
-		
-//			if(i%5 == 0){
-//				System.out.println((i+1) + "," + totalError);
-//			}
-				
+			// Record this layer
+			fw.write("<layer>\n");
+			
+			Layer currentLayer = layers.get(j);
+
+			// Record the paramaters for this layer
+			fw.write(currentLayer.collumns + "," + currentLayer.rows+ "," + currentLayer.depth + "," + currentLayer.Fcollumns + "," + currentLayer.Frows + "," + currentLayer.Fdepth + "," + currentLayer.K + ","+ currentLayer.step+ ","+ currentLayer.pad+ "," + currentLayer.type+"\n");
+			fw.flush();
+
+			// Record the cells of this layer
+			fw.write("<cells>\n");
+			
+//			System.out.println("Recording cells");
+			
+			// 3.a) Record the value and derivative of all the cells in this layer
+			// (the cells are stored in [depth][row][column] order, so a walk through the planes visits them in that order)
+			for (int x = 0; x < currentLayer.cells.size(); x++) {
+				fw.write(currentLayer.cells.values[x] + "," + engine.cellDerivative(j, x)+"\n");
+			}
+			fw.flush();
+
+			if(currentLayer.type != LayerType.MAXPOOL){
+
+				// 3.b) Record all the filters for this layer ("currentLayer")
+				for (int f = 0; f < currentLayer.filters.size(); f++) {
+					Filter currentFilter = currentLayer.filters.get(f);
+//					System.out.println("Recording filter: "+f );
+					// Record this filter
+					fw.write("<filter>\n");
+
+					// 3.b.i) Record the weights and gradients within this filter ("currentFilter")
+					for (int x = 0; x < currentLayer.Fdepth; x++) {
+						for (int y = 0; y < currentLayer.Frows; y++) {
+							for (int z = 0; z < currentLayer.Fcollumns; z++) {
+								fw.write(currentFilter.weights[x][y][z] + ","+ engine.weightGradient(layers, j, f, x, y, z)+"\n");
+							}
+						}
+					}
+
+					// Record the connections of this filter (these are calculated from the layer's geometry, see Connectivity)
+					Connectivity connectivity = currentLayer.connectivity;
+					for (int x = 0; x < connectivity.windows(f); x++){
+						int position = connectivity.position(f, x);
+						fw.write("<connection>\n");
+						fw.write(f+","+ connectivity.inputDepth(position) +","+ connectivity.inputRow(position) +","+ connectivity.inputColumn(position) +"," + connectivity.outputDepth(f, position) +","+ connectivity.outputRow(position) +","+connectivity.outputColumn(f, position)+"\n");
+						fw.flush();
+					}
+
+					// Indicate the end of this filter's data
+					fw.write("</filter>\n");
+					fw.flush();
+				}
+
+				// 3.c) Record the values and derivatives of all the biases for this layer
+				for (int b = 0; b < currentLayer.biases.size(); b++) {
+//					System.out.println("Recording bias: "+b );
+					fw.write("<bias>\n");
+					fw.write(engine.biasGradients[j][b] + "," + currentLayer.biases.get(b).value+"\n");
+				}
+
+				// If we have recorded a bias, indicate the end of the list of biases
+				if (currentLayer.biases.size() >0){
+					fw.write("</biases>\n");
+				}
+			}
+
+			// Indicate the end of this layer's data
+			fw.write("</layer>\n");
+			fw.flush();
 		}
+		fw.close();
 	}
 
 	/**
@@ -989,6 +1384,29 @@ public class FSONNetwork {
 	 * 
 	 */
 	public static void openFileInput(LinkedList<Layer> layers, String filename) throws Exception {
+		openFileInput(layers.getFirst().cells, filename);
+	}
+
+	/**
+	 * The same as openFileInput() above, except that the file is fed
+	 * into the given cells instead of the cells of the first layer of a
+	 * network, so several threads can open files at once (see
+	 * ParallelEvaluator).
+	 *
+	 * @param cells
+	 *            The cells to feed the file into, the same shape as the first
+	 *            layer of the network.
+	 * @param filename
+	 *            See above.
+	 * @throws Exception
+	 *             See above.
+	 */
+	public static void openFileInput(Tensor cells, String filename) throws Exception {
+		// A file that has been opened this way before is copied out of the cache
+		InputCache cache = inputCache;
+		if ((cache != null) && cache.load(cells, filename, InputCache.Mode.COLOR)) {
+			return;
+		}
 		
 		// Grab the location of this class file in the filesystem
 		URL location = FSONNetwork.class.getProtectionDomain().getCodeSource().getLocation();
@@ -1021,7 +1439,7 @@ public class FSONNetwork {
 
 		// Resize the image to the size needed.
 		Mat resizedImage = new Mat();
-		Size sz = new Size(layers.get(0).collumns, layers.get(0).rows);
+		Size sz = new Size(cells.columns, cells.rows);
 		Imgproc.resize(img, resizedImage, sz);
 
 		// Split the image into desired number of color channels
@@ -1038,23 +1456,27 @@ public class FSONNetwork {
 			channels.get(c).get(0, 0, temp);
 
 			// ...and then into the cells of the first layer of the network.
-			for (int d = 0; d < layers.get(0).rows; d++) {
-				for (int e = 0; e < layers.get(0).collumns; e++) {
+			for (int d = 0; d < cells.rows; d++) {
+				for (int e = 0; e < cells.columns; e++) {
 					
 					// A single channel Mat has pixels of a value between 0 and 255
 					// inclusive, where 0 is min value and 255 is max value.
 					// Since the network is expecting a value between 0 and 1, some
 					// formatting of the data is required.
 					// TODO: Add functionality to control this formatting, since this can be used to tune input to benefit learning.
-					double value = temp[(d * layers.get(0).rows) + e];
+					double value = temp[(d * cells.rows) + e];
 					value = (value-127.5)/25.5;
-					layers.get(0).cells[c][d][e].value = Layer.activationFunction(value);
+					cells.setValue(c, d, e, Layer.activationFunction(value));
 					
 				}
 
 			}
 
 		}
+
+		if (cache != null) {
+			cache.store(cells, filename, InputCache.Mode.COLOR);
+		}
 	}
 	
 	/**
@@ -1084,6 +1506,29 @@ public class FSONNetwork {
 	 *             
 	 */
 	public static void openHSVFileInput(LinkedList<Layer> layers, String filename) throws Exception {
+		openHSVFileInput(layers.getFirst().cells, filename);
+	}
+
+	/**
+	 * The same as openHSVFileInput() above, except that the file is fed
+	 * into the given cells instead of the cells of the first layer of a
+	 * network, so several threads can open files at once (see
+	 * ParallelEvaluator).
+	 *
+	 * @param cells
+	 *            The cells to feed the file into, the same shape as the first
+	 *            layer of the network.
+	 * @param filename
+	 *            See above.
+	 * @throws Exception
+	 *             See above.
+	 */
+	public static void openHSVFileInput(Tensor cells, String filename) throws Exception {
+		// A file that has been opened this way before is copied out of the cache
+		InputCache cache = inputCache;
+		if ((cache != null) && cache.load(cells, filename, InputCache.Mode.HSV)) {
+			return;
+		}
 		
 		// Grab the location of this class file in the filesystem
 		URL location = FSONNetwork.class.getProtectionDomain().getCodeSource().getLocation();
@@ -1116,7 +1561,7 @@ public class FSONNetwork {
 
 		// Resize the image to the size needed.
 		Mat resizedImage = new Mat();
-		Size sz = new Size(layers.get(0).collumns, layers.get(0).rows);
+		Size sz = new Size(cells.columns, cells.rows);
 		Imgproc.resize(img, resizedImage, sz);
 		
 		//Convert the Mat into HSV form
@@ -1137,15 +1582,15 @@ public class FSONNetwork {
 			channels.get(c).get(0, 0, temp);
 
 			// ...and then into the cells of the first layer of the network.
-			for (int d = 0; d < layers.get(0).rows; d++) {
-				for (int e = 0; e < layers.get(0).collumns; e++) {
+			for (int d = 0; d < cells.rows; d++) {
+				for (int e = 0; e < cells.columns; e++) {
 					
 					// In OpenCV's  HSV, Hue range is [0,179], Saturation range is 
 					// [0,255] and Value range is [0,255].
 					// Since the network is expecting a value between 0 and 1, some
 					// formatting of the data is required.
 					// TODO: Add functionality to control this formatting, since this can be used to tune input to benefit learning.
-					double value = temp[(d * layers.get(0).rows) + e];
+					double value = temp[(d * cells.rows) + e];
 					if (c == 0){ //If we are processing the Hue channel...
 						value /= 179.0;
 					} else {
@@ -1154,12 +1599,16 @@ public class FSONNetwork {
 						value = 0;
 					}
 					
-					layers.get(0).cells[c][d][e].value = value;
+					cells.setValue(c, d, e, value);
 				}
 
 			}
 
 		}
+
+		if (cache != null) {
+			cache.store(cells, filename, InputCache.Mode.HSV);
+		}
 	}
 
 	/**
@@ -1188,6 +1637,29 @@ public class FSONNetwork {
 	 * 
 	 */
 	public static void openFileInputBW(LinkedList<Layer> layers, String filename) throws Exception {
+		openFileInputBW(layers.getFirst().cells, filename);
+	}
+
+	/**
+	 * The same as openFileInputBW() above, except that the file is fed
+	 * into the given cells instead of the cells of the first layer of a
+	 * network, so several threads can open files at once (see
+	 * ParallelEvaluator).
+	 *
+	 * @param cells
+	 *            The cells to feed the file into, the same shape as the first
+	 *            layer of the network.
+	 * @param filename
+	 *            See above.
+	 * @throws Exception
+	 *             See above.
+	 */
+	public static void openFileInputBW(Tensor cells, String filename) throws Exception {
+		// A file that has been opened this way before is copied out of the cache
+		InputCache cache = inputCache;
+		if ((cache != null) && cache.load(cells, filename, InputCache.Mode.BW)) {
+			return;
+		}
 
 		// Grab the location of this class file in the filesystem
 		URL location = FSONNetwork.class.getProtectionDomain().getCodeSource().getLocation();
@@ -1216,12 +1688,12 @@ public class FSONNetwork {
 
 		// Next, resize the image to the size needed.
 		Mat resizedImage = new Mat();
-		Size sz = new Size(layers.get(0).collumns, layers.get(0).rows);
+		Size sz = new Size(cells.columns, cells.rows);
 		Imgproc.resize(img, resizedImage, sz);
 
 		// ...and then feed the values of the pixels into the cells of the first layer of the network.
-		for (int d = 0; d < layers.get(0).rows; d++) {
-			for (int e = 0; e < layers.get(0).collumns; e++) {
+		for (int d = 0; d < cells.rows; d++) {
+			for (int e = 0; e < cells.columns; e++) {
 				
 				// A black and white Mat has pixels of a value between 0 and 255
 				// inclusive, where 0 is black and 255 is white.
@@ -1230,11 +1702,14 @@ public class FSONNetwork {
 				// TODO: Add functionality to control this formatting, since this can be used to tune input to benefit learning.
 				double value =resizedImage.get(d,e)[0];
 				value = value/25.5;
-				layers.get(0).cells[0][d][e].value = value;
+				cells.setValue(0, d, e, value);
 			}
 
 		}
 
+		if (cache != null) {
+			cache.store(cells, filename, InputCache.Mode.BW);
+		}
 	}
 
 	/**
@@ -1247,13 +1722,6 @@ public class FSONNetwork {
 	 *            The layers that make up this network
 	 * @param out
 	 *            The array of cells that store the output of this network.
-	 * @param store
-	 *            An indication if this network should be set up or not. A
-	 *            "true" value here means that connections should be recorded
-	 *            because this is the first pass through the network and the
-	 *            structure needs to be recorded. A false value here means this
-	 *            is network is already set up and does not need to record
-	 *            connections (no connections will be recorded in this call).
 	 * @throws Exception
 	 *             This exception is thrown when a problem occurs while
 	 *             calculating the activation function for a cell. See
@@ -1264,7 +1732,7 @@ public class FSONNetwork {
 	 *             and weights cannot be updated in a maxpool layer, the layer
 	 * 			   in which the bias or weight resides cannot be a maxpool layer.
 	 */
-	public static void feedForward(LinkedList<Layer> layers, Cell[] out, boolean store) throws Exception {
+	public static void feedForward(LinkedList<Layer> layers, Cell[] out) throws Exception {
 
 		//For all layers in this network but the last one before out...
 		for (int i = 0; i < (layers.size() - 1); i++) {
@@ -1274,19 +1742,18 @@ public class FSONNetwork {
 			switch (currentLayer.type) {
 			case CONV:
 				currentLayer.convolution(currentLayer.cells, currentLayer.filters, nextLayer.cells, currentLayer.step,
-						currentLayer.pad, currentLayer.biases, store, true);
+						currentLayer.pad, currentLayer.biases, true);
 				break;
 			case FULLY:
-				currentLayer.full(currentLayer.cells, currentLayer.filters, nextLayer.cells[0][0], currentLayer.step,
-						currentLayer.pad, currentLayer.biases, store, true);
+				currentLayer.full(currentLayer.cells, currentLayer.filters, nextLayer.cells, currentLayer.step,
+						currentLayer.pad, currentLayer.biases, true);
 				break;
 			case LOCAL:
 				currentLayer.local(currentLayer.cells, currentLayer.filters, nextLayer.cells, currentLayer.step,
-						currentLayer.pad, currentLayer.biases, store, true);
+						currentLayer.pad, currentLayer.biases, true);
 				break;
 			case MAXPOOL:
-				currentLayer.pool(currentLayer.cells, currentLayer.filters, nextLayer.cells, currentLayer.step,
-						currentLayer.Fcollumns, store);
+				currentLayer.pool(currentLayer.cells, nextLayer.cells, currentLayer.step, currentLayer.Fcollumns);
 				break;
 			default:
 				// TODO:Throw exception/error here
@@ -1298,11 +1765,80 @@ public class FSONNetwork {
 		// Calculate the last layer's output into "out".
 		// This will always be a fully connected layer.
 		Layer lastLayer = layers.getLast();
-		lastLayer.full(lastLayer.cells, lastLayer.filters, out, lastLayer.step, lastLayer.pad, lastLayer.biases, store,
-				false);
+		lastLayer.full(lastLayer.cells, lastLayer.filters, out, lastLayer.step, lastLayer.pad, lastLayer.biases, false);
 
 	}
 
+	/**
+	 * This function carries out a forward pass through the network for every
+	 * input of a batch at once. It is the same as the function above, but the
+	 * cells of each layer are those of "workspace" (see Workspace), so each
+	 * layer processes the whole batch together: the fully connected layers
+	 * become matrix-matrix multiplications, and each convolutional layer a
+	 * single matrix multiplication over the batch (see ConvolutionEngine).
+	 * Please note that the desired inputs must already be loaded into the
+	 * first layer of the workspace (see Workspace::setInput()).
+	 * 
+	 * @param layers
+	 *            The layers that make up this network
+	 * @param workspace
+	 *            The cells of every layer for each input, and the output of
+	 *            the network for each input.
+	 * @throws Exception
+	 *             See above.
+	 */
+	public static void feedForward(LinkedList<Layer> layers, Workspace workspace) throws Exception {
+
+		//For all layers in this network but the last one before out...
+		for (int i = 0; i < (layers.size() - 1); i++) {
+			Layer currentLayer = layers.get(i);
+			Tensor input = workspace.cells[i];
+			Tensor output = workspace.cells[i + 1];
+
+			switch (currentLayer.type) {
+			case CONV:
+				currentLayer.convolution(input, currentLayer.filters, output, currentLayer.step, currentLayer.pad,
+						currentLayer.biases, true);
+				break;
+			case FULLY:
+				currentLayer.full(input, currentLayer.filters, output, currentLayer.step, currentLayer.pad,
+						currentLayer.biases, true);
+				break;
+			case LOCAL:
+				currentLayer.local(input, currentLayer.filters, output, currentLayer.step, currentLayer.pad,
+						currentLayer.biases, true);
+				break;
+			case MAXPOOL:
+				currentLayer.pool(input, output, currentLayer.step, currentLayer.Fcollumns);
+				break;
+			default:
+				// TODO:Throw exception/error here
+				break;
+
+			}
+		}
+
+		// Calculate the last layer's output for every input.
+		// This will always be a fully connected layer.
+		Layer lastLayer = layers.getLast();
+		lastLayer.full(workspace.cells[layers.size() - 1], lastLayer.filters, workspace.out, lastLayer.step,
+				lastLayer.pad, lastLayer.biases, false);
+	}
+
+	/**
+	 * This function carries out a single forward pass through the network.
+	 * 
+	 * Networks no longer need to be "set up" by a first pass: the connections
+	 * between layers are calculated from each layer's geometry (see
+	 * Connectivity), so "store" is ignored.
+	 * 
+	 * @deprecated Use feedForward(LinkedList<Layer> layers, Cell[] out).
+	 */
+	@Deprecated
+	public static void feedForward(LinkedList<Layer> layers, Cell[] out, boolean store) throws Exception {
+		feedForward(layers, out);
+	}
+
 	/**
 	 * This function calculates and returns the total cross entropy error over
 	 * all inputs into the network. For a good explanation of cross entropy
@@ -1368,7 +1904,7 @@ public class FSONNetwork {
 					// If the first layer only has a depth of 1, that means the input is
 					// supposed to be black and white, so use the appropriate function
 					// to open it
-					if (layers.getFirst().cells.length == 1) {
+					if (layers.getFirst().cells.depth == 1) {
 						openFileInputBW(layers, inputs[n]);
 					} else { // If the first layer has more than a single depth, that
 								// means it is expecting an image with multiple
@@ -1378,7 +1914,7 @@ public class FSONNetwork {
 					}
 					
 					// Feed the input through the network (conduct a forward pass)
-					feedForward(layers, out, false);
+					feedForward(layers, out);
 
 					// If the output cells are independent of one another, use the sigmoid activation function
 					if (independent) {
@@ -1389,45 +1925,71 @@ public class FSONNetwork {
 						Layer.softmax(out);
 					}
 
-					// For each cell in out...
-					for (int k = 0; k < out.length; k++) {
-						// Add y*ln(x) + (1-y)*ln(1-x) to the sum,
-						// where y is the expected value for this cell
-						// and x is the actual value for this cell
-						// TODO: Document this section better.
-						if (out[k].value != dictionary[i][k]) {
-							double log;
-							if ((out[k].value == 0) && (dictionary[i][k] != 0)) {
-								//TODO: fix this
-								sum = Double.NEGATIVE_INFINITY;
-								return sum;
-							} else {
-								log = Math.log(out[k].value);
-							}
+					// Add the error of this example to the sum
+					double exampleError = crossEntropyError(out, dictionary[i]);
+					if (exampleError == Double.NEGATIVE_INFINITY) {
+						//TODO: fix this
+						return exampleError;
+					}
+					sum += exampleError;
+				}
+			}
 
-							double oneMinusLog;
+		}
+		// Divide sum by n, where n is the number of examples in the training data
+		double error = sum / (double) count;
 
-							if ((out[k].value == 1) && (dictionary[i][k] != 1)) {
-								//TODO: fix this
-								sum = Double.NEGATIVE_INFINITY;
-								return sum;
+		return error;
+	}
 
-							} else {
-								oneMinusLog = Math.log(1 - out[k].value);
-							}
+	/**
+	 * This function calculates the cross entropy error of a single example
+	 * that has already been fed through the network, with the activation
+	 * function applied to "out". The average of this over every example is
+	 * crossEntropyTotalError().
+	 *
+	 * @param out
+	 *            The array of cells that store the output of the network.
+	 * @param expected
+	 *            An array representing the expected values of the cells given
+	 *            in "out".
+	 * @return -(y*ln(x) + (1-y)*ln(1-x)), summed over every cell of "out",
+	 *         where y is the expected value of the cell and x is its actual
+	 *         value. If a cell is exactly 0 or 1 when it should not be, this
+	 *         is Double.NEGATIVE_INFINITY (see crossEntropyTotalError()).
+	 */
+	public static double crossEntropyError(Cell[] out, double[] expected) {
+		double sum = 0;
 
-							sum += (dictionary[i][k] * log) + ((1 - dictionary[i][k]) * oneMinusLog);
-						}
+		// For each cell in out...
+		for (int k = 0; k < out.length; k++) {
+			// Add y*ln(x) + (1-y)*ln(1-x) to the sum,
+			// where y is the expected value for this cell
+			// and x is the actual value for this cell
+			if (out[k].value != expected[k]) {
+				double log;
+				if ((out[k].value == 0) && (expected[k] != 0)) {
+					//TODO: fix this
+					return Double.NEGATIVE_INFINITY;
+				} else {
+					log = Math.log(out[k].value);
+				}
 
-					}
+				double oneMinusLog;
+
+				if ((out[k].value == 1) && (expected[k] != 1)) {
+					//TODO: fix this
+					return Double.NEGATIVE_INFINITY;
+
+				} else {
+					oneMinusLog = Math.log(1 - out[k].value);
 				}
+
+				sum += (expected[k] * log) + ((1 - expected[k]) * oneMinusLog);
 			}
 
 		}
-		// Multiply sum by -1/n, where n is the number of examples in the training data
-		double error = (sum * (0.0 - (1.0)))/(double) count;
-
-		return error;
+		return 0.0 - sum;
 	}
 	
 	//TODO: Document or take this out.
@@ -1608,11 +2170,6 @@ public class FSONNetwork {
 		dictionary[16][7] =1.0;
 		dictionary[17][8] =1.0;
 		
-		// Open and feed forward the first training input to create the connections
-		// used in backpropagation (training).
-		FSONNetwork.openHSVFileInput(colorNet.layers, learnInput[0]);
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, true);
-
 		// Use the learning function to learn using our newly processed input
 		// and newly created dictionary.
 		// Use the file "testlearnlfw.txt" to store our progress while learning.
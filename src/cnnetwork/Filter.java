@@ -1,96 +1,64 @@
 package cnnetwork;
 
-import java.util.LinkedList;
-
 public class Filter {
 	public double[][][] weights;// The actual stored weights of this filter
-	public double[][][] previousWeights;//Used to store the previous value of the weights to avoid using newly incremented weights before the a full iteration of the backpropagation is finished.
 	public double[][][] gradientValues;//The value of the gradient at each location. 
 	//Used during backpropagation to store previously computed values.
-	//This will always be with respect to the appropriate input because 
-	//these values are wiped right before a new input is used.
-	//A value of Double.NaN here indicates no gradient value has been computed yet
-	//for that location
+	public int[][][] gradientGenerations;//The generation (see Layer::generation) in which each entry of gradientValues was computed.
+	//An entry of gradientValues is only valid if this matches the generation of the filter's layer,
+	//so moving the layer on to a new generation invalidates every stored gradient at once.
 	public String equationAtFilter;// The equation used to calculate an output for this
 							// filter, stored in string form to be used with
 							// JavaCalculus
 							//TODO: Remove. Unnessecary.
-	public LinkedList<FilterConnection> connections;// A list of connections that use
-												// this filter, to be used in
-												// backpropagation.
 
-	public Filter(double[][][] weights, double[][][] previousWeights, double[][][] gradientValues, String equationAtFilter, LinkedList<FilterConnection> connections) {
+	public Filter(double[][][] weights, double[][][] gradientValues, String equationAtFilter) {
 		this.weights = weights;
-		this.previousWeights = previousWeights;
 		this.gradientValues = gradientValues;
+		this.gradientGenerations = new int[gradientValues.length][gradientValues[0].length][gradientValues[0][0].length];
 		this.equationAtFilter = equationAtFilter;
-		this.connections = connections;
 	}
 
 	/**
 	 * Default constructor for a filter with values.
-	 * Initializes the equation to an empty string and sets up 
-	 * the linked list.
+	 * Initializes the equation to an empty string.
 	 * @param weights 
 	 * 			A 3-dimensional array of doubles that are the actual
 	 * 			stored weights of this filter
 	 */
 	public Filter(double[][][] weights) {
 		this.weights = weights;
-		this.previousWeights = new double[weights.length][weights[0].length][weights[0][0].length];
-		
-		//Make a deep copy of the weights
-		// Depth
-		for (int l = 0; l < weights.length; l++) {
-			// Row
-			for (int m = 0; m < weights[0].length; m++) {
-				// Column
-				for (int n = 0; n < weights[0][0].length; n++) {
-					this.previousWeights[l][m][n] = this.weights[l][m][n];
-				}
-			}
-		}
-				
 		this.gradientValues = new double[weights.length][weights[0].length][weights[0][0].length];
-		
-		// Because java initializes arrays of doubles to 0, we need to set them
-		// to Double.NaN to indicate no gradient has been calculated yet.
-		// Depth
-		for (int l = 0; l < weights.length; l++) {
-			// Row
-			for (int m = 0; m < weights[0].length; m++) {
-				// Column
-				for (int n = 0; n < weights[0][0].length; n++) {
-					this.gradientValues[l][m][n] = Double.NaN;
-				}
-			}
-		}
+		this.gradientGenerations = new int[weights.length][weights[0].length][weights[0][0].length];
 				
 		this.equationAtFilter = "";
-		this.connections = new LinkedList<FilterConnection>();
 	}
 	
+	private Filter() {
+		this.equationAtFilter = "";
+	}
+
+	/**
+	 * Creates a filter that is only ever used to calculate outputs (see
+	 * WeightSnapshot), so it has no room for gradients.
+	 * @param weights
+	 * 			A 3-dimensional array of doubles that are the actual
+	 * 			stored weights of this filter
+	 * @return The filter.
+	 */
+	public static Filter withoutGradients(double[][][] weights) {
+		Filter filter = new Filter();
+		filter.weights = weights;
+		return filter;
+	}
+
 	//TODO: Function heading
 	public Filter(int depth, int rows, int cols) {
 		this.weights = new double[depth][rows][cols];
-		this.previousWeights = new double[depth][rows][cols];
-		this.gradientValues = new double[depth][rows][cols];;
-		
-		// Because java initializes arrays of doubles to 0, we need to set them
-		// to Double.NaN to indicate no gradient has been calculated yet.
-		// Depth
-		for (int l = 0; l < weights.length; l++) {
-			// Row
-			for (int m = 0; m < weights[0].length; m++) {
-				// Column
-				for (int n = 0; n < weights[0][0].length; n++) {
-					this.gradientValues[l][m][n] = Double.NaN;
-				}
-			}
-		}
+		this.gradientValues = new double[depth][rows][cols];
+		this.gradientGenerations = new int[depth][rows][cols];
 				
 		this.equationAtFilter = "";
-		this.connections = new LinkedList<FilterConnection>();
 	}
 
 }
@@ -0,0 +1,92 @@
+package cnnetwork;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class holds the filters of a layer, in the order they were added.
+ * 
+ * The filters are kept in an array, so looking up a filter by its index takes
+ * the same time no matter how many filters the layer has. This matters because
+ * every layer kernel (see Layer::convolution(), Layer::pool(), Layer::local()
+ * and Layer::full()) and every step of backpropagation looks filters up by
+ * index from inside a loop over all the filters.
+ * 
+ * The filters can also be walked in order with a for-each loop.
+ * 
+ * @author Paula Rudy
+ *
+ */
+public class FilterBank implements Iterable<Filter> {
+
+	private Filter[] filters;// The filters, in order. Only the first "size" entries are used.
+	private int size;// The number of filters in this bank
+
+	public FilterBank() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            The number of filters to make room for up front. The bank
+	 *            still grows past this if needed.
+	 */
+	public FilterBank(int capacity) {
+		this.filters = new Filter[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	/**
+	 * This function adds a filter to the end of this bank.
+	 * 
+	 * @param filter
+	 *            The filter to add. Its index will be the old size of the bank.
+	 */
+	public void add(Filter filter) {
+		if (size == filters.length) {
+			filters = Arrays.copyOf(filters, filters.length * 2);
+		}
+		filters[size] = filter;
+		size++;
+	}
+
+	/**
+	 * @param index
+	 *            The index of the filter to find.
+	 * @return The filter at "index".
+	 */
+	public Filter get(int index) {
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return filters[index];
+	}
+
+	/**
+	 * @return The number of filters in this bank.
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<Filter> iterator() {
+		return new Iterator<Filter>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public Filter next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return filters[next++];
+			}
+		};
+	}
+}
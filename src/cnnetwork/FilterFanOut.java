@@ -0,0 +1,82 @@
+package cnnetwork;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class splits the filters of a layer between the threads of a
+ * work-stealing pool (see ForkJoinPool). The range of filters is halved until
+ * each piece is small enough, and idle threads steal the pieces that have not
+ * been started yet, so filters that take longer than others (or threads that
+ * are slowed down) do not hold up the rest of the layer.
+ *
+ * The work done for each filter must only write to what belongs to that
+ * filter (its own gradients, weights or bias), and only read what was
+ * finished before the fan-out started, so no locks are needed.
+ *
+ * @author Paula Rudy
+ *
+ */
+class FilterFanOut extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	// The number of pieces given to each thread of the pool, so there is something to steal
+	private static final int PIECES_PER_THREAD = 4;
+
+	/**
+	 * The work done for a range of filters.
+	 */
+	interface Kernel {
+		/**
+		 * @param start
+		 *            The first filter to work on.
+		 * @param end
+		 *            One past the last filter to work on.
+		 */
+		void filters(int start, int end);
+	}
+
+	private final Kernel kernel;// The work done for each range of filters
+	private final int start;// The first filter of this piece
+	private final int end;// One past the last filter of this piece
+	private final int grain;// The most filters a piece is left with before it is worked on
+
+	private FilterFanOut(Kernel kernel, int start, int end, int grain) {
+		this.kernel = kernel;
+		this.start = start;
+		this.end = end;
+		this.grain = grain;
+	}
+
+	/**
+	 * This function runs a kernel over filters 0 to "K" - 1, and returns once
+	 * every filter is done.
+	 *
+	 * @param pool
+	 *            The pool to split the filters between, or null to work on
+	 *            every filter in the calling thread, in order.
+	 * @param K
+	 *            The number of filters.
+	 * @param kernel
+	 *            The work done for each range of filters.
+	 */
+	static void run(ForkJoinPool pool, int K, Kernel kernel) {
+		if ((pool == null) || (K < 2)) {
+			kernel.filters(0, K);
+			return;
+		}
+		int grain = Math.max(1, K / (pool.getParallelism() * PIECES_PER_THREAD));
+		pool.invoke(new FilterFanOut(kernel, 0, K, grain));
+	}
+
+	@Override
+	protected void compute() {
+		if ((end - start) <= grain) {
+			kernel.filters(start, end);
+			return;
+		}
+		int middle = (start + end) >>> 1;
+		invokeAll(new FilterFanOut(kernel, start, middle, grain), new FilterFanOut(kernel, middle, end, grain));
+	}
+}
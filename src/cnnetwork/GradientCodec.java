@@ -0,0 +1,43 @@
+package cnnetwork;
+
+/**
+ * This interface is implemented by every way of packing an array of
+ * gradients into bytes to send between processes (see GradientCompression).
+ * Codecs are self contained: the bytes hold everything needed to decode them
+ * (including the number of values), so they can be sent over any transport.
+ *
+ * Most codecs lose some precision (or some values). To make sure nothing is
+ * lost for good, wrap a codec in an ErrorFeedback, which carries whatever a
+ * codec lost over into the next array it encodes.
+ *
+ * A codec may keep scratch space between calls, so each thread should use
+ * its own.
+ *
+ * @author Paula Rudy
+ *
+ */
+public interface GradientCodec {
+
+	/**
+	 * This function packs an array of values into bytes.
+	 *
+	 * @param values
+	 *            The values to pack.
+	 * @return The packed values.
+	 */
+	byte[] encode(double[] values);
+
+	/**
+	 * This function unpacks bytes made by encode() (by a codec of the same
+	 * kind). Every value the codec did not keep is set to 0.
+	 *
+	 * @param encoded
+	 *            The packed values.
+	 * @param values
+	 *            The array to unpack into. It must be the same length as the
+	 *            array that was packed.
+	 * @throws IllegalArgumentException
+	 *             Thrown if "values" is not the length that was packed.
+	 */
+	void decode(byte[] encoded, double[] values);
+}
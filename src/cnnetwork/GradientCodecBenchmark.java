@@ -0,0 +1,111 @@
+package cnnetwork;
+
+import java.util.Random;
+
+/**
+ * This class measures every GradientCodec on an array of gradients the size
+ * of the largest layer of FSONNetwork::sampleNetwork() (2048 x 2016 weights),
+ * and prints, for each codec:
+ *
+ * - the time to encode and decode the array,
+ *
+ * - the size of the packed array, and how many times smaller it is than the
+ * array of doubles,
+ *
+ * - the error of a single decoded array (the root mean square of the
+ * difference, relative to the root mean square of the gradients), and
+ *
+ * - the same error for the sum of 20 arrays sent through an ErrorFeedback,
+ * which shows how much of what a codec drops is made up for over time.
+ *
+ * Run it with:
+ *
+ * java -cp ... cnnetwork.GradientCodecBenchmark [number of gradients]
+ *
+ * @author Paula Rudy
+ *
+ */
+public class GradientCodecBenchmark {
+
+	private static final int REPEATS = 5;// The number of timed runs of each codec
+	private static final int STEPS = 20;// The number of arrays sent through the error feedback
+
+	public static void main(String[] args) {
+		int length = (args.length > 0) ? Integer.parseInt(args[0]) : (2048 * 2016);
+		double[] gradients = gradients(length, 1);
+		double[] decoded = new double[length];
+
+		String[] names = { "NONE", "FP16", "INT8", "TOP_K 10%", "TOP_K 1%" };
+		GradientCodec[] codecs = { new DenseCodec(), new HalfPrecisionCodec(), new ByteQuantizationCodec(),
+				new TopKCodec(0.1), new TopKCodec(0.01) };
+
+		System.out.println(length + " gradients (" + (8L * length) + " bytes as doubles)");
+		System.out.println("codec,encode ms,decode ms,bytes,ratio,error,error with feedback over " + STEPS + " steps");
+
+		for (int c = 0; c < codecs.length; c++) {
+			GradientCodec codec = codecs[c];
+
+			// Warm up, then time
+			byte[] encoded = codec.encode(gradients);
+			codec.decode(encoded, decoded);
+			long encodeTime = 0;
+			long decodeTime = 0;
+			for (int r = 0; r < REPEATS; r++) {
+				long start = System.nanoTime();
+				encoded = codec.encode(gradients);
+				long middle = System.nanoTime();
+				codec.decode(encoded, decoded);
+				long end = System.nanoTime();
+				encodeTime += middle - start;
+				decodeTime += end - middle;
+			}
+
+			double error = relativeError(gradients, decoded);
+
+			// The sum of several steps, with and without what was dropped carried over
+			ErrorFeedback feedback = new ErrorFeedback(codec, length);
+			double[] total = new double[length];
+			double[] sent = new double[length];
+			for (int step = 0; step < STEPS; step++) {
+				double[] values = gradients(length, 100 + step);
+				codec.decode(feedback.encode(values), decoded);
+				for (int i = 0; i < length; i++) {
+					total[i] += values[i];
+					sent[i] += decoded[i];
+				}
+			}
+
+			System.out.println(names[c] + "," + ((encodeTime / REPEATS) / 1e6) + "," + ((decodeTime / REPEATS) / 1e6)
+					+ "," + encoded.length + "," + ((8.0 * length) / encoded.length) + "," + error + ","
+					+ relativeError(total, sent));
+		}
+	}
+
+	/**
+	 * @return "length" random gradients: mostly small, with a few large ones,
+	 *         the way the gradients of a large layer usually look.
+	 */
+	private static double[] gradients(int length, long seed) {
+		Random random = new Random(seed);
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = random.nextGaussian() * ((random.nextInt(50) == 0) ? 1.0 : 0.001);
+		}
+		return values;
+	}
+
+	/**
+	 * @return The root mean square of the difference between two arrays,
+	 *         divided by the root mean square of the first.
+	 */
+	private static double relativeError(double[] expected, double[] actual) {
+		double difference = 0.0;
+		double size = 0.0;
+		for (int i = 0; i < expected.length; i++) {
+			double d = expected[i] - actual[i];
+			difference += d * d;
+			size += expected[i] * expected[i];
+		}
+		return Math.sqrt(difference / size);
+	}
+}
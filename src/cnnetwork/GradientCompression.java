@@ -0,0 +1,71 @@
+package cnnetwork;
+
+/**
+ * An enum used to indicate how gradients are packed when they are sent
+ * between processes (see GradientCodec):
+ * Not at all- full doubles (NONE, see DenseCodec),
+ * Only the largest fraction of them (TOP_K, see TopKCodec),
+ * Half precision floats (FP16, see HalfPrecisionCodec),
+ * or
+ * One byte each, with a scale per block (INT8, see ByteQuantizationCodec).
+ */
+public enum GradientCompression {
+	NONE, TOP_K, FP16, INT8;
+
+	/**
+	 * @param fraction
+	 *            The fraction of the values TOP_K keeps. Ignored by the
+	 *            others.
+	 * @return A new codec of this kind.
+	 */
+	public GradientCodec codec(double fraction) {
+		switch (this) {
+		case TOP_K:
+			return new TopKCodec(fraction);
+		case FP16:
+			return new HalfPrecisionCodec();
+		case INT8:
+			return new ByteQuantizationCodec();
+		default:
+			return new DenseCodec();
+		}
+	}
+
+	public static GradientCompression fromString(String compression) {
+		switch (compression) {
+		case "NONE":
+			return GradientCompression.NONE;
+		case "TOP_K":
+			return GradientCompression.TOP_K;
+		case "FP16":
+			return GradientCompression.FP16;
+		case "INT8":
+			return GradientCompression.INT8;
+		default:
+			throw new IllegalArgumentException("Invalid GradientCompression: " + compression);
+		}
+	}
+
+	/**
+	 * @param count
+	 *            The number of values packed.
+	 * @return The most bytes any codec packs "count" values into. This is
+	 *         TOP_K keeping every value (8 bytes of header, and an index and
+	 *         a float for each value), which is 4 bytes more than NONE (see
+	 *         DenseCodec).
+	 */
+	public static long maxEncodedLength(int count) {
+		return 8L + (8L * count);
+	}
+
+	/**
+	 * This function checks that an array is the length of the array that was
+	 * packed (see GradientCodec::decode()).
+	 */
+	static void checkLength(int encoded, double[] values) {
+		if (encoded != values.length) {
+			throw new IllegalArgumentException(
+					"Packed " + encoded + " values, but asked to unpack " + values.length);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package cnnetwork;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * This codec packs every value as an IEEE 754 half precision float (2 bytes),
+ * a quarter of the size of a double. Values are rounded to the nearest half
+ * precision float (ties to even), which keeps about 3 significant digits.
+ * Values too large for half precision (beyond +/-65504) are clamped to the
+ * largest half precision float, and values too small become subnormals or 0.
+ *
+ * Layout: the number of values (int), then each value (short).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class HalfPrecisionCodec implements GradientCodec {
+
+	private static final int MAX_HALF = 0x7bff;// The largest finite half precision float (65504)
+	private static final float MIN_NORMAL = 6.1035156e-5f;// The smallest normal half precision float (2^-14)
+
+	@Override
+	public byte[] encode(double[] values) {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + (2 * values.length));
+		buffer.putInt(values.length);
+		ShortBuffer halves = buffer.asShortBuffer();
+		for (int i = 0; i < values.length; i++) {
+			halves.put(toHalf((float) values[i]));
+		}
+		return buffer.array();
+	}
+
+	@Override
+	public void decode(byte[] encoded, double[] values) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		GradientCompression.checkLength(buffer.getInt(), values);
+		ShortBuffer halves = buffer.asShortBuffer();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = toFloat(halves.get());
+		}
+	}
+
+	/**
+	 * @return The bits of the half precision float nearest to "value".
+	 */
+	public static short toHalf(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		float magnitude = Math.abs(value);
+
+		if (Float.isNaN(value)) {
+			return (short) (sign | 0x7e00);
+		}
+		if (magnitude < MIN_NORMAL) {
+			// Subnormal: a multiple of 2^-24 (rounding up to 1024 gives the smallest normal)
+			return (short) (sign | Math.round(magnitude * 16777216.0f));
+		}
+
+		// Keep the top 10 bits of the mantissa, rounding to the nearest (ties to even).
+		// A carry out of the mantissa moves on into the exponent, which is still correct.
+		int exponent = Math.getExponent(magnitude) + 15;
+		int mantissa = bits & 0x7fffff;
+		int kept = mantissa >>> 13;
+		int rest = mantissa & 0x1fff;
+		if ((rest > 0x1000) || ((rest == 0x1000) && ((kept & 1) == 1))) {
+			kept++;
+		}
+		int half = (exponent << 10) + kept;
+		return (short) (sign | Math.min(half, MAX_HALF));
+	}
+
+	/**
+	 * @return The value of a half precision float.
+	 */
+	public static float toFloat(short half) {
+		int bits = half & 0xffff;
+		int sign = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1f;
+		int mantissa = bits & 0x3ff;
+
+		if (exponent == 0) {
+			// Zero or subnormal
+			float magnitude = mantissa / 16777216.0f;
+			return (sign == 0) ? magnitude : -magnitude;
+		}
+		if (exponent == 0x1f) {
+			// Infinity or NaN
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+}
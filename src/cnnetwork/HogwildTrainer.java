@@ -0,0 +1,267 @@
+package cnnetwork;
+
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class trains a network asynchronously, in the style of "Hogwild!":
+ * several worker threads each take inputs from a shared queue, feed them
+ * forward and backward, and move the network's shared weights and biases as
+ * soon as their own batch is done, without any locks.
+ *
+ * A worker may therefore calculate its gradients from weights that other
+ * workers move before it is done (a "stale" update), and two workers may write
+ * the same weights at the same time (a "conflict"), in which case one of the
+ * two changes to a weight can be lost. This works well when the updates of
+ * different inputs mostly touch different weights (such as the separate
+ * filters of a locally connected layer, or the rows of a wide fully connected
+ * layer), and lets every thread work all the time instead of waiting for the
+ * rest of a batch (see DataParallelTrainer). How often each happens is
+ * counted in "statistics" (see TrainingStatistics), to judge whether training
+ * still converges.
+ *
+ * Each worker has its own Workspace and BackwardEngine, so the only state the
+ * workers share is the weights and biases.
+ *
+ * To use it, hand each input to submit() (which copies it, so the caller can
+ * load the next input into the same tensor right away), then call finish()
+ * to wait for every input to be learned and stop the workers.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class HogwildTrainer {
+
+	public final int batch;// The number of inputs each worker learns before it moves the weights
+	public final int threads;// The number of workers
+	public final TrainingStatistics statistics;// How stale the updates were, and how often they overlapped
+	public volatile LossTracker tracker;// If not null, the cross entropy error of every input learned is recorded here
+	public volatile double learningRate;// How "far" each weight and bias moves. Can be changed while the workers are running.
+	private final LinkedList<Layer> layers;// The layers that make up the network
+	private final int outputs;// The number of cells in the output of the network
+	private final boolean independent;// If true, the output uses the sigmoid activation function, otherwise softmax (see FSONNetwork::learn())
+	private final BlockingQueue<Example> queue;// Inputs waiting for a worker
+	private final BackwardEngine[] engines;// [worker] The errors and gradients of each worker's last batch
+	private final Thread[] workers;// The worker threads
+	private final AtomicLong version = new AtomicLong();// The number of updates made to the weights so far
+	private final AtomicReference<Exception> failure = new AtomicReference<Exception>();// The first exception thrown by a worker
+
+	// Handed to each worker to tell it there are no more inputs
+	private static final Example END = new Example(null, null);
+
+	/**
+	 * A single input, along with its expected output.
+	 */
+	private static class Example {
+		final Tensor input;
+		final double[] expected;
+
+		Example(Tensor input, double[] expected) {
+			this.input = input;
+			this.expected = expected;
+		}
+	}
+
+	/**
+	 * Creates a trainer for a network, and starts its workers.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param outputs
+	 *            The number of cells in the output of the network ("out").
+	 * @param batch
+	 *            The number of inputs each worker learns before it moves the
+	 *            weights.
+	 * @param threads
+	 *            The number of workers.
+	 * @param independent
+	 *            If true, the sigmoid activation function is applied to the
+	 *            output of the network, otherwise the softmax activation
+	 *            function is (see FSONNetwork::learn()).
+	 * @param learningRate
+	 *            How "far" each weight and bias moves.
+	 * @param statistics
+	 *            The counters to record every update in.
+	 */
+	public HogwildTrainer(LinkedList<Layer> layers, int outputs, int batch, int threads, boolean independent,
+			double learningRate, TrainingStatistics statistics) {
+		this.layers = layers;
+		this.outputs = outputs;
+		this.batch = batch;
+		this.threads = threads;
+		this.independent = independent;
+		this.learningRate = learningRate;
+		this.statistics = statistics;
+		this.queue = new ArrayBlockingQueue<Example>(2 * threads * batch);
+		this.engines = new BackwardEngine[threads];
+		this.workers = new Thread[threads];
+
+		for (int w = 0; w < threads; w++) {
+			engines[w] = new BackwardEngine(layers, outputs, batch);
+			final int worker = w;
+			workers[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						work(worker);
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+						// Keep taking inputs, so submit() never waits on a dead worker
+						drain();
+					}
+				}
+			}, "fson-hogwild-" + w);
+			workers[w].setDaemon(true);
+			workers[w].start();
+		}
+	}
+
+	/**
+	 * This function copies an input, and hands it to the next free worker.
+	 * This waits if every worker is busy and the queue is full.
+	 *
+	 * @param input
+	 *            The input, the same shape as the first layer.
+	 * @param expected
+	 *            The expected output of the network for this input.
+	 * @throws Exception
+	 *             Thrown if a worker has failed (the worker's exception is
+	 *             rethrown).
+	 */
+	public void submit(Tensor input, double[] expected) throws Exception {
+		checkFailure();
+		Tensor copy = new Tensor(input.depth, input.rows, input.columns);
+		System.arraycopy(input.values, 0, copy.values, 0, input.size());
+		queue.put(new Example(copy, expected));
+	}
+
+	/**
+	 * This function waits for every input handed to submit() to be learned,
+	 * then stops the workers. Any inputs left over in a worker's last batch are
+	 * learned as a smaller batch. The trainer cannot be used afterwards.
+	 *
+	 * @throws Exception
+	 *             Thrown if a worker has failed (the worker's exception is
+	 *             rethrown).
+	 */
+	public void finish() throws Exception {
+		for (int w = 0; w < threads; w++) {
+			queue.put(END);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		checkFailure();
+	}
+
+	/**
+	 * This function stops the workers without waiting for the inputs handed
+	 * to submit() to be learned, for when learning stops early. Each worker
+	 * only learns the inputs it has already taken from the queue. Nothing is
+	 * done if finish() has already stopped them. The trainer cannot be used
+	 * afterwards.
+	 */
+	public void close() {
+		queue.clear();
+		for (int w = 0; w < threads; w++) {
+			queue.offer(END);
+		}
+	}
+
+	/**
+	 * @return The backward engine holding the gradients of the last batch
+	 *         learned by a worker.
+	 */
+	public BackwardEngine engine(int worker) {
+		return engines[worker];
+	}
+
+	/**
+	 * This function takes inputs from the queue until it is told to stop,
+	 * moving the weights after every "batch" inputs.
+	 */
+	private void work(int worker) throws Exception {
+		Workspace workspace = new Workspace(layers, outputs, batch);
+		Cell[] scratch = new Cell[outputs];
+		for (int k = 0; k < outputs; k++) {
+			scratch[k] = new Cell();
+		}
+		double[][] expected = new double[batch][];
+		int count = 0;
+
+		while (true) {
+			Example example = queue.take();
+			if (example == END) {
+				if (count > 0) {
+					step(worker, workspace, scratch, expected, count);
+				}
+				return;
+			}
+			workspace.setInput(count, example.input);
+			expected[count] = example.expected;
+			count++;
+			if (count == batch) {
+				step(worker, workspace, scratch, expected, count);
+				count = 0;
+			}
+		}
+	}
+
+	/**
+	 * This function learns a single batch of a worker's inputs, and moves the
+	 * shared weights without waiting for any other worker.
+	 */
+	private void step(int worker, Workspace workspace, Cell[] scratch, double[][] expected, int count)
+			throws Exception {
+		BackwardEngine engine = engines[worker];
+
+		// The weights are read from here on, so any update made after this is one this batch did not see
+		long read = version.get();
+
+		FSONNetwork.feedForward(layers, workspace);
+		workspace.activate(count, scratch, independent);
+		LossTracker losses = tracker;
+		if (losses != null) {
+			for (int n = 0; n < count; n++) {
+				workspace.getOutput(n, scratch);
+				losses.record(FSONNetwork.crossEntropyError(scratch, expected[n]));
+			}
+		}
+		engine.clear();
+		engine.accumulate(layers, workspace, expected, count);
+
+		long before = version.get();
+		engine.update(layers, learningRate);
+		long after = version.incrementAndGet();
+
+		// If any other update was counted while this one was being written, the two overlapped
+		statistics.record(before - read, (after - 1) != before);
+	}
+
+	/**
+	 * This function takes (and drops) inputs from the queue until it is told
+	 * to stop. It is used by a worker that has failed.
+	 */
+	private void drain() {
+		try {
+			while (queue.take() != END) {
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This function rethrows the first exception thrown by a worker, if there
+	 * was one.
+	 */
+	private void checkFailure() throws Exception {
+		Exception e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package cnnetwork;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the cells of the input files opened while learning (see
+ * FSONNetwork::openFileInput(), FSONNetwork::openHSVFileInput() and
+ * FSONNetwork::openFileInputBW()), so each file is only read, decoded,
+ * resized and converted once, rather than every time it is learned or its
+ * error is calculated.
+ *
+ * Each entry is found by the name of the file, the way it was opened (see
+ * Mode), and the shape of the cells it was opened into, since the same file
+ * gives different cells for each. The entries together hold at most "budget"
+ * bytes of cell values; once that is reached, the entries used least recently
+ * are dropped to make room.
+ *
+ * The cache can be used by several threads at once (see ParallelEvaluator).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class InputCache {
+
+	/**
+	 * The ways an input file can be opened.
+	 */
+	public enum Mode {
+		COLOR, HSV, BW
+	}
+
+	public final long budget;// The most bytes of cell values the cache holds
+	private final LinkedHashMap<Key, double[]> entries;// The cells of each file, from least to most recently used
+	private long bytes;// The number of bytes of cell values held
+	private long hits;// The number of files found in the cache
+	private long misses;// The number of files not found in the cache
+	private long evictions;// The number of entries dropped to make room
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param budget
+	 *            The most bytes of cell values the cache holds.
+	 */
+	public InputCache(long budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("Invalid input cache budget: " + budget);
+		}
+		this.budget = budget;
+		this.entries = new LinkedHashMap<Key, double[]>(16, 0.75f, true);
+	}
+
+	/**
+	 * This function copies the cells of a file into "cells", if the file is
+	 * in the cache.
+	 *
+	 * @param cells
+	 *            The cells to copy into (the first sample, if they hold a
+	 *            batch- see Tensor).
+	 * @param filename
+	 *            The name of the file.
+	 * @param mode
+	 *            The way the file is being opened.
+	 * @return True if the file was in the cache, and has been copied.
+	 */
+	public boolean load(Tensor cells, String filename, Mode mode) {
+		double[] values;
+		synchronized (this) {
+			values = entries.get(new Key(filename, mode, cells));
+			if (values == null) {
+				misses++;
+				return false;
+			}
+			hits++;
+		}
+		// Entries are never changed once stored, so they can be copied without the lock
+		System.arraycopy(values, 0, cells.values, 0, values.length);
+		return true;
+	}
+
+	/**
+	 * This function adds the cells a file has just been opened into to the
+	 * cache, dropping the entries used least recently if there is not enough
+	 * room for them. Cells larger than the whole budget are not kept.
+	 *
+	 * @param cells
+	 *            The cells the file was opened into (the first sample, if they
+	 *            hold a batch- see Tensor).
+	 * @param filename
+	 *            The name of the file.
+	 * @param mode
+	 *            The way the file was opened.
+	 */
+	public void store(Tensor cells, String filename, Mode mode) {
+		long size = 8L * cells.sampleStride;
+		if (size > budget) {
+			return;
+		}
+		double[] values = new double[cells.sampleStride];
+		System.arraycopy(cells.values, 0, values, 0, values.length);
+
+		synchronized (this) {
+			double[] old = entries.put(new Key(filename, mode, cells), values);
+			if (old != null) {
+				bytes -= 8L * old.length;
+			}
+			bytes += size;
+
+			Iterator<Map.Entry<Key, double[]>> eldest = entries.entrySet().iterator();
+			while (bytes > budget) {
+				bytes -= 8L * eldest.next().getValue().length;
+				eldest.remove();
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * This function empties the cache. The counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return The number of files found in the cache so far.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of files not found in the cache so far (each of
+	 *         which was read from disk).
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of entries dropped to make room so far.
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return The number of bytes of cell values held.
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of entries held.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * The name of a file, the way it was opened, and the shape of the cells it
+	 * was opened into.
+	 */
+	private static final class Key {
+		private final String filename;
+		private final Mode mode;
+		private final int depth;
+		private final int rows;
+		private final int columns;
+
+		Key(String filename, Mode mode, Tensor cells) {
+			this.filename = filename;
+			this.mode = mode;
+			this.depth = cells.depth;
+			this.rows = cells.rows;
+			this.columns = cells.columns;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return filename.equals(key.filename) && (mode == key.mode) && (depth == key.depth) && (rows == key.rows)
+					&& (columns == key.columns);
+		}
+
+		@Override
+		public int hashCode() {
+			return (((((filename.hashCode() * 31) + mode.hashCode()) * 31 + depth) * 31 + rows) * 31) + columns;
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package cnnetwork;
 
-import java.util.LinkedList;
-
 /**
  * This class contains all the code for the structure and function of a neural
  * network, including fully connected, locally connected, max pooling, and
@@ -21,10 +19,16 @@ public class Layer {
 	public int K;// The number of filters to be applied to this layer
 	public int step;// The "step" of the layer- the number of columns and rows between the filters
 	public int pad;// The number of zeros appended to the rows and columns at the edge of the layer when applying the filters.
-	public LinkedList<Cell> biases;// The list of biases to be applied, in the same order as the list of filters.
-	public LinkedList<Filter> filters;// The list of filters to be applied, in the same order as the list of biases.
+	public BiasBank biases;// The biases to be applied, in the same order as the filters.
+	public FilterBank filters;// The filters to be applied, in the same order as the biases.
 	public final LayerType type;// The type of this layer. This determines how the values for the next layer are calculated.
-	public Cell[][][] cells;// The actual 3 dimensional array that stores the cells for this layer.
+	public Tensor cells;// The actual 3 dimensional block of values and derivatives that stores the cells for this layer.
+	public final Connectivity connectivity;// Which cells of this layer are used to calculate which cells of the next layer.
+	private ConnectionIndex connectionIndex;// Which windows read each cell of this layer. Built the first time it is needed (see connectionIndex()).
+	private BiasIndex biasIndex;// Which cells of the next layer each bias is added into. Built the first time it is needed (see biasIndex()).
+	public int generation = 1;// The generation of the gradients stored in this layer's filters and biases (see resetGradients()).
+
+	public static boolean im2colConvolution = true;// If true, convolutional layers are calculated with the im2col engine (see ConvolutionEngine) instead of cell by cell. Both give the same results with the default DotKernel.SCALAR kernel.
 
 	public Layer(int collumns, int rows, int depth, int fcollumns, int frows, int fdepth, int k, int step, int pad,
 			LayerType type) {
@@ -37,29 +41,101 @@ public class Layer {
 		this.K = k;
 		this.step = step;
 		this.pad = pad;
-		this.biases = new LinkedList<Cell>();
-		this.filters = new LinkedList<Filter>();
+		// Maxpool layers have no filters or biases (see initLayer())
+		int bankSize = (type == LayerType.MAXPOOL) ? 0 : k;
+		this.biases = new BiasBank(bankSize);
+		this.filters = new FilterBank(bankSize);
 		this.type = type;
-		this.cells = new Cell[depth][rows][collumns];
+		this.cells = new Tensor(depth, rows, collumns);
+		this.connectivity = new Connectivity(this);
+	}
 
-		// Initialize the cells because java won't do it for you
-		// Depth
-		for (int l = 0; l < depth; l++) {
-			// Row
-			for (int m = 0; m < rows; m++) {
-				// Column
-				for (int n = 0; n < collumns; n++) {
-					this.cells[l][m][n] = new Cell();
-				}
-			}
+	/**
+	 * Creates a layer of the same shape as another, holding the given filters
+	 * and biases. The cells and connectivity of "shape" are shared rather than
+	 * allocated again, so this is only for layers that are read and never
+	 * written, such as those of a WeightSnapshot.
+	 * 
+	 * @param shape
+	 *            The layer whose shape, cells and connectivity are used.
+	 * @param filters
+	 *            The filters of the new layer.
+	 * @param biases
+	 *            The biases of the new layer, in the same order as the
+	 *            filters.
+	 */
+	Layer(Layer shape, FilterBank filters, BiasBank biases) {
+		this.collumns = shape.collumns;
+		this.rows = shape.rows;
+		this.depth = shape.depth;
+		this.Fcollumns = shape.Fcollumns;
+		this.Frows = shape.Frows;
+		this.Fdepth = shape.Fdepth;
+		this.K = shape.K;
+		this.step = shape.step;
+		this.pad = shape.pad;
+		this.biases = biases;
+		this.filters = filters;
+		this.type = shape.type;
+		this.cells = shape.cells;
+		this.connectivity = shape.connectivity;
+	}
+
+	/**
+	 * @return The index from each cell of this layer to the windows that read
+	 *         it (see ConnectionIndex). Since this only depends on the shape
+	 *         of the layer, it is built the first time it is asked for and
+	 *         then reused.
+	 */
+	public ConnectionIndex connectionIndex() {
+		if (connectionIndex == null) {
+			connectionIndex = new ConnectionIndex(connectivity);
+		}
+		return connectionIndex;
+	}
+
+	/**
+	 * @param output
+	 *            The tensor holding the cells this layer calculates, or null
+	 *            if this is the last layer of a network (the layer that
+	 *            calculates "out").
+	 * @return The index from each bias of this layer to the cells it is added
+	 *         into (see BiasIndex). It is built the first time it is asked
+	 *         for and then reused, unless the number of biases or the shape of
+	 *         "output" changes.
+	 */
+	public BiasIndex biasIndex(Tensor output) {
+		if ((biasIndex == null) || !biasIndex.matches(biases.size(), output)) {
+			biasIndex = new BiasIndex(connectivity, biases.size(), output);
 		}
+		return biasIndex;
+	}
+
+	/**
+	 * This function marks every gradient stored in this layer's filters and
+	 * biases, and every derivative stored in its cells, as "not found yet".
+	 * This takes the same (short) time no matter how big the layer is: the
+	 * layer is just moved on to a new generation, and anything stored in an
+	 * earlier generation is ignored.
+	 */
+	public void resetGradients() {
+		generation++;
+		cells.resetDerivatives();
 	}
 
 	/**
 	 * This function is used to initialize all the filters and biases for this
 	 * layer. All filter weights are initialized to 0.5, and all biases to 0.
+	 * 
+	 * Maxpool layers have no filters or biases: the window each output cell is
+	 * pooled from is found from "step" and the filter size (see pool()), so
+	 * nothing is created for them.
 	 */
 	public void initLayer() {
+		if (this.type == LayerType.MAXPOOL) {
+			return;
+		}
+
 		// Create and initialize the filters
 		for (int i = 0; i < this.K; i++) {
 			// Create the filter weights
@@ -80,16 +156,13 @@ public class Layer {
 	}
 
 	/**
-	 * This function computes a single output value. Previous values are used if
-	 * any of the input values have already been updated in this session of
-	 * backpropagation (if that paticular value has a partial derivative already
-	 * stored).
+	 * This function computes a single output value.
 	 * 
 	 * @param filter
 	 *            a three dimensional filter to apply
 	 * @param input
-	 *            the three dimensional array that contains the cells of the
-	 *            layer to be used in computation.
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
 	 * @param column
 	 *            [][][x] location of top left coordinate of input to apply
 	 *            filter to
@@ -111,38 +184,64 @@ public class Layer {
 	 *             Thrown when the activation function does not return a number
 	 *             (see activationFunction()).
 	 */
-	public static double compute(Filter filter, Cell[][][] input, int column, int row, int depth, Cell bias,
+	public static double compute(Filter filter, Tensor input, int column, int row, int depth, Cell bias,
+			boolean applyActivation) throws Exception {
+		return compute(filter, input, 0, column, row, depth, bias, applyActivation);
+	}
+
+	/**
+	 * This function computes a single output value for one sample of a batch
+	 * (see Tensor). It is otherwise the same as the function above.
+	 * 
+	 * @param filter
+	 *            a three dimensional filter to apply
+	 * @param input
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
+	 * @param sample
+	 *            which sample of "input" to apply the filter to
+	 * @param column
+	 *            [][][x] location of top left coordinate of input to apply
+	 *            filter to
+	 * @param row
+	 *            [][x][] location of top left coordinate of input to apply
+	 *            filter to
+	 * @param depth
+	 *            [x][][] location of top left coordinate of input to apply
+	 *            filter to
+	 * @param bias
+	 *            the bias to be used in this computation.
+	 * @param applyActivation
+	 *            A boolean indicating if the sigmoid activation function is to
+	 *            be applied to the resulting value.
+	 * @return the newly computed value to be stored into the next layer.
+	 * @throws Exception
+	 *             Thrown when the activation function does not return a number
+	 *             (see activationFunction()).
+	 */
+	public static double compute(Filter filter, Tensor input, int sample, int column, int row, int depth, Cell bias,
 			boolean applyActivation) throws Exception {
 		double result = 0.0;
+		double[] values = input.values;
 
-		// For every cell in the input array, using depth, row, and column as
+		// For every cell in the input tensor, using depth, row, and column as
 		// the starting point,
 		// multiply that value by the corresponding entry in the filter,
-		// and add it to the result
+		// and add it to the result.
+		// Each row of the filter lines up with a contiguous run of cells in the
+		// input, so only the start of that run needs to be calculated.
 		for (int i = 0; i < filter.weights.length; i++) {
 			for (int j = 0; j < filter.weights[0].length; j++) {
-				for (int k = 0; k < filter.weights[0][0].length; k++) {
-
-					// If the filter's weight at this position has been updated during this iteration...
-					if (!Double.isNaN(filter.gradientValues[i][j][k])){
-						//... use the previous version.
-						result += input[(depth + i)][(row + j)][(column + k)].value * filter.previousWeights[i][j][k];
-					} else {
-						result += input[(depth + i)][(row + j)][(column + k)].value * filter.weights[i][j][k];
-					}
-				}
+				int start = input.index(sample, (depth + i), (row + j), column);
+
+				// The whole row is handed to the selected kernel (see DotKernel).
+				result = DotKernel.selected.accumulate(result, values, start, filter.weights[i][j], 0,
+						filter.weights[0][0].length);
 			}
 
 		}
 		
-		// Add the bias
-		// If the bias's value has be updated during this iteration...
-		if (!Double.isNaN(bias.derivative)){
-			// ... use the previous version.
-			result+= bias.previousValue;
-		} else {
-			result += bias.value;// Add the bias
-		}
+		result += bias.value;// Add the bias
 
 		// If the result of this computation isn't going to be stored in the
 		// output of this network (if the input array is not from the last layer
@@ -160,8 +259,35 @@ public class Layer {
 	 * of the input selected (only at a single depth slice), given:
 	 * 
 	 * @param input
-	 *            the three dimensional array that contains the cells of the
-	 *            layer to be used in computation.
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
+	 * @param collumn
+	 *            [][][x] location of top left coordinate of input to find max
+	 *            in
+	 * @param row
+	 *            [][x][] location of top left coordinate of input to find max
+	 *            in
+	 * @param depth
+	 *            [x][][] location of top left coordinate of input to find max
+	 *            in
+	 * @param F
+	 *            dimension (F x F (@ the depth)) of section of input to find
+	 *            max in
+	 * @return The found maximum of that area
+	 */
+	public double computeMax(Tensor input, int collumn, int row, int depth, int F) {
+		return computeMax(input, 0, collumn, row, depth, F);
+	}
+
+	/**
+	 * This function computes a single maximum for one sample of a batch (see
+	 * Tensor). It is otherwise the same as the function above.
+	 * 
+	 * @param input
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
+	 * @param sample
+	 *            which sample of "input" to find the max in
 	 * @param collumn
 	 *            [][][x] location of top left coordinate of input to find max
 	 *            in
@@ -176,21 +302,23 @@ public class Layer {
 	 *            max in
 	 * @return The found maximum of that area
 	 */
-	public double computeMax(Cell[][][] input, int collumn, int row, int depth, int F) {
+	public double computeMax(Tensor input, int sample, int collumn, int row, int depth, int F) {
 
 		// Start with 0. Since every value is between 0 and 1,
 		// this is guaranteed to be <= to every cell value.
 		double result = 0.0;
+		double[] values = input.values;
 
 		// For every cell at this depth ("depth"), find the max value.
 		// Make sure not to go off the edge of the filter:
 		//		 "(j < F)"
 		// or the input:
-		//		 "((row + j) < input[0].length)"
-		for (int j = 0; ((j < F) && ((row + j) < input[0].length)); j++) {
-			for (int k = 0; ((k < F) && ((collumn + k) < input[0][0].length)); k++) {
-				if (result < input[depth][(row + j)][(collumn + k)].value) {
-					result = input[depth][(row + j)][(collumn + k)].value;
+		//		 "((row + j) < input.rows)"
+		for (int j = 0; ((j < F) && ((row + j) < input.rows)); j++) {
+			int start = input.index(sample, depth, (row + j), collumn);
+			for (int k = 0; ((k < F) && ((collumn + k) < input.columns)); k++) {
+				if (result < values[start + k]) {
+					result = values[start + k];
 				}
 			}
 		}
@@ -199,17 +327,18 @@ public class Layer {
 	}
 
 	/**
-	 * This function is used to compute the convolution of a layer.
+	 * This function is used to compute the convolution of a layer. If the
+	 * tensors hold a batch of samples (see Tensor), every sample is
+	 * calculated.
 	 * 
 	 * @param input
-	 *            the three dimensional array that contains the cells of the
-	 *            layer to be used in computation.
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
 	 * @param filters
 	 *            the list of three dimensional filters to apply to the input
 	 *            layer
 	 * @param output
-	 *            the three dimensional array of Cells to hold the calculated
-	 *            values of the convolution
+	 *            the tensor to hold the calculated values of the convolution
 	 * @param step
 	 *            the "step" of the input layer- the number of columns and rows
 	 *            between the filters
@@ -219,13 +348,6 @@ public class Layer {
 	 * @param biases
 	 *            the list of biases to be applied to the input layer, in the
 	 *            same order as the list of filters.
-	 * @param store
-	 *            An indication if this network should be set up or not. A
-	 *            "true" value here means that connections should be recorded
-	 *            because this is the first pass through the network and the
-	 *            structure needs to be recorded. A false value here means this
-	 *            is network is already set up and does not need to record
-	 *            connections (no connections will be recorded in this call).
 	 * @param applyActivation
 	 *            A boolean indicating if the sigmoid activation function is to
 	 *            be applied to the resulting values during the computations. A
@@ -235,30 +357,36 @@ public class Layer {
 	 *             Thrown when the activation function does not return a number
 	 *             (see activationFunction()).
 	 */
-	public void convolution(Cell[][][] input, LinkedList<Filter> filters, Cell[][][] output, int step, int padding,
-			LinkedList<Cell> biases, boolean store, boolean applyActivation) throws Exception {
+	public void convolution(Tensor input, FilterBank filters, Tensor output, int step, int padding,
+			BiasBank biases, boolean applyActivation) throws Exception {
+
+		// If the im2col engine is switched on, let it calculate every output
+		// value at once.
+		if (im2colConvolution) {
+			ConvolutionEngine.forCurrentThread().convolve(input, filters, output, step, biases, applyActivation);
+			return;
+		}
+
+		int samples = Math.min(input.batch, output.batch);
 
 		// For every filter and bias in the list
 		for (int l = 0; l < filters.size(); l++) {
+			Filter filter = filters.get(l);
+			Cell bias = biases.get(l);
 
 			// Iterate through the filters and input, calling "compute" to
 			// apply each filter at the correct location in turn.
 			// We are only working at a depth of 0 because the "compute"
 			// function will iterate through the full depth of the filters).
 
-			// Row
-			for (int j = 0; (j + filters.get(0).weights[0].length) <= input[0].length; j += step) {
-				// Column
-				for (int k = 0; (k + filters.get(0).weights[0][0].length) <= input[0][0].length; k += step) {
-
-					output[l][(j / step)][(k / step)].value = compute(filters.get(l), input, k, j, 0, biases.get(l),
-							applyActivation);
-
-					// If this is a new network...
-					if (store) {
-						// Record this connection. This information will be used during backpropagation.
-						filters.get(l).connections.add(new FilterConnection(l, new CellCoord(0, j, k),
-								new CellCoord(l, (j / step), (k / step))));
+			// Sample
+			for (int n = 0; n < samples; n++) {
+				// Row
+				for (int j = 0; (j + filters.get(0).weights[0].length) <= input.rows; j += step) {
+					// Column
+					for (int k = 0; (k + filters.get(0).weights[0][0].length) <= input.columns; k += step) {
+						output.values[output.index(n, l, (j / step), (k / step))] = compute(filter, input, n, k, j,
+								0, bias, applyActivation);
 					}
 				}
 			}
@@ -269,74 +397,68 @@ public class Layer {
 	/**
 	 * This function is used to compute the max pool of a layer.
 	 * 
+	 * No filters are used: the output cell at [l][r][c] is the maximum of the
+	 * f x f window of the input at depth "l" whose top left corner is at row
+	 * (r * step) and column (c * step). Backpropagation uses the same
+	 * arithmetic to find the windows a cell belongs to (see Connectivity).
+	 * If the tensors hold a batch of samples (see Tensor), every sample is
+	 * pooled.
+	 * 
 	 * @param input
-	 *            the three dimensional array that contains the cells of the
-	 *            layer to be used in computation.
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
 	 * @param output
-	 *            the three dimensional array of Cells to hold the calculated
-	 *            values of the max pool
+	 *            the tensor to hold the calculated values of the max pool
 	 * @param step
 	 *            the "step" of the input layer- the number of columns and rows
 	 *            between the sections of input used.
-	 * @param store
-	 *            An indication if this network should be set up or not. A
-	 *            "true" value here means that connections should be recorded
-	 *            because this is the first pass through the network and the
-	 *            structure needs to be recorded. A false value here means this
-	 *            is network is already set up and does not need to record
-	 *            connections (no connections will be recorded in this call).
 	 * @param f
 	 *            the size (f = width = height) of the section of input used in
 	 *            the pooling operation.
 	 */
-	public void pool(Cell[][][] input, LinkedList<Filter> filters, Cell[][][] output, int step, int f, boolean store) {
-
-		int filterNum = 0;// This is used to iterate over the list of filters necessary for backpropagation)
+	public void pool(Tensor input, Tensor output, int step, int f) {
 
 		// Iterate over the input, calling "computeMax" to pool at each location.
 		// Make sure not to go off the edge of the input 
-		// "((j + f) < input[0].length)".
+		// "((j + f) < input.rows)".
 		// (This check is not needed for depth because "computeMax" only
 		// operates on a single depth slice).
 
-		// Depth
-		for (int l = 0; l < input.length; l++) {
-			// Row
-			for (int j = 0; (j + f) <= input[0].length; j += step) {
-				// Column
-				for (int k = 0; (k + f) <= input[0][0].length; k += step) {
-					output[l][(j / step)][(k / step)].value = computeMax(input, k, j, l, f);
-
-					// If this is a new network...
-					if (store) {
-						// Record this connection. This information will be used during backpropagation.
-						filters.get(filterNum).connections.add(new FilterConnection(filterNum, new CellCoord(l, j, k),
-								new CellCoord(l, (j / step), (k / step))));
+		int samples = Math.min(input.batch, output.batch);
+
+		// Sample
+		for (int n = 0; n < samples; n++) {
+			// Depth
+			for (int l = 0; l < input.depth; l++) {
+				// Row
+				for (int j = 0; (j + f) <= input.rows; j += step) {
+					// Column
+					for (int k = 0; (k + f) <= input.columns; k += step) {
+						output.values[output.index(n, l, (j / step), (k / step))] = computeMax(input, n, k, j, l, f);
 					}
 
-					filterNum++;// Make sure to increment this so that you use the next filter each time.
-
 				}
 
 			}
-
 		}
 
 	}
 
 	/**
 	 * This function is used to calculate the locally connected output of a
-	 * layer.
+	 * layer. If the tensors hold a batch of samples (see Tensor), each filter
+	 * is applied to every sample before moving on to the next filter, so the
+	 * filter's weights are only loaded once.
 	 * 
 	 * @param input
-	 *            the three dimensional array that contains the cells of the
-	 *            layer to be used in computation.
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
 	 * @param filters
 	 *            the list of three dimensional filters to apply to the input
 	 *            layer
 	 * @param output
-	 *            the three dimensional array of Cells to hold the calculated
-	 *            values in cells of the local computations.
+	 *            the tensor to hold the calculated values in cells of the local
+	 *            computations.
 	 * @param step
 	 *            the "step" of the input layer- the number of columns and rows
 	 *            between the filters
@@ -346,13 +468,6 @@ public class Layer {
 	 * @param biases
 	 *            the list of biases to be applied to the input layer, in the
 	 *            same order as the list of filters.
-	 * @param store
-	 *            An indication if this network should be set up or not. A
-	 *            "true" value here means that connections should be recorded
-	 *            because this is the first pass through the network and the
-	 *            structure needs to be recorded. A false value here means this
-	 *            is network is already set up and does not need to record
-	 *            connections (no connections will be recorded in this call).
 	 * @param applyActivation
 	 *            A boolean indicating if the sigmoid activation function is to
 	 *            be applied to the resulting values during the computations. A
@@ -362,29 +477,28 @@ public class Layer {
 	 *             Thrown when the activation function does not return a number
 	 *             (see activationFunction()).
 	 */
-	public void local(Cell[][][] input, LinkedList<Filter> filters, Cell[][][] output, int step, int padding,
-			LinkedList<Cell> biases, boolean store, boolean applyActivation) throws Exception {
+	public void local(Tensor input, FilterBank filters, Tensor output, int step, int padding,
+			BiasBank biases, boolean applyActivation) throws Exception {
 
 		int filterNum = 0;// This is used to iterate over the list of filters ("filters") and biases ("biases").
+		int samples = Math.min(input.batch, output.batch);
 
 		// Iterate over the input, calling "compute" to calculate the result at each location.
 		// Make sure not to go off the edge of the input: 
-		// "(l + filters.get(0).length) <= input.length"
+		// "(l + filters.get(0).length) <= input.depth"
 
 		// Depth
-		for (int l = 0; (l + filters.get(0).weights.length) <= input.length; l++) {
+		for (int l = 0; (l + filters.get(0).weights.length) <= input.depth; l++) {
 			// Row
-			for (int j = 0; (j + filters.get(0).weights[0].length) <= input[0].length; j += step) {
+			for (int j = 0; (j + filters.get(0).weights[0].length) <= input.rows; j += step) {
 				// Column
-				for (int k = 0; (k + filters.get(0).weights[0][0].length) <= input[0][0].length; k += step) {
-					output[l][(j / step)][(k / step)].value = compute(filters.get(filterNum), input, k, j, l,
-							biases.get(filterNum), applyActivation);
-
-					// If this is a new network...
-					if (store) {
-						// Record this connection. This information will be used during backpropagation.
-						filters.get(filterNum).connections.add(new FilterConnection(filterNum, new CellCoord(l, j, k),
-								new CellCoord(l, (j / step), (k / step))));
+				for (int k = 0; (k + filters.get(0).weights[0][0].length) <= input.columns; k += step) {
+					Filter filter = filters.get(filterNum);
+					Cell bias = biases.get(filterNum);
+					// Sample
+					for (int n = 0; n < samples; n++) {
+						output.values[output.index(n, l, (j / step), (k / step))] = compute(filter, input, n, k, j, l,
+								bias, applyActivation);
 					}
 
 					filterNum++;// Make sure to increment this so that you use the next filter and bias each time.
@@ -400,14 +514,15 @@ public class Layer {
 	 * This function is used to calculate the fully connected output of a layer.
 	 * 
 	 * @param input
-	 *            the three dimensional array that contains the cells of the
-	 *            layer to be used in computation.
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
 	 * @param filters
 	 *            the list of three dimensional filters to apply to the input
 	 *            layer
 	 * @param output
-	 *            the three dimensional array of Cells to hold the calculated
-	 *            values in cells of the local computations.
+	 *            the array of Cells to hold the calculated values of the fully
+	 *            connected computations (one per filter). This is used when the
+	 *            output is the last "layer" of a network ("out").
 	 * @param step
 	 *            the "step" of the input layer- the number of columns and rows
 	 *            between the filters
@@ -417,13 +532,6 @@ public class Layer {
 	 * @param biases
 	 *            the list of biases to be applied to the input layer, in the
 	 *            same order as the list of filters.
-	 * @param store
-	 *            An indication if this network should be set up or not. A
-	 *            "true" value here means that connections should be recorded
-	 *            because this is the first pass through the network and the
-	 *            structure needs to be recorded. A false value here means this
-	 *            is network is already set up and does not need to record
-	 *            connections (no connections will be recorded in this call).
 	 * @param applyActivation
 	 *            A boolean indicating if the sigmoid activation function is to
 	 *            be applied to the resulting values during the computations. A
@@ -433,20 +541,67 @@ public class Layer {
 	 *             Thrown when the activation function does not return a number
 	 *             (see activationFunction()).
 	 */
-	public void full(Cell[][][] input, LinkedList<Filter> filters, Cell[] output, int step, int padding,
-			LinkedList<Cell> biases, boolean store, boolean applyActivation) throws Exception {
+	public void full(Tensor input, FilterBank filters, Cell[] output, int step, int padding,
+			BiasBank biases, boolean applyActivation) throws Exception {
 		// Apply each filter to the input.
 		// Because this is a fully connected layer, each filter is applied to the entire input array,
 		// so we do not need to iterate over the input 
 		// (the "compute" function will iterate through the full depth of the filter).
 		for (int f = 0; f < filters.size(); f++) {
 			output[f].value = compute(filters.get(f), input, 0, 0, 0, biases.get(f), applyActivation);
+		}
+	}
 
-			// If this is a new network...
-			if (store) {
-				// Record this connection. This information will be used during backpropagation.
-				filters.get(f).connections.add(new FilterConnection(f, new CellCoord(0, 0, 0), new CellCoord(0, 0, f)));
-			}
+	/**
+	 * This function is used to calculate the fully connected output of a layer.
+	 * 
+	 * @param input
+	 *            the tensor that contains the cells of the layer to be used in
+	 *            computation.
+	 * @param filters
+	 *            the list of three dimensional filters to apply to the input
+	 *            layer
+	 * @param output
+	 *            the tensor to hold the calculated values of the fully
+	 *            connected computations. The value calculated with filter "f"
+	 *            is stored in the "f"th cell of the tensor (of each sample, if
+	 *            the tensors hold a batch of samples- see Tensor).
+	 * @param step
+	 *            the "step" of the input layer- the number of columns and rows
+	 *            between the filters
+	 * @param padding
+	 *            the number of zeros to be appended to the rows and columns at
+	 *            the edge of the input layer when applying the filters.
+	 * @param biases
+	 *            the list of biases to be applied to the input layer, in the
+	 *            same order as the list of filters.
+	 * @param applyActivation
+	 *            A boolean indicating if the sigmoid activation function is to
+	 *            be applied to the resulting values during the computations. A
+	 *            "true" value here indicates that the activation function will
+	 *            be used.
+	 * @throws Exception
+	 *             Thrown when the activation function does not return a number
+	 *             (see activationFunction()).
+	 */
+	public void full(Tensor input, FilterBank filters, Tensor output, int step, int padding,
+			BiasBank biases, boolean applyActivation) throws Exception {
+		// Apply each filter to the input.
+		// Because this is a fully connected layer, each filter is applied to the entire input array,
+		// so we do not need to iterate over the input 
+		// (the "compute" function will iterate through the full depth of the filter).
+		int samples = Math.min(input.batch, output.batch);
+
+		// With more than one sample this is a matrix-matrix multiplication,
+		// which the im2col engine can do a block at a time.
+		if (samples > 1) {
+			ConvolutionEngine.forCurrentThread().fullyConnected(input, filters, output, samples, biases,
+					applyActivation);
+			return;
+		}
+
+		for (int f = 0; f < filters.size(); f++) {
+			output.values[f] = compute(filters.get(f), input, 0, 0, 0, biases.get(f), applyActivation);
 		}
 	}
 
@@ -551,10 +706,6 @@ public class Layer {
 		// Iterate over all the cells. Because this is a softmax "layer", it will be one dimensional
 		for (int i = 0; i < input.length; i++) {
 			input[i].value = softmaxActivationFunction(input[i].value, sum);
-			// Because this function is only used for processing BEFORE
-			// backpropagation, we don't need to worry about any stored
-			// derivatives being preserved.
-			input[i].derivative = Double.NaN;
 		}
 		
 		// If all the input is the same, then it should be equal to 1/n
@@ -0,0 +1,105 @@
+package cnnetwork;
+
+import java.util.Random;
+
+/**
+ * This class holds the settings that control how FSONNetwork::learn() trains
+ * a network. Every setting starts at a default that gives the original
+ * behavior of learn(), so only the settings of interest need to be changed:
+ *
+ * LearningOptions options = new LearningOptions();
+ * options.batchSize = 16;
+ * options.threads = Runtime.getRuntime().availableProcessors();
+ * FSONNetwork.learn(learningFactor, layers, out, input, iterations, dictionary, independent, saveFile, options);
+ *
+ * @author Paula Rudy
+ *
+ */
+public class LearningOptions {
+
+	public int batchSize = 1;// The number of inputs whose gradients are added up (see BackwardEngine::accumulate()) before the weights and biases are moved. 1 moves them after every input.
+	public int threads = 1;// The number of threads each batch is split between (see DataParallelTrainer), or the number of threads learning at once in HOGWILD mode. In SYNCHRONOUS mode each thread gets batchSize / threads of the inputs, so this should not be more than batchSize.
+	public int filterThreads = 1;// The number of threads the filters of each layer are split between while calculating and applying their gradients in SYNCHRONOUS mode (see BackwardEngine::pool). 1 works on them one after another.
+	public int evaluationInterval = 1;// The number of entries of "input" learned between full calculations of the error (see LossTracker). In between, the learning rate follows a moving average of the errors of the inputs just learned. 0 never calculates the full error.
+	public int evaluationSubset = 0;// If more than 0, each calculation of the error uses this many randomly picked entries of "input" instead of every entry, picked in an order drawn from "seed"
+	public int evaluationThreads = 1;// The number of threads each calculation of the error is split between (see ParallelEvaluator)
+	public double lossSmoothing = 0.05;// How far the error of each input learned moves the moving average of the error, from 0 (not at all) to 1 (all the way)
+	public String checkpointFile = null;// If set, binary checkpoints of the weights and biases (see Checkpointer) are written to this file instead of writing every cell, weight, and gradient to "saveFile" after every update
+	public long checkpointEvery = 0;// The number of inputs learned between checkpoints, or 0. With this and checkpointSeconds both 0, a checkpoint is taken after every update.
+	public long checkpointSeconds = 0;// The number of seconds between checkpoints, or 0
+	public String resumeFrom = null;// If set, learning carries on from this checkpoint (see Checkpoint), at the iteration and entry of "input" it was taken at, with the seed, learning rate and error it had reached. A text file written by an earlier run (see SaveFileReader) only holds the weights and biases (and older files only those of the first layer), so learning starts its iterations again from them. In PARAMETER_SERVER mode the workers pick their own order of the inputs, so learning can only be resumed from a checkpoint taken at the end of an iteration (such as the one written when learning finishes); the iterations still to go are learned, and a checkpoint taken part way through an iteration is rejected.
+	public long seed = new Random().nextLong();// The seed the random order of the inputs in every iteration is drawn from (see TrainingState). Set it to learn in the same order every time.
+	public String modelFile = null;// If set, the trained network is written to this file when learning finishes, ready to be memory mapped for inference (see MappedModel)
+	public WeightPublisher publisher = null;// If set, every update is counted by this publisher, which publishes snapshots of the weights that other threads can classify with while learning carries on (see WeightSnapshot). In HOGWILD and PARAMETER_SERVER mode only the final weights are published.
+	public long inputCacheBytes = 0;// If more than 0, and no cache is already set (see FSONNetwork::inputCache), the cells of each input file are kept in a cache of this many bytes while learning, so each file is only read and decoded once (see InputCache)
+	public TrainingMode mode = TrainingMode.SYNCHRONOUS;// How the weights are moved. In HOGWILD mode each of the threads moves the weights after every batchSize inputs of its own, without locks (see HogwildTrainer).
+	public int workers = 2;// The number of worker processes in PARAMETER_SERVER mode (see ParameterServer)
+	public int staleness = 0;// The most times the weights can be moved between a worker's pull and its push in PARAMETER_SERVER mode. 0 only accepts gradients calculated from the latest weights.
+	public GradientCompression compression = GradientCompression.NONE;// How workers pack their gradients in PARAMETER_SERVER mode (see GradientCodec). Anything lost is carried over into the next push (see ErrorFeedback).
+	public double topKFraction = 0.01;// The fraction of the gradients sent by GradientCompression.TOP_K
+	public String serverAddress = "127.0.0.1";// The address the parameter server listens on. Use "0.0.0.0" for workers on other machines.
+	public int serverPort = 0;// The port the parameter server listens on. 0 picks any free port.
+	public boolean launchWorkers = true;// If true, learn() starts the parameter server's workers as processes on this machine. Otherwise it waits for "workers" workers to connect (see ParameterServerWorker::main()).
+	public final TrainingStatistics statistics = new TrainingStatistics();// Filled in during HOGWILD and PARAMETER_SERVER training: how stale the updates were, and how often they overlapped (or were refused)
+
+	/**
+	 * Creates a set of options with every setting at its default.
+	 */
+	public LearningOptions() {
+	}
+
+	/**
+	 * This function checks that every setting is usable.
+	 *
+	 * @throws IllegalArgumentException
+	 *             Thrown if a setting is out of range.
+	 */
+	public void validate() {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid number of threads: " + threads);
+		}
+		if (filterThreads < 1) {
+			throw new IllegalArgumentException("Invalid number of filter threads: " + filterThreads);
+		}
+		if (evaluationInterval < 0) {
+			throw new IllegalArgumentException("Invalid evaluation interval: " + evaluationInterval);
+		}
+		if (evaluationSubset < 0) {
+			throw new IllegalArgumentException("Invalid evaluation subset: " + evaluationSubset);
+		}
+		if (evaluationThreads < 1) {
+			throw new IllegalArgumentException("Invalid number of evaluation threads: " + evaluationThreads);
+		}
+		if (!(lossSmoothing > 0.0) || (lossSmoothing > 1.0)) {
+			throw new IllegalArgumentException("Invalid loss smoothing: " + lossSmoothing);
+		}
+		if ((checkpointEvery < 0) || (checkpointSeconds < 0)) {
+			throw new IllegalArgumentException(
+					"Invalid checkpoint cadence: every " + checkpointEvery + " inputs, " + checkpointSeconds + " seconds");
+		}
+		if (inputCacheBytes < 0) {
+			throw new IllegalArgumentException("Invalid input cache budget: " + inputCacheBytes);
+		}
+		if (mode == null) {
+			throw new IllegalArgumentException("Invalid TrainingMode: " + mode);
+		}
+		if (workers < 1) {
+			throw new IllegalArgumentException("Invalid number of workers: " + workers);
+		}
+		if (staleness < 0) {
+			throw new IllegalArgumentException("Invalid staleness: " + staleness);
+		}
+		if (compression == null) {
+			throw new IllegalArgumentException("Invalid GradientCompression: " + compression);
+		}
+		if (!(topKFraction > 0.0) || (topKFraction > 1.0)) {
+			throw new IllegalArgumentException("Invalid top-k fraction: " + topKFraction);
+		}
+		if ((serverPort < 0) || (serverPort > 65535)) {
+			throw new IllegalArgumentException("Invalid server port: " + serverPort);
+		}
+	}
+}
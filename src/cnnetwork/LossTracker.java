@@ -0,0 +1,244 @@
+package cnnetwork;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * This class keeps track of the error of a network while it learns, so the
+ * learning rate (see FSONNetwork::learn()) can follow it without feeding every
+ * input through the network again after every input learned.
+ *
+ * Every input learned has already been fed forward, so its cross entropy
+ * error (see FSONNetwork::crossEntropyError()) costs nothing extra. Those
+ * errors are kept as an exponentially weighted moving average: each new error
+ * moves the average "smoothing" of the way towards it, so the average follows
+ * the error of roughly the last 1 / "smoothing" inputs.
+ *
+ * Every "interval" inputs learned, the error is calculated properly (see
+ * evaluate()), over every input or over "subset" randomly picked inputs,
+ * and the average starts again from that error. The subsets are drawn from
+ * "seed", each from its own generator, so the same seed always picks the same
+ * subsets, and a resumed run (see restore()) carries on with the subsets it
+ * would have picked. An interval of 1 with no
+ * subset calculates the whole error after every input, the way learn() always
+ * has.
+ *
+ * If "evaluator" is set, evaluations are split between its threads (see
+ * ParallelEvaluator).
+ *
+ * Errors can be recorded by several threads at once (see HogwildTrainer).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class LossTracker {
+
+	public final double smoothing;// How far each recorded error moves the average, from 0 (not at all) to 1 (all the way)
+	public final int interval;// The number of inputs learned between evaluations, or 0 to never evaluate
+	public final int subset;// The number of inputs each evaluation uses, or 0 to use every input
+	public final long seed;// The seed the subsets are drawn from
+	public ParallelEvaluator evaluator;// The evaluator used by evaluate(), or null to use FSONNetwork::crossEntropyTotalError()
+	private double average = Double.NaN;// The moving average of the recorded errors, or NaN if there is nothing to average
+	private double evaluated = Double.NaN;// The error found by the last evaluation (or reset())
+	private long recorded;// The number of errors recorded so far
+	private long evaluations;// The number of evaluations so far
+	private int sinceEvaluation;// The number of inputs learned since the last evaluation
+	private long subsets;// The number of subsets drawn so far
+
+	/**
+	 * Creates a tracker with nothing recorded, whose subsets are drawn from a
+	 * random seed.
+	 *
+	 * @param smoothing
+	 *            How far each recorded error moves the average, from 0 (not
+	 *            at all) to 1 (all the way).
+	 * @param interval
+	 *            The number of inputs learned between evaluations, or 0 to
+	 *            never evaluate.
+	 * @param subset
+	 *            The number of inputs each evaluation uses, or 0 to use every
+	 *            input.
+	 */
+	public LossTracker(double smoothing, int interval, int subset) {
+		this(smoothing, interval, subset, new Random().nextLong());
+	}
+
+	/**
+	 * Creates a tracker with nothing recorded.
+	 *
+	 * @param smoothing
+	 *            How far each recorded error moves the average, from 0 (not
+	 *            at all) to 1 (all the way).
+	 * @param interval
+	 *            The number of inputs learned between evaluations, or 0 to
+	 *            never evaluate.
+	 * @param subset
+	 *            The number of inputs each evaluation uses, or 0 to use every
+	 *            input.
+	 * @param seed
+	 *            The seed the subsets are drawn from (see
+	 *            LearningOptions::seed).
+	 */
+	public LossTracker(double smoothing, int interval, int subset, long seed) {
+		this.smoothing = smoothing;
+		this.interval = interval;
+		this.subset = subset;
+		this.seed = seed;
+	}
+
+	/**
+	 * This function adds the error of a single input to the average.
+	 *
+	 * @param error
+	 *            The cross entropy error of the input (see
+	 *            FSONNetwork::crossEntropyError()). Errors that are not finite
+	 *            (an output of exactly 0 or 1 that should not be) are counted
+	 *            but not averaged, since they would swamp every other error.
+	 */
+	public synchronized void record(double error) {
+		recorded++;
+		if (Double.isInfinite(error) || Double.isNaN(error)) {
+			return;
+		}
+		if (Double.isNaN(average)) {
+			average = error;
+		} else {
+			average += smoothing * (error - average);
+		}
+	}
+
+	/**
+	 * @return The current estimate of the error: the moving average of the
+	 *         errors recorded since the last evaluation, or the error found by
+	 *         the last evaluation if nothing usable has been recorded since.
+	 */
+	public synchronized double value() {
+		return Double.isNaN(average) ? evaluated : average;
+	}
+
+	/**
+	 * This function starts the average again from a known error.
+	 *
+	 * @param error
+	 *            The error of the network, calculated some other way (see
+	 *            FSONNetwork::crossEntropyTotalError()).
+	 */
+	public synchronized void reset(double error) {
+		evaluated = error;
+		average = (Double.isInfinite(error) || Double.isNaN(error)) ? Double.NaN : error;
+		sinceEvaluation = 0;
+	}
+
+	/**
+	 * This function records the average, the number of inputs learned since
+	 * the last evaluation, and the number of subsets drawn, in a state that
+	 * learning can be resumed from (see TrainingState). The error is not recorded here, since it is
+	 * already kept as TrainingState::error.
+	 *
+	 * @param state
+	 *            The state to record into.
+	 */
+	public synchronized void save(TrainingState state) {
+		state.average = average;
+		state.sinceEvaluation = sinceEvaluation;
+		state.subsets = subsets;
+	}
+
+	/**
+	 * This function carries on from a state recorded by save(), as if
+	 * learning had never stopped.
+	 *
+	 * @param state
+	 *            The state to carry on from.
+	 */
+	public synchronized void restore(TrainingState state) {
+		evaluated = state.error;
+		average = state.average;
+		sinceEvaluation = state.sinceEvaluation;
+		subsets = state.subsets;
+	}
+
+	/**
+	 * This function counts an input (or an entry of "input" holding several
+	 * inputs, see FSONNetwork::learn()) as learned.
+	 *
+	 * @return True if it is time for an evaluation (see evaluate()).
+	 */
+	public synchronized boolean step() {
+		sinceEvaluation++;
+		return (interval > 0) && (sinceEvaluation >= interval);
+	}
+
+	/**
+	 * This function calculates the error of the network (see
+	 * FSONNetwork::crossEntropyTotalError()) over every input, or over "subset"
+	 * randomly picked inputs, and starts the average again from it.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param out
+	 *            The array of cells that store the output of the network.
+	 * @param input
+	 *            See FSONNetwork::learn().
+	 * @param dictionary
+	 *            See FSONNetwork::learn().
+	 * @param independent
+	 *            See FSONNetwork::learn().
+	 * @return The error of the network.
+	 * @throws Exception
+	 *             See FSONNetwork::crossEntropyTotalError().
+	 */
+	public double evaluate(LinkedList<Layer> layers, Cell[] out, String[] input, double[][] dictionary,
+			boolean independent) throws Exception {
+		String[] picked = input;
+		double[][] pickedDictionary = dictionary;
+		if ((subset > 0) && (subset < input.length)) {
+			// The first "subset" inputs (that have something to learn) in a random order.
+			// Each subset has its own generator, so only the number drawn needs saving.
+			long drawn;
+			synchronized (this) {
+				drawn = subsets++;
+			}
+			Random random = new Random(seed + (drawn * 0x9E3779B97F4A7C15L));
+			ArrayList<Integer> randomList = UniqueRandomNumbers.getRandomSet(input.length, random);
+			picked = new String[subset];
+			pickedDictionary = new double[subset][];
+			int count = 0;
+			for (int r = 0; (r < input.length) && (count < subset); r++) {
+				int s = randomList.get(r);
+				if ((input[s] != null) && (!input[s].equals(""))) {
+					picked[count] = input[s];
+					pickedDictionary[count] = dictionary[s];
+					count++;
+				}
+			}
+		}
+
+		double error;
+		if (evaluator != null) {
+			error = evaluator.evaluate(picked, pickedDictionary, independent).error;
+		} else {
+			error = FSONNetwork.crossEntropyTotalError(layers, out, picked, pickedDictionary, independent);
+		}
+		synchronized (this) {
+			evaluations++;
+		}
+		reset(error);
+		return error;
+	}
+
+	/**
+	 * @return The number of errors recorded so far.
+	 */
+	public synchronized long recorded() {
+		return recorded;
+	}
+
+	/**
+	 * @return The number of evaluations so far.
+	 */
+	public synchronized long evaluations() {
+		return evaluations;
+	}
+}
@@ -0,0 +1,425 @@
+package cnnetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
+
+/**
+ * This class reads and writes model files: read-only binary files holding the
+ * shape of a trained network and every one of its weights and biases, laid
+ * out so they can be memory mapped and used where they are, without being
+ * read or copied.
+ *
+ * A model file is laid out as:
+ *
+ * - the magic number "FSONMODL", the version of the format, and the number
+ * of layers,
+ *
+ * - for each layer, the ten numbers that make up its shape (the arguments of
+ * the Layer constructor, with the type as LayerType::getValue()), followed by
+ * where in the file its weights and its biases start,
+ *
+ * - for each layer, its weights (filter by filter, each in [depth][row][column]
+ * order, as in ParameterVector) and then its biases. Each block starts on a
+ * multiple of ALIGNMENT bytes. Maxpool layers have neither.
+ *
+ * Every number is little endian, the byte order of the machines we run on, so
+ * the weights can be read straight out of the mapped file.
+ *
+ * Opening a model (see open()) only reads the table of layers: the weights are
+ * mapped read only, and the operating system pages them in the first time
+ * they are used. Since nothing is copied onto the heap, any number of
+ * processes opening the same file share one copy of the weights in the page
+ * cache. The weights are used in place by feedForward(); toLayers() copies
+ * them into ordinary layers when a network is needed to carry on learning.
+ *
+ * A model is written to a temporary file next to the real one, which is then
+ * renamed over it, so a process that has the old file mapped keeps the old
+ * weights rather than seeing them change (or disappear) under it.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class MappedModel {
+
+	public static final long MAGIC = 0x46534f4e4d4f444cL;// "FSONMODL"
+	public static final int VERSION = 1;// The version of the format written
+	public static final int ALIGNMENT = 64;// Every block of weights or biases starts on a multiple of this many bytes
+
+	private static final int HEADER = 16;// The number of bytes before the table of layers
+	private static final int ENTRY = 56;// The number of bytes in the table for each layer
+	private static final int CHUNK = 8192;// The number of values converted to bytes at once
+
+	public final LinkedList<Layer> layers;// The shape of the network. These layers have no filters or biases of their own.
+	private final DoubleBuffer[] weights;// [layer] The weights of each layer, in place in the file
+	private final DoubleBuffer[] biases;// [layer] The biases of each layer, in place in the file
+
+	private MappedModel(LinkedList<Layer> layers, DoubleBuffer[] weights, DoubleBuffer[] biases) {
+		this.layers = layers;
+		this.weights = weights;
+		this.biases = biases;
+	}
+
+	/**
+	 * This function writes a model file, replacing any file already there.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @throws IOException
+	 *             Thrown if the file cannot be written.
+	 */
+	public static void write(File file, LinkedList<Layer> layers) throws IOException {
+		// Work out where each block goes
+		long[] weightOffsets = new long[layers.size()];
+		long[] biasOffsets = new long[layers.size()];
+		long offset = HEADER + ((long) ENTRY * layers.size());
+		for (int i = 0; i < layers.size(); i++) {
+			Layer layer = layers.get(i);
+			weightOffsets[i] = align(offset);
+			offset = weightOffsets[i] + (8L * weightCount(layer));
+			biasOffsets[i] = align(offset);
+			offset = biasOffsets[i] + (8L * layer.biases.size());
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(CHUNK * 8).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putLong(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(layers.size());
+			for (int i = 0; i < layers.size(); i++) {
+				if (buffer.remaining() < ENTRY) {
+					drain(channel, buffer);
+				}
+				Layer layer = layers.get(i);
+				buffer.putInt(layer.collumns);
+				buffer.putInt(layer.rows);
+				buffer.putInt(layer.depth);
+				buffer.putInt(layer.Fcollumns);
+				buffer.putInt(layer.Frows);
+				buffer.putInt(layer.Fdepth);
+				buffer.putInt(layer.K);
+				buffer.putInt(layer.step);
+				buffer.putInt(layer.pad);
+				buffer.putInt(layer.type.getValue());
+				buffer.putLong(weightOffsets[i]);
+				buffer.putLong(biasOffsets[i]);
+			}
+			drain(channel, buffer);
+
+			for (int i = 0; i < layers.size(); i++) {
+				Layer layer = layers.get(i);
+				int expected = (layer.type == LayerType.MAXPOOL) ? 0 : layer.K;
+				if ((layer.filters.size() != expected) || (layer.biases.size() != expected)) {
+					throw new IOException("Layer " + i + " does not have " + expected + " filters and biases");
+				}
+				channel.position(weightOffsets[i]);
+				for (Filter filter : layer.filters) {
+					if ((filter.weights.length != layer.Fdepth) || (filter.weights[0].length != layer.Frows)
+							|| (filter.weights[0][0].length != layer.Fcollumns)) {
+						throw new IOException("A filter of layer " + i + " is not the size of the layer's filters");
+					}
+					for (double[][] plane : filter.weights) {
+						for (double[] row : plane) {
+							for (double weight : row) {
+								if (buffer.remaining() < 8) {
+									drain(channel, buffer);
+								}
+								buffer.putDouble(weight);
+							}
+						}
+					}
+				}
+				drain(channel, buffer);
+
+				channel.position(biasOffsets[i]);
+				for (Cell bias : layer.biases) {
+					if (buffer.remaining() < 8) {
+						drain(channel, buffer);
+					}
+					buffer.putDouble(bias.value);
+				}
+				drain(channel, buffer);
+			}
+			raf.setLength(offset);
+
+			// Make sure the new model is on disk before it replaces the old one
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
+
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * This function opens a model file, mapping its weights and biases rather
+	 * than reading them.
+	 *
+	 * @param file
+	 *            The file to open.
+	 * @return The model.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, or is not a model file, or
+	 *             is too short to hold the weights it describes.
+	 */
+	public static MappedModel open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// The mappings stay valid after the file is closed
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < HEADER) {
+				throw new IOException("Not a model file: " + file);
+			}
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong() != MAGIC) {
+				throw new IOException("Not a model file: " + file);
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unknown model version " + version + ": " + file);
+			}
+			int count = header.getInt();
+			if ((count < 1) || ((HEADER + ((long) ENTRY * count)) > length)) {
+				throw new IOException("The model file is damaged: " + file);
+			}
+
+			ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, (long) ENTRY * count)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			LinkedList<Layer> layers = new LinkedList<Layer>();
+			DoubleBuffer[] weights = new DoubleBuffer[count];
+			DoubleBuffer[] biases = new DoubleBuffer[count];
+			for (int i = 0; i < count; i++) {
+				int collumns = table.getInt();
+				int rows = table.getInt();
+				int depth = table.getInt();
+				int fcollumns = table.getInt();
+				int frows = table.getInt();
+				int fdepth = table.getInt();
+				int k = table.getInt();
+				int step = table.getInt();
+				int pad = table.getInt();
+				LayerType type = LayerType.fromString(String.valueOf(table.getInt()));
+				long weightOffset = table.getLong();
+				long biasOffset = table.getLong();
+
+				// The layer is only used for its shape, so initLayer() is not called
+				Layer layer = new Layer(collumns, rows, depth, fcollumns, frows, fdepth, k, step, pad, type);
+				layers.add(layer);
+				int biasCount = (type == LayerType.MAXPOOL) ? 0 : k;
+				weights[i] = map(channel, file, weightOffset, (long) biasCount * fdepth * frows * fcollumns, length);
+				biases[i] = map(channel, file, biasOffset, biasCount, length);
+			}
+			return new MappedModel(layers, weights, biases);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * This function carries out a forward pass through the network for every
+	 * input of a batch, reading the weights and biases straight out of the
+	 * mapped file. It calculates the same values as
+	 * FSONNetwork::feedForward(LinkedList, Workspace) would for the network
+	 * the file was written from (with the default DotKernel.SCALAR kernel). Please note that the desired inputs must
+	 * already be loaded into the first layer of the workspace (see
+	 * Workspace::setInput()).
+	 *
+	 * A model is never changed, so any number of threads can use it at once,
+	 * each with its own workspace.
+	 *
+	 * @param workspace
+	 *            The cells of every layer for each input, and the output of
+	 *            the network for each input (see Workspace(LinkedList, int,
+	 *            int), created with "layers").
+	 * @throws Exception
+	 *             Thrown when the activation function does not return a number
+	 *             (see Layer::activationFunction()).
+	 */
+	public void feedForward(Workspace workspace) throws Exception {
+		int last = layers.size() - 1;
+
+		//For all layers in this network but the last one before out...
+		for (int i = 0; i < last; i++) {
+			Layer layer = layers.get(i);
+			Tensor input = workspace.cells[i];
+			Tensor output = workspace.cells[i + 1];
+			int samples = Math.min(input.batch, output.batch);
+
+			switch (layer.type) {
+			case CONV:
+				for (int l = 0; l < layer.K; l++) {
+					for (int n = 0; n < samples; n++) {
+						for (int j = 0; (j + layer.Frows) <= input.rows; j += layer.step) {
+							for (int k = 0; (k + layer.Fcollumns) <= input.columns; k += layer.step) {
+								output.values[output.index(n, l, (j / layer.step), (k / layer.step))] = compute(i, l,
+										input, n, k, j, 0, true);
+							}
+						}
+					}
+				}
+				break;
+			case FULLY:
+				for (int f = 0; f < layer.K; f++) {
+					for (int n = 0; n < samples; n++) {
+						output.values[output.index(n, 0, 0, 0) + f] = compute(i, f, input, n, 0, 0, 0, true);
+					}
+				}
+				break;
+			case LOCAL:
+				int filterNum = 0;
+				for (int l = 0; (l + layer.Fdepth) <= input.depth; l++) {
+					for (int j = 0; (j + layer.Frows) <= input.rows; j += layer.step) {
+						for (int k = 0; (k + layer.Fcollumns) <= input.columns; k += layer.step) {
+							for (int n = 0; n < samples; n++) {
+								output.values[output.index(n, l, (j / layer.step), (k / layer.step))] = compute(i,
+										filterNum, input, n, k, j, l, true);
+							}
+							filterNum++;
+						}
+					}
+				}
+				break;
+			case MAXPOOL:
+				// Pooling uses no weights, so the layer can do this itself
+				layer.pool(input, output, layer.step, layer.Fcollumns);
+				break;
+			default:
+				break;
+			}
+		}
+
+		// Calculate the last layer's output for every input.
+		// This will always be a fully connected layer.
+		Tensor input = workspace.cells[last];
+		int samples = Math.min(input.batch, workspace.out.batch);
+		for (int f = 0; f < layers.get(last).K; f++) {
+			for (int n = 0; n < samples; n++) {
+				workspace.out.values[(n * workspace.out.sampleStride) + f] = compute(last, f, input, n, 0, 0, 0,
+						false);
+			}
+		}
+	}
+
+	/**
+	 * This function copies the model into ordinary layers, with their own
+	 * filters and biases, so the network can carry on learning.
+	 *
+	 * @return The layers that make up the network.
+	 */
+	public LinkedList<Layer> toLayers() {
+		LinkedList<Layer> copy = new LinkedList<Layer>();
+		for (int i = 0; i < layers.size(); i++) {
+			Layer shape = layers.get(i);
+			Layer layer = new Layer(shape.collumns, shape.rows, shape.depth, shape.Fcollumns, shape.Frows, shape.Fdepth,
+					shape.K, shape.step, shape.pad, shape.type);
+			layer.initLayer();
+			int w = 0;
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int c = 0; c < row.length; c++) {
+							row[c] = weights[i].get(w++);
+						}
+					}
+				}
+			}
+			for (int b = 0; b < layer.biases.size(); b++) {
+				layer.biases.get(b).value = biases[i].get(b);
+			}
+			copy.add(layer);
+		}
+		return copy;
+	}
+
+	/**
+	 * This function computes a single output value the same way as
+	 * Layer::compute(), with filter "filter" of layer "layer" read from the
+	 * mapped file.
+	 */
+	private double compute(int layer, int filter, Tensor input, int sample, int column, int row, int depth,
+			boolean applyActivation) throws Exception {
+		Layer shape = layers.get(layer);
+		DoubleBuffer filterWeights = weights[layer];
+		double[] values = input.values;
+		int w = filter * shape.Fdepth * shape.Frows * shape.Fcollumns;
+		double result = 0.0;
+		for (int i = 0; i < shape.Fdepth; i++) {
+			for (int j = 0; j < shape.Frows; j++) {
+				int start = input.index(sample, (depth + i), (row + j), column);
+				for (int k = 0; k < shape.Fcollumns; k++) {
+					result += values[start + k] * filterWeights.get(w++);
+				}
+			}
+		}
+
+		result += biases[layer].get(filter);// Add the bias
+
+		if (applyActivation) {
+			result = Layer.activationFunction(result);
+		}
+		return result;
+	}
+
+	/**
+	 * This function maps "count" doubles of a file, starting at "offset", as
+	 * a little endian buffer.
+	 */
+	private static DoubleBuffer map(FileChannel channel, File file, long offset, long count, long length)
+			throws IOException {
+		if ((offset < 0) || ((offset % 8) != 0) || (count > (Integer.MAX_VALUE / 8))
+				|| ((offset + (8 * count)) > length)) {
+			throw new IOException("The model file is damaged: " + file);
+		}
+		MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8 * count);
+		return mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	/**
+	 * @return The number of weights in a layer.
+	 */
+	private static long weightCount(Layer layer) {
+		return (long) layer.filters.size() * layer.Fdepth * layer.Frows * layer.Fcollumns;
+	}
+
+	/**
+	 * @return The first multiple of ALIGNMENT at or after "offset".
+	 */
+	private static long align(long offset) {
+		return ((offset + ALIGNMENT - 1) / ALIGNMENT) * ALIGNMENT;
+	}
+
+	/**
+	 * This function writes out everything put into a buffer, and empties it.
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
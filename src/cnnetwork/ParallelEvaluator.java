@@ -0,0 +1,266 @@
+package cnnetwork;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class feeds a whole set of inputs through a network, split between
+ * several threads, to find the total cross entropy error (the same as
+ * FSONNetwork::crossEntropyTotalError()), a confusion matrix, and the top 1
+ * and top "k" accuracy in a single pass (see EvaluationResult).
+ *
+ * Each thread opens its own inputs into its own cells, and feeds them forward
+ * "batch" at a time through its own Workspace, so the only thing the threads
+ * share is the (unchanged) weights and biases. Threads take the next entry of
+ * "input" whenever they are ready, so a thread held up by a slow file does not
+ * hold up the rest.
+ *
+ * Each thread keeps its own counts, and the error of each entry of "input" is
+ * kept on its own, so the results are added up in the same order however the
+ * entries were split between the threads.
+ *
+ * The weights must not change while an evaluation is running (except in
+ * HOGWILD mode, where the error is only a guide for the learning rate).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ParallelEvaluator {
+
+	public final int threads;// The number of threads the inputs are split between
+	public final int batch;// The number of inputs each thread feeds forward at once
+	public final int k;// How many of the largest outputs count towards the top "k" accuracy
+	private final LinkedList<Layer> layers;// The layers that make up the network
+	private final int outputs;// The number of cells in the output of the network
+	private final ExecutorService pool;// The threads, or null with a single thread
+
+	/**
+	 * The counts kept by a single thread.
+	 */
+	private static class Partial {
+		final long[][] confusion;// [expected class][predicted class] The number of inputs
+		long top1;// The number of inputs whose predicted class was their expected class
+		long topK;// The number of inputs whose expected class was among the "k" largest outputs
+		int count;// The number of inputs evaluated
+
+		Partial(int outputs) {
+			confusion = new long[outputs][outputs];
+		}
+	}
+
+	/**
+	 * Creates an evaluator for a network.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param outputs
+	 *            The number of cells in the output of the network ("out").
+	 * @param threads
+	 *            The number of threads to split the inputs between.
+	 * @param batch
+	 *            The number of inputs each thread feeds forward at once.
+	 * @param k
+	 *            How many of the largest outputs count towards the top "k"
+	 *            accuracy.
+	 */
+	public ParallelEvaluator(LinkedList<Layer> layers, int outputs, int threads, int batch, int k) {
+		this.layers = layers;
+		this.outputs = outputs;
+		this.threads = threads;
+		this.batch = batch;
+		this.k = k;
+
+		if (threads > 1) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					// Daemon threads, so an unclosed evaluator does not keep the program running
+					Thread thread = new Thread(runnable, "fson-evaluator");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			pool = null;
+		}
+	}
+
+	/**
+	 * This function feeds every input through the network.
+	 *
+	 * @param input
+	 *            See FSONNetwork::crossEntropyTotalError().
+	 * @param dictionary
+	 *            See FSONNetwork::crossEntropyTotalError().
+	 * @param independent
+	 *            See FSONNetwork::crossEntropyTotalError().
+	 * @return The error, confusion matrix, and accuracy of the network over
+	 *         every input.
+	 * @throws Exception
+	 *             Thrown if an input cannot be opened, or fed through the
+	 *             network.
+	 */
+	public EvaluationResult evaluate(final String[] input, final double[][] dictionary, final boolean independent)
+			throws Exception {
+		final double[] errors = new double[input.length];// [entry] The error of each entry of "input"
+		final AtomicInteger next = new AtomicInteger();
+		Partial[] partials = new Partial[threads];
+
+		if (pool == null) {
+			partials[0] = work(input, dictionary, independent, errors, next);
+		} else {
+			List<Future<Partial>> futures = new ArrayList<Future<Partial>>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(pool.submit(new Callable<Partial>() {
+					@Override
+					public Partial call() throws Exception {
+						return work(input, dictionary, independent, errors, next);
+					}
+				}));
+			}
+			for (int t = 0; t < threads; t++) {
+				try {
+					partials[t] = futures.get(t).get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		}
+
+		// Add up what every thread found
+		long[][] confusion = new long[outputs][outputs];
+		long top1 = 0;
+		long topK = 0;
+		int count = 0;
+		for (Partial partial : partials) {
+			for (int e = 0; e < outputs; e++) {
+				for (int p = 0; p < outputs; p++) {
+					confusion[e][p] += partial.confusion[e][p];
+				}
+			}
+			top1 += partial.top1;
+			topK += partial.topK;
+			count += partial.count;
+		}
+		double sum = 0;
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] == Double.NEGATIVE_INFINITY) {
+				// The same as FSONNetwork::crossEntropyTotalError()
+				sum = Double.NEGATIVE_INFINITY;
+				break;
+			}
+			sum += errors[i];
+		}
+		double error = (sum == Double.NEGATIVE_INFINITY) ? sum : (sum / (double) count);
+
+		return new EvaluationResult(error, count, k, confusion, top1, topK);
+	}
+
+	/**
+	 * This function stops the threads. The evaluator cannot be used
+	 * afterwards.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * This function takes entries of "input" until there are none left,
+	 * feeding their inputs through the network "batch" at a time.
+	 *
+	 * @return The counts of the inputs this thread evaluated. The error of each
+	 *         entry it took is written to "errors".
+	 */
+	private Partial work(String[] input, double[][] dictionary, boolean independent, double[] errors,
+			AtomicInteger next) throws Exception {
+		Partial partial = new Partial(outputs);
+		Tensor first = layers.getFirst().cells;
+		Tensor cells = new Tensor(first.depth, first.rows, first.columns);
+		Workspace workspace = new Workspace(layers, outputs, batch);
+		Cell[] scratch = new Cell[outputs];
+		for (int c = 0; c < outputs; c++) {
+			scratch[c] = new Cell();
+		}
+		int[] entries = new int[batch];// [sample] Which entry of "input" each input of the batch belongs to
+		int count = 0;
+
+		for (int i = next.getAndIncrement(); i < input.length; i = next.getAndIncrement()) {
+			if ((input[i] == null) || (input[i].equals(""))) {
+				continue;
+			}
+			String[] inputs = input[i].split(",");
+			for (int n = 0; n < inputs.length; n++) {
+				// If the first layer only has a depth of 1, that means the input is
+				// supposed to be black and white, so use the appropriate function to open it
+				if (cells.depth == 1) {
+					FSONNetwork.openFileInputBW(cells, inputs[n]);
+				} else {
+					FSONNetwork.openHSVFileInput(cells, inputs[n]);
+				}
+				workspace.setInput(count, cells);
+				entries[count] = i;
+				count++;
+				if (count == batch) {
+					evaluateBatch(workspace, scratch, entries, count, dictionary, independent, errors, partial);
+					count = 0;
+				}
+			}
+		}
+		if (count > 0) {
+			evaluateBatch(workspace, scratch, entries, count, dictionary, independent, errors, partial);
+		}
+		return partial;
+	}
+
+	/**
+	 * This function feeds a batch of inputs forward, and adds their errors and
+	 * classes to a thread's counts.
+	 */
+	private void evaluateBatch(Workspace workspace, Cell[] scratch, int[] entries, int count,
+			double[][] dictionary, boolean independent, double[] errors, Partial partial) throws Exception {
+		FSONNetwork.feedForward(layers, workspace);
+		workspace.activate(count, scratch, independent);
+
+		for (int n = 0; n < count; n++) {
+			int i = entries[n];
+			workspace.getOutput(n, scratch);
+
+			double error = FSONNetwork.crossEntropyError(scratch, dictionary[i]);
+			errors[i] = ((error == Double.NEGATIVE_INFINITY) || (errors[i] == Double.NEGATIVE_INFINITY))
+					? Double.NEGATIVE_INFINITY : (errors[i] + error);
+
+			int expected = EvaluationResult.classOf(dictionary[i]);
+			int predicted = 0;
+			int above = 0;// The number of outputs larger than the expected class's
+			for (int c = 0; c < scratch.length; c++) {
+				if (scratch[c].value > scratch[predicted].value) {
+					predicted = c;
+				}
+				if (scratch[c].value > scratch[expected].value) {
+					above++;
+				}
+			}
+			partial.confusion[expected][predicted]++;
+			if (predicted == expected) {
+				partial.top1++;
+			}
+			if (above < k) {
+				partial.topK++;
+			}
+			partial.count++;
+		}
+	}
+}
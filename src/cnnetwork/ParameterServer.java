@@ -0,0 +1,439 @@
+package cnnetwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class is the server side of parameter server training: one process
+ * owns the weights and biases of a network, and any number of worker
+ * processes (see ParameterServerWorker) each learn their own share of the
+ * inputs. Workers talk to the server over TCP, so they can run on the same
+ * machine (over localhost) or on other machines.
+ *
+ * Each worker:
+ *
+ * 1. connects and says HELLO, and is sent the shape of the network, the
+ * settings to learn with, and its share of the inputs (every "workers"th
+ * input, starting from its own index),
+ *
+ * 2. PULLs the current weights and biases, along with their version (the
+ * number of updates made so far),
+ *
+ * 3. learns a batch of its inputs, and PUSHes the average of the batch's
+ * gradients (packed with a GradientCodec, see LearningOptions::compression)
+ * along with the version of the weights they were calculated from, and the
+ * cross entropy error of each input of the batch. The server moves the
+ * weights and biases by the gradients, unless more than "staleness" updates
+ * have been made since that version, in which case the push is refused and
+ * the worker must pull and try again (bounded staleness),
+ *
+ * 4. says DONE once it has learned all of its inputs.
+ *
+ * Every message is a single command byte followed by its fields, written
+ * with DataOutputStream (so numbers are big endian). The weights and
+ * gradients are laid out as flat arrays (see ParameterVector). The weights
+ * are always sent as full doubles, and the gradients as the length of the
+ * packed bytes followed by the bytes. A push longer than any codec could
+ * have made (see GradientCompression::maxEncodedLength()) fails the
+ * connection. The weights a worker pulls are copied while holding the
+ * server's lock, but sent after letting go of it, so a slow worker does not
+ * hold up the others.
+ *
+ * Updates are applied one at a time, so a push never overlaps another push.
+ * With a "tracker", the errors of every accepted push are recorded in it,
+ * and the learning rate is recalculated from it after every update, the way
+ * FSONNetwork::learn() does (each input pushed counts as one entry towards
+ * the tracker's evaluation interval). Without one, the learning rate stays
+ * at the rate the server was created with.
+ * How stale each accepted push was, and how many pushes were refused, is
+ * counted in "statistics" (see TrainingStatistics).
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ParameterServer {
+
+	public static final byte HELLO = 1;// Worker -> server: ask for the network, settings, and inputs
+	public static final byte PULL = 2;// Worker -> server: ask for the current weights and biases
+	public static final byte PUSH = 3;// Worker -> server: gradients of a batch
+	public static final byte DONE = 4;// Worker -> server: every input has been learned
+
+	public final BackwardEngine engine;// The gradients of the last accepted push
+	public final TrainingStatistics statistics;// How stale the accepted pushes were, and how many were refused
+	public LossTracker tracker;// If not null, the errors the workers report are recorded here, and the learning rate follows them
+	public double learningFactor;// See FSONNetwork::learn(). Only used with a tracker.
+	private final LinkedList<Layer> layers;// The layers that make up the network
+	private final int outputs;// The number of cells in the output of the network
+	private final String[] input;// The inputs to learn (see FSONNetwork::learn())
+	private final double[][] dictionary;// The expected output for each input (see FSONNetwork::learn())
+	private final boolean independent;// If true, the output uses the sigmoid activation function, otherwise softmax
+	private final int iterations;// The number of times each worker learns its inputs
+	private final int workers;// The number of workers to wait for
+	private final int batch;// The number of inputs in each worker's batch
+	private final int staleness;// The most updates that can be made between a worker's pull and its push
+	private final GradientCompression compression;// How the workers pack their gradients
+	private final double topKFraction;// The fraction of the gradients kept by GradientCompression.TOP_K
+	private final String address;// The address to listen on
+	private final int requestedPort;// The port to listen on, or 0 for any free port
+	private final int size;// The number of weights and biases in the network
+	private final Cell[] scratch;// Scratch space for the output of the network while the tracker evaluates it
+	private final long maxPush;// The most bytes of packed gradients a push can hold (see GradientCompression::maxEncodedLength())
+	private final CountDownLatch finished;// Counts down once for every worker that is done (or has failed)
+	private final AtomicReference<Exception> failure = new AtomicReference<Exception>();// The first exception thrown while serving a worker
+	private ServerSocket serverSocket;// The socket workers connect to
+	private long version;// The number of updates made so far
+	private double learningRate;// How "far" each weight and bias moves
+
+	/**
+	 * Creates a server for a network. Nothing is started until start() is
+	 * called.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param outputs
+	 *            The number of cells in the output of the network ("out").
+	 * @param input
+	 *            See FSONNetwork::learn().
+	 * @param dictionary
+	 *            See FSONNetwork::learn().
+	 * @param independent
+	 *            See FSONNetwork::learn().
+	 * @param iterations
+	 *            See FSONNetwork::learn().
+	 * @param learningRate
+	 *            How "far" each weight and bias moves, at least until the
+	 *            first update (see tracker).
+	 * @param options
+	 *            The settings to learn with: "workers", "staleness",
+	 *            "batchSize", "compression", "topKFraction",
+	 *            "serverAddress", "serverPort", and "statistics" are used.
+	 */
+	public ParameterServer(LinkedList<Layer> layers, int outputs, String[] input, double[][] dictionary,
+			boolean independent, int iterations, double learningRate, LearningOptions options) {
+		this.layers = layers;
+		this.outputs = outputs;
+		this.input = input;
+		this.dictionary = dictionary;
+		this.independent = independent;
+		this.iterations = iterations;
+		this.learningRate = learningRate;
+		this.workers = options.workers;
+		this.batch = options.batchSize;
+		this.staleness = options.staleness;
+		this.compression = options.compression;
+		this.topKFraction = options.topKFraction;
+		this.address = options.serverAddress;
+		this.requestedPort = options.serverPort;
+		this.statistics = options.statistics;
+		this.engine = new BackwardEngine(layers, outputs, 1);
+		this.size = ParameterVector.size(layers);
+		this.scratch = new Cell[outputs];
+		for (int k = 0; k < outputs; k++) {
+			scratch[k] = new Cell();
+		}
+		this.maxPush = GradientCompression.maxEncodedLength(size);
+		this.finished = new CountDownLatch(workers);
+	}
+
+	/**
+	 * This function starts listening for workers. Each worker is served by
+	 * its own thread.
+	 *
+	 * @throws IOException
+	 *             Thrown if the server cannot listen on the requested address
+	 *             and port.
+	 */
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(requestedPort, workers, InetAddress.getByName(address));
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int w = 0; w < workers; w++) {
+					try {
+						final Socket socket = serverSocket.accept();
+						final int index = w;
+						Thread handler = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket, index);
+							}
+						}, "fson-server-" + w);
+						handler.setDaemon(true);
+						handler.start();
+					} catch (IOException e) {
+						// The socket was closed before every worker connected
+						fail(e);
+						return;
+					}
+				}
+			}
+		}, "fson-server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return The port the server is listening on.
+	 */
+	public int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return How "far" each weight and bias is moved by the next update.
+	 */
+	public synchronized double learningRate() {
+		return learningRate;
+	}
+
+	/**
+	 * This function starts "workers" worker processes on this machine (see
+	 * ParameterServerWorker::main()), each a new JVM with the same class
+	 * path as this one, connected to this server over localhost.
+	 *
+	 * @return The worker processes.
+	 * @throws IOException
+	 *             Thrown if a process cannot be started.
+	 */
+	public List<Process> launchLocalWorkers() throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Process> processes = new ArrayList<Process>();
+		for (int w = 0; w < workers; w++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					"-Djava.library.path=" + System.getProperty("java.library.path"),
+					ParameterServerWorker.class.getName(), "localhost", String.valueOf(port()));
+			builder.inheritIO();
+			processes.add(builder.start());
+		}
+		return processes;
+	}
+
+	/**
+	 * This function waits for every worker to learn all of its inputs, then
+	 * stops the server.
+	 *
+	 * @param processes
+	 *            Worker processes started by launchLocalWorkers() to keep an
+	 *            eye on, or an empty list. If one of them exits with an error,
+	 *            the server stops waiting.
+	 * @throws Exception
+	 *             Thrown if a worker failed, or the server could not talk to
+	 *             it.
+	 */
+	public void awaitWorkers(List<Process> processes) throws Exception {
+		try {
+			while (!finished.await(100, TimeUnit.MILLISECONDS)) {
+				for (Process process : processes) {
+					if (!process.isAlive() && (process.exitValue() != 0)) {
+						throw new Exception("A worker process exited with code " + process.exitValue());
+					}
+				}
+				if (failure.get() != null) {
+					break;
+				}
+			}
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+			for (Process process : processes) {
+				process.waitFor();
+			}
+		} finally {
+			serverSocket.close();
+			for (Process process : processes) {
+				process.destroy();
+			}
+		}
+	}
+
+	/**
+	 * This function answers the messages of a single worker until it is done.
+	 *
+	 * @param socket
+	 *            The worker's connection.
+	 * @param index
+	 *            The worker's index, from 0 up to "workers".
+	 */
+	private void serve(Socket socket, int index) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			double[] parameters = new double[size];// The weights and biases being sent to this worker
+			double[] gradients = new double[size];
+			double[] errors = new double[batch];
+			GradientCodec codec = compression.codec(topKFraction);
+
+			while (true) {
+				byte command = in.readByte();
+				switch (command) {
+				case HELLO:
+					sendSetup(out, index);
+					break;
+				case PULL:
+					// Only the copy is made while holding the lock
+					long pulled;
+					synchronized (this) {
+						ParameterVector.read(layers, parameters);
+						pulled = version;
+					}
+					out.writeLong(pulled);
+					writeDoubles(out, parameters, size);
+					break;
+				case PUSH:
+					long base = in.readLong();
+					int count = in.readInt();
+					if ((count < 0) || (count > batch)) {
+						throw new IOException(
+								"Worker " + index + " pushed a batch of " + count + " inputs, but batches hold " + batch);
+					}
+					readDoubles(in, errors, count);
+					int length = in.readInt();
+					// Never trust the worker with how much to allocate
+					if ((length < 0) || (length > maxPush)) {
+						throw new IOException("Worker " + index + " pushed " + length + " bytes of gradients, but "
+								+ size + " values are never packed into more than " + maxPush + " bytes");
+					}
+					byte[] encoded = new byte[length];
+					in.readFully(encoded);
+					codec.decode(encoded, gradients);
+					boolean accepted;
+					long current;
+					synchronized (this) {
+						long behind = version - base;
+						accepted = behind <= staleness;
+						if (accepted) {
+							ParameterVector.writeGradients(gradients, engine);
+							engine.samples = 1;// The gradients are already an average
+							engine.update(layers, learningRate);
+							version++;
+							statistics.record(behind, false);
+							if (tracker != null) {
+								followError(errors, count);
+							}
+						} else {
+							statistics.rejected.incrementAndGet();
+						}
+						current = version;
+					}
+					out.writeBoolean(accepted);
+					out.writeLong(current);
+					break;
+				case DONE:
+					socket.close();
+					finished.countDown();
+					return;
+				default:
+					throw new IOException("Unknown command from worker " + index + ": " + command);
+				}
+				out.flush();
+			}
+		} catch (Exception e) {
+			fail(e);
+			try {
+				socket.close();
+			} catch (IOException closeFailure) {
+				// The worker is already being given up on
+			}
+		}
+	}
+
+	/**
+	 * This function records the errors of an accepted push, and recalculates
+	 * the learning rate from the tracker (see FSONNetwork::learn()). The error
+	 * is calculated properly (see LossTracker::evaluate()) whenever the
+	 * tracker's evaluation interval is reached. It must be called while
+	 * holding the lock on this server, since evaluating feeds inputs through
+	 * the network.
+	 *
+	 * @param errors
+	 *            The cross entropy error of each input of the push.
+	 * @param count
+	 *            The number of inputs in the push.
+	 * @throws Exception
+	 *             Thrown if an input cannot be opened while evaluating.
+	 */
+	private void followError(double[] errors, int count) throws Exception {
+		boolean evaluate = false;
+		for (int n = 0; n < count; n++) {
+			tracker.record(errors[n]);
+			if (tracker.step()) {
+				evaluate = true;
+			}
+		}
+		double error;
+		if (evaluate) {
+			error = tracker.evaluate(layers, scratch, input, dictionary, independent);
+		} else {
+			error = tracker.value();
+		}
+		learningRate = FSONNetwork.learningRate(learningFactor, error);
+	}
+
+	/**
+	 * This function sends a worker the shape of the network, the settings to
+	 * learn with, and its share of the inputs.
+	 */
+	private void sendSetup(DataOutputStream out, int index) throws IOException {
+		out.writeInt(index);
+		Checkpoint.writeLayers(out, layers);
+		out.writeInt(outputs);
+		out.writeBoolean(independent);
+		out.writeInt(batch);
+		out.writeInt(iterations);
+		out.writeInt(staleness);
+		out.writeUTF(compression.name());
+		out.writeDouble(topKFraction);
+
+		// Every "workers"th input that has something to learn, starting from this worker's index
+		List<Integer> share = new ArrayList<Integer>();
+		for (int s = index; s < input.length; s += workers) {
+			if ((input[s] != null) && (!input[s].equals(""))) {
+				share.add(s);
+			}
+		}
+		out.writeInt(share.size());
+		for (int s : share) {
+			out.writeUTF(input[s]);
+			writeDoubles(out, dictionary[s], outputs);
+		}
+	}
+
+	/**
+	 * This function records the first failure, and stops waiting for the
+	 * worker it happened to.
+	 */
+	private void fail(Exception e) {
+		if (failure.compareAndSet(null, e)) {
+			finished.countDown();
+		}
+	}
+
+	/**
+	 * This function writes the first "count" values of an array, a block at a
+	 * time (see Checkpoint::writeDoubles()).
+	 */
+	static void writeDoubles(DataOutputStream out, double[] values, int count) throws IOException {
+		Checkpoint.writeDoubles(out, values, count);
+	}
+
+	/**
+	 * This function reads "count" values into an array, a block at a time
+	 * (see Checkpoint::readDoubles()).
+	 */
+	static void readDoubles(DataInputStream in, double[] values, int count) throws IOException {
+		Checkpoint.readDoubles(in, values, count);
+	}
+}
@@ -0,0 +1,232 @@
+package cnnetwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * This class is a worker of parameter server training (see ParameterServer):
+ * it learns its share of the inputs on its own copy of the network, and sends
+ * the gradients of each batch to the server, which owns the real weights and
+ * biases.
+ *
+ * A worker only pulls the weights again once the server has moved them at
+ * least "staleness" times since its last pull (or when the server refuses a
+ * push for being too stale), so with a staleness of more than 0 workers spend
+ * less time waiting on the network.
+ *
+ * A worker can be run as its own process:
+ *
+ * java -cp ... cnnetwork.ParameterServerWorker host port
+ *
+ * The inputs are opened by the worker (see FSONNetwork::openFileInputBW() and
+ * FSONNetwork::openHSVFileInput()), so they must be found at the same paths
+ * on the worker's machine.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ParameterServerWorker {
+
+	public final int index;// This worker's index, from 0 up to the number of workers
+	public final LinkedList<Layer> layers;// This worker's copy of the network
+	private final Socket socket;// The connection to the server
+	private final DataInputStream in;// Messages from the server
+	private final DataOutputStream out;// Messages to the server
+	private final int outputs;// The number of cells in the output of the network
+	private final boolean independent;// If true, the output uses the sigmoid activation function, otherwise softmax
+	private final int batch;// The number of inputs learned before each push
+	private final int iterations;// The number of times to learn every input
+	private final int staleness;// The most updates the server allows between a pull and a push
+	private final GradientCodec codec;// How the gradients are packed
+	private final ErrorFeedback feedback;// What a lossy codec has not sent yet, or null if nothing is lost
+	private final String[] input;// This worker's share of the inputs
+	private final double[][] dictionary;// The expected output for each of "input"
+	private final double[] parameters;// Scratch space for the weights and biases
+	private final double[] gradients;// Scratch space for the gradients of a batch
+	private final double[] errors;// The cross entropy error of each input of a batch (see FSONNetwork::crossEntropyError())
+	private long version;// The version of the weights this worker last pulled
+	private long serverVersion;// The latest version of the weights this worker knows of
+
+	/**
+	 * Connects to a server, and receives the network, settings, and inputs
+	 * to learn.
+	 *
+	 * @param host
+	 *            The name or address of the server.
+	 * @param port
+	 *            The port the server is listening on.
+	 * @throws IOException
+	 *             Thrown if the server cannot be reached.
+	 */
+	public ParameterServerWorker(String host, int port) throws IOException {
+		this.socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		out.writeByte(ParameterServer.HELLO);
+		out.flush();
+
+		this.index = in.readInt();
+		this.layers = Checkpoint.readLayers(in);
+		this.outputs = in.readInt();
+		this.independent = in.readBoolean();
+		this.batch = in.readInt();
+		this.iterations = in.readInt();
+		this.staleness = in.readInt();
+		GradientCompression compression = GradientCompression.fromString(in.readUTF());
+		this.codec = compression.codec(in.readDouble());
+
+		int entries = in.readInt();
+		this.input = new String[entries];
+		this.dictionary = new double[entries][outputs];
+		for (int s = 0; s < entries; s++) {
+			input[s] = in.readUTF();
+			ParameterServer.readDoubles(in, dictionary[s], outputs);
+		}
+
+		this.parameters = new double[ParameterVector.size(layers)];
+		this.gradients = new double[parameters.length];
+		this.errors = new double[batch];
+		this.feedback = (compression == GradientCompression.NONE) ? null
+				: new ErrorFeedback(codec, parameters.length);
+	}
+
+	/**
+	 * This function learns every input "iterations" times, each time in a
+	 * random order, pushing the gradients of every batch to the server. It
+	 * then tells the server it is done and disconnects.
+	 *
+	 * @throws Exception
+	 *             Thrown if an input cannot be opened, or the server cannot be
+	 *             reached.
+	 */
+	public void run() throws Exception {
+		Workspace workspace = new Workspace(layers, outputs, batch);
+		BackwardEngine engine = new BackwardEngine(layers, outputs, batch);
+		Cell[] scratch = new Cell[outputs];
+		for (int k = 0; k < outputs; k++) {
+			scratch[k] = new Cell();
+		}
+		double[][] expected = new double[batch][];
+		int count = 0;
+
+		pull();
+
+		for (int i = 0; i < iterations; i++) {
+			ArrayList<Integer> randomList = UniqueRandomNumbers.getRandomSet(input.length);
+			for (int r = 0; r < input.length; r++) {
+				int s = randomList.get(r);
+
+				// There might be multiple inputs at this index
+				String[] inputs = input[s].split(",");
+				for (int n = 0; n < inputs.length; n++) {
+					// If the first layer only has a depth of 1, that means the
+					// input is supposed to be black and white, so use the
+					// appropriate function to open it
+					if (layers.getFirst().cells.depth == 1) {
+						FSONNetwork.openFileInputBW(layers, inputs[n]);
+					} else {
+						FSONNetwork.openHSVFileInput(layers, inputs[n]);
+					}
+					workspace.setInput(count, layers.getFirst().cells);
+					expected[count] = dictionary[s];
+					count++;
+					if (count == batch) {
+						learnBatch(workspace, engine, scratch, expected, count);
+						count = 0;
+					}
+				}
+			}
+		}
+		if (count > 0) {
+			learnBatch(workspace, engine, scratch, expected, count);
+		}
+
+		out.writeByte(ParameterServer.DONE);
+		out.flush();
+		socket.close();
+	}
+
+	/**
+	 * This function calculates the gradients of a batch and pushes them, with
+	 * the error of each input of the batch, to the server, pulling the weights and trying again for as long as the
+	 * server refuses them for being too stale.
+	 */
+	private void learnBatch(Workspace workspace, BackwardEngine engine, Cell[] scratch, double[][] expected,
+			int count) throws Exception {
+		while (true) {
+			FSONNetwork.feedForward(layers, workspace);
+			workspace.activate(count, scratch, independent);
+			for (int n = 0; n < count; n++) {
+				workspace.getOutput(n, scratch);
+				errors[n] = FSONNetwork.crossEntropyError(scratch, expected[n]);
+			}
+			engine.clear();
+			engine.accumulate(layers, workspace, expected, count);
+			ParameterVector.readGradients(engine, gradients);
+			for (int i = 0; i < gradients.length; i++) {
+				gradients[i] /= engine.samples;
+			}
+			byte[] encoded = (feedback == null) ? codec.encode(gradients) : feedback.encode(gradients);
+
+			out.writeByte(ParameterServer.PUSH);
+			out.writeLong(version);
+			out.writeInt(count);
+			ParameterServer.writeDoubles(out, errors, count);
+			out.writeInt(encoded.length);
+			out.write(encoded);
+			out.flush();
+			boolean accepted = in.readBoolean();
+			serverVersion = in.readLong();
+
+			// A refused push was never used, so nothing it left behind should be carried over
+			if (!accepted && (feedback != null)) {
+				feedback.undo(encoded, gradients);
+			}
+
+			// Pull once the weights are as stale as the server allows (or too stale)
+			if (!accepted || ((serverVersion - version) >= Math.max(staleness, 1))) {
+				pull();
+			}
+			if (accepted) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This function copies the server's current weights and biases into this
+	 * worker's copy of the network.
+	 */
+	private void pull() throws IOException {
+		out.writeByte(ParameterServer.PULL);
+		out.flush();
+		version = in.readLong();
+		serverVersion = version;
+		ParameterServer.readDoubles(in, parameters, parameters.length);
+		ParameterVector.write(parameters, layers);
+	}
+
+	/**
+	 * Runs a worker as its own process.
+	 *
+	 * @param args
+	 *            The name or address of the server, and the port it is
+	 *            listening on.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: ParameterServerWorker host port");
+			System.exit(2);
+		}
+		ParameterServerWorker worker = new ParameterServerWorker(args[0], Integer.parseInt(args[1]));
+		worker.run();
+	}
+}
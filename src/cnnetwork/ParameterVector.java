@@ -0,0 +1,124 @@
+package cnnetwork;
+
+import java.util.LinkedList;
+
+/**
+ * This class lays every weight and bias of a network (or every gradient held
+ * by a BackwardEngine) out in a single flat array, so they can be sent
+ * between processes (see ParameterServer).
+ *
+ * The layers are laid out in order. Each layer's weights come first, filter
+ * by filter, with the weights of each filter in [depth][row][column] order
+ * (the same order as BackwardEngine::weightGradients), followed by the
+ * layer's biases. Maxpool layers have neither.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class ParameterVector {
+
+	/**
+	 * @return The number of weights and biases in a network.
+	 */
+	public static int size(LinkedList<Layer> layers) {
+		int size = 0;
+		for (Layer layer : layers) {
+			size += (layer.filters.size() * layer.Fdepth * layer.Frows * layer.Fcollumns) + layer.biases.size();
+		}
+		return size;
+	}
+
+	/**
+	 * This function copies every weight and bias of a network into a flat
+	 * array.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param parameters
+	 *            The array to copy into, at least size() long.
+	 */
+	public static void read(LinkedList<Layer> layers, double[] parameters) {
+		int p = 0;
+		for (Layer layer : layers) {
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						System.arraycopy(row, 0, parameters, p, row.length);
+						p += row.length;
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				parameters[p++] = bias.value;
+			}
+		}
+	}
+
+	/**
+	 * This function copies a flat array back into every weight and bias of a
+	 * network (see read()).
+	 *
+	 * @param parameters
+	 *            The array to copy from.
+	 * @param layers
+	 *            The layers that make up the network.
+	 */
+	public static void write(double[] parameters, LinkedList<Layer> layers) {
+		int p = 0;
+		for (Layer layer : layers) {
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						System.arraycopy(parameters, p, row, 0, row.length);
+						p += row.length;
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				bias.value = parameters[p++];
+			}
+		}
+	}
+
+	/**
+	 * This function copies every gradient accumulated by a backward engine
+	 * into a flat array, in the same order as read().
+	 *
+	 * @param engine
+	 *            The engine holding the gradients.
+	 * @param gradients
+	 *            The array to copy into, at least size() long.
+	 */
+	public static void readGradients(BackwardEngine engine, double[] gradients) {
+		int p = 0;
+		for (int i = 0; i < engine.weightGradients.length; i++) {
+			double[] weights = engine.weightGradients[i];
+			System.arraycopy(weights, 0, gradients, p, weights.length);
+			p += weights.length;
+			double[] biases = engine.biasGradients[i];
+			System.arraycopy(biases, 0, gradients, p, biases.length);
+			p += biases.length;
+		}
+	}
+
+	/**
+	 * This function copies a flat array of gradients back into a backward
+	 * engine (see readGradients()).
+	 *
+	 * @param gradients
+	 *            The array to copy from.
+	 * @param engine
+	 *            The engine to copy into.
+	 */
+	public static void writeGradients(double[] gradients, BackwardEngine engine) {
+		int p = 0;
+		for (int i = 0; i < engine.weightGradients.length; i++) {
+			double[] weights = engine.weightGradients[i];
+			System.arraycopy(gradients, p, weights, 0, weights.length);
+			p += weights.length;
+			double[] biases = engine.biasGradients[i];
+			System.arraycopy(gradients, p, biases, 0, biases.length);
+			p += biases.length;
+		}
+	}
+}
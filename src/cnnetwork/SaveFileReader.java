@@ -0,0 +1,282 @@
+package cnnetwork;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * This class reads back the text file written by FSONNetwork::learn() after
+ * every update (see FSONNetwork::recordProgress()), so a network can be
+ * recovered from it. The file is laid out as, for each layer:
+ *
+ * <layer>
+ * the ten numbers that make up the shape of the layer (the arguments of the
+ * Layer constructor, with the type as its name)
+ * <cells>
+ * the value and derivative of each cell, one cell per line
+ * then, unless the layer is a maxpool layer, for each filter:
+ * <filter>
+ * the weight and gradient of each weight, one weight per line
+ * a <connection> line, followed by the connection, for each window
+ * </filter>
+ * then for each bias:
+ * <bias>
+ * the gradient and value of the bias
+ * and after the last bias, </biases>
+ * </layer>
+ *
+ * The file is read a line at a time, and a layer at a time (see next()), so
+ * only the layer being read is ever held in memory; the connections and
+ * gradients are skipped, since they are calculated again. The file only holds
+ * the weights and biases, not where learning had got to, so learning resumed
+ * from it starts its iterations again (see LearningOptions::resumeFrom).
+ *
+ * Files written before FSONNetwork::recordProgress() existed closed the file
+ * after the first layer, so they only hold layer 0. Such a file still loads
+ * (see load()): the layers it does not hold keep the weights they had.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class SaveFileReader {
+
+	private final File file;// The file being read
+	private final BufferedReader reader;// Reads the file a line at a time
+	private int line;// The number of lines read so far
+
+	/**
+	 * Opens a file to be read.
+	 *
+	 * @param file
+	 *            The file written by FSONNetwork::learn().
+	 * @throws IOException
+	 *             Thrown if the file cannot be opened.
+	 */
+	public SaveFileReader(File file) throws IOException {
+		this.file = file;
+		this.reader = new BufferedReader(new FileReader(file), 1 << 16);
+	}
+
+	/**
+	 * This function reads a whole file, creating a new network of the shape it
+	 * holds.
+	 *
+	 * @param file
+	 *            The file written by FSONNetwork::learn().
+	 * @return The layers that make up the network.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, or is not a whole save
+	 *             file.
+	 */
+	public static LinkedList<Layer> read(File file) throws IOException {
+		SaveFileReader reader = new SaveFileReader(file);
+		try {
+			LinkedList<Layer> layers = new LinkedList<Layer>();
+			Layer layer;
+			while ((layer = reader.next(null)) != null) {
+				layers.add(layer);
+			}
+			if (layers.isEmpty()) {
+				throw new IOException("No layers in " + file);
+			}
+			return layers;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * This function reads a whole file into an existing network of the same
+	 * shape, one layer at a time. A file that ends cleanly after one of the
+	 * layers (as the files of older versions of learn() do, see above) only
+	 * sets the layers it holds; the rest keep the weights they had.
+	 *
+	 * @param file
+	 *            The file written by FSONNetwork::learn().
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @return The number of layers read, from the first layer on.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, holds no layers, ends part
+	 *             way through a layer, or is not a save file of a network of
+	 *             this shape.
+	 */
+	public static int load(File file, LinkedList<Layer> layers) throws IOException {
+		SaveFileReader reader = new SaveFileReader(file);
+		try {
+			for (int i = 0; i < layers.size(); i++) {
+				if (reader.next(layers.get(i)) == null) {
+					if (i == 0) {
+						throw new IOException("No layers in " + file);
+					}
+					return i;
+				}
+			}
+			if (reader.next(null) != null) {
+				throw new IOException("The save file has more than " + layers.size() + " layers: " + file);
+			}
+			return layers.size();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * This function reads the next layer of the file.
+	 *
+	 * @param into
+	 *            The layer to read the values into, which must be the shape
+	 *            written in the file, or null to create a new layer of that
+	 *            shape.
+	 * @return The layer read ("into" if it was given), or null if there are
+	 *         no more layers.
+	 * @throws IOException
+	 *             Thrown if the file cannot be read, or ends part way through
+	 *             the layer, or does not hold what it should.
+	 */
+	public Layer next(Layer into) throws IOException {
+		String start = reader.readLine();
+		while ((start != null) && start.trim().isEmpty()) {
+			line++;
+			start = reader.readLine();
+		}
+		if (start == null) {
+			return null;
+		}
+		line++;
+		if (!start.equals("<layer>")) {
+			throw error("Expected <layer>");
+		}
+
+		// The shape of the layer
+		String[] shape = readLine().split(",");
+		if (shape.length != 10) {
+			throw error("Expected the ten numbers that make up the shape of a layer");
+		}
+		LayerType type;
+		try {
+			type = LayerType.fromString(shape[9].trim());
+		} catch (IllegalArgumentException e) {
+			throw error("Unknown layer type " + shape[9]);
+		}
+		Layer layer = new Layer(number(shape[0]), number(shape[1]), number(shape[2]), number(shape[3]),
+				number(shape[4]), number(shape[5]), number(shape[6]), number(shape[7]), number(shape[8]), type);
+		if (into == null) {
+			layer.initLayer();
+		} else if (Checkpoint.sameShape(layer, into)) {
+			layer = into;
+		} else {
+			throw error("The layer is a different shape from the network's");
+		}
+
+		// The cells (only the values are kept; the derivatives are calculated again)
+		expect("<cells>");
+		for (int x = 0; x < layer.cells.size(); x++) {
+			layer.cells.values[x] = first(readLine());
+		}
+
+		if (layer.type != LayerType.MAXPOOL) {
+			// The filters (the gradients and connections are calculated again)
+			for (Filter filter : layer.filters) {
+				expect("<filter>");
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int z = 0; z < row.length; z++) {
+							row[z] = first(readLine());
+						}
+					}
+				}
+				String next = readLine();
+				while (next.equals("<connection>")) {
+					readLine();
+					next = readLine();
+				}
+				if (!next.equals("</filter>")) {
+					throw error("Expected </filter>");
+				}
+			}
+
+			// The biases, each written as its gradient and then its value
+			for (Cell bias : layer.biases) {
+				expect("<bias>");
+				String[] values = readLine().split(",");
+				if (values.length != 2) {
+					throw error("Expected the gradient and value of a bias");
+				}
+				bias.value = value(values[1]);
+			}
+			if (layer.biases.size() > 0) {
+				expect("</biases>");
+			}
+		}
+
+		expect("</layer>");
+		return layer;
+	}
+
+	/**
+	 * This function closes the file.
+	 *
+	 * @throws IOException
+	 *             Thrown if the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * @return The next line of the file.
+	 * @throws IOException
+	 *             Thrown if the file has ended.
+	 */
+	private String readLine() throws IOException {
+		String next = reader.readLine();
+		if (next == null) {
+			throw new IOException("The save file ends part way through a layer: " + file);
+		}
+		line++;
+		return next;
+	}
+
+	/**
+	 * This function reads a line, and checks that it is "expected".
+	 */
+	private void expect(String expected) throws IOException {
+		if (!readLine().equals(expected)) {
+			throw error("Expected " + expected);
+		}
+	}
+
+	/**
+	 * @return The first of the values on a line.
+	 */
+	private double first(String text) throws IOException {
+		int comma = text.indexOf(',');
+		return value((comma < 0) ? text : text.substring(0, comma));
+	}
+
+	private double value(String text) throws IOException {
+		try {
+			return Double.parseDouble(text.trim());
+		} catch (NumberFormatException e) {
+			throw error("Expected a number, not " + text);
+		}
+	}
+
+	private int number(String text) throws IOException {
+		try {
+			return Integer.parseInt(text.trim());
+		} catch (NumberFormatException e) {
+			throw error("Expected a whole number, not " + text);
+		}
+	}
+
+	/**
+	 * @return An exception saying what was wrong, and where.
+	 */
+	private IOException error(String message) {
+		return new IOException(message + " at line " + line + " of " + file);
+	}
+}
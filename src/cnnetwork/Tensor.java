@@ -0,0 +1,158 @@
+package cnnetwork;
+
+/**
+ * This class stores the cells of a layer as a contiguous block of primitive
+ * doubles instead of one Cell object per location. The values and the
+ * derivatives of the cells are kept in two separate "planes" (flat arrays of
+ * the same length), both addressed in the order [depth][row][column].
+ *
+ * The position of a cell within a plane is given by:
+ *
+ * (depth * depthStride) + (row * rowStride) + column
+ *
+ * ...so walking along a row of the tensor is a sequential walk through memory.
+ *
+ * A tensor can also hold a batch of several samples of the same shape (for
+ * example the cells of a layer for several different inputs, see Workspace).
+ * The samples are stored one after the other in the value plane, so the
+ * position of a cell of sample "n" is:
+ *
+ * (n * sampleStride) + (depth * depthStride) + (row * rowStride) + column
+ *
+ * The derivative plane only ever holds a single sample: it is used by the
+ * recursive functions of FSONNetwork, which work on one input at a time.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class Tensor {
+
+	public final int depth;// The depth of the tensor ([x][][])
+	public final int rows;// The height of the tensor ([][x][])
+	public final int columns;// The width of the tensor ([][][x])
+	public final int depthStride;// The distance within a plane between two cells that differ by one in depth
+	public final int rowStride;// The distance within a plane between two cells that differ by one row
+	public final int batch;// The number of samples held. This is 1 for the cells of a layer.
+	public final int sampleStride;// The distance within the value plane between the same cell of two samples
+	public final double[] values;// The actual values of the cells, for every sample.
+	public final double[] derivatives;// Used to store the value of the derivative at each location. Only valid where hasDerivative() is true.
+	private final int[] derivativeGenerations;// The generation in which each derivative was stored
+	private int generation;// The current generation. Derivatives stored in an earlier generation have not been found yet.
+
+	public Tensor(int depth, int rows, int columns) {
+		this(1, depth, rows, columns);
+	}
+
+	/**
+	 * Creates a tensor holding a batch of samples.
+	 *
+	 * @param batch
+	 *            The number of samples.
+	 * @param depth
+	 *            The depth of each sample ([x][][])
+	 * @param rows
+	 *            The height of each sample ([][x][])
+	 * @param columns
+	 *            The width of each sample ([][][x])
+	 */
+	public Tensor(int batch, int depth, int rows, int columns) {
+		this.depth = depth;
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStride = columns;
+		this.depthStride = rows * columns;
+		this.batch = batch;
+		this.sampleStride = depth * rows * columns;
+		this.values = new double[batch * depth * rows * columns];
+		this.derivatives = new double[depth * rows * columns];
+		this.derivativeGenerations = new int[depth * rows * columns];
+
+		// Every stamp starts at 0, so starting at generation 1 means no
+		// derivative has been found yet.
+		this.generation = 1;
+	}
+
+	/**
+	 * This function finds the position of a cell within the value and
+	 * derivative planes of this tensor.
+	 *
+	 * @param depth
+	 *            [x][][] location of the cell
+	 * @param row
+	 *            [][x][] location of the cell
+	 * @param column
+	 *            [][][x] location of the cell
+	 * @return The index of the cell within "values" and "derivatives".
+	 */
+	public int index(int depth, int row, int column) {
+		return (depth * depthStride) + (row * rowStride) + column;
+	}
+
+	/**
+	 * This function finds the position of a cell of a given sample within the
+	 * value plane of this tensor.
+	 *
+	 * @param sample
+	 *            which sample of the batch the cell belongs to
+	 * @param depth
+	 *            [x][][] location of the cell
+	 * @param row
+	 *            [][x][] location of the cell
+	 * @param column
+	 *            [][][x] location of the cell
+	 * @return The index of the cell within "values".
+	 */
+	public int index(int sample, int depth, int row, int column) {
+		return (sample * sampleStride) + index(depth, row, column);
+	}
+
+	/**
+	 * @return The number of cells in a single sample of this tensor (for the
+	 *         cells of a layer, the total number of cells).
+	 */
+	public int size() {
+		return sampleStride;
+	}
+
+	public double getValue(int depth, int row, int column) {
+		return values[index(depth, row, column)];
+	}
+
+	public void setValue(int depth, int row, int column, double value) {
+		values[index(depth, row, column)] = value;
+	}
+
+	public double getDerivative(int depth, int row, int column) {
+		return derivatives[index(depth, row, column)];
+	}
+
+	public void setDerivative(int depth, int row, int column, double derivative) {
+		storeDerivative(index(depth, row, column), derivative);
+	}
+
+	/**
+	 * @return True if a derivative has been stored for the cell at flat
+	 *         position "index" since the last call to resetDerivatives().
+	 */
+	public boolean hasDerivative(int index) {
+		return derivativeGenerations[index] == generation;
+	}
+
+	/**
+	 * This function stores the derivative of the cell at flat position
+	 * "index", and marks it as found.
+	 */
+	public void storeDerivative(int index, double derivative) {
+		derivatives[index] = derivative;
+		derivativeGenerations[index] = generation;
+	}
+
+	/**
+	 * This function marks every derivative in this tensor as "not found yet".
+	 * Nothing is written to the derivatives themselves: the generation is
+	 * moved on, so every stored derivative is now from an earlier one.
+	 */
+	public void resetDerivatives() {
+		generation++;
+	}
+}
@@ -0,0 +1,137 @@
+package cnnetwork;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This codec only keeps the largest values (by magnitude), a fixed fraction
+ * of them, and drops the rest (top-k sparsification). Each kept value is
+ * packed with its index, so a fraction of 0.01 sends about 1/100th of the
+ * bytes of a full array of doubles. The dropped values are not lost if the
+ * codec is used through an ErrorFeedback: they are added into the next array,
+ * until they are large enough to be sent.
+ *
+ * The cut off is found with a selection (quickselect) over the magnitudes, so
+ * encoding takes time in proportion to the number of values, not
+ * n * log(n).
+ *
+ * Layout: the number of values (int), the number kept (int), then for every
+ * kept value its index (int) and value (float), in index order.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class TopKCodec implements GradientCodec {
+
+	public final double fraction;// The fraction of the values to keep
+	private double[] magnitudes = new double[0];// Scratch space for the selection
+
+	/**
+	 * Creates a codec.
+	 *
+	 * @param fraction
+	 *            The fraction of the values to keep, more than 0 and at most
+	 *            1. At least one value is always kept.
+	 */
+	public TopKCodec(double fraction) {
+		if (!(fraction > 0.0) || (fraction > 1.0)) {
+			throw new IllegalArgumentException("Invalid top-k fraction: " + fraction);
+		}
+		this.fraction = fraction;
+	}
+
+	/**
+	 * @return The number of values kept out of "length".
+	 */
+	public int kept(int length) {
+		return Math.min(length, Math.max(1, (int) Math.ceil(fraction * length)));
+	}
+
+	@Override
+	public byte[] encode(double[] values) {
+		int k = (values.length == 0) ? 0 : kept(values.length);
+
+		// Find the smallest magnitude that is kept
+		double threshold = 0.0;
+		if (k > 0) {
+			if (magnitudes.length < values.length) {
+				magnitudes = new double[values.length];
+			}
+			for (int i = 0; i < values.length; i++) {
+				magnitudes[i] = Math.abs(values[i]);
+			}
+			threshold = select(magnitudes, values.length, values.length - k);
+		}
+
+		// Keep everything above the threshold, then as many values equal to it as still fit
+		int above = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (Math.abs(values[i]) > threshold) {
+				above++;
+			}
+		}
+		int ties = k - above;
+
+		ByteBuffer buffer = ByteBuffer.allocate(8 + (8 * k));
+		buffer.putInt(values.length);
+		buffer.putInt(k);
+		for (int i = 0; i < values.length; i++) {
+			double magnitude = Math.abs(values[i]);
+			if ((magnitude > threshold) || ((magnitude == threshold) && (ties-- > 0))) {
+				buffer.putInt(i);
+				buffer.putFloat((float) values[i]);
+			}
+		}
+		return buffer.array();
+	}
+
+	@Override
+	public void decode(byte[] encoded, double[] values) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		GradientCompression.checkLength(buffer.getInt(), values);
+		int k = buffer.getInt();
+		Arrays.fill(values, 0.0);
+		for (int j = 0; j < k; j++) {
+			int i = buffer.getInt();
+			values[i] = buffer.getFloat();
+		}
+	}
+
+	/**
+	 * This function finds the value that would be at position "rank" if the
+	 * first "length" entries of "values" were sorted, moving the entries
+	 * around as it goes (Hoare's quickselect, with a middle pivot).
+	 */
+	private static double select(double[] values, int length, int rank) {
+		int low = 0;
+		int high = length - 1;
+		while (low < high) {
+			double pivot = values[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					i++;
+				}
+				while (values[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					double swap = values[i];
+					values[i] = values[j];
+					values[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (rank <= j) {
+				high = j;
+			} else if (rank >= i) {
+				low = i;
+			} else {
+				break;
+			}
+		}
+		return values[rank];
+	}
+}
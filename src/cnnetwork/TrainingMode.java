@@ -0,0 +1,31 @@
+package cnnetwork;
+
+/**
+ * An enum used to indicate how FSONNetwork::learn() moves the weights and
+ * biases of a network (see LearningOptions):
+ * Synchronously (SYNCHRONOUS)- every batch is finished, and its gradients
+ * added up, before the weights move (see DataParallelTrainer),
+ * Asynchronously (HOGWILD)- every thread moves the shared weights as soon as
+ * its own batch is done, without locks (see HogwildTrainer),
+ * or
+ * With a parameter server (PARAMETER_SERVER)- worker processes learn their
+ * own share of the inputs and send their gradients to this process, which
+ * owns the weights, and follows the errors they report with the learning
+ * rate (see ParameterServer).
+ */
+public enum TrainingMode {
+	SYNCHRONOUS, HOGWILD, PARAMETER_SERVER;
+
+	public static TrainingMode fromString(String mode) {
+		switch (mode) {
+		case "SYNCHRONOUS":
+			return TrainingMode.SYNCHRONOUS;
+		case "HOGWILD":
+			return TrainingMode.HOGWILD;
+		case "PARAMETER_SERVER":
+			return TrainingMode.PARAMETER_SERVER;
+		default:
+			throw new IllegalArgumentException("Invalid TrainingMode: " + mode);
+		}
+	}
+}
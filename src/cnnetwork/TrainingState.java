@@ -0,0 +1,56 @@
+package cnnetwork;
+
+/**
+ * This class holds where FSONNetwork::learn() had got to, beyond the weights
+ * and biases themselves, so an interrupted run can carry on exactly where it
+ * stopped (see LearningOptions::resumeFrom).
+ *
+ * Each iteration of learn() visits the entries of "input" in an order drawn
+ * from a random number generator started from "seed" (see
+ * UniqueRandomNumbers::getRandomSet(int, Random)). The order of every
+ * iteration can therefore be drawn again on resuming, and learning carries on
+ * at entry "position" of iteration "iteration", with the learning rate and
+ * error it had reached. The moving average of the error, how far it is to
+ * the next calculation of the whole error, and how many random subsets that
+ * calculation has drawn, are kept too (see LossTracker::save()), so the
+ * learning rate follows the same errors it would have without stopping.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class TrainingState {
+
+	public long samples;// The number of inputs learned so far
+	public int iteration;// The iteration being learned
+	public int position;// The number of entries of this iteration's order that have been learned
+	public long seed;// The seed the order of every iteration is drawn from
+	public double learningRate;// The learning rate reached
+	public double error;// The error the learning rate was calculated from (see LossTracker::value())
+	public double average = Double.NaN;// The moving average of the errors learned since the last evaluation, or NaN if there were none (see LossTracker)
+	public int sinceEvaluation;// The number of entries learned since the last evaluation (see LossTracker)
+	public long subsets;// The number of subsets of "input" drawn to calculate the error from (see LossTracker)
+
+	/**
+	 * Creates a state at the very start of learning.
+	 */
+	public TrainingState() {
+	}
+
+	/**
+	 * Creates a copy of another state.
+	 *
+	 * @param other
+	 *            The state to copy.
+	 */
+	public TrainingState(TrainingState other) {
+		this.samples = other.samples;
+		this.iteration = other.iteration;
+		this.position = other.position;
+		this.seed = other.seed;
+		this.learningRate = other.learningRate;
+		this.error = other.error;
+		this.average = other.average;
+		this.sinceEvaluation = other.sinceEvaluation;
+		this.subsets = other.subsets;
+	}
+}
@@ -0,0 +1,84 @@
+package cnnetwork;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class counts how often the updates of an asynchronous training run
+ * (see HogwildTrainer and ParameterServer) were calculated from weights that
+ * had already been moved by another thread (or process). These counters can be used to judge whether
+ * training still converges as more threads are added.
+ *
+ * The "staleness" of an update is the number of updates made by other
+ * threads between the time a thread reads the weights (to feed its inputs
+ * forward) and the time it starts to move them. A "conflict" is an update
+ * that another thread's update overlapped with while it was being written, so
+ * some of the weights may have been written by both at once. A "rejected"
+ * update is one a parameter server refused because it was staler than
+ * allowed (see LearningOptions::staleness).
+ *
+ * Every counter can be read while training is running.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class TrainingStatistics {
+
+	public final AtomicLong updates = new AtomicLong();// The number of times the weights have been moved
+	public final AtomicLong staleUpdates = new AtomicLong();// The number of updates with a staleness of more than 0
+	public final AtomicLong totalStaleness = new AtomicLong();// The staleness of every update, added up
+	public final AtomicLong maxStaleness = new AtomicLong();// The largest staleness of any update
+	public final AtomicLong conflicts = new AtomicLong();// The number of updates that overlapped with another update
+	public final AtomicLong rejected = new AtomicLong();// The number of updates refused for being too stale (these are not counted in "updates")
+
+	/**
+	 * This function records a single update.
+	 *
+	 * @param staleness
+	 *            The number of updates made by other threads since the
+	 *            weights used to calculate this update were read.
+	 * @param conflict
+	 *            True if another update was written at the same time as this
+	 *            one.
+	 */
+	public void record(long staleness, boolean conflict) {
+		updates.incrementAndGet();
+		if (staleness > 0) {
+			staleUpdates.incrementAndGet();
+			totalStaleness.addAndGet(staleness);
+			long max = maxStaleness.get();
+			while ((staleness > max) && !maxStaleness.compareAndSet(max, staleness)) {
+				max = maxStaleness.get();
+			}
+		}
+		if (conflict) {
+			conflicts.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The average staleness of every update so far, or 0 if there
+	 *         have been no updates.
+	 */
+	public double averageStaleness() {
+		long count = updates.get();
+		return (count == 0) ? 0.0 : ((double) totalStaleness.get() / count);
+	}
+
+	/**
+	 * This function sets every counter back to 0.
+	 */
+	public void reset() {
+		updates.set(0);
+		staleUpdates.set(0);
+		totalStaleness.set(0);
+		maxStaleness.set(0);
+		conflicts.set(0);
+		rejected.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "updates=" + updates.get() + ", stale=" + staleUpdates.get() + ", averageStaleness="
+				+ averageStaleness() + ", maxStaleness=" + maxStaleness.get() + ", conflicts=" + conflicts.get() + ", rejected=" + rejected.get();
+	}
+}
@@ -2,6 +2,7 @@ package cnnetwork;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Random;
 
 /**
  * This class is a small utility designed to generate an array list of integers
@@ -50,4 +51,26 @@ public class UniqueRandomNumbers {
 		//		list.get(i));
 		//	 }
     }
+
+	/**
+	 * Returns an array list of integers in a random order in the range of 0 to
+	 * "range", drawn from "random". The same generator started from the same
+	 * seed always gives the same sequence of orders, so the order of any
+	 * iteration of learning can be found again (see TrainingState).
+	 * 
+	 * @param range
+	 *            The range (from 0 to "range") of numbers to generate.
+	 * @param random
+	 *            The random number generator to shuffle with.
+	 * @return An array list of integers in a random order in the range of 0 to
+	 *         "range".
+	 */
+	public static ArrayList<Integer> getRandomSet(int range, Random random) {
+		ArrayList<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < range; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		Collections.shuffle(list, random);
+		return list;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package cnnetwork;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class publishes snapshots of the weights and biases of a network while
+ * it learns (see WeightSnapshot), so other threads can classify with the
+ * network, or swap in the newest version of it, without stopping learning.
+ *
+ * The thread that is learning calls updated() after every update (see
+ * FSONNetwork::learn()), and a new snapshot is published every "every"
+ * updates. Readers call latest(), which only reads an atomic reference, and
+ * use the snapshot they got for as long as they like.
+ *
+ * A new snapshot is built from the one before it: every filter and bias whose
+ * weights have not moved since then is shared with it, and only those that
+ * have are copied. Layers with nothing moved (such as maxpool layers) are
+ * shared whole.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class WeightPublisher {
+
+	public final int every;// The number of updates between snapshots, or 0 to only publish when publish() is called
+	private final LinkedList<Layer> layers;// The layers that make up the network being learned
+	private final AtomicReference<WeightSnapshot> latest = new AtomicReference<WeightSnapshot>();// The newest snapshot
+	private long updates;// The number of updates made so far
+	private final AtomicLong copiedFilters = new AtomicLong();// The number of filters copied into snapshots
+	private final AtomicLong sharedFilters = new AtomicLong();// The number of filters shared with the snapshot before
+
+	/**
+	 * Creates a publisher, and publishes a snapshot of the network as it is
+	 * now.
+	 *
+	 * @param layers
+	 *            The layers that make up the network being learned.
+	 * @param every
+	 *            The number of updates between snapshots, or 0 to only
+	 *            publish when publish() is called.
+	 */
+	public WeightPublisher(LinkedList<Layer> layers, int every) {
+		if (every < 0) {
+			throw new IllegalArgumentException("Invalid number of updates between snapshots: " + every);
+		}
+		this.layers = layers;
+		this.every = every;
+		publish();
+	}
+
+	/**
+	 * @return The newest snapshot. This can be called from any thread.
+	 */
+	public WeightSnapshot latest() {
+		return latest.get();
+	}
+
+	/**
+	 * This function counts an update of the weights, and publishes a snapshot
+	 * if one is due. It must be called by the thread that moves the weights,
+	 * while they are not moving.
+	 */
+	public void updated() {
+		updates++;
+		if ((every > 0) && ((updates % every) == 0)) {
+			publish();
+		}
+	}
+
+	/**
+	 * This function publishes a snapshot of the network as it is now. It must
+	 * be called by the thread that moves the weights, while they are not
+	 * moving.
+	 *
+	 * @return The snapshot published.
+	 */
+	public WeightSnapshot publish() {
+		WeightSnapshot previous = latest.get();
+		LinkedList<Layer> copy = new LinkedList<Layer>();
+		for (int i = 0; i < layers.size(); i++) {
+			copy.add(copyLayer(layers.get(i), (previous == null) ? null : previous.layers.get(i)));
+		}
+		WeightSnapshot snapshot = new WeightSnapshot((previous == null) ? 0 : (previous.version + 1), updates, copy);
+		latest.set(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * @return The number of updates counted so far.
+	 */
+	public long updates() {
+		return updates;
+	}
+
+	/**
+	 * @return The number of filters copied into snapshots so far.
+	 */
+	public long copiedFilters() {
+		return copiedFilters.get();
+	}
+
+	/**
+	 * @return The number of filters shared with the snapshot before, rather
+	 *         than copied, so far.
+	 */
+	public long sharedFilters() {
+		return sharedFilters.get();
+	}
+
+	/**
+	 * This function copies a layer for a snapshot, sharing everything that
+	 * has not moved since the last snapshot.
+	 *
+	 * @param layer
+	 *            The layer being learned.
+	 * @param previous
+	 *            The same layer in the last snapshot, or null if there is
+	 *            none.
+	 * @return The layer for the new snapshot.
+	 */
+	private Layer copyLayer(Layer layer, Layer previous) {
+		FilterBank filters = new FilterBank(layer.filters.size());
+		BiasBank biases = new BiasBank(layer.biases.size());
+		boolean changed = (previous == null);
+
+		for (int f = 0; f < layer.filters.size(); f++) {
+			Filter source = layer.filters.get(f);
+			if ((previous != null) && sameWeights(source.weights, previous.filters.get(f).weights)) {
+				filters.add(previous.filters.get(f));
+				sharedFilters.incrementAndGet();
+			} else {
+				filters.add(Filter.withoutGradients(copyWeights(source.weights)));
+				copiedFilters.incrementAndGet();
+				changed = true;
+			}
+		}
+		for (int b = 0; b < layer.biases.size(); b++) {
+			double value = layer.biases.get(b).value;
+			if ((previous != null) && (Double.doubleToLongBits(previous.biases.get(b).value) == Double
+					.doubleToLongBits(value))) {
+				biases.add(previous.biases.get(b));
+			} else {
+				biases.add(new Cell(value));
+				changed = true;
+			}
+		}
+
+		// A layer with nothing moved is shared whole
+		if (!changed) {
+			return previous;
+		}
+
+		// Snapshots only use the cells of a layer for its shape (see Workspace), so only
+		// the first snapshot allocates them, and every later one shares them with the one before
+		Layer shape = previous;
+		if (shape == null) {
+			shape = new Layer(layer.collumns, layer.rows, layer.depth, layer.Fcollumns, layer.Frows, layer.Fdepth,
+					layer.K, layer.step, layer.pad, layer.type);
+		}
+		return new Layer(shape, filters, biases);
+	}
+
+	/**
+	 * @return True if two filters hold exactly the same weights.
+	 */
+	private static boolean sameWeights(double[][][] a, double[][][] b) {
+		for (int i = 0; i < a.length; i++) {
+			for (int j = 0; j < a[i].length; j++) {
+				double[] rowA = a[i][j];
+				double[] rowB = b[i][j];
+				for (int k = 0; k < rowA.length; k++) {
+					if (Double.doubleToLongBits(rowA[k]) != Double.doubleToLongBits(rowB[k])) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return A copy of the weights of a filter.
+	 */
+	private static double[][][] copyWeights(double[][][] weights) {
+		double[][][] copy = new double[weights.length][][];
+		for (int i = 0; i < weights.length; i++) {
+			copy[i] = new double[weights[i].length][];
+			for (int j = 0; j < weights[i].length; j++) {
+				copy[i][j] = weights[i][j].clone();
+			}
+		}
+		return copy;
+	}
+}
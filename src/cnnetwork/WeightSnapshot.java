@@ -0,0 +1,48 @@
+package cnnetwork;
+
+import java.util.LinkedList;
+
+/**
+ * This class holds a copy of the weights and biases of a network as they were
+ * at one moment while it learned (see WeightPublisher). A snapshot is never
+ * changed once it has been published, so any number of threads can classify
+ * with it at once, without locks, while learning carries on moving the
+ * weights of the network itself.
+ *
+ * Snapshots share every filter and bias that had not moved since the
+ * snapshot before, so only the parts of the network that were changed are
+ * copied.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class WeightSnapshot {
+
+	public final long version;// The number of snapshots published before this one
+	public final long updates;// The number of updates (see WeightPublisher::updated()) made before this snapshot was taken
+	public final LinkedList<Layer> layers;// The network as it was. These layers, their filters, and their biases must not be changed.
+
+	WeightSnapshot(long version, long updates, LinkedList<Layer> layers) {
+		this.version = version;
+		this.updates = updates;
+		this.layers = layers;
+	}
+
+	/**
+	 * This function carries out a forward pass through the network, as it was
+	 * when the snapshot was taken, for every input of a batch (see
+	 * FSONNetwork::feedForward(LinkedList, Workspace)). Each thread must use
+	 * its own workspace.
+	 *
+	 * @param workspace
+	 *            The cells of every layer for each input, and the output of
+	 *            the network for each input (see Workspace(LinkedList, int,
+	 *            int)), with the inputs already loaded into the first layer.
+	 * @throws Exception
+	 *             Thrown when the activation function does not return a number
+	 *             (see Layer::activationFunction()).
+	 */
+	public void feedForward(Workspace workspace) throws Exception {
+		FSONNetwork.feedForward(layers, workspace);
+	}
+}
@@ -0,0 +1,121 @@
+package cnnetwork;
+
+import java.util.LinkedList;
+
+/**
+ * This class holds the cells of every layer of a network for a batch of
+ * inputs, so that the whole batch can be fed forward (see
+ * FSONNetwork::feedForward(LinkedList, Workspace)) and backward (see
+ * BackwardEngine::accumulate(LinkedList, Workspace, double[][], int)) at
+ * once.
+ *
+ * The layers themselves only hold the filters and biases; their own "cells"
+ * are not used or changed by a batch. Each workspace belongs to one thread at
+ * a time, but any number of workspaces can be used with the same layers.
+ *
+ * @author Paula Rudy
+ *
+ */
+public class Workspace {
+
+	public final int batch;// The number of inputs the workspace holds
+	public final Tensor[] cells;// [layer] The cells of each layer, for every input of the batch
+	public final Tensor out;// The output of the network for every input, one row of "outputs" cells per input
+
+	/**
+	 * Creates a workspace for a network.
+	 *
+	 * @param layers
+	 *            The layers that make up the network.
+	 * @param outputs
+	 *            The number of cells in the output of the network ("out").
+	 * @param batch
+	 *            The number of inputs the workspace holds.
+	 */
+	public Workspace(LinkedList<Layer> layers, int outputs, int batch) {
+		this.batch = batch;
+		this.cells = new Tensor[layers.size()];
+		for (int i = 0; i < cells.length; i++) {
+			Tensor layerCells = layers.get(i).cells;
+			cells[i] = new Tensor(batch, layerCells.depth, layerCells.rows, layerCells.columns);
+		}
+		this.out = new Tensor(batch, 1, 1, outputs);
+	}
+
+	/**
+	 * This function copies a single input into the first layer of the
+	 * workspace.
+	 *
+	 * @param sample
+	 *            Which input of the batch to set.
+	 * @param input
+	 *            The input, the same shape as the first layer.
+	 */
+	public void setInput(int sample, Tensor input) {
+		System.arraycopy(input.values, 0, cells[0].values, sample * cells[0].sampleStride, cells[0].sampleStride);
+	}
+
+	/**
+	 * This function copies the output of the network for one input into an
+	 * array of cells.
+	 *
+	 * @param sample
+	 *            Which input of the batch to copy.
+	 * @param output
+	 *            The cells to copy the output into.
+	 */
+	public void getOutput(int sample, Cell[] output) {
+		int start = sample * out.sampleStride;
+		for (int k = 0; k < output.length; k++) {
+			output[k].value = out.values[start + k];
+		}
+	}
+
+	/**
+	 * This function copies the values of an array of cells into the output of
+	 * the network for one input (for example, after an activation function has
+	 * been applied to them).
+	 *
+	 * @param sample
+	 *            Which input of the batch to set.
+	 * @param output
+	 *            The cells to copy the output from.
+	 */
+	public void setOutput(int sample, Cell[] output) {
+		int start = sample * out.sampleStride;
+		for (int k = 0; k < output.length; k++) {
+			out.values[start + k] = output[k].value;
+		}
+	}
+
+	/**
+	 * This function applies the activation function of the output of the
+	 * network (sigmoid or softmax) to the output of each of the first "count"
+	 * inputs.
+	 *
+	 * @param count
+	 *            The number of inputs to apply the activation function to.
+	 * @param scratch
+	 *            Cells to apply the activation function in, one per output.
+	 * @param independent
+	 *            If true, the sigmoid activation function is applied,
+	 *            otherwise the softmax activation function is (see
+	 *            FSONNetwork::learn()).
+	 * @throws Exception
+	 *             Thrown when the activation function does not return a number
+	 *             (see Layer::activationFunction()).
+	 */
+	public void activate(int count, Cell[] scratch, boolean independent) throws Exception {
+		for (int n = 0; n < count; n++) {
+			getOutput(n, scratch);
+			if (independent) {
+				for (int w = 0; w < scratch.length; w++) {
+					scratch[w].value = Layer.activationFunction(scratch[w].value);
+				}
+			} else {
+				Layer.softmax(scratch);
+			}
+			setOutput(n, scratch);
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cnnetwork.BackwardEngine;
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.ParameterVector;
+import cnnetwork.Tensor;
+import cnnetwork.Workspace;
+
+/**
+ * This tests the layer by layer backward pass found in
+ * cnnetwork.BackwardEngine.java against the recursive
+ * "computePartialDerivative" functions in cnnetwork.FSONNetwork.java
+ *
+ */
+public class TestCNNBackwardEngine {
+	LinkedList<Layer> layers;
+	Cell[] out;
+	double[] expect;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(42);
+
+		// A network with one layer of every type:
+		// CONV -> MAXPOOL -> LOCAL -> FULLY -> FULLY -> out
+		layers = new LinkedList<Layer>();
+		layers.add(new Layer(6, 6, 2, 3, 3, 2, 3, 1, 0, LayerType.CONV));
+		layers.add(new Layer(4, 4, 3, 2, 2, 3, 0, 2, 0, LayerType.MAXPOOL));
+		layers.add(new Layer(2, 2, 3, 1, 1, 1, 12, 1, 0, LayerType.LOCAL));
+		layers.add(new Layer(2, 2, 3, 2, 2, 3, 5, 1, 0, LayerType.FULLY));
+		layers.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+
+		for (Layer layer : layers) {
+			layer.initLayer();
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int k = 0; k < row.length; k++) {
+							row[k] = random.nextDouble() - 0.5;
+						}
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				bias.value = random.nextDouble() - 0.5;
+			}
+		}
+
+		Layer first = layers.getFirst();
+		for (int i = 0; i < first.cells.size(); i++) {
+			first.cells.values[i] = random.nextDouble();
+		}
+
+		out = new Cell[3];
+		for (int k = 0; k < out.length; k++) {
+			out[k] = new Cell();
+		}
+
+		FSONNetwork.feedForward(layers, out);
+		Layer.softmax(out);
+
+		expect = new double[] { 0, 1, 0 };
+	}
+
+	/**
+	 * Test that every weight and bias gradient matches the recursive
+	 * calculation.
+	 */
+	@Test
+	public void testGradients() throws Exception {
+		BackwardEngine engine = new BackwardEngine(layers, out);
+		engine.backward(layers, out, expect);
+
+		for (int j = 0; j < layers.size(); j++) {
+			Layer layer = layers.get(j);
+			for (int f = 0; f < layer.filters.size(); f++) {
+				for (int x = 0; x < layer.Fdepth; x++) {
+					for (int y = 0; y < layer.Frows; y++) {
+						for (int z = 0; z < layer.Fcollumns; z++) {
+							double expected = FSONNetwork.computePartialDerivative(layers, out, j, f, x, y, z, expect);
+							assertEquals(expected, engine.weightGradient(layers, j, f, x, y, z), 1e-12);
+						}
+					}
+				}
+			}
+			for (int b = 0; b < layer.biases.size(); b++) {
+				double expected = FSONNetwork.computePartialDerivative(layers, out, j, b, expect);
+				assertEquals(expected, engine.biasGradients[j][b], 1e-12);
+			}
+			// The first layer's cell derivatives are never calculated
+			for (int c = 0; (j > 0) && (c < layer.cells.size()); c++) {
+				if (layer.cells.hasDerivative(c)) {
+					assertEquals(layer.cells.derivatives[c], engine.cellDerivative(j, c), 1e-12);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test that an update moves every weight and bias against its gradient.
+	 */
+	@Test
+	public void testUpdate() throws Exception {
+		BackwardEngine engine = new BackwardEngine(layers, out);
+		engine.backward(layers, out, expect);
+
+		Layer conv = layers.getFirst();
+		double weight = conv.filters.get(1).weights[1][2][0];
+		double bias = conv.biases.get(2).value;
+		double weightGradient = engine.weightGradient(layers, 0, 1, 1, 2, 0);
+		double biasGradient = engine.biasGradients[0][2];
+
+		engine.update(layers, 0.5);
+
+		assertEquals(weight - (0.5 * weightGradient), conv.filters.get(1).weights[1][2][0], 0);
+		assertEquals(bias - (0.5 * biasGradient), conv.biases.get(2).value, 0);
+	}
+
+	/**
+	 * Test that gradients stored by the recursive calculation are only reused
+	 * until the network is moved on to a new generation.
+	 */
+	@Test
+	public void testResetGradients() throws Exception {
+		double first = FSONNetwork.computePartialDerivative(layers, out, 0, 0, 0, 0, 0, expect);
+
+		// A different expected output, without resetting: the stored gradient is reused
+		double[] other = { 1, 0, 0 };
+		assertEquals(first, FSONNetwork.computePartialDerivative(layers, out, 0, 0, 0, 0, 0, other), 0);
+
+		// After resetting, the gradient is calculated again for the new expected output
+		FSONNetwork.resetGradients(layers);
+		BackwardEngine engine = new BackwardEngine(layers, out);
+		engine.backward(layers, out, other);
+		double second = FSONNetwork.computePartialDerivative(layers, out, 0, 0, 0, 0, 0, other);
+		assertEquals(engine.weightGradient(layers, 0, 0, 0, 0, 0), second, 1e-12);
+		assertNotEquals(first, second, 1e-12);
+	}
+
+	/**
+	 * Test that a mini-batch adds up the gradients of each input, and moves
+	 * the weights by their average.
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		double[] other = { 1, 0, 0 };
+		BackwardEngine engine = new BackwardEngine(layers, out);
+
+		engine.backward(layers, out, expect);
+		double first = engine.weightGradient(layers, 2, 5, 0, 0, 0);
+		engine.backward(layers, out, other);
+		double second = engine.weightGradient(layers, 2, 5, 0, 0, 0);
+
+		engine.clear();
+		engine.accumulate(layers, out, expect);
+		engine.accumulate(layers, out, other);
+		assertEquals(2, engine.samples);
+		assertEquals(first + second, engine.weightGradient(layers, 2, 5, 0, 0, 0), 1e-15);
+
+		double weight = layers.get(2).filters.get(5).weights[0][0][0];
+		engine.update(layers, 0.5);
+		assertEquals(weight - (0.5 * ((first + second) / 2)), layers.get(2).filters.get(5).weights[0][0][0], 1e-15);
+	}
+
+	/**
+	 * Test that a batch fed forward and backward at once gives the same
+	 * outputs as feeding each input on its own, and the same gradients as
+	 * accumulating each input on its own.
+	 */
+	@Test
+	public void testWorkspace() throws Exception {
+		Random random = new Random(7);
+		int batch = 3;
+		Tensor first = layers.getFirst().cells;
+		double[][] inputs = new double[batch][first.size()];
+		double[][] expected = { { 0, 1, 0 }, { 1, 0, 0 }, { 0, 0, 1 } };
+		for (double[] input : inputs) {
+			for (int i = 0; i < input.length; i++) {
+				input[i] = random.nextDouble();
+			}
+		}
+
+		// Each input on its own
+		BackwardEngine single = new BackwardEngine(layers, out);
+		double[][] outputs = new double[batch][out.length];
+		for (int n = 0; n < batch; n++) {
+			System.arraycopy(inputs[n], 0, first.values, 0, first.size());
+			FSONNetwork.feedForward(layers, out);
+			Layer.softmax(out);
+			for (int k = 0; k < out.length; k++) {
+				outputs[n][k] = out[k].value;
+			}
+			single.accumulate(layers, out, expected[n]);
+		}
+
+		// The whole batch at once
+		Workspace workspace = new Workspace(layers, out.length, batch);
+		for (int n = 0; n < batch; n++) {
+			System.arraycopy(inputs[n], 0, first.values, 0, first.size());
+			workspace.setInput(n, first);
+		}
+		FSONNetwork.feedForward(layers, workspace);
+		for (int n = 0; n < batch; n++) {
+			workspace.getOutput(n, out);
+			Layer.softmax(out);
+			for (int k = 0; k < out.length; k++) {
+				assertEquals(outputs[n][k], out[k].value, 1e-12);
+			}
+			workspace.setOutput(n, out);
+		}
+		BackwardEngine batched = new BackwardEngine(layers, out.length, batch);
+		batched.accumulate(layers, workspace, expected, batch);
+
+		assertEquals(batch, batched.samples);
+		for (int j = 0; j < layers.size(); j++) {
+			for (int g = 0; g < single.weightGradients[j].length; g++) {
+				assertEquals(single.weightGradients[j][g], batched.weightGradients[j][g], 1e-12);
+			}
+			for (int b = 0; b < single.biasGradients[j].length; b++) {
+				assertEquals(single.biasGradients[j][b], batched.biasGradients[j][b], 1e-12);
+			}
+		}
+
+		// Inputs past the count add nothing
+		batched.clear();
+		batched.accumulate(layers, workspace, expected, 1);
+		single.clear();
+		System.arraycopy(inputs[0], 0, first.values, 0, first.size());
+		FSONNetwork.feedForward(layers, out);
+		Layer.softmax(out);
+		single.accumulate(layers, out, expected[0]);
+		assertEquals(1, batched.samples);
+		assertEquals(single.weightGradient(layers, 0, 2, 1, 0, 1), batched.weightGradient(layers, 0, 2, 1, 0, 1),
+				1e-12);
+	}
+
+	/**
+	 * Test that splitting the filters of each layer between the threads of a
+	 * pool gives exactly the same gradients and errors, and moves every weight
+	 * and bias by its own gradient.
+	 */
+	@Test
+	public void testFilterPool() throws Exception {
+		BackwardEngine sequential = new BackwardEngine(layers, out);
+		sequential.accumulate(layers, out, expect);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		BackwardEngine parallel = new BackwardEngine(layers, out);
+		parallel.pool = pool;
+		parallel.accumulate(layers, out, expect);
+
+		for (int j = 0; j < layers.size(); j++) {
+			for (int g = 0; g < sequential.weightGradients[j].length; g++) {
+				assertEquals(sequential.weightGradients[j][g], parallel.weightGradients[j][g], 0);
+			}
+			for (int b = 0; b < sequential.biasGradients[j].length; b++) {
+				assertEquals(sequential.biasGradients[j][b], parallel.biasGradients[j][b], 0);
+			}
+			for (int c = 0; c < layers.get(j).cells.size(); c++) {
+				assertEquals(sequential.cellDerivative(j, c), parallel.cellDerivative(j, c), 0);
+			}
+		}
+
+		double[] before = new double[ParameterVector.size(layers)];
+		double[] gradients = new double[before.length];
+		double[] after = new double[before.length];
+		ParameterVector.read(layers, before);
+		ParameterVector.readGradients(parallel, gradients);
+		parallel.update(layers, 0.5);
+		ParameterVector.read(layers, after);
+		for (int i = 0; i < before.length; i++) {
+			assertEquals(before[i] - (0.5 * gradients[i]), after[i], 0);
+		}
+		pool.shutdown();
+	}
+
+}
@@ -0,0 +1,285 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cnnetwork.Cell;
+import cnnetwork.Checkpoint;
+import cnnetwork.Checkpointer;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LearningOptions;
+import cnnetwork.ParameterVector;
+import cnnetwork.TrainingState;
+
+/**
+ * This tests the binary checkpoints found in cnnetwork.Checkpoint.java and
+ * cnnetwork.Checkpointer.java
+ *
+ */
+public class TestCNNCheckpoint {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	LinkedList<Layer> layers;
+
+	@Before
+	public void setUp() throws Exception {
+		layers = network();
+		Random random = new Random(3);
+		for (Layer layer : layers) {
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int k = 0; k < row.length; k++) {
+							row[k] = random.nextDouble() - 0.5;
+						}
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				bias.value = random.nextDouble() - 0.5;
+			}
+		}
+	}
+
+	private static LinkedList<Layer> network() {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		network.add(new Layer(6, 6, 2, 3, 3, 2, 3, 1, 0, LayerType.CONV));
+		network.add(new Layer(4, 4, 3, 2, 2, 3, 0, 2, 0, LayerType.MAXPOOL));
+		network.add(new Layer(2, 2, 3, 1, 1, 1, 12, 1, 0, LayerType.LOCAL));
+		network.add(new Layer(2, 2, 3, 2, 2, 3, 5, 1, 0, LayerType.FULLY));
+		network.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+		for (Layer layer : network) {
+			layer.initLayer();
+		}
+		return network;
+	}
+
+	private double[] parameters(LinkedList<Layer> network) {
+		double[] parameters = new double[ParameterVector.size(network)];
+		ParameterVector.read(network, parameters);
+		return parameters;
+	}
+
+	/**
+	 * Test that a checkpoint gives back the same network, and that no
+	 * temporary file is left behind.
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		File file = new File(folder.getRoot(), "network.ckpt");
+		double[] expected = parameters(layers);
+		Checkpoint.write(file, layers, expected, 42);
+
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		Checkpoint checkpoint = Checkpoint.read(file);
+		assertEquals(42, checkpoint.samples);
+		assertEquals(layers.size(), checkpoint.layers.size());
+		assertEquals(LayerType.LOCAL, checkpoint.layers.get(2).type);
+		double[] actual = parameters(checkpoint.layers);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+
+		LinkedList<Layer> other = network();
+		assertEquals(42, Checkpoint.load(file, other));
+		actual = parameters(other);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+
+		// A checkpoint of a different network cannot be loaded
+		LinkedList<Layer> smaller = new LinkedList<Layer>();
+		smaller.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+		smaller.getFirst().initLayer();
+		try {
+			Checkpoint.load(file, smaller);
+			fail("Loaded a checkpoint of a different network");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test that the whole training state is kept, including the moving
+	 * average of the error, and that a checkpoint written before the average
+	 * was kept (version 2) starts it again from the error.
+	 */
+	@Test
+	public void testTrainingState() throws Exception {
+		File file = new File(folder.getRoot(), "network.ckpt");
+		TrainingState state = new TrainingState();
+		state.samples = 42;
+		state.iteration = 3;
+		state.position = 7;
+		state.seed = -5;
+		state.learningRate = 0.25;
+		state.error = 1.5;
+		state.average = 1.25;
+		state.sinceEvaluation = 6;
+		state.subsets = 9;
+		Checkpoint.write(file, layers, parameters(layers), state);
+
+		TrainingState read = Checkpoint.read(file).state;
+		assertEquals(42, read.samples);
+		assertEquals(3, read.iteration);
+		assertEquals(7, read.position);
+		assertEquals(-5, read.seed);
+		assertEquals(0.25, read.learningRate, 0);
+		assertEquals(1.5, read.error, 0);
+		assertEquals(1.25, read.average, 0);
+		assertEquals(6, read.sinceEvaluation);
+		assertEquals(9, read.subsets);
+
+		// Nothing averaged yet
+		state.average = Double.NaN;
+		Checkpoint.write(file, layers, parameters(layers), state);
+		assertTrue(Double.isNaN(Checkpoint.read(file).state.average));
+
+		// Version 2, with a single fully connected layer
+		LinkedList<Layer> fully = new LinkedList<Layer>();
+		fully.add(layers.getLast());
+		double[] expected = parameters(fully);
+		CheckedOutputStream checked = new CheckedOutputStream(new FileOutputStream(file), new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		out.writeLong(Checkpoint.MAGIC);
+		out.writeInt(2);
+		out.writeLong(42);
+		out.writeBoolean(true);
+		out.writeInt(3);
+		out.writeInt(7);
+		out.writeLong(-5);
+		out.writeDouble(0.25);
+		out.writeDouble(1.5);
+		out.writeInt(1);
+		for (int shape : new int[] { 5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY.getValue() }) {
+			out.writeInt(shape);
+		}
+		out.writeInt(expected.length);
+		for (double value : expected) {
+			out.writeDouble(value);
+		}
+		out.writeLong(checked.getChecksum().getValue());
+		out.close();
+
+		Checkpoint checkpoint = Checkpoint.read(file);
+		assertEquals(7, checkpoint.state.position);
+		assertEquals(1.5, checkpoint.state.error, 0);
+		assertEquals(1.5, checkpoint.state.average, 0);
+		assertEquals(0, checkpoint.state.sinceEvaluation);
+		assertEquals(0, checkpoint.state.subsets);
+		double[] actual = parameters(checkpoint.layers);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+	}
+
+	/**
+	 * Test that a damaged checkpoint is noticed.
+	 */
+	@Test
+	public void testDamaged() throws Exception {
+		File file = new File(folder.getRoot(), "network.ckpt");
+		Checkpoint.write(file, layers, parameters(layers), 1);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length() - 20);
+		int b = raf.read();
+		raf.seek(raf.length() - 20);
+		raf.write(b ^ 0x10);
+		raf.close();
+
+		try {
+			Checkpoint.read(file);
+			fail("Read a damaged checkpoint");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test that the checkpointer follows its cadence, and writes the weights
+	 * as they were when the snapshot was taken, not as they are afterwards.
+	 */
+	@Test
+	public void testCheckpointer() throws Exception {
+		File file = new File(folder.getRoot(), "network.ckpt");
+		Checkpointer checkpointer = new Checkpointer(file, layers, 3, 0);
+		assertFalse(checkpointer.due(2));
+		assertTrue(checkpointer.due(3));
+
+		double[] expected = parameters(layers);
+		checkpointer.maybeCheckpoint(3);
+		assertFalse(checkpointer.due(5));
+
+		// Learning carries on changing the weights
+		layers.getLast().filters.get(0).weights[0][0][0] += 1.0;
+
+		checkpointer.close();
+		assertTrue(checkpointer.written() >= 1);
+		assertEquals(3, Checkpoint.read(file).samples);
+		double[] actual = parameters(Checkpoint.read(file).layers);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+	}
+
+	/**
+	 * Test that learn() writes a checkpoint of its final weights.
+	 */
+	@Test
+	public void testLearn() throws Exception {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		network.add(l0);
+		network.add(l1);
+
+		Cell[] out = { new Cell(), new Cell() };
+		String[] input = new String[4];
+		double[][] dictionary = new double[input.length][out.length];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = "testingInput/" + (i + 1) + "b.jpg";
+			dictionary[i][i % 2] = 1;
+		}
+
+		File file = new File(folder.getRoot(), "learn.ckpt");
+		LearningOptions options = new LearningOptions();
+		options.checkpointFile = file.getPath();
+		options.checkpointEvery = 3;
+		FSONNetwork.learn(0.5, network, out, input, 2, dictionary, true, "testCheckpoint.txt", options);
+
+		Checkpoint checkpoint = Checkpoint.read(file);
+		assertEquals(2 * input.length, checkpoint.samples);
+		double[] expected = parameters(network);
+		double[] actual = parameters(checkpoint.layers);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+package testCNNetwork;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import cnnetwork.BiasIndex;
+import cnnetwork.ConnectionIndex;
+import cnnetwork.Connectivity;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.Tensor;
+
+/**
+ * This tests the connection geometry found in cnnetwork.Connectivity.java
+ * against the windows the layer functions in cnnetwork.Layer.java actually
+ * use.
+ *
+ */
+public class TestCNNConnectivity {
+
+	/**
+	 * Checks that, for every cell of the layer, the windows found by the
+	 * inverse mapping are exactly the windows (found by brute force) that
+	 * contain that cell.
+	 */
+	private void checkInverse(Layer layer) {
+		Connectivity connectivity = layer.connectivity;
+		int positions = connectivity.windowDepths * connectivity.windowRows * connectivity.windowColumns;
+
+		for (int d = 0; d < layer.depth; d++) {
+			for (int r = 0; r < layer.rows; r++) {
+				for (int c = 0; c < layer.collumns; c++) {
+					for (int p = 0; p < positions; p++) {
+						boolean contains = (connectivity.inputDepth(p) <= d)
+								&& (d < (connectivity.inputDepth(p) + connectivity.Fdepth))
+								&& (connectivity.inputRow(p) <= r)
+								&& (r < (connectivity.inputRow(p) + connectivity.Frows))
+								&& (connectivity.inputColumn(p) <= c)
+								&& (c < (connectivity.inputColumn(p) + connectivity.Fcolumns));
+
+						boolean found = (connectivity.firstWindowDepth(d) <= connectivity.positionDepth(p))
+								&& (connectivity.positionDepth(p) < connectivity.endWindowDepth(d))
+								&& (connectivity.firstWindowRow(r) <= connectivity.positionRow(p))
+								&& (connectivity.positionRow(p) < connectivity.endWindowRow(r))
+								&& (connectivity.firstWindowColumn(c) <= connectivity.positionColumn(p))
+								&& (connectivity.positionColumn(p) < connectivity.endWindowColumn(c));
+
+						assertEquals(contains, found);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test a convolutional layer: every filter is used at every window
+	 */
+	@Test
+	public void testConv() {
+		Layer layer = new Layer(9, 9, 3, 3, 3, 3, 4, 2, 0, LayerType.CONV);
+		Connectivity connectivity = layer.connectivity;
+
+		assertEquals(1, connectivity.windowDepths);
+		assertEquals(4, connectivity.windowRows);
+		assertEquals(4, connectivity.windowColumns);
+		assertEquals(16, connectivity.windows(2));
+
+		// The same windows Layer::convolution() uses
+		int w = 0;
+		for (int j = 0; (j + 3) <= 9; j += 2) {
+			for (int k = 0; (k + 3) <= 9; k += 2) {
+				int p = connectivity.position(2, w);
+				assertEquals(0, connectivity.inputDepth(p));
+				assertEquals(j, connectivity.inputRow(p));
+				assertEquals(k, connectivity.inputColumn(p));
+				assertEquals(2, connectivity.outputDepth(2, p));
+				assertEquals(j / 2, connectivity.outputRow(p));
+				assertEquals(k / 2, connectivity.outputColumn(2, p));
+				w++;
+			}
+		}
+
+		checkInverse(layer);
+	}
+
+	/**
+	 * Test a locally connected layer: each window has its own filter
+	 */
+	@Test
+	public void testLocal() {
+		Layer layer = new Layer(3, 3, 3, 2, 2, 1, 12, 1, 0, LayerType.LOCAL);
+		Connectivity connectivity = layer.connectivity;
+
+		assertEquals(3, connectivity.windowDepths);
+		assertEquals(2, connectivity.windowRows);
+		assertEquals(2, connectivity.windowColumns);
+
+		// The same windows, in the same order, that Layer::local() uses
+		int filterNum = 0;
+		for (int l = 0; (l + 1) <= 3; l++) {
+			for (int j = 0; (j + 2) <= 3; j++) {
+				for (int k = 0; (k + 2) <= 3; k++) {
+					assertEquals(1, connectivity.windows(filterNum));
+					int p = connectivity.position(filterNum, 0);
+					assertEquals(filterNum, connectivity.position(l, j, k));
+					assertEquals(l, connectivity.inputDepth(p));
+					assertEquals(j, connectivity.inputRow(p));
+					assertEquals(k, connectivity.inputColumn(p));
+					assertEquals(l, connectivity.outputDepth(filterNum, p));
+					assertEquals(j, connectivity.outputRow(p));
+					assertEquals(k, connectivity.outputColumn(filterNum, p));
+					filterNum++;
+				}
+			}
+		}
+
+		checkInverse(layer);
+	}
+
+	/**
+	 * Test a maxpool layer, including a row and column that no window uses
+	 */
+	@Test
+	public void testMaxpool() {
+		Layer layer = new Layer(5, 5, 2, 2, 2, 2, 8, 2, 0, LayerType.MAXPOOL);
+		Connectivity connectivity = layer.connectivity;
+
+		assertEquals(2, connectivity.windowDepths);
+		assertEquals(2, connectivity.windowRows);
+		assertEquals(2, connectivity.windowColumns);
+
+		// The last row is never pooled
+		assertTrue(connectivity.firstWindowRow(4) >= connectivity.endWindowRow(4));
+
+		checkInverse(layer);
+	}
+
+	/**
+	 * Test a fully connected layer: a single window at the top left corner
+	 */
+	@Test
+	public void testFully() {
+		Layer layer = new Layer(4, 3, 2, 4, 3, 2, 5, 0, 0, LayerType.FULLY);
+		Connectivity connectivity = layer.connectivity;
+
+		assertEquals(1, connectivity.windows(3));
+		int p = connectivity.position(3, 0);
+		assertEquals(0, connectivity.inputRow(p));
+		assertEquals(0, connectivity.outputDepth(3, p));
+		assertEquals(0, connectivity.outputRow(p));
+		assertEquals(3, connectivity.outputColumn(3, p));
+
+		checkInverse(layer);
+	}
+
+	/**
+	 * Test finding the windows that contain a given row or column
+	 */
+	@Test
+	public void testWindows() {
+		// 3 x 3 windows with a step of 2 over 7 rows: windows start at 0, 2 and 4
+		assertEquals(3, Connectivity.windowCount(7, 3, 2));
+		assertEquals(0, Connectivity.firstWindow(0, 2, 3));
+		assertEquals(1, Connectivity.endWindow(0, 3, 2));
+		assertEquals(0, Connectivity.firstWindow(2, 2, 3));
+		assertEquals(2, Connectivity.endWindow(2, 3, 2));
+		assertEquals(2, Connectivity.firstWindow(6, 2, 3));
+		assertEquals(3, Connectivity.endWindow(6, 3, 2));
+
+		// The last row of 5 rows with 2 x 2 windows and a step of 2 is never pooled
+		assertEquals(2, Connectivity.windowCount(5, 2, 2));
+		assertTrue(Connectivity.firstWindow(4, 2, 2) >= Connectivity.endWindow(4, 2, 2));
+	}
+
+	/**
+	 * Test that the connection index lists, for every cell, exactly the
+	 * windows that contain it, with the right weight inside each window
+	 */
+	@Test
+	public void testConnectionIndex() {
+		Layer[] layers = { new Layer(9, 9, 3, 3, 3, 3, 4, 2, 0, LayerType.CONV),
+				new Layer(3, 3, 3, 2, 2, 1, 12, 1, 0, LayerType.LOCAL),
+				new Layer(5, 5, 2, 2, 2, 2, 8, 2, 0, LayerType.MAXPOOL) };
+
+		for (Layer layer : layers) {
+			Connectivity connectivity = layer.connectivity;
+			ConnectionIndex index = layer.connectionIndex();
+			assertSame(index, layer.connectionIndex());
+
+			int positions = connectivity.windowDepths * connectivity.windowRows * connectivity.windowColumns;
+			for (int d = 0; d < layer.depth; d++) {
+				for (int r = 0; r < layer.rows; r++) {
+					for (int c = 0; c < layer.collumns; c++) {
+						int cell = layer.cells.index(d, r, c);
+						int e = index.cellStart[cell];
+
+						// The entries are in the order of the windows' positions
+						for (int p = 0; p < positions; p++) {
+							int wd = d - connectivity.inputDepth(p);
+							int wr = r - connectivity.inputRow(p);
+							int wc = c - connectivity.inputColumn(p);
+							if ((wd >= 0) && (wd < connectivity.Fdepth) && (wr >= 0) && (wr < connectivity.Frows)
+									&& (wc >= 0) && (wc < connectivity.Fcolumns)) {
+								assertEquals(p, index.positions[e]);
+								assertEquals(wd, index.weightDepth[e]);
+								assertEquals(wr, index.weightRow[e]);
+								assertEquals(wc, index.weightColumn[e]);
+								e++;
+							}
+						}
+						assertEquals(index.cellStart[cell + 1], e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test that each bias is listed with the cells of the next layer its
+	 * filter calculates
+	 */
+	@Test
+	public void testBiasIndex() {
+		Layer conv = new Layer(5, 5, 2, 3, 3, 2, 4, 1, 0, LayerType.CONV);
+		conv.initLayer();
+		Tensor next = new Tensor(4, 3, 3);
+		BiasIndex index = conv.biasIndex(next);
+		assertSame(index, conv.biasIndex(next));
+
+		for (int b = 0; b < 4; b++) {
+			assertEquals(9, index.biasStart[b + 1] - index.biasStart[b]);
+			int e = index.biasStart[b];
+			for (int r = 0; r < 3; r++) {
+				for (int c = 0; c < 3; c++) {
+					assertEquals(next.index(b, r, c), index.outputCells[e]);
+					e++;
+				}
+			}
+		}
+
+		Layer local = new Layer(3, 3, 3, 2, 2, 1, 12, 1, 0, LayerType.LOCAL);
+		local.initLayer();
+		next = new Tensor(3, 2, 2);
+		index = local.biasIndex(next);
+		for (int b = 0; b < 12; b++) {
+			assertEquals(1, index.biasStart[b + 1] - index.biasStart[b]);
+			assertEquals(b, index.outputCells[index.biasStart[b]]);
+		}
+
+		// The last layer adds bias "b" into out[b]
+		Layer fully = new Layer(4, 1, 1, 4, 1, 1, 3, 1, 0, LayerType.FULLY);
+		fully.initLayer();
+		index = fully.biasIndex(null);
+		for (int b = 0; b < 3; b++) {
+			assertEquals(b, index.outputCells[index.biasStart[b]]);
+		}
+	}
+
+}
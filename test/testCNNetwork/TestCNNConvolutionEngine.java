@@ -0,0 +1,219 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cnnetwork.ConvolutionEngine;
+import cnnetwork.DotKernel;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.Tensor;
+
+/**
+ * This tests the im2col convolution engine found in
+ * cnnetwork.ConvolutionEngine.java against the cell by cell convolution in
+ * cnnetwork.Layer.java
+ *
+ */
+public class TestCNNConvolutionEngine {
+
+	/**
+	 * Creates a convolutional layer with random cell values, weights, and
+	 * biases, and checks that both ways of calculating the convolution give
+	 * exactly the same output.
+	 */
+	private void compareEngines(int size, int depth, int F, int K, int step) throws Exception {
+		Random random = new Random(size * 31 + depth * 7 + step);
+
+		Layer testLayer = new Layer(size, size, depth, F, F, depth, K, step, 0, LayerType.CONV);
+		testLayer.initLayer();
+
+		for (int i = 0; i < testLayer.cells.size(); i++) {
+			testLayer.cells.values[i] = random.nextDouble();
+		}
+		for (int f = 0; f < K; f++) {
+			double[][][] weights = testLayer.filters.get(f).weights;
+			for (int x = 0; x < depth; x++) {
+				for (int y = 0; y < F; y++) {
+					for (int z = 0; z < F; z++) {
+						weights[x][y][z] = random.nextDouble() - 0.5;
+					}
+				}
+			}
+			testLayer.biases.get(f).value = random.nextDouble() - 0.5;
+		}
+
+		int width = ((size - F) / step) + 1;
+		Tensor cellByCell = new Tensor(K, width, width);
+		Tensor im2col = new Tensor(K, width, width);
+
+		// The im2col engine sums in the same order as the scalar kernel
+		boolean original = Layer.im2colConvolution;
+		DotKernel originalKernel = DotKernel.selected;
+		try {
+			DotKernel.selected = DotKernel.SCALAR;
+			Layer.im2colConvolution = false;
+			testLayer.convolution(testLayer.cells, testLayer.filters, cellByCell, step, 0, testLayer.biases, true);
+			Layer.im2colConvolution = true;
+			testLayer.convolution(testLayer.cells, testLayer.filters, im2col, step, 0, testLayer.biases, true);
+		} finally {
+			Layer.im2colConvolution = original;
+			DotKernel.selected = originalKernel;
+		}
+
+		for (int i = 0; i < cellByCell.size(); i++) {
+			assertEquals(cellByCell.values[i], im2col.values[i], 0);
+		}
+	}
+
+	@Test
+	public void testStepOne() throws Exception {
+		compareEngines(9, 3, 3, 5, 1);
+	}
+
+	@Test
+	public void testStepTwo() throws Exception {
+		compareEngines(14, 4, 3, 3, 2);
+	}
+
+	@Test
+	public void testLargePatch() throws Exception {
+		// 5 x 5 x 8 = 200 weights per filter, which spans more than one block
+		// of the shared dimension of the matrix multiplication.
+		compareEngines(12, 8, 5, 20, 1);
+	}
+
+	/**
+	 * Test that scratch matrices larger than the cap are let go once the
+	 * convolution is done, without changing its results, and that smaller
+	 * ones are kept for the next call.
+	 */
+	@Test
+	public void testRetainedScratch() throws Exception {
+		int original = ConvolutionEngine.retainedScratch;
+		try {
+			ConvolutionEngine.retainedScratch = 0;
+			compareEngines(12, 8, 5, 20, 1);
+			assertEquals(0, ConvolutionEngine.forCurrentThread().scratchSize());
+
+			ConvolutionEngine.retainedScratch = 1 << 22;
+			compareEngines(12, 8, 5, 20, 1);
+			assertTrue(ConvolutionEngine.forCurrentThread().scratchSize() > 0);
+		} finally {
+			ConvolutionEngine.retainedScratch = original;
+		}
+	}
+
+	/**
+	 * Test that a batch of samples is convolved by both ways of calculating
+	 * the convolution exactly as each sample is on its own.
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		int size = 10, depth = 3, F = 3, K = 4, step = 1, batch = 3;
+		Random random = new Random(11);
+
+		Layer testLayer = new Layer(size, size, depth, F, F, depth, K, step, 0, LayerType.CONV);
+		testLayer.initLayer();
+		for (int f = 0; f < K; f++) {
+			double[][][] weights = testLayer.filters.get(f).weights;
+			for (int x = 0; x < depth; x++) {
+				for (int y = 0; y < F; y++) {
+					for (int z = 0; z < F; z++) {
+						weights[x][y][z] = random.nextDouble() - 0.5;
+					}
+				}
+			}
+			testLayer.biases.get(f).value = random.nextDouble() - 0.5;
+		}
+
+		Tensor input = new Tensor(batch, depth, size, size);
+		for (int i = 0; i < input.values.length; i++) {
+			input.values[i] = random.nextDouble();
+		}
+
+		int width = size - F + 1;
+		Tensor cellByCell = new Tensor(batch, K, width, width);
+		Tensor im2col = new Tensor(batch, K, width, width);
+		Tensor single = new Tensor(K, width, width);
+
+		boolean original = Layer.im2colConvolution;
+		DotKernel originalKernel = DotKernel.selected;
+		try {
+			DotKernel.selected = DotKernel.SCALAR;
+			Layer.im2colConvolution = false;
+			testLayer.convolution(input, testLayer.filters, cellByCell, step, 0, testLayer.biases, true);
+			Layer.im2colConvolution = true;
+			testLayer.convolution(input, testLayer.filters, im2col, step, 0, testLayer.biases, true);
+
+			for (int n = 0; n < batch; n++) {
+				System.arraycopy(input.values, n * input.sampleStride, testLayer.cells.values, 0,
+						testLayer.cells.size());
+				testLayer.convolution(testLayer.cells, testLayer.filters, single, step, 0, testLayer.biases, true);
+				for (int i = 0; i < single.size(); i++) {
+					assertEquals(single.values[i], im2col.values[(n * im2col.sampleStride) + i], 0);
+					assertEquals(single.values[i], cellByCell.values[(n * cellByCell.sampleStride) + i], 0);
+				}
+			}
+		} finally {
+			Layer.im2colConvolution = original;
+			DotKernel.selected = originalKernel;
+		}
+	}
+
+	/**
+	 * Test the weight and bias gradients calculated by the im2col engine
+	 * against a window by window sum. 18 x 18 outputs and 5 x 5 x 8 weights
+	 * span more than one block of both the output positions and the patch.
+	 */
+	@Test
+	public void testCorrelate() throws Exception {
+		int size = 22, depth = 8, F = 5, K = 3, step = 1;
+		Random random = new Random(7);
+		Tensor input = new Tensor(depth, size, size);
+		for (int i = 0; i < input.size(); i++) {
+			input.values[i] = random.nextDouble();
+		}
+		int width = size - F + 1;
+		Tensor output = new Tensor(K, width, width);
+		double[] deltas = new double[output.size()];
+		for (int i = 0; i < deltas.length; i++) {
+			deltas[i] = random.nextDouble() - 0.5;
+		}
+
+		double[] weightGradients = new double[K * depth * F * F];
+		double[] biasGradients = new double[K];
+		ConvolutionEngine.forCurrentThread().correlate(input, depth, F, F, step, output, deltas, K, weightGradients,
+				biasGradients);
+
+		for (int f = 0; f < K; f++) {
+			double bias = 0.0;
+			for (int r = 0; r < width; r++) {
+				for (int c = 0; c < width; c++) {
+					bias += deltas[output.index(f, r, c)];
+				}
+			}
+			assertEquals(bias, biasGradients[f], 1e-9);
+
+			int p = f * depth * F * F;
+			for (int x = 0; x < depth; x++) {
+				for (int y = 0; y < F; y++) {
+					for (int z = 0; z < F; z++) {
+						double sum = 0.0;
+						for (int r = 0; r < width; r++) {
+							for (int c = 0; c < width; c++) {
+								sum += input.getValue(x, r + y, c + z) * deltas[output.index(f, r, c)];
+							}
+						}
+						assertEquals(sum, weightGradients[p++], 1e-9);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -9,6 +9,7 @@ import cnnetwork.Cell;
 import cnnetwork.Filter;
 import cnnetwork.Layer;
 import cnnetwork.LayerType;
+import cnnetwork.Tensor;
 
 /**
  * This tests the "convolution" function in cnnetwork.Layer.java
@@ -22,7 +23,7 @@ public class TestCNNConvolutionFunction {
 	
 	Cell testBias0, testBias1, testBias2, testBias3;
 
-	Cell[][][] testOut;
+	Tensor testOut;
 
 	/**
 	 * @throws java.lang.Exception
@@ -34,41 +35,41 @@ public class TestCNNConvolutionFunction {
 		testLayer = new Layer(3, 3, 3, 2, 2, 3, 4, 1, 0, LayerType.CONV);
 
 		//Set the values of all the cells
-		testLayer.cells[0][0][0].value = 2;
-		testLayer.cells[0][0][1].value = 0;
-		testLayer.cells[0][0][2].value = 2;
+		testLayer.cells.setValue(0, 0, 0, 2);
+		testLayer.cells.setValue(0, 0, 1, 0);
+		testLayer.cells.setValue(0, 0, 2, 2);
 
-		testLayer.cells[0][1][0].value = 2;
-		testLayer.cells[0][1][1].value = 2;
-		testLayer.cells[0][1][2].value = 2;
+		testLayer.cells.setValue(0, 1, 0, 2);
+		testLayer.cells.setValue(0, 1, 1, 2);
+		testLayer.cells.setValue(0, 1, 2, 2);
 
-		testLayer.cells[0][2][0].value = 0;
-		testLayer.cells[0][2][1].value = 1;
-		testLayer.cells[0][2][2].value = 0;
+		testLayer.cells.setValue(0, 2, 0, 0);
+		testLayer.cells.setValue(0, 2, 1, 1);
+		testLayer.cells.setValue(0, 2, 2, 0);
 
-		testLayer.cells[1][0][0].value = 1;
-		testLayer.cells[1][0][1].value = 0;
-		testLayer.cells[1][0][2].value = 2;
+		testLayer.cells.setValue(1, 0, 0, 1);
+		testLayer.cells.setValue(1, 0, 1, 0);
+		testLayer.cells.setValue(1, 0, 2, 2);
 
-		testLayer.cells[1][1][0].value = 0;
-		testLayer.cells[1][1][1].value = 2;
-		testLayer.cells[1][1][2].value = 0;
+		testLayer.cells.setValue(1, 1, 0, 0);
+		testLayer.cells.setValue(1, 1, 1, 2);
+		testLayer.cells.setValue(1, 1, 2, 0);
 
-		testLayer.cells[1][2][0].value = 2;
-		testLayer.cells[1][2][1].value = 1;
-		testLayer.cells[1][2][2].value = 2;
+		testLayer.cells.setValue(1, 2, 0, 2);
+		testLayer.cells.setValue(1, 2, 1, 1);
+		testLayer.cells.setValue(1, 2, 2, 2);
 
-		testLayer.cells[2][0][0].value = 1;
-		testLayer.cells[2][0][1].value = 2;
-		testLayer.cells[2][0][2].value = 0;
+		testLayer.cells.setValue(2, 0, 0, 1);
+		testLayer.cells.setValue(2, 0, 1, 2);
+		testLayer.cells.setValue(2, 0, 2, 0);
 
-		testLayer.cells[2][1][0].value = 2;
-		testLayer.cells[2][1][1].value = 2;
-		testLayer.cells[2][1][2].value = 1;
+		testLayer.cells.setValue(2, 1, 0, 2);
+		testLayer.cells.setValue(2, 1, 1, 2);
+		testLayer.cells.setValue(2, 1, 2, 1);
 
-		testLayer.cells[2][2][0].value = 0;
-		testLayer.cells[2][2][1].value = 1;
-		testLayer.cells[2][2][2].value = 1;
+		testLayer.cells.setValue(2, 2, 0, 0);
+		testLayer.cells.setValue(2, 2, 1, 1);
+		testLayer.cells.setValue(2, 2, 2, 1);
 
 		//Create and initialize the first filter
 		double[][][] testFilter0Weights = new double[testLayer.Fdepth][testLayer.Frows][testLayer.Fcollumns];
@@ -183,28 +184,16 @@ public class TestCNNConvolutionFunction {
 		testLayer.biases.add(testBias3); //Add the bias to the list of biases in the layer
 
 		//Calculate the width of the array to use to store the output
-		int width = ((testLayer.cells[0][0].length - testLayer.Fcollumns + (2 * testLayer.pad)) / testLayer.step) + 1;
+		int width = ((testLayer.cells.columns - testLayer.Fcollumns + (2 * testLayer.pad)) / testLayer.step) + 1;
 
-		//Create and initialize the array to use to store the output
-		testOut = new Cell[testLayer.K][width][width];
-		
-		// Initialize the cells because java won't do it for you
-		// Depth
-		for (int l = 0; l < testOut.length; l++) {
-			// Row
-			for (int m = 0; m < testOut[0].length; m++) {
-				// Column
-				for (int n = 0; n < testOut[0][0].length; n++) {
-					testOut[l][m][n] = new Cell();
-				}
-			}
-		}
+		//Create the tensor to use to store the output
+		testOut = new Tensor(testLayer.K, width, width);
 		
 	}
 
 	@Test
 	public void test() throws Exception {
-		testLayer.convolution(testLayer.cells, testLayer.filters, testOut, 1, 0, testLayer.biases, true, true);
+		testLayer.convolution(testLayer.cells, testLayer.filters, testOut, 1, 0, testLayer.biases, true);
 
 		//This is an array of values we expect to see in testOut
 		double[][][] temp = new double[4][2][2];
@@ -237,7 +226,7 @@ public class TestCNNConvolutionFunction {
 		for (int i = 0; i < temp.length; i++) {
 			for (int j = 0; j < temp[0].length; j++) {
 				for (int k = 0; k < temp[0][0].length; k++) {
-					assertEquals(temp[i][j][k], testOut[i][j][k].value, 0.0000001);
+					assertEquals(temp[i][j][k], testOut.getValue(i, j, k), 0.0000001);
 				}
 			}
 		}
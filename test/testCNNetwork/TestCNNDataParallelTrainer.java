@@ -0,0 +1,153 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import cnnetwork.BackwardEngine;
+import cnnetwork.Cell;
+import cnnetwork.DataParallelTrainer;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.Tensor;
+
+/**
+ * This tests the data parallel trainer found in
+ * cnnetwork.DataParallelTrainer.java against a single backward engine
+ *
+ */
+public class TestCNNDataParallelTrainer {
+
+	private static final int BATCH = 5;
+	private static final double[][] EXPECTED = { { 0, 1, 0 }, { 1, 0, 0 }, { 0, 0, 1 }, { 0, 1, 0 }, { 1, 0, 0 } };
+
+	/**
+	 * Creates a network with one layer of every type, with random weights and
+	 * biases from the given seed.
+	 */
+	private static LinkedList<Layer> network(long seed) {
+		Random random = new Random(seed);
+
+		LinkedList<Layer> layers = new LinkedList<Layer>();
+		layers.add(new Layer(6, 6, 2, 3, 3, 2, 3, 1, 0, LayerType.CONV));
+		layers.add(new Layer(4, 4, 3, 2, 2, 3, 0, 2, 0, LayerType.MAXPOOL));
+		layers.add(new Layer(2, 2, 3, 1, 1, 1, 12, 1, 0, LayerType.LOCAL));
+		layers.add(new Layer(2, 2, 3, 2, 2, 3, 5, 1, 0, LayerType.FULLY));
+		layers.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+
+		for (Layer layer : layers) {
+			layer.initLayer();
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int k = 0; k < row.length; k++) {
+							row[k] = random.nextDouble() - 0.5;
+						}
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				bias.value = random.nextDouble() - 0.5;
+			}
+		}
+		return layers;
+	}
+
+	/**
+	 * @return "BATCH" random inputs for the first layer of a network.
+	 */
+	private static Tensor[] inputs(LinkedList<Layer> layers) {
+		Random random = new Random(3);
+		Tensor first = layers.getFirst().cells;
+		Tensor[] inputs = new Tensor[BATCH];
+		for (int n = 0; n < BATCH; n++) {
+			inputs[n] = new Tensor(first.depth, first.rows, first.columns);
+			for (int i = 0; i < first.size(); i++) {
+				inputs[n].values[i] = random.nextDouble();
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Trains a network on a single batch with the given number of threads.
+	 */
+	private static LinkedList<Layer> train(int threads, int count) throws Exception {
+		LinkedList<Layer> layers = network(42);
+		Tensor[] inputs = inputs(layers);
+		DataParallelTrainer trainer = new DataParallelTrainer(layers, 3, BATCH, threads);
+		try {
+			for (int n = 0; n < count; n++) {
+				trainer.setInput(n, inputs[n], EXPECTED[n]);
+			}
+			trainer.train(count, false, 0.5);
+			assertEquals(count, trainer.engine.samples);
+		} finally {
+			trainer.close();
+		}
+		return layers;
+	}
+
+	/**
+	 * Checks that two networks have the same weights and biases.
+	 */
+	private static void assertSameNetwork(LinkedList<Layer> expected, LinkedList<Layer> actual, double delta) {
+		for (int j = 0; j < expected.size(); j++) {
+			Layer a = expected.get(j);
+			Layer b = actual.get(j);
+			for (int f = 0; f < a.filters.size(); f++) {
+				for (int x = 0; x < a.Fdepth; x++) {
+					for (int y = 0; y < a.Frows; y++) {
+						for (int z = 0; z < a.Fcollumns; z++) {
+							assertEquals(a.filters.get(f).weights[x][y][z], b.filters.get(f).weights[x][y][z], delta);
+						}
+					}
+				}
+			}
+			for (int i = 0; i < a.biases.size(); i++) {
+				assertEquals(a.biases.get(i).value, b.biases.get(i).value, delta);
+			}
+		}
+	}
+
+	/**
+	 * Test that splitting a batch between threads moves the weights the same
+	 * way as accumulating every input in turn on a single thread.
+	 */
+	@Test
+	public void testMatchesSingleEngine() throws Exception {
+		LinkedList<Layer> layers = network(42);
+		Tensor[] inputs = inputs(layers);
+		Cell[] out = new Cell[3];
+		for (int k = 0; k < out.length; k++) {
+			out[k] = new Cell();
+		}
+		BackwardEngine engine = new BackwardEngine(layers, out);
+		for (int n = 0; n < BATCH; n++) {
+			System.arraycopy(inputs[n].values, 0, layers.getFirst().cells.values, 0, inputs[n].size());
+			FSONNetwork.feedForward(layers, out);
+			Layer.softmax(out);
+			engine.accumulate(layers, out, EXPECTED[n]);
+		}
+		engine.update(layers, 0.5);
+
+		assertSameNetwork(layers, train(3, BATCH), 1e-12);
+		assertSameNetwork(layers, train(1, BATCH), 1e-12);
+	}
+
+	/**
+	 * Test that training with several threads always gives exactly the same
+	 * weights, including for a batch that is not full.
+	 */
+	@Test
+	public void testDeterministic() throws Exception {
+		assertSameNetwork(train(3, BATCH), train(3, BATCH), 0);
+		assertSameNetwork(train(4, BATCH - 1), train(4, BATCH - 1), 0);
+	}
+
+}
@@ -0,0 +1,67 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cnnetwork.DotKernel;
+
+/**
+ * This tests the kernels found in cnnetwork.DotKernel.java
+ *
+ */
+public class TestCNNDotKernel {
+
+	double[] input;
+	double[] weights;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(42);
+
+		// An odd length, so the lane kernels have something left over at the end
+		input = new double[2051];
+		weights = new double[2051];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = random.nextDouble();
+			weights[i] = random.nextDouble() - 0.5;
+		}
+	}
+
+	@Test
+	public void testScalarMatchesLoop() {
+		double expected = 0.25;
+		for (int k = 3; k < 2048; k++) {
+			expected += input[k] * weights[k - 3];
+		}
+
+		// The scalar kernel must add the products in order, exactly like a plain loop
+		assertEquals(expected, DotKernel.SCALAR.accumulate(0.25, input, 3, weights, 0, 2045), 0);
+	}
+
+	@Test
+	public void testLanesMatchScalar() {
+		for (int length = 0; length < 40; length++) {
+			double scalar = DotKernel.SCALAR.accumulate(1.0, input, 7, weights, 2, length);
+			assertEquals(scalar, DotKernel.LANES4.accumulate(1.0, input, 7, weights, 2, length), 0.0000001);
+			assertEquals(scalar, DotKernel.LANES8.accumulate(1.0, input, 7, weights, 2, length), 0.0000001);
+		}
+
+		double scalar = DotKernel.SCALAR.accumulate(0.0, input, 0, weights, 0, input.length);
+		assertEquals(scalar, DotKernel.LANES4.accumulate(0.0, input, 0, weights, 0, input.length), 0.0000001);
+		assertEquals(scalar, DotKernel.LANES8.accumulate(0.0, input, 0, weights, 0, input.length), 0.0000001);
+	}
+
+	@Test
+	public void testFromString() {
+		assertEquals(DotKernel.SCALAR, DotKernel.fromString("scalar"));
+		assertEquals(DotKernel.LANES4, DotKernel.fromString("lanes4"));
+		assertEquals(DotKernel.LANES8, DotKernel.fromString("lanes8"));
+		// Faster kernels change the last bits of the results, so they are never picked for you
+		assertEquals(DotKernel.SCALAR, DotKernel.fromString("auto"));
+	}
+
+}
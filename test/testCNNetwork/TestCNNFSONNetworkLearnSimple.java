@@ -42,8 +42,7 @@ public class TestCNNFSONNetworkLearnSimple {
 		FSONNetwork.openFileInputBW(layers, "testingInput/1b.jpg");
 		
 		// Feed the input through the layers of the network.
-		// This sets up the connections needed for backpropagation
-		FSONNetwork.feedForward(layers, out, true);
+		FSONNetwork.feedForward(layers, out);
 		
 		// Since network has a single output value, it is independent and needs
 		// to use the regular sigmoid activation function instead of the softmax
@@ -111,7 +110,7 @@ public class TestCNNFSONNetworkLearnSimple {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/3.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -124,7 +123,7 @@ public class TestCNNFSONNetworkLearnSimple {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/4.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -137,7 +136,7 @@ public class TestCNNFSONNetworkLearnSimple {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/7.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -150,7 +149,7 @@ public class TestCNNFSONNetworkLearnSimple {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/9.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -163,7 +162,7 @@ public class TestCNNFSONNetworkLearnSimple {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/8.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -55,8 +55,7 @@ public class TestCNNFSONNetworkLearnSimple10 {
 		FSONNetwork.openFileInputBW(layers, "testingInput/1b.jpg");
 		
 		// Feed the input through the layers of the network.
-		// This sets up the connections needed for backpropagation
-		FSONNetwork.feedForward(layers, out, true);
+		FSONNetwork.feedForward(layers, out);
 		
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
@@ -137,7 +136,7 @@ public class TestCNNFSONNetworkLearnSimple10 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/3.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -154,7 +153,7 @@ public class TestCNNFSONNetworkLearnSimple10 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/4.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -171,7 +170,7 @@ public class TestCNNFSONNetworkLearnSimple10 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/7.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -188,7 +187,7 @@ public class TestCNNFSONNetworkLearnSimple10 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/9.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -205,7 +204,7 @@ public class TestCNNFSONNetworkLearnSimple10 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/8.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -43,8 +43,7 @@ public class TestCNNFSONNetworkLearnSimple2 {
 		FSONNetwork.openFileInputBW(layers, "testingInput/1b.jpg");
 
 		// Feed the input through the layers of the network.
-		// This sets up the connections needed for backpropagation
-		FSONNetwork.feedForward(layers, out, true);
+		FSONNetwork.feedForward(layers, out);
 
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
@@ -126,7 +125,7 @@ public class TestCNNFSONNetworkLearnSimple2 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/3.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -143,7 +142,7 @@ public class TestCNNFSONNetworkLearnSimple2 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/4.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -160,7 +159,7 @@ public class TestCNNFSONNetworkLearnSimple2 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/7.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -177,7 +176,7 @@ public class TestCNNFSONNetworkLearnSimple2 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/9.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -194,7 +193,7 @@ public class TestCNNFSONNetworkLearnSimple2 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/8.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -48,8 +48,7 @@ public class TestCNNFSONNetworkLearnSimple3 {
 		FSONNetwork.openFileInputBW(layers, "testingInput/1b.jpg");
 
 		// Feed the input through the layers of the network.
-		// This sets up the connections needed for backpropagation
-		FSONNetwork.feedForward(layers, out, true);
+		FSONNetwork.feedForward(layers, out);
 
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
@@ -131,7 +130,7 @@ public class TestCNNFSONNetworkLearnSimple3 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/3.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -148,7 +147,7 @@ public class TestCNNFSONNetworkLearnSimple3 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/4.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -165,7 +164,7 @@ public class TestCNNFSONNetworkLearnSimple3 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/7.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -182,7 +181,7 @@ public class TestCNNFSONNetworkLearnSimple3 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/9.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -199,7 +198,7 @@ public class TestCNNFSONNetworkLearnSimple3 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/8.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
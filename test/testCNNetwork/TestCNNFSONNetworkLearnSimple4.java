@@ -50,8 +50,7 @@ public class TestCNNFSONNetworkLearnSimple4 {
 		FSONNetwork.openFileInputBW(layers, "testingInput/1b.jpg");
 		
 		// Feed the input through the layers of the network.
-		// This sets up the connections needed for backpropagation
-		FSONNetwork.feedForward(layers, out, true);
+		FSONNetwork.feedForward(layers, out);
 		
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
@@ -133,7 +132,7 @@ public class TestCNNFSONNetworkLearnSimple4 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/3.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because 
 		// the output cells are independant of one another. 
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -150,7 +149,7 @@ public class TestCNNFSONNetworkLearnSimple4 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/4.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -167,7 +166,7 @@ public class TestCNNFSONNetworkLearnSimple4 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/7.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -184,7 +183,7 @@ public class TestCNNFSONNetworkLearnSimple4 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/9.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
@@ -201,7 +200,7 @@ public class TestCNNFSONNetworkLearnSimple4 {
 		// Open file for input
 		FSONNetwork.openFileInputBW(layers, "testingInput/8.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(layers, out, false);
+		FSONNetwork.feedForward(layers, out);
 		// Here we are using the sigmoid activation function because
 		// the output cells are independant of one another.
 		out[0].value = Layer.activationFunction(out[0].value);
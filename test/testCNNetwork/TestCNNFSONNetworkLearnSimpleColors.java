@@ -67,7 +67,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, learnInput[0]);
 
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, true);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 
 		// Use the learning function to learn using our newly processed input
 		// and newly created dictionary.
@@ -83,7 +83,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 		// Open file for input
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/blue.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -103,7 +103,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/red.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -123,7 +123,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/yellow.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -143,7 +143,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/purple.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -163,7 +163,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/green.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -183,7 +183,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/aqua.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -203,7 +203,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/pink.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -223,7 +223,7 @@ public class TestCNNFSONNetworkLearnSimpleColors {
 
 		FSONNetwork.openHSVFileInput(colorNet.layers, "testingInput/colors/orange.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(colorNet.layers, colorNet.out, false);
+		FSONNetwork.feedForward(colorNet.layers, colorNet.out);
 		Layer.softmax(colorNet.out);
 
 		// This array allows for easy viewing when debugging
@@ -45,7 +45,7 @@ public class TestCNNFSONNetworkLearnSimpleShapes {
 	
 		FSONNetwork.openFileInputBW(shapeNet.layers, learnInput[0]);
 
-		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out, true);
+		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out);
 
 		// Use the learning function to learn using our newly processed input
 		// and newly created dictionary.
@@ -61,7 +61,7 @@ public class TestCNNFSONNetworkLearnSimpleShapes {
 		// Open file for input
 		FSONNetwork.openFileInputBW(shapeNet.layers, "testingInput/circle/test1.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out, false);
+		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out);
 		double test1 = Layer.activationFunction(shapeNet.out[0].value);
 
 //		assertEquals(1.0, shapeNet.out[0].value, 0.3);
@@ -69,7 +69,7 @@ public class TestCNNFSONNetworkLearnSimpleShapes {
 		// Open file for input
 		FSONNetwork.openFileInputBW(shapeNet.layers, "testingInput/circle/test2.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out, false);
+		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out);
 		double test2 = Layer.activationFunction(shapeNet.out[0].value);
 
 //		assertEquals(1.0, shapeNet.out[0].value, 0.3);
@@ -77,7 +77,7 @@ public class TestCNNFSONNetworkLearnSimpleShapes {
 		// Open file for input
 		FSONNetwork.openFileInputBW(shapeNet.layers, "testingInput/circle/test3.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out, false);
+		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out);
 		double test3 = Layer.activationFunction(shapeNet.out[0].value);
 
 //		assertEquals(0.0, shapeNet.out[0].value, 0.3);
@@ -85,7 +85,7 @@ public class TestCNNFSONNetworkLearnSimpleShapes {
 		// Open file for input
 		FSONNetwork.openFileInputBW(shapeNet.layers, "testingInput/circle/test4.jpg");
 		// Feed the input through the layers of the network.
-		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out, false);
+		FSONNetwork.feedForward(shapeNet.layers, shapeNet.out);
 		double test4 = Layer.activationFunction(shapeNet.out[0].value);
 
 		assertEquals(0.0, shapeNet.out[0].value, 0.3);
@@ -81,19 +81,7 @@ public class TestCNNFSONnetwork {
 		//Create the second layer.
 		Layer l2 = new Layer(72, 72, 32, 3, 3, 32, 39200, 2, 0, LayerType.MAXPOOL);
 		
-		// Create and initialize the "filters"
-		// Because this is a maxpool layer, these filters are only used to
-		// record connections for use during backpropagation, and we don't need
-		// any biases.
-		for (int i = 0; i < l2.K; i++) {
-			// Create the filter weights
-			double[][][] newFilterWeights = new double[1][l2.Frows][l2.Fcollumns];
-
-			// (java will initialize them to 0)
-
-			Filter newFilter = new Filter(newFilterWeights);// Use the default constructor with the newly created filter weights
-			l2.filters.add(newFilter);// Actually add the filter to the list of filters in the layer
-		}
+		// Maxpool layers have no filters or biases
 		
 		//Create and initialize the third layer.
 		Layer l3 = new Layer(35, 35, 32, 5, 5, 32, 16, 1, 0, LayerType.CONV);
@@ -119,19 +107,7 @@ public class TestCNNFSONnetwork {
 		//Create the fourth layer.
 		Layer l4 = new Layer(31, 31, 16, 5, 5, 16, 3136, 2, 0, LayerType.MAXPOOL);
 
-		// Create and initialize the "filters"
-		// Because this is a maxpool layer, these filters are only used to
-		// record connections for use during backpropagation, and we don't need
-		// any biases.
-		for (int i = 0; i < l4.K; i++) {
-			// Create the filter weights
-			double[][][] newFilterWeights = new double[1][l4.Frows][l4.Fcollumns];
-
-			// (java will initialize them to 0)
-
-			Filter newFilter = new Filter(newFilterWeights);// Use the default constructor with the newly created filter weights
-			l4.filters.add(newFilter);// Actually add the filter to the list of filters in the layer
-		}
+		// Maxpool layers have no filters or biases
 		
 		//Create and initialize the fifth layer.
 		Layer l5 = new Layer(14, 14, 16, 3, 3, 16, 16, 2, 0, LayerType.CONV);
@@ -246,7 +222,7 @@ public class TestCNNFSONnetwork {
 					// formatting of the data is required.
 					double value = temp[(j * 76) + k];
 					value = (value-127.5)/25.5;
-					l1.cells[i][j][k].value = value;
+					l1.cells.setValue(i, j, k, value);
 				}
 
 			}
@@ -254,14 +230,14 @@ public class TestCNNFSONnetwork {
 		}
 
 		//Call the appropriate functions to feed the input through the layers
-		l1.convolution(l1.cells, l1.filters, l2.cells, l1.step, l1.pad, l1.biases, false, true);
-		l2.pool(l2.cells, l2.filters, l3.cells, l2.step, l2.Fcollumns, false);
-		l3.convolution(l3.cells, l3.filters, l4.cells, l3.step, l3.pad, l3.biases, false, true);
-		l4.pool(l4.cells, l4.filters, l5.cells, l4.step, l4.Fcollumns, false);
-		l5.convolution(l5.cells, l5.filters, l6.cells, l5.step, l5.pad, l5.biases, false, true);
-		l6.local(l6.cells, l6.filters, l7.cells, l6.step, l6.pad, l6.biases, false, false);
-		l7.full(l7.cells, l7.filters, l8.cells[0][0], l7.step, l7.pad, l7.biases, false, false);
-		l8.full(l8.cells, l8.filters, out, l8.step, l8.pad, l8.biases, false, false);
+		l1.convolution(l1.cells, l1.filters, l2.cells, l1.step, l1.pad, l1.biases, true);
+		l2.pool(l2.cells, l3.cells, l2.step, l2.Fcollumns);
+		l3.convolution(l3.cells, l3.filters, l4.cells, l3.step, l3.pad, l3.biases, true);
+		l4.pool(l4.cells, l5.cells, l4.step, l4.Fcollumns);
+		l5.convolution(l5.cells, l5.filters, l6.cells, l5.step, l5.pad, l5.biases, true);
+		l6.local(l6.cells, l6.filters, l7.cells, l6.step, l6.pad, l6.biases, false);
+		l7.full(l7.cells, l7.filters, l8.cells, l7.step, l7.pad, l7.biases, false);
+		l8.full(l8.cells, l8.filters, out, l8.step, l8.pad, l8.biases, false);
 		Layer.softmax(out);
 	}
 
@@ -271,14 +247,14 @@ public class TestCNNFSONnetwork {
 		//Test that using the "openFileInput" function in FSONNetwork results in the same values as doing it manually
 		FSONNetwork test2 = FSONNetwork.sampleNetwork();
 		FSONNetwork.openFileInput(test2.layers, "testingInput/print.jpg");
-		test2.layers.get(0).convolution(test2.layers.get(0).cells, test2.layers.get(0).filters, test2.layers.get(1).cells, test2.layers.get(0).step, test2.layers.get(0).pad, test2.layers.get(0).biases, false, true);
-		test2.layers.get(1).pool(test2.layers.get(1).cells, test2.layers.get(1).filters, test2.layers.get(2).cells, test2.layers.get(1).step, test2.layers.get(1).Fcollumns, false);
-		test2.layers.get(2).convolution(test2.layers.get(2).cells, test2.layers.get(2).filters, test2.layers.get(3).cells, test2.layers.get(2).step, test2.layers.get(2).pad, test2.layers.get(2).biases, false, true);
-		test2.layers.get(3).pool(test2.layers.get(3).cells, test2.layers.get(3).filters, test2.layers.get(4).cells, test2.layers.get(3).step, test2.layers.get(3).Fcollumns, false);
-		test2.layers.get(4).convolution(test2.layers.get(4).cells, test2.layers.get(4).filters, test2.layers.get(5).cells, test2.layers.get(4).step, test2.layers.get(4).pad, test2.layers.get(4).biases, false, true);
-		test2.layers.get(5).local(test2.layers.get(5).cells, test2.layers.get(5).filters, test2.layers.get(6).cells, test2.layers.get(5).step, test2.layers.get(5).pad, test2.layers.get(5).biases, false, false);
-		test2.layers.get(6).full(test2.layers.get(6).cells, test2.layers.get(6).filters, test2.layers.get(7).cells[0][0], test2.layers.get(6).step, test2.layers.get(6).pad, test2.layers.get(6).biases, false, false);
-		test2.layers.get(7).full(test2.layers.get(7).cells, test2.layers.get(7).filters, test2.out, test2.layers.get(7).step, test2.layers.get(7).pad, test2.layers.get(7).biases, false, false);
+		test2.layers.get(0).convolution(test2.layers.get(0).cells, test2.layers.get(0).filters, test2.layers.get(1).cells, test2.layers.get(0).step, test2.layers.get(0).pad, test2.layers.get(0).biases, true);
+		test2.layers.get(1).pool(test2.layers.get(1).cells, test2.layers.get(2).cells, test2.layers.get(1).step, test2.layers.get(1).Fcollumns);
+		test2.layers.get(2).convolution(test2.layers.get(2).cells, test2.layers.get(2).filters, test2.layers.get(3).cells, test2.layers.get(2).step, test2.layers.get(2).pad, test2.layers.get(2).biases, true);
+		test2.layers.get(3).pool(test2.layers.get(3).cells, test2.layers.get(4).cells, test2.layers.get(3).step, test2.layers.get(3).Fcollumns);
+		test2.layers.get(4).convolution(test2.layers.get(4).cells, test2.layers.get(4).filters, test2.layers.get(5).cells, test2.layers.get(4).step, test2.layers.get(4).pad, test2.layers.get(4).biases, true);
+		test2.layers.get(5).local(test2.layers.get(5).cells, test2.layers.get(5).filters, test2.layers.get(6).cells, test2.layers.get(5).step, test2.layers.get(5).pad, test2.layers.get(5).biases, false);
+		test2.layers.get(6).full(test2.layers.get(6).cells, test2.layers.get(6).filters, test2.layers.get(7).cells, test2.layers.get(6).step, test2.layers.get(6).pad, test2.layers.get(6).biases, false);
+		test2.layers.get(7).full(test2.layers.get(7).cells, test2.layers.get(7).filters, test2.out, test2.layers.get(7).step, test2.layers.get(7).pad, test2.layers.get(7).biases, false);
 		Layer.softmax(test2.out);
 		for (int i = 0; i < out.length; i++) {
 			assertEquals(out[i].value, test2.out[i].value, 0);
@@ -287,7 +263,7 @@ public class TestCNNFSONnetwork {
 		//Test that using the "feedForward" and "openFileInput" functions in FSONNetwork results in the same values as doing it manually
 		FSONNetwork test3 = FSONNetwork.sampleNetwork();
 		FSONNetwork.openFileInput(test3.layers, "testingInput/print.jpg");
-		FSONNetwork.feedForward(test3.layers, test3.out, false);
+		FSONNetwork.feedForward(test3.layers, test3.out);
 		Layer.softmax(test3.out);
 		for (int i = 0; i < out.length; i++) {
 			assertEquals(out[i].value, test3.out[i].value, 0);
@@ -0,0 +1,71 @@
+package testCNNetwork;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import cnnetwork.BiasBank;
+import cnnetwork.Cell;
+import cnnetwork.Filter;
+import cnnetwork.FilterBank;
+
+/**
+ * This tests the filter and bias banks found in cnnetwork.FilterBank.java and
+ * cnnetwork.BiasBank.java
+ *
+ */
+public class TestCNNFilterBank {
+
+	/**
+	 * Test that filters keep their order and index when the bank has to grow
+	 */
+	@Test
+	public void testFilterBank() {
+		FilterBank bank = new FilterBank(2);
+		Filter[] added = new Filter[5];
+		for (int i = 0; i < added.length; i++) {
+			added[i] = new Filter(1, 1, 1);
+			bank.add(added[i]);
+		}
+
+		assertEquals(5, bank.size());
+		for (int i = 0; i < added.length; i++) {
+			assertSame(added[i], bank.get(i));
+		}
+
+		// Walk the bank with a for-each loop
+		int i = 0;
+		for (Filter filter : bank) {
+			assertSame(added[i], filter);
+			i++;
+		}
+		assertEquals(5, i);
+	}
+
+	/**
+	 * Test that biases keep their order and index when the bank has to grow
+	 */
+	@Test
+	public void testBiasBank() {
+		BiasBank bank = new BiasBank(1);
+		for (int i = 0; i < 3; i++) {
+			bank.add(new Cell(i));
+		}
+
+		assertEquals(3, bank.size());
+		int i = 0;
+		for (Cell bias : bank) {
+			assertEquals(i, bias.value, 0);
+			assertSame(bank.get(i), bias);
+			i++;
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		FilterBank bank = new FilterBank(4);
+		bank.add(new Filter(1, 1, 1));
+		bank.get(1);
+	}
+
+}
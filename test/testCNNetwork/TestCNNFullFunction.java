@@ -34,41 +34,41 @@ public class TestCNNFullFunction {
 		testLayer = new Layer(3, 3, 3, 3, 3, 3, 3, 1, 0, LayerType.CONV);
 
 		//Set the values of all the cells
-		testLayer.cells[0][0][0].value = 2;
-		testLayer.cells[0][0][1].value = 0;
-		testLayer.cells[0][0][2].value = 2;
+		testLayer.cells.setValue(0, 0, 0, 2);
+		testLayer.cells.setValue(0, 0, 1, 0);
+		testLayer.cells.setValue(0, 0, 2, 2);
 
-		testLayer.cells[0][1][0].value = 2;
-		testLayer.cells[0][1][1].value = 2;
-		testLayer.cells[0][1][2].value = 2;
+		testLayer.cells.setValue(0, 1, 0, 2);
+		testLayer.cells.setValue(0, 1, 1, 2);
+		testLayer.cells.setValue(0, 1, 2, 2);
 
-		testLayer.cells[0][2][0].value = 0;
-		testLayer.cells[0][2][1].value = 1;
-		testLayer.cells[0][2][2].value = 0;
+		testLayer.cells.setValue(0, 2, 0, 0);
+		testLayer.cells.setValue(0, 2, 1, 1);
+		testLayer.cells.setValue(0, 2, 2, 0);
 
-		testLayer.cells[1][0][0].value = 1;
-		testLayer.cells[1][0][1].value = 0;
-		testLayer.cells[1][0][2].value = 2;
+		testLayer.cells.setValue(1, 0, 0, 1);
+		testLayer.cells.setValue(1, 0, 1, 0);
+		testLayer.cells.setValue(1, 0, 2, 2);
 
-		testLayer.cells[1][1][0].value = 0;
-		testLayer.cells[1][1][1].value = 2;
-		testLayer.cells[1][1][2].value = 0;
+		testLayer.cells.setValue(1, 1, 0, 0);
+		testLayer.cells.setValue(1, 1, 1, 2);
+		testLayer.cells.setValue(1, 1, 2, 0);
 
-		testLayer.cells[1][2][0].value = 2;
-		testLayer.cells[1][2][1].value = 1;
-		testLayer.cells[1][2][2].value = 2;
+		testLayer.cells.setValue(1, 2, 0, 2);
+		testLayer.cells.setValue(1, 2, 1, 1);
+		testLayer.cells.setValue(1, 2, 2, 2);
 
-		testLayer.cells[2][0][0].value = 1;
-		testLayer.cells[2][0][1].value = 2;
-		testLayer.cells[2][0][2].value = 0;
+		testLayer.cells.setValue(2, 0, 0, 1);
+		testLayer.cells.setValue(2, 0, 1, 2);
+		testLayer.cells.setValue(2, 0, 2, 0);
 
-		testLayer.cells[2][1][0].value = 2;
-		testLayer.cells[2][1][1].value = 2;
-		testLayer.cells[2][1][2].value = 1;
+		testLayer.cells.setValue(2, 1, 0, 2);
+		testLayer.cells.setValue(2, 1, 1, 2);
+		testLayer.cells.setValue(2, 1, 2, 1);
 
-		testLayer.cells[2][2][0].value = 0;
-		testLayer.cells[2][2][1].value = 1;
-		testLayer.cells[2][2][2].value = 1;
+		testLayer.cells.setValue(2, 2, 0, 0);
+		testLayer.cells.setValue(2, 2, 1, 1);
+		testLayer.cells.setValue(2, 2, 2, 1);
 		
 		//Create and initialize the first filter
 		double[][][] testFilter0Weights = new double[testLayer.Fdepth][testLayer.Frows][testLayer.Fcollumns];
@@ -220,7 +220,7 @@ public class TestCNNFullFunction {
 
 	@Test
 	public void test() throws Exception {
-		testLayer.full(testLayer.cells, testLayer.filters, testOut, 1, 0, testLayer.biases, true, true);
+		testLayer.full(testLayer.cells, testLayer.filters, testOut, 1, 0, testLayer.biases, true);
 
 		//This is an array of values we expect to see in testOut
 		double[] temp = new double[3];
@@ -0,0 +1,182 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cnnetwork.ByteQuantizationCodec;
+import cnnetwork.DenseCodec;
+import cnnetwork.ErrorFeedback;
+import cnnetwork.GradientCodec;
+import cnnetwork.HalfPrecisionCodec;
+import cnnetwork.TopKCodec;
+
+/**
+ * This tests the gradient codecs found in cnnetwork.DenseCodec.java,
+ * cnnetwork.HalfPrecisionCodec.java, cnnetwork.ByteQuantizationCodec.java,
+ * and cnnetwork.TopKCodec.java, and the error feedback found in
+ * cnnetwork.ErrorFeedback.java
+ *
+ */
+public class TestCNNGradientCodec {
+
+	/**
+	 * @return "length" random gradients, mostly small with a few large ones.
+	 */
+	private static double[] gradients(int length, long seed) {
+		Random random = new Random(seed);
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = random.nextGaussian() * ((random.nextInt(50) == 0) ? 1.0 : 0.001);
+		}
+		return values;
+	}
+
+	/**
+	 * Test that the dense codec loses nothing.
+	 */
+	@Test
+	public void testDense() throws Exception {
+		double[] values = gradients(1000, 1);
+		double[] decoded = new double[values.length];
+		GradientCodec codec = new DenseCodec();
+		codec.decode(codec.encode(values), decoded);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], decoded[i], 0);
+		}
+	}
+
+	/**
+	 * Test the conversion to and from half precision floats, including
+	 * rounding to even, subnormals, and clamping.
+	 */
+	@Test
+	public void testHalfPrecision() throws Exception {
+		assertEquals(0x3c00, HalfPrecisionCodec.toHalf(1.0f));
+		assertEquals((short) 0xc000, HalfPrecisionCodec.toHalf(-2.0f));
+		assertEquals(0x7bff, HalfPrecisionCodec.toHalf(65504.0f));
+		assertEquals(0x7bff, HalfPrecisionCodec.toHalf(1.0e9f));
+		assertEquals(0x0001, HalfPrecisionCodec.toHalf(5.9604645e-8f));
+		assertEquals(0x0000, HalfPrecisionCodec.toHalf(1.0e-9f));
+
+		// 1 + 2^-11 is exactly between 1 and the next half; ties go to the even one (1)
+		assertEquals(0x3c00, HalfPrecisionCodec.toHalf(1.0f + 0.00048828125f));
+		// 1 + 3 * 2^-11 is exactly between two halves; ties go to the even one (1 + 2^-9)
+		assertEquals(0x3c02, HalfPrecisionCodec.toHalf(1.0f + (3 * 0.00048828125f)));
+
+		for (int bits = 0; bits < 0x7c00; bits++) {
+			short half = (short) bits;
+			assertEquals(half, HalfPrecisionCodec.toHalf(HalfPrecisionCodec.toFloat(half)));
+		}
+
+		double[] values = gradients(1000, 2);
+		double[] decoded = new double[values.length];
+		GradientCodec codec = new HalfPrecisionCodec();
+		byte[] encoded = codec.encode(values);
+		assertEquals(4 + (2 * values.length), encoded.length);
+		codec.decode(encoded, decoded);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], decoded[i], Math.max(Math.abs(values[i]) / 1024, 6e-8));
+		}
+	}
+
+	/**
+	 * Test that 8 bit quantization is off by at most half a step of each
+	 * block's scale.
+	 */
+	@Test
+	public void testByteQuantization() throws Exception {
+		double[] values = gradients(1000, 3);
+		double[] decoded = new double[values.length];
+		ByteQuantizationCodec codec = new ByteQuantizationCodec(64);
+		byte[] encoded = codec.encode(values);
+		assertEquals(8 + (4 * 16) + values.length, encoded.length);
+		codec.decode(encoded, decoded);
+
+		for (int start = 0; start < values.length; start += codec.block) {
+			int end = Math.min(start + codec.block, values.length);
+			double max = 0.0;
+			for (int i = start; i < end; i++) {
+				max = Math.max(max, Math.abs(values[i]));
+			}
+			for (int i = start; i < end; i++) {
+				assertEquals(values[i], decoded[i], (max / 127.0 / 2.0) * 1.0001);
+			}
+		}
+	}
+
+	/**
+	 * Test that top-k keeps exactly the largest values, and drops the rest.
+	 */
+	@Test
+	public void testTopK() throws Exception {
+		double[] values = { 0.1, -5.0, 0.0, 3.0, -0.2, 3.0, 1.0, -3.0 };
+		double[] decoded = new double[values.length];
+		TopKCodec codec = new TopKCodec(0.375);
+		assertEquals(3, codec.kept(values.length));
+		codec.decode(codec.encode(values), decoded);
+
+		// -5 is kept, then the first two of the values with a magnitude of 3
+		double[] expected = { 0, -5.0, 0, 3.0, 0, 3.0, 0, 0 };
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(expected[i], decoded[i], 0);
+		}
+
+		values = gradients(10000, 4);
+		decoded = new double[values.length];
+		codec = new TopKCodec(0.01);
+		byte[] encoded = codec.encode(values);
+		assertEquals(8 + (8 * 100), encoded.length);
+		codec.decode(encoded, decoded);
+		double smallestKept = Double.MAX_VALUE;
+		double largestDropped = 0.0;
+		for (int i = 0; i < values.length; i++) {
+			if (decoded[i] != 0.0) {
+				smallestKept = Math.min(smallestKept, Math.abs(values[i]));
+			} else {
+				largestDropped = Math.max(largestDropped, Math.abs(values[i]));
+			}
+		}
+		assertTrue(smallestKept >= largestDropped);
+	}
+
+	/**
+	 * Test that with error feedback, everything sent plus the residual is
+	 * always everything that was encoded, and the residual stays small.
+	 */
+	@Test
+	public void testErrorFeedback() throws Exception {
+		GradientCodec[] codecs = { new TopKCodec(0.05), new HalfPrecisionCodec(), new ByteQuantizationCodec() };
+		for (GradientCodec codec : codecs) {
+			int length = 2000;
+			ErrorFeedback feedback = new ErrorFeedback(codec, length);
+			double[] total = new double[length];
+			double[] sent = new double[length];
+			double[] decoded = new double[length];
+
+			for (int step = 0; step < 50; step++) {
+				double[] values = gradients(length, 100 + step);
+				byte[] encoded = feedback.encode(values);
+				codec.decode(encoded, decoded);
+				for (int i = 0; i < length; i++) {
+					total[i] += values[i];
+					sent[i] += decoded[i];
+				}
+
+				// A push that is taken back leaves the residual as it was
+				double[] residual = feedback.residual.clone();
+				feedback.undo(feedback.encode(values), values);
+				for (int i = 0; i < length; i++) {
+					assertEquals(residual[i], feedback.residual[i], 1e-12);
+				}
+			}
+			for (int i = 0; i < length; i++) {
+				assertEquals(total[i], sent[i] + feedback.residual[i], 1e-9);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cnnetwork.BackwardEngine;
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.HogwildTrainer;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.Tensor;
+import cnnetwork.TrainingStatistics;
+
+/**
+ * This tests the asynchronous trainer found in cnnetwork.HogwildTrainer.java
+ *
+ */
+public class TestCNNHogwildTrainer {
+
+	private static final double[][] EXPECTED = { { 0, 1, 0 }, { 1, 0, 0 }, { 0, 0, 1 }, { 0, 1, 0 }, { 1, 0, 0 } };
+
+	LinkedList<Layer> layers;
+	Cell[] out;
+	Tensor[] inputs;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(42);
+
+		// A network with one layer of every type:
+		// CONV -> MAXPOOL -> LOCAL -> FULLY -> FULLY -> out
+		layers = new LinkedList<Layer>();
+		layers.add(new Layer(6, 6, 2, 3, 3, 2, 3, 1, 0, LayerType.CONV));
+		layers.add(new Layer(4, 4, 3, 2, 2, 3, 0, 2, 0, LayerType.MAXPOOL));
+		layers.add(new Layer(2, 2, 3, 1, 1, 1, 12, 1, 0, LayerType.LOCAL));
+		layers.add(new Layer(2, 2, 3, 2, 2, 3, 5, 1, 0, LayerType.FULLY));
+		layers.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+
+		for (Layer layer : layers) {
+			layer.initLayer();
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int k = 0; k < row.length; k++) {
+							row[k] = random.nextDouble() - 0.5;
+						}
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				bias.value = random.nextDouble() - 0.5;
+			}
+		}
+
+		out = new Cell[3];
+		for (int k = 0; k < out.length; k++) {
+			out[k] = new Cell();
+		}
+
+		Tensor first = layers.getFirst().cells;
+		inputs = new Tensor[EXPECTED.length];
+		for (int n = 0; n < inputs.length; n++) {
+			inputs[n] = new Tensor(first.depth, first.rows, first.columns);
+			for (int i = 0; i < first.size(); i++) {
+				inputs[n].values[i] = random.nextDouble();
+			}
+		}
+	}
+
+	/**
+	 * @return The cross entropy error of the network over every input.
+	 */
+	private double error() throws Exception {
+		double total = 0.0;
+		for (int n = 0; n < inputs.length; n++) {
+			System.arraycopy(inputs[n].values, 0, layers.getFirst().cells.values, 0, inputs[n].size());
+			FSONNetwork.feedForward(layers, out);
+			Layer.softmax(out);
+			for (int k = 0; k < out.length; k++) {
+				total -= EXPECTED[n][k] * Math.log(out[k].value);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Test that a single worker moves the weights exactly as learning each
+	 * input in turn does, and never sees a stale update.
+	 */
+	@Test
+	public void testSingleWorker() throws Exception {
+		TrainingStatistics statistics = new TrainingStatistics();
+		HogwildTrainer trainer = new HogwildTrainer(layers, out.length, 1, 1, false, 0.5, statistics);
+		for (int n = 0; n < inputs.length; n++) {
+			trainer.submit(inputs[n], EXPECTED[n]);
+		}
+		trainer.finish();
+		double weight = layers.get(2).filters.get(7).weights[0][0][0];
+		double bias = layers.get(0).biases.get(1).value;
+
+		// Start over from the same weights, and learn the same inputs one by one
+		setUp();
+		BackwardEngine engine = new BackwardEngine(layers, out);
+		for (int n = 0; n < inputs.length; n++) {
+			System.arraycopy(inputs[n].values, 0, layers.getFirst().cells.values, 0, inputs[n].size());
+			FSONNetwork.feedForward(layers, out);
+			Layer.softmax(out);
+			engine.backward(layers, out, EXPECTED[n]);
+			engine.update(layers, 0.5);
+		}
+		assertEquals(layers.get(2).filters.get(7).weights[0][0][0], weight, 1e-12);
+		assertEquals(layers.get(0).biases.get(1).value, bias, 1e-12);
+
+		assertEquals(inputs.length, statistics.updates.get());
+		assertEquals(0, statistics.staleUpdates.get());
+		assertEquals(0, statistics.conflicts.get());
+	}
+
+	/**
+	 * Test that several workers learn every input, count every update, and
+	 * still reduce the error.
+	 */
+	@Test
+	public void testWorkers() throws Exception {
+		double before = error();
+
+		// Which inputs end up in the same batch depends on the order the workers
+		// take them in, so the rate is kept small enough that every order makes progress
+		TrainingStatistics statistics = new TrainingStatistics();
+		HogwildTrainer trainer = new HogwildTrainer(layers, out.length, 2, 3, false, 0.1, statistics);
+		for (int repeat = 0; repeat < 20; repeat++) {
+			for (int n = 0; n < inputs.length; n++) {
+				trainer.submit(inputs[n], EXPECTED[n]);
+			}
+		}
+		trainer.finish();
+
+		// 100 inputs in batches of 2, with at most one smaller batch per worker at the end
+		assertTrue(statistics.updates.get() >= 50);
+		assertTrue(statistics.updates.get() <= 52);
+		assertTrue(statistics.staleUpdates.get() <= statistics.updates.get());
+		assertTrue(statistics.conflicts.get() <= statistics.updates.get());
+		assertTrue(error() < before);
+	}
+
+}
@@ -0,0 +1,167 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.InputCache;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LearningOptions;
+import cnnetwork.Tensor;
+
+/**
+ * This tests the cache of decoded input files found in
+ * cnnetwork.InputCache.java, as used by cnnetwork.FSONNetwork::openFileInput(),
+ * cnnetwork.FSONNetwork::openHSVFileInput() and
+ * cnnetwork.FSONNetwork::openFileInputBW()
+ *
+ */
+public class TestCNNInputCache {
+
+	@After
+	public void tearDown() {
+		FSONNetwork.inputCache = null;
+	}
+
+	/**
+	 * Test that a file found in the cache gives exactly the cells it gives
+	 * when it is decoded, for each way of opening it.
+	 */
+	@Test
+	public void testSameCells() throws Exception {
+		Tensor bw = new Tensor(1, 8, 8);
+		Tensor color = new Tensor(3, 8, 8);
+		Tensor hsv = new Tensor(3, 8, 8);
+		FSONNetwork.openFileInputBW(bw, "testingInput/1b.jpg");
+		FSONNetwork.openFileInput(color, "testingInput/1.jpg");
+		FSONNetwork.openHSVFileInput(hsv, "testingInput/1.jpg");
+
+		InputCache cache = new InputCache(1 << 20);
+		FSONNetwork.inputCache = cache;
+		for (int pass = 0; pass < 2; pass++) {
+			Tensor cells = new Tensor(1, 8, 8);
+			FSONNetwork.openFileInputBW(cells, "testingInput/1b.jpg");
+			assertCells(bw, cells);
+			cells = new Tensor(3, 8, 8);
+			FSONNetwork.openFileInput(cells, "testingInput/1.jpg");
+			assertCells(color, cells);
+			cells = new Tensor(3, 8, 8);
+			FSONNetwork.openHSVFileInput(cells, "testingInput/1.jpg");
+			assertCells(hsv, cells);
+		}
+		assertEquals(3, cache.misses());
+		assertEquals(3, cache.hits());
+		assertEquals(3, cache.size());
+		assertEquals(8 * (64 + 192 + 192), cache.bytes());
+
+		// A different shape is a different entry
+		FSONNetwork.openFileInputBW(new Tensor(1, 4, 4), "testingInput/1b.jpg");
+		assertEquals(4, cache.misses());
+	}
+
+	/**
+	 * Test that the entries used least recently are dropped once the cache is
+	 * full.
+	 */
+	@Test
+	public void testEviction() throws Exception {
+		// Room for two 8x8 black and white inputs
+		InputCache cache = new InputCache(2 * 8 * 64);
+		FSONNetwork.inputCache = cache;
+		Tensor cells = new Tensor(1, 8, 8);
+
+		FSONNetwork.openFileInputBW(cells, "testingInput/1b.jpg");
+		FSONNetwork.openFileInputBW(cells, "testingInput/2b.jpg");
+		FSONNetwork.openFileInputBW(cells, "testingInput/1b.jpg");// 1b is now used more recently than 2b
+		FSONNetwork.openFileInputBW(cells, "testingInput/3b.jpg");
+		assertEquals(1, cache.evictions());
+		assertEquals(2, cache.size());
+		assertTrue(cache.bytes() <= cache.budget);
+
+		long misses = cache.misses();
+		assertTrue(cache.load(cells, "testingInput/1b.jpg", InputCache.Mode.BW));
+		assertFalse(cache.load(cells, "testingInput/2b.jpg", InputCache.Mode.BW));
+		assertEquals(misses + 1, cache.misses());
+
+		// Nothing larger than the whole budget is kept
+		FSONNetwork.openFileInputBW(new Tensor(1, 16, 16), "testingInput/1b.jpg");
+		assertEquals(2, cache.size());
+	}
+
+	/**
+	 * Test that learn() only decodes each input file once, and removes the
+	 * cache it set up when it finishes.
+	 */
+	@Test
+	public void testLearn() throws Exception {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		network.add(l0);
+		network.add(l1);
+
+		Cell[] out = { new Cell(), new Cell() };
+		String[] input = { "testingInput/1b.jpg", "testingInput/2b.jpg", "testingInput/3b.jpg" };
+		double[][] dictionary = { { 1, 0 }, { 0, 1 }, { 1, 0 } };
+
+		InputCache cache = new InputCache(1 << 20);
+		FSONNetwork.inputCache = cache;
+		FSONNetwork.learn(0.5, network, out, input, 3, dictionary, true, "testInputCache.txt", new LearningOptions());
+		assertEquals(input.length, cache.misses());
+		assertTrue(cache.hits() > 0);
+
+		FSONNetwork.inputCache = null;
+		LearningOptions options = new LearningOptions();
+		options.inputCacheBytes = 1 << 20;
+		FSONNetwork.learn(0.5, network, out, input, 1, dictionary, true, "testInputCache.txt", options);
+		assertNull(FSONNetwork.inputCache);
+	}
+
+	/**
+	 * Test that learn() removes the cache it set up when learning fails.
+	 */
+	@Test
+	public void testLearnFails() throws Exception {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		network.add(l0);
+		network.add(l1);
+
+		Cell[] out = { new Cell(), new Cell() };
+		String[] input = { "testingInput/1b.jpg", "testingInput/missing.jpg" };
+		double[][] dictionary = { { 1, 0 }, { 0, 1 } };
+
+		LearningOptions options = new LearningOptions();
+		options.inputCacheBytes = 1 << 20;
+		try {
+			FSONNetwork.learn(0.5, network, out, input, 1, dictionary, true, "testInputCache.txt", options);
+			fail("Learned an input that does not exist");
+		} catch (IOException e) {
+			// Expected
+		}
+		assertNull(FSONNetwork.inputCache);
+	}
+
+	private static void assertCells(Tensor expected, Tensor actual) {
+		for (int i = 0; i < expected.values.length; i++) {
+			assertEquals(expected.values[i], actual.values[i], 0);
+		}
+	}
+
+}
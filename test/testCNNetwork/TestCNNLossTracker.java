@@ -0,0 +1,140 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LossTracker;
+import cnnetwork.TrainingState;
+
+/**
+ * This tests the moving average of the error found in
+ * cnnetwork.LossTracker.java
+ *
+ */
+public class TestCNNLossTracker {
+
+	/**
+	 * Test that each recorded error moves the average "smoothing" of the way
+	 * towards it, and that errors that are not finite are left out.
+	 */
+	@Test
+	public void testAverage() {
+		LossTracker tracker = new LossTracker(0.25, 0, 0);
+		assertTrue(Double.isNaN(tracker.value()));
+
+		tracker.reset(2.0);
+		assertEquals(2.0, tracker.value(), 0);
+
+		tracker.record(1.0);
+		assertEquals(1.75, tracker.value(), 1e-12);
+		tracker.record(Double.NEGATIVE_INFINITY);
+		assertEquals(1.75, tracker.value(), 1e-12);
+		tracker.record(3.75);
+		assertEquals(2.25, tracker.value(), 1e-12);
+		assertEquals(3, tracker.recorded());
+
+		// With nothing usable to average, the last evaluation is used
+		tracker.reset(Double.NEGATIVE_INFINITY);
+		assertEquals(Double.NEGATIVE_INFINITY, tracker.value(), 0);
+		tracker.record(0.5);
+		assertEquals(0.5, tracker.value(), 0);
+	}
+
+	/**
+	 * Test that an evaluation is due every "interval" inputs, or never with
+	 * an interval of 0.
+	 */
+	@Test
+	public void testStep() {
+		LossTracker tracker = new LossTracker(0.1, 3, 0);
+		assertFalse(tracker.step());
+		assertFalse(tracker.step());
+		assertTrue(tracker.step());
+		tracker.reset(1.0);
+		assertFalse(tracker.step());
+
+		LossTracker never = new LossTracker(0.1, 0, 0);
+		for (int i = 0; i < 10; i++) {
+			assertFalse(never.step());
+		}
+	}
+
+	/**
+	 * Test that an evaluation over every input gives the total error, and
+	 * that an evaluation over a subset of the inputs starts the average again.
+	 */
+	@Test
+	public void testEvaluate() throws Exception {
+		LinkedList<Layer> layers = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		layers.add(0, l0);
+		layers.add(1, l1);
+
+		Cell[] out = new Cell[2];
+		out[0] = new Cell();
+		out[1] = new Cell();
+
+		String[] input = new String[12];
+		double[][] dictionary = new double[input.length][out.length];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = "testingInput/" + ((i + 1) % 12) + "b.jpg";
+			dictionary[i][0] = (i < 4) ? 1 : 0;
+			dictionary[i][1] = (i % 3 == 0) ? 1 : 0;
+		}
+
+		double total = FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, true);
+
+		LossTracker tracker = new LossTracker(0.1, 1, 0);
+		tracker.record(100.0);
+		assertEquals(total, tracker.evaluate(layers, out, input, dictionary, true), 0);
+		assertEquals(total, tracker.value(), 0);
+
+		// The error of a single input is part of the total
+		FSONNetwork.openFileInputBW(layers, input[0]);
+		FSONNetwork.feedForward(layers, out);
+		for (int k = 0; k < out.length; k++) {
+			out[k].value = Layer.activationFunction(out[k].value);
+		}
+		double error = FSONNetwork.crossEntropyError(out, dictionary[0]);
+		assertTrue(error > 0);
+		assertTrue(error < total * input.length);
+
+		LossTracker sampled = new LossTracker(0.1, 1, 4);
+		double estimate = sampled.evaluate(layers, out, input, dictionary, true);
+		assertTrue(estimate > 0);
+		assertEquals(estimate, sampled.value(), 0);
+		assertEquals(1, sampled.evaluations());
+
+		// The same seed picks the same subsets, and a tracker restored from a
+		// saved state picks the subsets the saved tracker would have picked next
+		LossTracker seeded = new LossTracker(0.1, 1, 4, 7);
+		LossTracker same = new LossTracker(0.1, 1, 4, 7);
+		LossTracker resumed = new LossTracker(0.1, 1, 4, 7);
+		TrainingState state = new TrainingState();
+		for (int e = 0; e < 5; e++) {
+			double expected = seeded.evaluate(layers, out, input, dictionary, true);
+			assertEquals(expected, same.evaluate(layers, out, input, dictionary, true), 0);
+			if (e == 2) {
+				same.save(state);
+				state.error = same.value();
+				resumed.restore(state);
+			}
+			if (e > 2) {
+				assertEquals(expected, resumed.evaluate(layers, out, input, dictionary, true), 0);
+			}
+		}
+	}
+
+}
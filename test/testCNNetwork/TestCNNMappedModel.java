@@ -0,0 +1,160 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LearningOptions;
+import cnnetwork.MappedModel;
+import cnnetwork.ParameterVector;
+import cnnetwork.Workspace;
+
+/**
+ * This tests the memory mapped model files found in
+ * cnnetwork.MappedModel.java against
+ * cnnetwork.FSONNetwork::feedForward(LinkedList, Workspace)
+ *
+ */
+public class TestCNNMappedModel {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	LinkedList<Layer> layers;
+
+	@Before
+	public void setUp() throws Exception {
+		layers = new LinkedList<Layer>();
+		layers.add(new Layer(6, 6, 2, 3, 3, 2, 3, 1, 0, LayerType.CONV));
+		layers.add(new Layer(4, 4, 3, 2, 2, 3, 0, 2, 0, LayerType.MAXPOOL));
+		layers.add(new Layer(2, 2, 3, 1, 1, 1, 12, 1, 0, LayerType.LOCAL));
+		layers.add(new Layer(2, 2, 3, 2, 2, 3, 5, 1, 0, LayerType.FULLY));
+		layers.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+
+		Random random = new Random(5);
+		for (Layer layer : layers) {
+			layer.initLayer();
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int k = 0; k < row.length; k++) {
+							row[k] = random.nextDouble() - 0.5;
+						}
+					}
+				}
+			}
+			for (Cell bias : layer.biases) {
+				bias.value = random.nextDouble() - 0.5;
+			}
+		}
+	}
+
+	/**
+	 * Test that a mapped model calculates the same output as the network it
+	 * was written from, and copies back into the same weights and biases.
+	 */
+	@Test
+	public void testMatchesNetwork() throws Exception {
+		File file = new File(folder.getRoot(), "network.model");
+		MappedModel.write(file, layers);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		assertEquals(0, file.length() % 8);
+
+		MappedModel model = MappedModel.open(file);
+		assertEquals(layers.size(), model.layers.size());
+		assertEquals(LayerType.LOCAL, model.layers.get(2).type);
+		assertEquals(0, model.layers.get(0).filters.size());
+
+		Workspace expected = new Workspace(layers, 3, 4);
+		Workspace actual = new Workspace(model.layers, 3, 4);
+		Random random = new Random(9);
+		for (int i = 0; i < expected.cells[0].values.length; i++) {
+			expected.cells[0].values[i] = random.nextDouble();
+			actual.cells[0].values[i] = expected.cells[0].values[i];
+		}
+		FSONNetwork.feedForward(layers, expected);
+		model.feedForward(actual);
+		for (int i = 0; i < expected.out.values.length; i++) {
+			assertEquals(expected.out.values[i], actual.out.values[i], 1e-12);
+		}
+
+		double[] original = new double[ParameterVector.size(layers)];
+		ParameterVector.read(layers, original);
+		LinkedList<Layer> copy = model.toLayers();
+		double[] copied = new double[ParameterVector.size(copy)];
+		ParameterVector.read(copy, copied);
+		assertEquals(original.length, copied.length);
+		for (int i = 0; i < original.length; i++) {
+			assertEquals(original[i], copied[i], 0);
+		}
+	}
+
+	/**
+	 * Test that a file that is not a whole model file is not opened.
+	 */
+	@Test
+	public void testDamaged() throws Exception {
+		File file = new File(folder.getRoot(), "network.model");
+		MappedModel.write(file, layers);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 8);
+		raf.close();
+
+		try {
+			MappedModel.open(file);
+			fail("Opened a truncated model file");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test that learn() writes the trained network to its model file.
+	 */
+	@Test
+	public void testLearn() throws Exception {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		network.add(l0);
+		network.add(l1);
+
+		Cell[] out = { new Cell(), new Cell() };
+		String[] input = { "testingInput/1b.jpg", "testingInput/2b.jpg" };
+		double[][] dictionary = { { 1, 0 }, { 0, 1 } };
+
+		File file = new File(folder.getRoot(), "learn.model");
+		LearningOptions options = new LearningOptions();
+		options.modelFile = file.getPath();
+		FSONNetwork.learn(0.5, network, out, input, 2, dictionary, true, "testMappedModel.txt", options);
+
+		double[] expected = new double[ParameterVector.size(network)];
+		ParameterVector.read(network, expected);
+		LinkedList<Layer> copy = MappedModel.open(file).toLayers();
+		double[] actual = new double[ParameterVector.size(copy)];
+		ParameterVector.read(copy, actual);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+	}
+
+}
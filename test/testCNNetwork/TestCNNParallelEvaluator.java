@@ -0,0 +1,122 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cnnetwork.Cell;
+import cnnetwork.EvaluationResult;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.ParallelEvaluator;
+
+/**
+ * This tests the parallel evaluator found in cnnetwork.ParallelEvaluator.java
+ * against cnnetwork.FSONNetwork::crossEntropyTotalError() and a plain loop over
+ * the inputs
+ *
+ */
+public class TestCNNParallelEvaluator {
+
+	LinkedList<Layer> layers;
+	Cell[] out;
+	String[] input;
+	double[][] dictionary;
+
+	@Before
+	public void setUp() throws Exception {
+		layers = new LinkedList<Layer>();
+
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 3, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+
+		layers.add(0, l0);
+		layers.add(1, l1);
+
+		out = new Cell[3];
+		for (int k = 0; k < out.length; k++) {
+			out[k] = new Cell();
+		}
+
+		// One class per input, with an empty entry that is skipped
+		input = new String[13];
+		dictionary = new double[input.length][out.length];
+		for (int i = 0; i < 12; i++) {
+			input[i] = "testingInput/" + ((i + 1) % 12) + "b.jpg";
+			dictionary[i][i % 3] = 1;
+		}
+		input[12] = "";
+	}
+
+	/**
+	 * Test that the error matches crossEntropyTotalError(), and the confusion
+	 * matrix and accuracy match a plain loop over the inputs.
+	 */
+	@Test
+	public void testMatchesTotalError() throws Exception {
+		double total = FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, false);
+
+		long[][] confusion = new long[out.length][out.length];
+		long top1 = 0;
+		double[] values = new double[out.length];
+		for (int i = 0; i < 12; i++) {
+			FSONNetwork.openFileInputBW(layers, input[i]);
+			FSONNetwork.feedForward(layers, out);
+			Layer.softmax(out);
+			for (int k = 0; k < out.length; k++) {
+				values[k] = out[k].value;
+			}
+			int expected = EvaluationResult.classOf(dictionary[i]);
+			int predicted = EvaluationResult.classOf(values);
+			confusion[expected][predicted]++;
+			if (expected == predicted) {
+				top1++;
+			}
+		}
+
+		ParallelEvaluator evaluator = new ParallelEvaluator(layers, out.length, 3, 2, 2);
+		EvaluationResult result = evaluator.evaluate(input, dictionary, false);
+		evaluator.close();
+
+		assertEquals(total, result.error, 1e-12);
+		assertEquals(12, result.count);
+		assertEquals(top1, result.top1);
+		for (int e = 0; e < out.length; e++) {
+			for (int p = 0; p < out.length; p++) {
+				assertEquals(confusion[e][p], result.confusion[e][p]);
+			}
+		}
+		assertEquals(top1 / 12.0, result.accuracy(), 0);
+
+		// Every expected class is among the 3 largest of 3 outputs
+		ParallelEvaluator all = new ParallelEvaluator(layers, out.length, 2, 1, 3);
+		assertEquals(12, all.evaluate(input, dictionary, false).topK);
+		all.close();
+	}
+
+	/**
+	 * Test that the results do not depend on how the inputs were split
+	 * between the threads.
+	 */
+	@Test
+	public void testDeterministic() throws Exception {
+		ParallelEvaluator single = new ParallelEvaluator(layers, out.length, 1, 4, 1);
+		ParallelEvaluator several = new ParallelEvaluator(layers, out.length, 4, 4, 1);
+		EvaluationResult expected = single.evaluate(input, dictionary, true);
+		for (int r = 0; r < 5; r++) {
+			EvaluationResult result = several.evaluate(input, dictionary, true);
+			assertEquals(expected.error, result.error, 0);
+			assertEquals(expected.top1, result.top1);
+		}
+		single.close();
+		several.close();
+	}
+
+}
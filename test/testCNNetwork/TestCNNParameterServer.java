@@ -0,0 +1,236 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cnnetwork.BackwardEngine;
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.GradientCompression;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LearningOptions;
+import cnnetwork.LossTracker;
+import cnnetwork.ParameterServer;
+import cnnetwork.ParameterServerWorker;
+import cnnetwork.ParameterVector;
+import cnnetwork.TrainingMode;
+
+/**
+ * This tests parameter server training, found in
+ * cnnetwork.ParameterServer.java and cnnetwork.ParameterServerWorker.java,
+ * with the workers running as threads of this process over localhost.
+ *
+ */
+public class TestCNNParameterServer {
+
+	LinkedList<Layer> layers;
+	Cell[] out;
+	String[] input;
+	double[][] dictionary;
+
+	@Before
+	public void setUp() throws Exception {
+		layers = new LinkedList<Layer>();
+
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+
+		layers.add(0, l0);
+		layers.add(1, l1);
+
+		out = new Cell[2];
+		out[0] = new Cell();
+		out[1] = new Cell();
+
+		// The same inputs as TestCNNFSONNetworkLearnSimple3
+		input = new String[12];
+		dictionary = new double[input.length][out.length];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = "testingInput/" + ((i + 1) % 12) + "b.jpg";
+			dictionary[i][0] = (i < 4) ? 1 : 0;
+		}
+		dictionary[3][1] = 1;
+		dictionary[4][1] = 1;
+		dictionary[5][1] = 1;
+		dictionary[7][1] = 1;
+		dictionary[10][1] = 1;
+	}
+
+	/**
+	 * Test that the weights, biases, and gradients of a network are laid out
+	 * in the same order, and come back unchanged.
+	 */
+	@Test
+	public void testParameterVector() throws Exception {
+		Random random = new Random(5);
+		Layer full = layers.get(1);
+		full.filters.get(1).weights[0][1][0] = random.nextDouble();
+		full.biases.get(1).value = random.nextDouble();
+
+		double[] parameters = new double[ParameterVector.size(layers)];
+		assertEquals((2 * 4) + 2, parameters.length);
+		ParameterVector.read(layers, parameters);
+		assertEquals(full.filters.get(1).weights[0][1][0], parameters[4 + 2], 0);
+		assertEquals(full.biases.get(1).value, parameters[9], 0);
+
+		parameters[4 + 2] = 0.25;
+		ParameterVector.write(parameters, layers);
+		assertEquals(0.25, full.filters.get(1).weights[0][1][0], 0);
+
+		BackwardEngine engine = new BackwardEngine(layers, out);
+		for (int i = 0; i < parameters.length; i++) {
+			parameters[i] = i;
+		}
+		ParameterVector.writeGradients(parameters, engine);
+		assertEquals(4 + 2, engine.weightGradient(layers, 1, 1, 0, 1, 0), 0);
+		assertEquals(9, engine.biasGradients[1][1], 0);
+	}
+
+	/**
+	 * Runs a parameter server with the given options, and its workers as
+	 * threads of this process, until every input has been learned 10 times.
+	 */
+	private void train(LearningOptions options) throws Exception {
+		train(new ParameterServer(layers, out.length, input, dictionary, true, 10, 0.5, options), options);
+	}
+
+	/**
+	 * Runs a parameter server, and its workers as threads of this process,
+	 * until every input has been learned 10 times.
+	 */
+	private void train(final ParameterServer server, LearningOptions options) throws Exception {
+		server.start();
+
+		final Exception[] failures = new Exception[options.workers];
+		Thread[] threads = new Thread[options.workers];
+		for (int w = 0; w < threads.length; w++) {
+			final int index = w;
+			threads[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						new ParameterServerWorker("localhost", server.port()).run();
+					} catch (Exception e) {
+						failures[index] = e;
+					}
+				}
+			});
+			threads[w].start();
+		}
+		server.awaitWorkers(new ArrayList<Process>());
+		for (int w = 0; w < threads.length; w++) {
+			threads[w].join();
+			if (failures[w] != null) {
+				throw failures[w];
+			}
+		}
+	}
+
+	/**
+	 * Test that two workers learning half of the inputs each move the
+	 * server's weights by every accepted batch, and reduce the error.
+	 */
+	@Test
+	public void testWorkers() throws Exception {
+		double before = FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, true);
+
+		LearningOptions options = new LearningOptions();
+		options.mode = TrainingMode.PARAMETER_SERVER;
+		options.workers = 2;
+		options.batchSize = 2;
+		options.staleness = 1;
+		train(options);
+
+		// 6 inputs per worker in batches of 2, 10 times over
+		assertEquals(2 * 3 * 10, options.statistics.updates.get());
+		assertTrue(options.statistics.maxStaleness.get() <= 1);
+		assertTrue(FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, true) < before);
+	}
+
+	/**
+	 * Test that workers sending compressed gradients still reduce the error.
+	 */
+	@Test
+	public void testCompression() throws Exception {
+		double before = FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, true);
+
+		LearningOptions options = new LearningOptions();
+		options.mode = TrainingMode.PARAMETER_SERVER;
+		options.workers = 2;
+		options.batchSize = 2;
+		options.compression = GradientCompression.INT8;
+		train(options);
+
+		assertEquals(2 * 3 * 10, options.statistics.updates.get());
+		assertTrue(FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, true) < before);
+	}
+
+	/**
+	 * Test that the server records the errors the workers report, and moves
+	 * the learning rate with them.
+	 */
+	@Test
+	public void testLearningRate() throws Exception {
+		LearningOptions options = new LearningOptions();
+		options.mode = TrainingMode.PARAMETER_SERVER;
+		options.workers = 2;
+		options.batchSize = 2;
+		options.staleness = 1;
+		ParameterServer server = new ParameterServer(layers, out.length, input, dictionary, true, 10, 0.5, options);
+		server.tracker = new LossTracker(0.1, 12, 0);
+		server.tracker.reset(FSONNetwork.crossEntropyTotalError(layers, out, input, dictionary, true));
+		server.learningFactor = 0.5;
+		train(server, options);
+
+		// Every input learned by an accepted push, and an evaluation every 12 of them
+		assertEquals(2 * 6 * 10, server.tracker.recorded());
+		assertEquals(10, server.tracker.evaluations());
+		assertEquals(Layer.activationFunction(server.tracker.value()) * 0.5, server.learningRate(), 0);
+		assertTrue(server.learningRate() != 0.5);
+	}
+
+	/**
+	 * Test that a push claiming more bytes than any codec could have made
+	 * fails the connection, instead of being allocated.
+	 */
+	@Test
+	public void testOversizedPush() throws Exception {
+		LearningOptions options = new LearningOptions();
+		options.mode = TrainingMode.PARAMETER_SERVER;
+		options.workers = 1;
+		ParameterServer server = new ParameterServer(layers, out.length, input, dictionary, true, 10, 0.5, options);
+		server.start();
+
+		Socket socket = new Socket("localhost", server.port());
+		DataOutputStream stream = new DataOutputStream(socket.getOutputStream());
+		stream.writeByte(ParameterServer.PUSH);
+		stream.writeLong(0);
+		stream.writeInt(Integer.MAX_VALUE);
+		stream.flush();
+
+		try {
+			server.awaitWorkers(new ArrayList<Process>());
+			fail("The push was accepted");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains(String.valueOf(Integer.MAX_VALUE)));
+		} finally {
+			socket.close();
+		}
+	}
+
+}
@@ -0,0 +1,411 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cnnetwork.Cell;
+import cnnetwork.Checkpoint;
+import cnnetwork.Connectivity;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LearningOptions;
+import cnnetwork.ParameterServerWorker;
+import cnnetwork.ParameterVector;
+import cnnetwork.SaveFileReader;
+import cnnetwork.TrainingMode;
+import cnnetwork.TrainingState;
+import cnnetwork.WeightPublisher;
+
+/**
+ * This tests resuming cnnetwork.FSONNetwork::learn() from a checkpoint (see
+ * cnnetwork.TrainingState.java) and from the text file it writes (see
+ * cnnetwork.SaveFileReader.java)
+ *
+ */
+public class TestCNNResume {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	Cell[] out = { new Cell(), new Cell() };
+	String[] input = { "testingInput/1b.jpg", "testingInput/2b.jpg", "testingInput/3b.jpg", "testingInput/4b.jpg" };
+	double[][] dictionary = { { 1, 0 }, { 0, 1 }, { 1, 0 }, { 0, 1 } };
+
+	private static LinkedList<Layer> network() {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		network.add(l0);
+		network.add(l1);
+		return network;
+	}
+
+	private static double[] parameters(LinkedList<Layer> network) {
+		double[] parameters = new double[ParameterVector.size(network)];
+		ParameterVector.read(network, parameters);
+		return parameters;
+	}
+
+	/**
+	 * Test that learning stopped after one iteration and resumed from its
+	 * checkpoint ends with exactly the weights of learning without stopping.
+	 */
+	@Test
+	public void testExactResume() throws Exception {
+		LinkedList<Layer> straight = network();
+		LearningOptions options = new LearningOptions();
+		options.seed = 11;
+		options.checkpointFile = new File(folder.getRoot(), "straight.ckpt").getPath();
+		FSONNetwork.learn(0.5, straight, out, input, 3, dictionary, true, "testResume.txt", options);
+
+		File file = new File(folder.getRoot(), "stopped.ckpt");
+		LinkedList<Layer> stopped = network();
+		options = new LearningOptions();
+		options.seed = 11;
+		options.checkpointFile = file.getPath();
+		FSONNetwork.learn(0.5, stopped, out, input, 1, dictionary, true, "testResume.txt", options);
+
+		Checkpoint checkpoint = Checkpoint.read(file);
+		assertNotNull(checkpoint.state);
+		assertEquals(1, checkpoint.state.iteration);
+		assertEquals(0, checkpoint.state.position);
+		assertEquals(11, checkpoint.state.seed);
+		assertEquals(input.length, checkpoint.samples);
+
+		// A new network, so nothing is carried over but the checkpoint. The seed
+		// is taken from the checkpoint.
+		LinkedList<Layer> resumed = network();
+		options = new LearningOptions();
+		options.checkpointFile = file.getPath();
+		options.resumeFrom = file.getPath();
+		FSONNetwork.learn(0.5, resumed, out, input, 3, dictionary, true, "testResume.txt", options);
+
+		double[] expected = parameters(straight);
+		double[] actual = parameters(resumed);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+		assertEquals(3 * input.length, Checkpoint.read(file).samples);
+		assertEquals(3, Checkpoint.read(file).state.iteration);
+	}
+
+	/**
+	 * Test that learning stopped part way through an iteration, and resumed
+	 * from the last checkpoint it took, ends with exactly the weights of
+	 * learning without stopping.
+	 */
+	@Test
+	public void testResumeMidIteration() throws Exception {
+		resumeMidIteration(1);
+	}
+
+	/**
+	 * Test that resuming part way through an iteration also carries on with
+	 * the moving average of the error, and the count towards the next full
+	 * calculation of it, that learning had reached.
+	 */
+	@Test
+	public void testResumeMovingAverage() throws Exception {
+		resumeMidIteration(4);
+	}
+
+	private void resumeMidIteration(int evaluationInterval) throws Exception {
+		LinkedList<Layer> straight = network();
+		LearningOptions options = new LearningOptions();
+		options.seed = 11;
+		options.evaluationInterval = evaluationInterval;
+		FSONNetwork.learn(0.5, straight, out, input, 3, dictionary, true, "testResume.txt", options);
+
+		// Stop learning as the 7th update is made: the 3rd entry of the 2nd iteration
+		File file = new File(folder.getRoot(), "stopped.ckpt");
+		LinkedList<Layer> stopped = network();
+		options = new LearningOptions();
+		options.seed = 11;
+		options.evaluationInterval = evaluationInterval;
+		options.checkpointFile = file.getPath();
+		options.checkpointEvery = 1;
+		options.publisher = new WeightPublisher(stopped, 0) {
+			@Override
+			public void updated() {
+				super.updated();
+				if (updates() == input.length + 3) {
+					throw new IllegalStateException("Stopped");
+				}
+			}
+		};
+		try {
+			FSONNetwork.learn(0.5, stopped, out, input, 3, dictionary, true, "testResume.txt", options);
+			fail("Learning was not stopped");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+		Checkpoint checkpoint = Checkpoint.read(file);
+		assertEquals(1, checkpoint.state.iteration);
+		assertEquals(2, checkpoint.state.position);
+		assertEquals(input.length + 2, checkpoint.samples);
+		assertEquals((input.length + 2) % evaluationInterval, checkpoint.state.sinceEvaluation);
+
+		LinkedList<Layer> resumed = network();
+		options = new LearningOptions();
+		options.evaluationInterval = evaluationInterval;
+		options.resumeFrom = file.getPath();
+		FSONNetwork.learn(0.5, resumed, out, input, 3, dictionary, true, "testResume.txt", options);
+
+		double[] expected = parameters(straight);
+		double[] actual = parameters(resumed);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+	}
+
+	/**
+	 * Runs learn() in PARAMETER_SERVER mode, with a single worker as a thread
+	 * of this process.
+	 */
+	private void learnWithServer(LinkedList<Layer> network, int iterations, LearningOptions options)
+			throws Exception {
+		ServerSocket free = new ServerSocket(0);
+		final int port = free.getLocalPort();
+		free.close();
+		options.mode = TrainingMode.PARAMETER_SERVER;
+		options.workers = 1;
+		options.launchWorkers = false;
+		options.serverPort = port;
+
+		final Exception[] failure = new Exception[1];
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					// The server only starts listening once it has found the starting error
+					while (true) {
+						try {
+							new ParameterServerWorker("localhost", port).run();
+							return;
+						} catch (ConnectException e) {
+							Thread.sleep(20);
+						}
+					}
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		});
+		worker.start();
+		FSONNetwork.learn(0.5, network, out, input, iterations, dictionary, true, "testResume.txt", options);
+		worker.join();
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	/**
+	 * Test that a parameter server counts every input its workers learned,
+	 * carries on with the iterations still to go from its own checkpoint, and
+	 * refuses a checkpoint taken in the middle of an iteration.
+	 */
+	@Test
+	public void testParameterServer() throws Exception {
+		File file = new File(folder.getRoot(), "server.ckpt");
+		LinkedList<Layer> network = network();
+		LearningOptions options = new LearningOptions();
+		options.checkpointFile = file.getPath();
+		learnWithServer(network, 2, options);
+
+		Checkpoint checkpoint = Checkpoint.read(file);
+		assertEquals(2 * input.length, checkpoint.samples);
+		assertEquals(2, checkpoint.state.iteration);
+		assertEquals(0, checkpoint.state.position);
+
+		options = new LearningOptions();
+		options.checkpointFile = file.getPath();
+		options.resumeFrom = file.getPath();
+		learnWithServer(network(), 3, options);
+		checkpoint = Checkpoint.read(file);
+		assertEquals(3 * input.length, checkpoint.samples);
+		assertEquals(3, checkpoint.state.iteration);
+
+		// Part way through an iteration
+		TrainingState state = new TrainingState(checkpoint.state);
+		state.position = 2;
+		File middle = new File(folder.getRoot(), "middle.ckpt");
+		Checkpoint.write(middle, network, parameters(network), state);
+		options = new LearningOptions();
+		options.mode = TrainingMode.PARAMETER_SERVER;
+		options.resumeFrom = middle.getPath();
+		try {
+			FSONNetwork.learn(0.5, network(), out, input, 3, dictionary, true, "testResume.txt", options);
+			fail("Resumed from the middle of an iteration");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Test that the text file written while learning is read back into the
+	 * same weights and biases, and that a file cut short is noticed.
+	 */
+	@Test
+	public void testSaveFile() throws Exception {
+		LinkedList<Layer> network = network();
+		FSONNetwork.learn(0.5, network, out, input, 1, dictionary, true, "testResume.txt", new LearningOptions());
+
+		// learn() writes the file next to the classes (see FSONNetwork::learn())
+		String location = FSONNetwork.class.getProtectionDomain().getCodeSource().getLocation().toString();
+		File saved = new File(location.substring(5, (location.length() - 4)) + "testResume.txt");
+
+		double[] expected = parameters(network);
+		LinkedList<Layer> read = SaveFileReader.read(saved);
+		assertEquals(network.size(), read.size());
+		assertEquals(LayerType.MAXPOOL, read.getFirst().type);
+		double[] actual = parameters(read);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+
+		LinkedList<Layer> loaded = network();
+		SaveFileReader.load(saved, loaded);
+		actual = parameters(loaded);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+
+		// A run that dies while writing the file leaves only part of it
+		File partial = folder.newFile("partial.txt");
+		Files.copy(saved.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+		raf.setLength(raf.length() / 2);
+		raf.close();
+		try {
+			SaveFileReader.read(partial);
+			fail("Read a save file that was cut short");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Writes a save file the way learn() did before recordProgress() existed:
+	 * the file is closed at the end of the first layer, so the writes of
+	 * every later layer are lost. Derivatives and gradients had been reset to
+	 * NaN by the time they were written.
+	 */
+	private static void writeLegacySaveFile(File file, LinkedList<Layer> network) throws IOException {
+		PrintWriter fw = new PrintWriter(file);
+		for (Layer layer : network) {
+			fw.write("<layer>\n");
+			fw.write(layer.collumns + "," + layer.rows + "," + layer.depth + "," + layer.Fcollumns + "," + layer.Frows
+					+ "," + layer.Fdepth + "," + layer.K + "," + layer.step + "," + layer.pad + "," + layer.type + "\n");
+			fw.write("<cells>\n");
+			for (int x = 0; x < layer.cells.size(); x++) {
+				fw.write(layer.cells.values[x] + "," + Double.NaN + "\n");
+			}
+			if (layer.type != LayerType.MAXPOOL) {
+				Connectivity connectivity = layer.connectivity;
+				for (int f = 0; f < layer.filters.size(); f++) {
+					fw.write("<filter>\n");
+					for (double[][] plane : layer.filters.get(f).weights) {
+						for (double[] row : plane) {
+							for (double weight : row) {
+								fw.write(weight + "," + Double.NaN + "\n");
+							}
+						}
+					}
+					for (int x = 0; x < connectivity.windows(f); x++) {
+						int p = connectivity.position(f, x);
+						fw.write("<connection>\n");
+						fw.write(f + "," + connectivity.inputDepth(p) + "," + connectivity.inputRow(p) + ","
+								+ connectivity.inputColumn(p) + "," + connectivity.outputDepth(f, p) + ","
+								+ connectivity.outputRow(p) + "," + connectivity.outputColumn(f, p) + "\n");
+					}
+					fw.write("</filter>\n");
+				}
+				for (Cell bias : layer.biases) {
+					fw.write("<bias>\n");
+					fw.write(Double.NaN + "," + bias.value + "\n");
+				}
+				if (layer.biases.size() > 0) {
+					fw.write("</biases>\n");
+				}
+			}
+			fw.write("</layer>\n");
+			fw.flush();
+			fw.close();
+		}
+	}
+
+	private static void assertSameWeights(Layer expected, Layer actual) {
+		for (int f = 0; f < expected.filters.size(); f++) {
+			Filter filter = expected.filters.get(f);
+			for (int x = 0; x < filter.weights.length; x++) {
+				for (int y = 0; y < filter.weights[x].length; y++) {
+					for (int z = 0; z < filter.weights[x][y].length; z++) {
+						assertEquals(filter.weights[x][y][z], actual.filters.get(f).weights[x][y][z], 0);
+					}
+				}
+			}
+		}
+		for (int b = 0; b < expected.biases.size(); b++) {
+			assertEquals(expected.biases.get(b).value, actual.biases.get(b).value, 0);
+		}
+	}
+
+	/**
+	 * Test that a save file left by an older version of learn(), which only
+	 * holds the first layer, sets the first layer and leaves the rest alone.
+	 */
+	@Test
+	public void testLegacySaveFile() throws Exception {
+		LinkedList<Layer> saved = new LinkedList<Layer>();
+		saved.add(new Layer(2, 2, 1, 2, 2, 1, 3, 1, 0, LayerType.FULLY));
+		saved.add(new Layer(3, 1, 1, 3, 1, 1, 2, 1, 0, LayerType.FULLY));
+		LinkedList<Layer> loaded = new LinkedList<Layer>();
+		loaded.add(new Layer(2, 2, 1, 2, 2, 1, 3, 1, 0, LayerType.FULLY));
+		loaded.add(new Layer(3, 1, 1, 3, 1, 1, 2, 1, 0, LayerType.FULLY));
+		for (int i = 0; i < 2; i++) {
+			saved.get(i).initLayer();
+			loaded.get(i).initLayer();
+		}
+		double[] starting = parameters(loaded);
+
+		File file = folder.newFile("legacy.txt");
+		writeLegacySaveFile(file, saved);
+		assertEquals(1, SaveFileReader.read(file).size());
+
+		assertEquals(1, SaveFileReader.load(file, loaded));
+		assertSameWeights(saved.getFirst(), loaded.getFirst());
+		// The second layer keeps its starting weights: the last 2 filters of 3 weights, and 2 biases
+		double[] actual = parameters(loaded);
+		for (int i = actual.length - ((2 * 3) + 2); i < actual.length; i++) {
+			assertEquals(starting[i], actual[i], 0);
+		}
+
+		// learn() can carry on from it
+		LinkedList<Layer> network = network();
+		writeLegacySaveFile(file, network);
+		LearningOptions options = new LearningOptions();
+		options.resumeFrom = file.getPath();
+		FSONNetwork.learn(0.5, network(), out, input, 1, dictionary, true, "testResume.txt", options);
+	}
+
+}
@@ -0,0 +1,196 @@
+package testCNNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cnnetwork.Cell;
+import cnnetwork.FSONNetwork;
+import cnnetwork.Filter;
+import cnnetwork.Layer;
+import cnnetwork.LayerType;
+import cnnetwork.LearningOptions;
+import cnnetwork.ParameterVector;
+import cnnetwork.WeightPublisher;
+import cnnetwork.WeightSnapshot;
+import cnnetwork.Workspace;
+
+/**
+ * This tests the weight snapshots found in cnnetwork.WeightPublisher.java and
+ * cnnetwork.WeightSnapshot.java
+ *
+ */
+public class TestCNNWeightSnapshot {
+
+	LinkedList<Layer> layers;
+
+	@Before
+	public void setUp() throws Exception {
+		layers = new LinkedList<Layer>();
+		layers.add(new Layer(6, 6, 2, 3, 3, 2, 3, 1, 0, LayerType.CONV));
+		layers.add(new Layer(4, 4, 3, 2, 2, 3, 0, 2, 0, LayerType.MAXPOOL));
+		layers.add(new Layer(2, 2, 3, 2, 2, 3, 5, 1, 0, LayerType.FULLY));
+		layers.add(new Layer(5, 1, 1, 5, 1, 1, 3, 1, 0, LayerType.FULLY));
+
+		Random random = new Random(2);
+		for (Layer layer : layers) {
+			layer.initLayer();
+			for (Filter filter : layer.filters) {
+				for (double[][] plane : filter.weights) {
+					for (double[] row : plane) {
+						for (int k = 0; k < row.length; k++) {
+							row[k] = random.nextDouble() - 0.5;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static double[] parameters(LinkedList<Layer> network) {
+		double[] parameters = new double[ParameterVector.size(network)];
+		ParameterVector.read(network, parameters);
+		return parameters;
+	}
+
+	/**
+	 * Test that snapshots are published on their cadence, share whatever did
+	 * not move, and do not change when the network does.
+	 */
+	@Test
+	public void testCopyOnWrite() throws Exception {
+		WeightPublisher publisher = new WeightPublisher(layers, 2);
+		WeightSnapshot first = publisher.latest();
+		assertEquals(0, first.version);
+		double[] before = parameters(layers);
+
+		layers.getLast().filters.get(1).weights[0][0][2] += 1.0;
+		publisher.updated();
+		assertSame(first, publisher.latest());
+		publisher.updated();
+
+		WeightSnapshot second = publisher.latest();
+		assertEquals(1, second.version);
+		assertEquals(2, second.updates);
+
+		// Only the filter that moved was copied
+		assertNotSame(first.layers.getLast().filters.get(1), second.layers.getLast().filters.get(1));
+		assertSame(first.layers.getLast().filters.get(0), second.layers.getLast().filters.get(0));
+		assertSame(first.layers.getLast().biases.get(1), second.layers.getLast().biases.get(1));
+		assertSame(first.layers.get(0), second.layers.get(0));
+		assertSame(first.layers.get(1), second.layers.get(1));
+		assertEquals(3 + 5 + 3 + 1, publisher.copiedFilters());
+		assertEquals(3 + 5 + 3 - 1, publisher.sharedFilters());
+
+		// The cells of a copied layer are only used for their shape, so they are shared too
+		assertSame(first.layers.getLast().cells, second.layers.getLast().cells);
+		assertSame(first.layers.getLast().connectivity, second.layers.getLast().connectivity);
+		assertNotSame(layers.getLast().cells, second.layers.getLast().cells);
+		assertEquals(layers.getLast().K, second.layers.getLast().K);
+
+		// The first snapshot still holds the weights it was taken with
+		double[] old = parameters(first.layers);
+		for (int i = 0; i < before.length; i++) {
+			assertEquals(before[i], old[i], 0);
+		}
+		double[] now = parameters(layers);
+		double[] latest = parameters(second.layers);
+		for (int i = 0; i < now.length; i++) {
+			assertEquals(now[i], latest[i], 0);
+		}
+	}
+
+	/**
+	 * Test that a snapshot classifies the way the network did when it was
+	 * taken, after the network has moved on.
+	 */
+	@Test
+	public void testFeedForward() throws Exception {
+		Workspace expected = new Workspace(layers, 3, 2);
+		Random random = new Random(4);
+		for (int i = 0; i < expected.cells[0].values.length; i++) {
+			expected.cells[0].values[i] = random.nextDouble();
+		}
+		FSONNetwork.feedForward(layers, expected);
+
+		WeightPublisher publisher = new WeightPublisher(layers, 0);
+		for (Filter filter : layers.getFirst().filters) {
+			filter.weights[0][0][0] += 0.25;
+		}
+
+		WeightSnapshot snapshot = publisher.latest();
+		Workspace actual = new Workspace(snapshot.layers, 3, 2);
+		System.arraycopy(expected.cells[0].values, 0, actual.cells[0].values, 0, actual.cells[0].values.length);
+		snapshot.feedForward(actual);
+		for (int i = 0; i < expected.out.values.length; i++) {
+			assertEquals(expected.out.values[i], actual.out.values[i], 0);
+		}
+	}
+
+	/**
+	 * Test that learn() publishes snapshots while another thread classifies
+	 * with them, and finishes with a snapshot of its final weights.
+	 */
+	@Test
+	public void testLearn() throws Exception {
+		LinkedList<Layer> network = new LinkedList<Layer>();
+		Layer l0 = new Layer(4, 4, 1, 2, 2, 1, 4, 2, 0, LayerType.MAXPOOL);
+		l0.initLayer();
+		Layer l1 = new Layer(2, 2, 1, 2, 2, 1, 2, 1, 0, LayerType.FULLY);
+		l1.initLayer();
+		network.add(l0);
+		network.add(l1);
+
+		Cell[] out = { new Cell(), new Cell() };
+		String[] input = { "testingInput/1b.jpg", "testingInput/2b.jpg", "testingInput/3b.jpg" };
+		double[][] dictionary = { { 1, 0 }, { 0, 1 }, { 1, 0 } };
+
+		final WeightPublisher publisher = new WeightPublisher(network, 2);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long version = -1;
+					while (!done.get()) {
+						WeightSnapshot snapshot = publisher.latest();
+						assertTrue(snapshot.version >= version);
+						version = snapshot.version;
+						Workspace workspace = new Workspace(snapshot.layers, 2, 1);
+						snapshot.feedForward(workspace);
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		});
+		reader.start();
+
+		LearningOptions options = new LearningOptions();
+		options.publisher = publisher;
+		FSONNetwork.learn(0.5, network, out, input, 2, dictionary, true, "testWeightSnapshot.txt", options);
+		done.set(true);
+		reader.join();
+
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(6, publisher.updates());
+		double[] expected = parameters(network);
+		double[] actual = parameters(publisher.latest().layers);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 0);
+		}
+	}
+
+}